@@ -35,9 +35,41 @@ public interface JdbcAgentConnector {
      * 发送数据
      *
      * @param packet 数据包
-     * @return 响应数据
+     * @return 响应数据包
      * @throws SQLException
      */
-    byte[] write(Packet packet) throws SQLException;
+    Packet write(Packet packet) throws SQLException;
+
+    /**
+     * 发送数据, 不等待响应
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    void send(Packet packet) throws SQLException;
+
+    /**
+     * 发送无返回值的调用, 可以延迟到之后的请求一起发送, 出错时由之后的请求抛出异常
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    void defer(Packet packet) throws SQLException;
+
+    /**
+     * 立即发送所有延迟的调用并等待执行结果
+     *
+     * @throws SQLException
+     */
+    void flush() throws SQLException;
+
+    /**
+     * 发送数据并接收服务端以同一数据包id推送的多个响应
+     *
+     * @param packet 数据包
+     * @return 推送流, 不支持服务端推送时返回null
+     * @throws SQLException
+     */
+    PacketStream openStream(Packet packet) throws SQLException;
 
 }
@@ -1,8 +1,10 @@
 package com.jdbcagent.client;
 
 import com.jdbcagent.client.jdbc.JdbcConnection;
+import com.jdbcagent.client.jdbc.MetaDataCache;
 import com.jdbcagent.client.netty.JdbcAgentNettyClient;
 import com.jdbcagent.client.uitl.Util;
+import com.jdbcagent.core.support.compress.Compressors;
 
 import javax.sql.DataSource;
 import java.io.PrintWriter;
@@ -19,6 +21,8 @@ import java.util.logging.Logger;
  * @version 1.0 2018-07-10
  */
 public class JdbcAgentDataSource implements DataSource {
+    public final static int DEFAULT_MAX_MESSAGE_LENGTH = 256 * 1024 * 1024;  // 响应可能是大的结果集分页, 默认上限高于服务端
+
     private volatile JdbcAgentNettyClient jdbcAgentNettyClient = null;  // netty客户端
 
     private String url;                                                 // url地址
@@ -31,6 +35,16 @@ public class JdbcAgentDataSource implements DataSource {
 
     private int idleTimeout = 30 * 60 * 1000;                           // 连接超时时间
 
+    private String compression = Compressors.names();                   // 支持的压缩算法, 按优先级逗号分隔, 为空不压缩
+
+    private int statementCacheSize = JdbcConnection.DEFAULT_STATEMENT_CACHE_SIZE;  // 每个连接缓存的preparedStatement句柄数
+
+    private int lobInlineThreshold = JdbcConnection.DEFAULT_LOB_INLINE_THRESHOLD;  // 不超过此长度的流及大对象参数整体发送
+
+    private int maxMessageLength = DEFAULT_MAX_MESSAGE_LENGTH;          // 单个响应包体(分片拼接、解压后)的最大字节数
+
+    private long metaDataCacheTtl;                                      // DatabaseMetaData缓存有效期, 毫秒, 0为不缓存
+
     public void setUrl(String url) {
         this.url = url;
     }
@@ -47,6 +61,56 @@ public class JdbcAgentDataSource implements DataSource {
         this.idleTimeout = idleTimeout;
     }
 
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setLobInlineThreshold(int lobInlineThreshold) {
+        this.lobInlineThreshold = lobInlineThreshold;
+    }
+
+    public int getLobInlineThreshold() {
+        return lobInlineThreshold;
+    }
+
+    public void setMaxMessageLength(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    public int getMaxMessageLength() {
+        return maxMessageLength;
+    }
+
+    public void setMetaDataCacheTtl(long metaDataCacheTtl) {
+        this.metaDataCacheTtl = metaDataCacheTtl;
+    }
+
+    public long getMetaDataCacheTtl() {
+        return metaDataCacheTtl;
+    }
+
+    /**
+     * 清空本数据源的DatabaseMetaData缓存
+     */
+    public void invalidateMetaDataCache() {
+        MetaDataCache metaDataCache = MetaDataCache.shared(url, username, metaDataCacheTtl);
+        if (metaDataCache != null) {
+            metaDataCache.invalidate();
+        }
+    }
+
     public String getUsername() {
         return username;
     }
@@ -93,14 +157,17 @@ public class JdbcAgentDataSource implements DataSource {
 
     @Override
     public Connection getConnection() throws SQLException {
-        init();
-        return new JdbcConnection(jdbcAgentNettyClient, catalog, username, password);
+        return getConnection(username, password);
     }
 
     @Override
     public Connection getConnection(String username, String password) throws SQLException {
         init();
-        return new JdbcConnection(jdbcAgentNettyClient, catalog, username, password);
+        JdbcConnection connection = new JdbcConnection(jdbcAgentNettyClient, catalog, username, password);
+        connection.setStatementCacheSize(statementCacheSize);
+        connection.setLobInlineThreshold(lobInlineThreshold);
+        connection.setMetaDataCache(MetaDataCache.shared(url, username, metaDataCacheTtl));
+        return connection;
     }
 
     @Override
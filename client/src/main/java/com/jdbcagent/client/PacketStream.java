@@ -0,0 +1,88 @@
+package com.jdbcagent.client;
+
+import com.jdbcagent.core.protocol.Packet;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JDBC-Agent client 服务端推送流
+ * <p>
+ * 服务端以打开推送的数据包id持续推送响应, 按到达顺序排队等待读取
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class PacketStream {
+    private final long id;                                          // 推送流id, 即打开推送的数据包id
+
+    private final BlockingQueue<Object> packets = new LinkedBlockingQueue<>();  // 已收到的数据包或异常
+
+    private final long timeout;                                     // 等待推送的超时时间, 毫秒
+
+    private final Runnable onClose;                                 // 关闭时的回调
+
+    public PacketStream(long id, long timeout, Runnable onClose) {
+        this.id = id;
+        this.timeout = timeout;
+        this.onClose = onClose;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * 收到推送的数据包
+     *
+     * @param packet 数据包
+     */
+    public void offer(Packet packet) {
+        packets.offer(packet);
+    }
+
+    /**
+     * 推送失败, 例如连接断开
+     *
+     * @param cause 失败原因
+     */
+    public void fail(Throwable cause) {
+        packets.offer(cause);
+    }
+
+    /**
+     * 读取下一个推送的数据包
+     *
+     * @return 数据包
+     * @throws SQLException
+     */
+    public Packet take() throws SQLException {
+        Object next;
+        try {
+            next = packets.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        if (next == null) {
+            throw new SQLTimeoutException("wait for stream " + id + " timeout");
+        }
+        if (next instanceof Throwable) {
+            throw new SQLException((Throwable) next);
+        }
+        return (Packet) next;
+    }
+
+    /**
+     * 关闭推送流, 之后到达的数据包被丢弃
+     */
+    public void close() {
+        packets.clear();
+        if (onClose != null) {
+            onClose.run();
+        }
+    }
+}
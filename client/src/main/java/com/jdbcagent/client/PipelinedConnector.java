@@ -0,0 +1,103 @@
+package com.jdbcagent.client;
+
+import com.jdbcagent.core.protocol.Packet;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC-Agent client 单个连接的延迟调用连接器
+ * <p>
+ * 无返回值的调用(设置属性、关闭等)先在本地排队, 随该连接的下一个请求一起发送,
+ * 服务端先按顺序执行这些调用再执行请求本身, 任一调用出错时由该请求抛出异常
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class PipelinedConnector implements JdbcAgentConnector {
+    private final static int MAX_DEFERRED = 64;                 // 排队的调用达到此数时立即发送
+
+    private final JdbcAgentConnector connector;                 // 实际的tcp连接器
+
+    private final List<Packet> deferred = new ArrayList<>();    // 排队等待发送的调用
+
+    public PipelinedConnector(JdbcAgentConnector connector) {
+        this.connector = connector;
+    }
+
+    public void connect() {
+        connector.connect();
+    }
+
+    public void disconnect() {
+        synchronized (deferred) {
+            deferred.clear();
+        }
+        connector.disconnect();
+    }
+
+    public void start() {
+        connector.start();
+    }
+
+    public void stop() {
+        connector.stop();
+    }
+
+    public Packet write(Packet packet) throws SQLException {
+        attachDeferred(packet);
+        return connector.write(packet);
+    }
+
+    /**
+     * 不等待响应的发送无法返回延迟调用的错误, 不附带延迟的调用
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    public void send(Packet packet) throws SQLException {
+        connector.send(packet);
+    }
+
+    public PacketStream openStream(Packet packet) throws SQLException {
+        attachDeferred(packet);
+        return connector.openStream(packet);
+    }
+
+    public void defer(Packet packet) throws SQLException {
+        synchronized (deferred) {
+            deferred.add(packet);
+            if (deferred.size() < MAX_DEFERRED) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    public void flush() throws SQLException {
+        Packet last;
+        synchronized (deferred) {
+            if (deferred.isEmpty()) {
+                return;
+            }
+            last = deferred.remove(deferred.size() - 1);
+        }
+        // 最后一个调用作为请求发送, 其余随其一起发送; 应答可能是ack或方法的返回值, 出错时抛出异常
+        write(last).getBody();
+    }
+
+    /**
+     * 把排队的调用附加到请求上
+     *
+     * @param packet 请求数据包
+     */
+    private void attachDeferred(Packet packet) {
+        synchronized (deferred) {
+            if (!deferred.isEmpty()) {
+                packet.setDeferred(new ArrayList<>(deferred));
+                deferred.clear();
+            }
+        }
+    }
+}
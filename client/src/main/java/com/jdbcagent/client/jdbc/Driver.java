@@ -1,5 +1,6 @@
 package com.jdbcagent.client.jdbc;
 
+import com.jdbcagent.client.JdbcAgentDataSource;
 import com.jdbcagent.client.nio.JdbcAgentNioClient;
 import com.jdbcagent.client.uitl.Util;
 
@@ -47,13 +48,22 @@ public class Driver implements java.sql.Driver {
 
             JdbcAgentNioClient jdbcAgentConnector = new JdbcAgentNioClient(
                     new InetSocketAddress(urlInfo.get("ip"), Integer.parseInt(urlInfo.get("port"))), idleTimeout);
+            jdbcAgentConnector.setMaxMessageLength(Integer.parseInt(info.getProperty("maxMessageLength",
+                    String.valueOf(JdbcAgentDataSource.DEFAULT_MAX_MESSAGE_LENGTH))));
             jdbcAgentConnector.connect();
 
             String catalog = urlInfo.get("catalog");
             String username = info.getProperty("user");
             String password = info.getProperty("password");
 
-            return new JdbcConnection(jdbcAgentConnector, catalog, username, password);
+            JdbcConnection connection = new JdbcConnection(jdbcAgentConnector, catalog, username, password);
+            connection.setStatementCacheSize(Integer.parseInt(info.getProperty("statementCacheSize",
+                    String.valueOf(JdbcConnection.DEFAULT_STATEMENT_CACHE_SIZE))));
+            connection.setLobInlineThreshold(Integer.parseInt(info.getProperty("lobInlineThreshold",
+                    String.valueOf(JdbcConnection.DEFAULT_LOB_INLINE_THRESHOLD))));
+            connection.setMetaDataCache(MetaDataCache.shared(url, username,
+                    Long.parseLong(info.getProperty("metaDataCacheTtl", "0"))));
+            return connection;
         } catch (Exception e) {
             throw new SQLException(e);
         }
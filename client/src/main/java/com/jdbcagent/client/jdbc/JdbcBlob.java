@@ -0,0 +1,137 @@
+package com.jdbcagent.client.jdbc;
+
+import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.core.support.LobLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * JDBC-Agent client jdbc blob impl
+ * <p>
+ * 内容保存在服务端, 读取时按块远程获取
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class JdbcBlob extends JdbcLob implements Blob {
+
+    JdbcBlob(JdbcAgentConnector jdbcAgentConnector, LobLocator locator) {
+        super(jdbcAgentConnector, locator);
+    }
+
+    @Override
+    public byte[] getBytes(long pos, int length) throws SQLException {
+        checkPosition(pos);
+        int n = (int) readable(pos, length);
+        byte[] bytes = new byte[n];
+        int offset = 0;
+        while (offset < n) {
+            byte[] chunk = (byte[]) read(pos + offset, Math.min(CHUNK_SIZE, n - offset));
+            if (chunk.length == 0) {
+                break;
+            }
+            System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return offset == n ? bytes : Arrays.copyOf(bytes, offset);
+    }
+
+    @Override
+    public InputStream getBinaryStream() throws SQLException {
+        return getBinaryStream(1, length());
+    }
+
+    @Override
+    public InputStream getBinaryStream(final long pos, final long length) throws SQLException {
+        checkPosition(pos);
+        return new InputStream() {
+            private long next = pos;                        // 下一块的起始位置
+            private final long end = pos + readable(pos, length);  // 结束位置(不含)
+            private byte[] chunk;                           // 当前块
+            private int offset;                             // 当前块的读取位置
+
+            @Override
+            public int read() throws IOException {
+                if (!fill()) {
+                    return -1;
+                }
+                return chunk[offset++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                int n = Math.min(len, chunk.length - offset);
+                System.arraycopy(chunk, offset, b, off, n);
+                offset += n;
+                return n;
+            }
+
+            /**
+             * 当前块读完时远程读取下一块
+             *
+             * @return 是否还有数据
+             */
+            private boolean fill() throws IOException {
+                if (chunk != null && offset < chunk.length) {
+                    return true;
+                }
+                if (next >= end) {
+                    return false;
+                }
+                try {
+                    chunk = (byte[]) JdbcBlob.this.read(next, (int) Math.min(CHUNK_SIZE, end - next));
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+                offset = 0;
+                if (chunk.length == 0) {
+                    next = end;
+                    return false;
+                }
+                next += chunk.length;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public long position(byte[] pattern, long start) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long position(Blob pattern, long start) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int setBytes(long pos, byte[] bytes) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public OutputStream setBinaryStream(long pos) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void truncate(long len) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -6,6 +6,7 @@ import com.jdbcagent.core.protocol.CallableStatementMsg.Method;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
 import com.jdbcagent.core.protocol.PreparedStatementMsg.ParamType;
+import com.jdbcagent.core.protocol.ResultSetMsg;
 import com.jdbcagent.core.support.serial.SerialNClob;
 import com.jdbcagent.core.support.serial.SerialRowId;
 import com.jdbcagent.core.util.Util;
@@ -58,16 +59,14 @@ public class JdbcCallableStatement extends JdbcPreparedStatement implements Call
      */
     private Serializable invokeCallableStatementMethod(Method method, Serializable... params)
             throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet responsePacket = Packet.parse(
-                    jdbcAgentConnector.write(Packet.newBuilder()
-                            .incrementAndGetId()
-                            .setType(PacketType.CLA_STMT_METHOD)
-                            .setBody(CallableStatementMsg.newBuilder().setId(remoteId)
-                                    .setMethod(method).setParams(params).build())
-                            .build()));
-            return ((CallableStatementMsg) responsePacket.getBody()).getResponse();
-        }
+        Packet responsePacket = jdbcAgentConnector.write(Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.CLA_STMT_METHOD)
+                .setBody(CallableStatementMsg.newBuilder().setId(remoteId)
+                        .setMethod(method).setParams(params)
+                        .setBatchSize(method == Method.executeQuery ? fetchSize : null).build())
+                .build());
+        return ((CallableStatementMsg) responsePacket.getBody()).getResponse();
     }
 
     /**
@@ -88,18 +87,18 @@ public class JdbcCallableStatement extends JdbcPreparedStatement implements Call
 
     @Override
     public ResultSet executeQuery() throws SQLException {
-        Long resultSetId = (Long) invokeCallableStatementMethod(Method.executeQuery, paramsQueue, csParamsQueue);
-        return new JdbcResultSet(jdbcAgentConnector, resultSetId);
+        ResultSetMsg resultSetMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.executeQuery, paramBlock, csParamsQueue);
+        return new JdbcResultSet(jdbcAgentConnector, resultSetMsg, fetchSize);
     }
 
     @Override
     public boolean execute() throws SQLException {
-        return (Boolean) invokeCallableStatementMethod(Method.execute, paramsQueue, csParamsQueue);
+        return (Boolean) invokeCallableStatementMethod(Method.execute, paramBlock, csParamsQueue);
     }
 
     @Override
     public int executeUpdate() throws SQLException {
-        return (Integer) invokeCallableStatementMethod(Method.executeUpdate, paramsQueue, csParamsQueue);
+        return (Integer) invokeCallableStatementMethod(Method.executeUpdate, paramBlock, csParamsQueue);
     }
 
     @Override
@@ -761,15 +760,13 @@ public class JdbcCallableStatement extends JdbcPreparedStatement implements Call
 
     @Override
     public void close() throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            paramsQueue.clear();
-            csParamsQueue.clear(); // 清除参数队列
-            Packet packet = Packet.newBuilder()
-                    .incrementAndGetId()
-                    .setType(PacketType.CLA_STMT_CLOSE)
-                    .setBody(CallableStatementMsg.newBuilder()
-                            .setId(remoteId).build()).build();
-            Packet.parse(jdbcAgentConnector.write(packet)).getAck();
-        }
+        paramBlock.clear();
+        csParamsQueue.clear(); // 清除参数队列
+        Packet packet = Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.CLA_STMT_CLOSE)
+                .setBody(CallableStatementMsg.newBuilder()
+                        .setId(remoteId).build()).build();
+        jdbcAgentConnector.defer(packet);
     }
 }
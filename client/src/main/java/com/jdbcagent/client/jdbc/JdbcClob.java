@@ -0,0 +1,153 @@
+package com.jdbcagent.client.jdbc;
+
+import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.core.support.LobLocator;
+
+import java.io.*;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.SQLException;
+
+/**
+ * JDBC-Agent client jdbc clob impl
+ * <p>
+ * 内容保存在服务端, 读取时按块远程获取, 同时用于NCLOB
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class JdbcClob extends JdbcLob implements NClob {
+
+    JdbcClob(JdbcAgentConnector jdbcAgentConnector, LobLocator locator) {
+        super(jdbcAgentConnector, locator);
+    }
+
+    @Override
+    public String getSubString(long pos, int length) throws SQLException {
+        checkPosition(pos);
+        int n = (int) readable(pos, length);
+        StringBuilder builder = new StringBuilder(n);
+        while (builder.length() < n) {
+            String chunk = (String) read(pos + builder.length(), Math.min(CHUNK_SIZE, n - builder.length()));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            builder.append(chunk);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public Reader getCharacterStream() throws SQLException {
+        return getCharacterStream(1, length());
+    }
+
+    @Override
+    public Reader getCharacterStream(final long pos, final long length) throws SQLException {
+        checkPosition(pos);
+        return new Reader() {
+            private long next = pos;                        // 下一块的起始位置
+            private final long end = pos + readable(pos, length);  // 结束位置(不含)
+            private String chunk;                           // 当前块
+            private int offset;                             // 当前块的读取位置
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                int n = Math.min(len, chunk.length() - offset);
+                chunk.getChars(offset, offset + n, cbuf, off);
+                offset += n;
+                return n;
+            }
+
+            /**
+             * 当前块读完时远程读取下一块
+             *
+             * @return 是否还有数据
+             */
+            private boolean fill() throws IOException {
+                if (chunk != null && offset < chunk.length()) {
+                    return true;
+                }
+                if (next >= end) {
+                    return false;
+                }
+                try {
+                    chunk = (String) JdbcClob.this.read(next, (int) Math.min(CHUNK_SIZE, end - next));
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+                offset = 0;
+                if (chunk.isEmpty()) {
+                    next = end;
+                    return false;
+                }
+                next += chunk.length();
+                return true;
+            }
+
+            @Override
+            public void close() {
+                chunk = null;
+                next = end;
+            }
+        };
+    }
+
+    @Override
+    public InputStream getAsciiStream() throws SQLException {
+        final Reader reader = getCharacterStream();
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                int c = reader.read();
+                return c < 0 ? -1 : (c < 128 ? c : '?');
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    @Override
+    public long position(String searchstr, long start) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long position(Clob searchstr, long start) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int setString(long pos, String str) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int setString(long pos, String str, int offset, int len) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public OutputStream setAsciiStream(long pos) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Writer setCharacterStream(long pos) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void truncate(long len) throws SQLException {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -1,15 +1,22 @@
 package com.jdbcagent.client.jdbc;
 
 import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.client.PipelinedConnector;
 import com.jdbcagent.core.protocol.ConnectionMsg;
 import com.jdbcagent.core.protocol.ConnectionMsg.Method;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.protocol.PreparedStatementMsg;
 import com.jdbcagent.core.support.serial.SerialConnection;
+import com.jdbcagent.core.support.serial.SerialDatabaseMetaData;
 import com.jdbcagent.core.support.serial.SerialSavepoint;
+import com.jdbcagent.core.support.serial.SerialStatement;
+import com.jdbcagent.core.util.Util;
 
 import java.io.Serializable;
 import java.sql.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executor;
@@ -21,16 +28,31 @@ import java.util.concurrent.Executor;
  * @version 1.0 2018-07-10
  */
 public class JdbcConnection implements Connection {
+    public final static int DEFAULT_STATEMENT_CACHE_SIZE = 64;  // 默认缓存的preparedStatement句柄数
+
+    public final static int DEFAULT_LOB_INLINE_THRESHOLD = 64 * 1024;  // 默认的大对象参数内联阈值
+
     private long remoteId;                                  // 远程connection id
 
     private final JdbcAgentConnector jdbcAgentConnector;    // tcp连接器
 
     private SerialConnection serialConnection;              // 可序列化的connection信息
 
+    private SerialDatabaseMetaData serialDatabaseMetaData;  // 服务端数据源的能力信息快照
+
     private boolean connected;                              // 是否连接
 
     private String warnings;                                // 警告信息
 
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;  // 缓存的preparedStatement句柄数, 0为不缓存
+
+    private int lobInlineThreshold = DEFAULT_LOB_INLINE_THRESHOLD;  // 不超过此长度的流及大对象参数整体发送, 否则分块上传
+
+    private MetaDataCache metaDataCache;                    // 元数据缓存, 为null时不缓存
+
+    private final LinkedHashMap<String, Long> statementCache =
+            new LinkedHashMap<>(16, 0.75f, true);           // 已关闭的preparedStatement的远程id, 按最近使用排序
+
     /**
      * Connection 构造方法
      *
@@ -42,10 +64,10 @@ public class JdbcConnection implements Connection {
      */
     public JdbcConnection(JdbcAgentConnector jdbcAgentConnector, String catalog,
                           String username, String password) throws SQLException {
-        this.jdbcAgentConnector = jdbcAgentConnector;
+        this.jdbcAgentConnector = new PipelinedConnector(jdbcAgentConnector);
 
         Packet responsePacket =
-                Packet.parse(jdbcAgentConnector.write(Packet
+                jdbcAgentConnector.write(Packet
                         .newBuilder()
                         .incrementAndGetId()
                         .setType(PacketType.CONN_CONNECT).setBody(ConnectionMsg
@@ -53,12 +75,206 @@ public class JdbcConnection implements Connection {
                                 .setCatalog(catalog)
                                 .setUsername(username)
                                 .setPassword(password).build())
-                        .build()));
+                        .build());
         ConnectionMsg connectMsg = (ConnectionMsg) responsePacket.getBody();
         remoteId = connectMsg.getId();
+        serialConnection = connectMsg.getSerialConnection();
+        serialDatabaseMetaData = connectMsg.getSerialDatabaseMetaData();
         connected = true;
     }
 
+    long getRemoteId() {
+        return remoteId;
+    }
+
+    SerialDatabaseMetaData getSerialDatabaseMetaData() {
+        return serialDatabaseMetaData;
+    }
+
+    /**
+     * 设置缓存的preparedStatement句柄数
+     *
+     * @param statementCacheSize 句柄数, 0为不缓存
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = Math.max(statementCacheSize, 0);
+    }
+
+    /**
+     * 设置大对象参数的内联阈值
+     *
+     * @param lobInlineThreshold 不超过此长度(字节数或字符数)的参数整体发送
+     */
+    public void setLobInlineThreshold(int lobInlineThreshold) {
+        this.lobInlineThreshold = Math.max(lobInlineThreshold, 0);
+    }
+
+    int getLobInlineThreshold() {
+        return lobInlineThreshold;
+    }
+
+    /**
+     * 设置元数据缓存
+     *
+     * @param metaDataCache 缓存, 为null时不缓存
+     */
+    public void setMetaDataCache(MetaDataCache metaDataCache) {
+        this.metaDataCache = metaDataCache;
+    }
+
+    /**
+     * 清空元数据缓存, 同一url和用户的连接共用此缓存
+     */
+    public void invalidateMetaDataCache() {
+        if (metaDataCache != null) {
+            metaDataCache.invalidate();
+        }
+    }
+
+    /**
+     * 创建preparedStatement, 有相同sql和参数的缓存句柄时直接复用其远程id
+     *
+     * @param params Connection.prepareStatement 的参数
+     * @return preparedStatement
+     */
+    private PreparedStatement newPreparedStatement(Serializable[] params) throws SQLException {
+        JdbcPreparedStatement statement;
+        if (statementCacheSize <= 0) {
+            statement = new JdbcPreparedStatement(this, jdbcAgentConnector, params);
+        } else {
+            String key = Util.statementKey(params);
+            Long cachedId;
+            synchronized (statementCache) {
+                cachedId = statementCache.remove(key);
+            }
+            statement = new JdbcPreparedStatement(this, jdbcAgentConnector, params, key,
+                    cachedId == null ? 0 : cachedId);
+        }
+        if (params.length >= 3) {
+            // sql之后依次为resultSetType, resultSetConcurrency[, resultSetHoldability]
+            statement.state = statementState(true, (Integer) params[1], (Integer) params[2],
+                    params.length > 3 ? (Integer) params[3] : null);
+        } else {
+            statement.state = statementState(true, null, null, null);
+        }
+        return statement;
+    }
+
+    /**
+     * 新建statement的属性快照, 由连接返回的默认属性及创建参数得出
+     *
+     * @param poolable             是否可池化, preparedStatement默认为true
+     * @param resultSetType        结果集类型, 为null取默认值
+     * @param resultSetConcurrency 结果集并发类型, 为null取默认值
+     * @param resultSetHoldability 结果集可保持性, 为null取当前connection的值
+     * @return 属性快照, 服务端未返回默认属性时为null
+     * @throws SQLException
+     */
+    private SerialStatement statementState(boolean poolable, Integer resultSetType,
+                                           Integer resultSetConcurrency, Integer resultSetHoldability)
+            throws SQLException {
+        if (serialConnection == null || serialConnection.getStatementDefaults() == null) {
+            return null;
+        }
+        SerialStatement state = serialConnection.getStatementDefaults().copy();
+        state.setPoolable(poolable);
+        if (resultSetType != null) {
+            state.setResultSetType(resultSetType);
+        }
+        if (resultSetConcurrency != null) {
+            state.setResultSetConcurrency(resultSetConcurrency);
+        }
+        state.setResultSetHoldability(resultSetHoldability != null ? resultSetHoldability
+                : serialConnection.getHoldability());
+        return state;
+    }
+
+    /**
+     * 创建远程statement
+     *
+     * @param params Connection.createStatement 的参数
+     * @return statement
+     * @throws SQLException
+     */
+    private Statement newStatement(Integer... params) throws SQLException {
+        Serializable[] createParams = new Serializable[params.length];
+        System.arraycopy(params, 0, createParams, 0, params.length);
+        long statementId = (Long) invokeConnMethod(Method.createStatement, createParams);
+        JdbcStatement statement = new JdbcStatement(this, jdbcAgentConnector, statementId);
+        statement.state = statementState(false, params.length > 0 ? params[0] : null,
+                params.length > 1 ? params[1] : null, params.length > 2 ? params[2] : null);
+        return statement;
+    }
+
+    /**
+     * 创建远程callableStatement
+     *
+     * @param sql    sql
+     * @param params Connection.prepareCall 的其它参数
+     * @return callableStatement
+     * @throws SQLException
+     */
+    private CallableStatement newCallableStatement(String sql, Integer... params) throws SQLException {
+        Serializable[] callParams = new Serializable[params.length + 1];
+        callParams[0] = sql;
+        System.arraycopy(params, 0, callParams, 1, params.length);
+        long statementId = (Long) invokeConnMethod(Method.prepareCall, callParams);
+        JdbcCallableStatement statement = new JdbcCallableStatement(this, jdbcAgentConnector, statementId);
+        statement.state = statementState(true, params.length > 0 ? params[0] : null,
+                params.length > 1 ? params[1] : null, params.length > 2 ? params[2] : null);
+        return statement;
+    }
+
+    /**
+     * preparedStatement关闭时保留其远程句柄, 超过缓存数时关闭最久未使用的
+     *
+     * @param key         缓存key
+     * @param statementId 远程preparedStatement id
+     * @return 是否已缓存, 否则由调用方关闭
+     * @throws SQLException
+     */
+    boolean releaseStatement(String key, long statementId) throws SQLException {
+        Long evictedId = null;
+        synchronized (statementCache) {
+            if (!connected || statementCache.containsKey(key)) {
+                return false;
+            }
+            statementCache.put(key, statementId);
+            if (statementCache.size() > statementCacheSize) {
+                Iterator<Long> it = statementCache.values().iterator();
+                evictedId = it.next();
+                it.remove();
+            }
+        }
+        if (evictedId != null) {
+            closeStatement(evictedId);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭远程preparedStatement
+     *
+     * @param statementId 远程preparedStatement id
+     * @throws SQLException
+     */
+    void closeStatement(long statementId) throws SQLException {
+        Packet packet = Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.PRE_STMT_CLOSE)
+                .setBody(PreparedStatementMsg.newBuilder().setId(statementId).build()).build();
+        jdbcAgentConnector.defer(packet);
+    }
+
+    /**
+     * 清空缓存的preparedStatement句柄, 远程句柄由服务端释放或关闭连接时一并关闭
+     */
+    private void clearStatementCache() {
+        synchronized (statementCache) {
+            statementCache.clear();
+        }
+    }
+
     /**
      * 获取可序列化的Connection对象信息
      * 如果不存在(第一次访问)则进行远程调用
@@ -69,20 +285,18 @@ public class JdbcConnection implements Connection {
      */
     public SerialConnection getSerialConnection(Method method) throws SQLException {
         if (serialConnection == null) {
-            synchronized (jdbcAgentConnector) {
-                try {
-                    Packet responsePacket =
-                            Packet.parse(jdbcAgentConnector.write(Packet.newBuilder().incrementAndGetId()
-                                    .setType(PacketType.CONN_SERIAL_METHOD).setBody(ConnectionMsg.newBuilder()
-                                            .setId(remoteId).setMethod(method).setParams(new Serializable[0]).build())
-                                    .build()));
-                    ConnectionMsg response = (ConnectionMsg) responsePacket.getBody();
-                    warnings = response.getWarnings();
-                    serialConnection = response.getSerialConnection();
-                } catch (Exception e) {
-                    checkConnection(e);
-                    throw new SQLException(e);
-                }
+            try {
+                Packet responsePacket =
+                        jdbcAgentConnector.write(Packet.newBuilder().incrementAndGetId()
+                                .setType(PacketType.CONN_SERIAL_METHOD).setBody(ConnectionMsg.newBuilder()
+                                        .setId(remoteId).setMethod(method).setParams(new Serializable[0]).build())
+                                .build());
+                ConnectionMsg response = (ConnectionMsg) responsePacket.getBody();
+                warnings = response.getWarnings();
+                serialConnection = response.getSerialConnection();
+            } catch (Exception e) {
+                checkConnection(e);
+                throw new SQLException(e);
             }
         }
         return serialConnection;
@@ -102,10 +316,10 @@ public class JdbcConnection implements Connection {
         if (serialConnection == null) {
             try {
                 Packet responsePacket =
-                        Packet.parse(jdbcAgentConnector.write(Packet.newBuilder().incrementAndGetId()
+                        jdbcAgentConnector.write(Packet.newBuilder().incrementAndGetId()
                                 .setType(PacketType.CONN_SERIAL_METHOD).setBody(ConnectionMsg.newBuilder()
                                         .setId(remoteId).setMethod(method).setParams(params).build())
-                                .build()));
+                                .build());
                 ConnectionMsg response = (ConnectionMsg) responsePacket.getBody();
                 warnings = response.getWarnings();
                 serialConnection = response.getSerialConnection();
@@ -114,7 +328,7 @@ public class JdbcConnection implements Connection {
                 throw new SQLException(e);
             }
         } else {
-            invokeConnMethod(method, params);
+            deferConnMethod(method, params);
         }
         return serialConnection;
     }
@@ -138,25 +352,37 @@ public class JdbcConnection implements Connection {
      * @return 可序列化返回值
      * @throws SQLException
      */
-    private Serializable invokeConnMethod(Method method, Serializable... params)
+    Serializable invokeConnMethod(Method method, Serializable... params)
             throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            try {
-                Packet responsePacket =
-                        Packet.parse(jdbcAgentConnector.write(Packet.newBuilder().incrementAndGetId()
-                                .setType(PacketType.CONN_METHOD).setBody(ConnectionMsg.newBuilder()
-                                        .setId(remoteId).setMethod(method).setParams(params).build())
-                                .build()));
-                ConnectionMsg response = (ConnectionMsg) responsePacket.getBody();
-                warnings = response.getWarnings();
-                return response.getResponse();
-            } catch (Exception e) {
-                checkConnection(e);
-                throw new SQLException(e);
-            }
+        try {
+            Packet responsePacket =
+                    jdbcAgentConnector.write(Packet.newBuilder().incrementAndGetId()
+                            .setType(PacketType.CONN_METHOD).setBody(ConnectionMsg.newBuilder()
+                                    .setId(remoteId).setMethod(method).setParams(params).build())
+                            .build());
+            ConnectionMsg response = (ConnectionMsg) responsePacket.getBody();
+            warnings = response.getWarnings();
+            return response.getResponse();
+        } catch (Exception e) {
+            checkConnection(e);
+            throw new SQLException(e);
         }
     }
 
+    /**
+     * Connection无返回值方法的延迟调用, 随下一个请求发送
+     *
+     * @param method 方法名
+     * @param params 方法参数
+     * @throws SQLException
+     */
+    private void deferConnMethod(Method method, Serializable... params) throws SQLException {
+        jdbcAgentConnector.defer(Packet.newBuilder().incrementAndGetId()
+                .setType(PacketType.CONN_METHOD).setBody(ConnectionMsg.newBuilder()
+                        .setId(remoteId).setMethod(method).setParams(params).build())
+                .build());
+    }
+
     /**
      * 从异常信息验证连接是否断开
      *
@@ -183,27 +409,24 @@ public class JdbcConnection implements Connection {
      * @throws SQLException
      */
     public void release() throws SQLException {
+        // 缓存的句柄随release一起关闭
+        clearStatementCache();
         invokeConnMethod(Method.release);
     }
 
     @Override
     public Statement createStatement() throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.createStatement);
-        return new JdbcStatement(this, jdbcAgentConnector, statementId);
+        return newStatement();
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql) throws SQLException {
-        long statementId =
-                (Long) invokeConnMethod(Method.prepareStatement, sql);
-        return new JdbcPreparedStatement(this, jdbcAgentConnector, statementId);
+        return newPreparedStatement(new Serializable[]{sql});
     }
 
     @Override
     public CallableStatement prepareCall(String sql) throws SQLException {
-        long statementId =
-                (Long) invokeConnMethod(Method.prepareCall, sql);
-        return new JdbcCallableStatement(this, jdbcAgentConnector, statementId);
+        return newCallableStatement(sql);
     }
 
     @Override
@@ -233,7 +456,16 @@ public class JdbcConnection implements Connection {
 
     @Override
     public void close() throws SQLException {
-        synchronized (jdbcAgentConnector) {
+        boolean wasConnected = connected;
+        connected = false;
+        clearStatementCache();  // 服务端关闭连接时一并关闭缓存的句柄
+        try {
+            if (wasConnected) {
+                // 通道可能由多个连接复用, 显式通知服务端关闭本连接
+                deferConnMethod(Method.close);
+                jdbcAgentConnector.flush();
+            }
+        } finally {
             jdbcAgentConnector.disconnect();
         }
     }
@@ -245,8 +477,18 @@ public class JdbcConnection implements Connection {
 
     @Override
     public DatabaseMetaData getMetaData() throws SQLException {
-        long metaDataId = (Long) invokeConnMethod(Method.getMetaData);
-        return new JdbcDatabaseMetaData(this, jdbcAgentConnector, metaDataId);
+        // 远程对象在第一次未命中缓存时才创建
+        return new JdbcDatabaseMetaData(this, jdbcAgentConnector, metaDataCache);
+    }
+
+    /**
+     * 创建远程databaseMetaData
+     *
+     * @return 远程databaseMetaData id
+     * @throws SQLException
+     */
+    long newMetaDataRemoteId() throws SQLException {
+        return (Long) invokeConnMethod(Method.getMetaData);
     }
 
     @Override
@@ -296,23 +538,19 @@ public class JdbcConnection implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency)
             throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.createStatement, resultSetType, resultSetConcurrency);
-        return new JdbcStatement(this, jdbcAgentConnector, statementId);
+        return newStatement(resultSetType, resultSetConcurrency);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType,
                                               int resultSetConcurrency) throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.prepareStatement, sql, resultSetType, resultSetConcurrency);
-        return new JdbcPreparedStatement(this, jdbcAgentConnector, statementId);
+        return newPreparedStatement(new Serializable[]{sql, resultSetType, resultSetConcurrency});
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
             throws SQLException {
-        long statementId =
-                (Long) invokeConnMethod(Method.prepareCall, sql, resultSetType, resultSetConcurrency);
-        return new JdbcCallableStatement(this, jdbcAgentConnector, statementId);
+        return newCallableStatement(sql, resultSetType, resultSetConcurrency);
     }
 
     @Override
@@ -358,45 +596,37 @@ public class JdbcConnection implements Connection {
     @Override
     public Statement createStatement(int resultSetType, int resultSetConcurrency,
                                      int resultSetHoldability) throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.createStatement, resultSetType, resultSetConcurrency, resultSetHoldability);
-        return new JdbcStatement(this, jdbcAgentConnector, statementId);
+        return newStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int resultSetType,
                                               int resultSetConcurrency, int resultSetHoldability)
             throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.prepareStatement, sql,
-                resultSetType, resultSetConcurrency, resultSetHoldability);
-        return new JdbcPreparedStatement(this, jdbcAgentConnector, statementId);
+        return newPreparedStatement(
+                new Serializable[]{sql, resultSetType, resultSetConcurrency, resultSetHoldability});
     }
 
     @Override
     public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
                                          int resultSetHoldability) throws SQLException {
-        long statementId =
-                (Long) invokeConnMethod(Method.prepareCall, sql, resultSetType,
-                        resultSetConcurrency, resultSetHoldability);
-        return new JdbcCallableStatement(this, jdbcAgentConnector, statementId);
+        return newCallableStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.prepareStatement, sql, autoGeneratedKeys);
-        return new JdbcPreparedStatement(this, jdbcAgentConnector, statementId);
+        return newPreparedStatement(new Serializable[]{sql, autoGeneratedKeys});
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.prepareStatement, sql, columnIndexes);
-        return new JdbcPreparedStatement(this, jdbcAgentConnector, statementId);
+        return newPreparedStatement(new Serializable[]{sql, columnIndexes});
     }
 
     @Override
     public PreparedStatement prepareStatement(String sql, String[] columnNames)
             throws SQLException {
-        long statementId = (Long) invokeConnMethod(Method.prepareStatement, sql, columnNames);
-        return new JdbcPreparedStatement(this, jdbcAgentConnector, statementId);
+        return newPreparedStatement(new Serializable[]{sql, columnNames});
     }
 
     @Override
@@ -5,6 +5,8 @@ import com.jdbcagent.core.protocol.DatabaseMetaDataMsg;
 import com.jdbcagent.core.protocol.DatabaseMetaDataMsg.Method;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.support.serial.SerialDatabaseMetaData;
 
 import java.io.Serializable;
 import java.sql.*;
@@ -17,23 +19,25 @@ import java.sql.*;
  */
 public class JdbcDatabaseMetaData implements DatabaseMetaData {
 
-    private long remoteId;                                  // 远程dataMetaData id
+    private Long remoteId;                                  // 远程dataMetaData id, 第一次远程调用时获取
 
-    private Connection conn;                                // connection
+    private JdbcConnection conn;                            // connection
 
     private final JdbcAgentConnector jdbcAgentConnector;    // tcp连接器
 
+    private final MetaDataCache metaDataCache;              // 元数据缓存, 为null时不缓存
+
     /**
      * 构造函数
      *
      * @param conn               connection
      * @param jdbcAgentConnector tcp连接器
-     * @param remoteId           远程dataMetaData id
+     * @param metaDataCache      元数据缓存, 为null时不缓存
      */
-    JdbcDatabaseMetaData(Connection conn, JdbcAgentConnector jdbcAgentConnector, long remoteId) {
+    JdbcDatabaseMetaData(JdbcConnection conn, JdbcAgentConnector jdbcAgentConnector, MetaDataCache metaDataCache) {
         this.conn = conn;
-        this.remoteId = remoteId;
         this.jdbcAgentConnector = jdbcAgentConnector;
+        this.metaDataCache = metaDataCache;
     }
 
     /**
@@ -48,7 +52,7 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
     }
 
     /**
-     * CallableStatement方法远程调用, 带参数
+     * CallableStatement方法远程调用, 带参数; 能力信息从连接时下发的快照返回, 开启缓存时先查缓存
      *
      * @param method 方法名
      * @param params 方法参数
@@ -57,18 +61,36 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
      */
     private Serializable invokeCallableStatementMethod(Method method, Serializable... params)
             throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet responsePacket =
-                    Packet.parse(
-                            jdbcAgentConnector.write(
-                                    Packet.newBuilder()
-                                            .incrementAndGetId()
-                                            .setType(PacketType.DB_METADATA_METHOD)
-                                            .setBody(DatabaseMetaDataMsg.newBuilder().setId(remoteId)
-                                                    .setMethod(method).setParams(params).build())
-                                            .build()));
-            return ((DatabaseMetaDataMsg) responsePacket.getBody()).getResponse();
+        SerialDatabaseMetaData snapshot = conn.getSerialDatabaseMetaData();
+        if (params.length == 0 && snapshot != null && snapshot.contains(method)) {
+            return snapshot.get(method);
+        }
+        if (metaDataCache == null || method == Method.isReadOnly) {
+            // 只读属性随连接状态变化, 不缓存
+            return invokeRemote(method, params);
+        }
+        String key = MetaDataCache.key(conn.getCatalog(), conn.getSchema(), method, params);
+        Serializable response = metaDataCache.get(key);
+        if (response == null) {
+            response = invokeRemote(method, params);
+            metaDataCache.put(key, response);
+        }
+        return response;
+    }
+
+    private Serializable invokeRemote(Method method, Serializable[] params) throws SQLException {
+        if (remoteId == null) {
+            remoteId = conn.newMetaDataRemoteId();
         }
+        Packet responsePacket =
+                jdbcAgentConnector.write(
+                        Packet.newBuilder()
+                                .incrementAndGetId()
+                                .setType(PacketType.DB_METADATA_METHOD)
+                                .setBody(DatabaseMetaDataMsg.newBuilder().setId(remoteId)
+                                        .setMethod(method).setParams(params).build())
+                                .build());
+        return ((DatabaseMetaDataMsg) responsePacket.getBody()).getResponse();
     }
 
     @Override
@@ -672,125 +694,125 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
     @Override
     public ResultSet getProcedures(String catalog, String schemaPattern,
                                    String procedureNamePattern) throws SQLException {
-        Long rsId = (Long) invokeCallableStatementMethod(Method.getProcedures, catalog, schemaPattern, procedureNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, rsId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getProcedures, catalog, schemaPattern, procedureNamePattern);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getProcedureColumns(String catalog, String schemaPattern,
                                          String procedureNamePattern, String columnNamePattern) throws SQLException {
-        Long rsId = (Long) invokeCallableStatementMethod(Method.getProcedureColumns, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getProcedureColumns, catalog, schemaPattern,
                 procedureNamePattern, columnNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, rsId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getTables(String catalog, String schemaPattern, String tableNamePattern,
                                String[] types) throws SQLException {
-        Long rsId = (Long) invokeCallableStatementMethod(Method.getTables, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getTables, catalog, schemaPattern,
                 tableNamePattern, types);
-        return new JdbcResultSet(jdbcAgentConnector, rsId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getSchemas() throws SQLException {
-        Long rsId = (Long) invokeCallableStatementMethod(Method.getSchemas);
-        return new JdbcResultSet(jdbcAgentConnector, rsId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getSchemas);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getCatalogs() throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getCatalogs);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getCatalogs);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getTableTypes() throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getTableTypes);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getTableTypes);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getColumns(String catalog, String schemaPattern, String tableNamePattern,
                                 String columnNamePattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getColumns, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getColumns, catalog, schemaPattern,
                 tableNamePattern, columnNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getColumnPrivileges(String catalog, String schema, String table,
                                          String columnNamePattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getColumnPrivileges, catalog, schema,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getColumnPrivileges, catalog, schema,
                 table, columnNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getTablePrivileges(String catalog, String schemaPattern,
                                         String tableNamePattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getTablePrivileges, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getTablePrivileges, catalog, schemaPattern,
                 tableNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getBestRowIdentifier(String catalog, String schema, String table, int scope,
                                           boolean nullable) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getBestRowIdentifier, catalog, schema,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getBestRowIdentifier, catalog, schema,
                 table, scope, nullable);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getVersionColumns(String catalog, String schema, String table)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getVersionColumns, catalog, schema, table);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getVersionColumns, catalog, schema, table);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getPrimaryKeys(String catalog, String schema, String table)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getPrimaryKeys, catalog, schema, table);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getPrimaryKeys, catalog, schema, table);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getImportedKeys(String catalog, String schema, String table)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getImportedKeys, catalog, schema, table);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getImportedKeys, catalog, schema, table);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getExportedKeys(String catalog, String schema, String table)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getExportedKeys, catalog, schema, table);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getExportedKeys, catalog, schema, table);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getCrossReference(String parentCatalog, String parentSchema,
                                        String parentTable, String foreignCatalog, String foreignSchema, String foreignTable)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getCrossReference, parentCatalog, parentCatalog,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getCrossReference, parentCatalog, parentCatalog,
                 parentTable, foreignCatalog, foreignSchema, foreignTable);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getTypeInfo() throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getTypeInfo);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getTypeInfo);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getIndexInfo(String catalog, String schema, String table, boolean unique,
                                   boolean approximate) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getIndexInfo, catalog, schema, table,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getIndexInfo, catalog, schema, table,
                 unique, approximate);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
@@ -856,9 +878,9 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
     @Override
     public ResultSet getUDTs(String catalog, String schemaPattern, String typeNamePattern,
                              int[] types) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getUDTs, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getUDTs, catalog, schemaPattern,
                 typeNamePattern, types);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
@@ -889,25 +911,25 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
     @Override
     public ResultSet getSuperTypes(String catalog, String schemaPattern, String typeNamePattern)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getSuperTypes, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getSuperTypes, catalog, schemaPattern,
                 typeNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getSuperTables(String catalog, String schemaPattern, String tableNamePattern)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getSuperTables, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getSuperTables, catalog, schemaPattern,
                 tableNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getAttributes(String catalog, String schemaPattern, String typeNamePattern,
                                    String attributeNamePattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getAttributes, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getAttributes, catalog, schemaPattern,
                 attributeNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
@@ -962,8 +984,8 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
 
     @Override
     public ResultSet getSchemas(String catalog, String schemaPattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getSchemas, catalog, schemaPattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getSchemas, catalog, schemaPattern);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
@@ -978,30 +1000,30 @@ public class JdbcDatabaseMetaData implements DatabaseMetaData {
 
     @Override
     public ResultSet getClientInfoProperties() throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getClientInfoProperties);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getClientInfoProperties);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getFunctions(String catalog, String schemaPattern, String functionNamePattern)
             throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getFunctions, catalog, schemaPattern, functionNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getFunctions, catalog, schemaPattern, functionNamePattern);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getFunctionColumns(String catalog, String schemaPattern,
                                         String functionNamePattern, String columnNamePattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getFunctionColumns, catalog, schemaPattern,
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getFunctionColumns, catalog, schemaPattern,
                 functionNamePattern, columnNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
     public ResultSet getPseudoColumns(String catalog, String schemaPattern, String tableNamePattern,
                                       String columnNamePattern) throws SQLException {
-        long resId = (Long) invokeCallableStatementMethod(Method.getPseudoColumns, catalog, schemaPattern, columnNamePattern);
-        return new JdbcResultSet(jdbcAgentConnector, resId);
+        ResultSetMsg rsMsg = (ResultSetMsg) invokeCallableStatementMethod(Method.getPseudoColumns, catalog, schemaPattern, columnNamePattern);
+        return new JdbcResultSet(jdbcAgentConnector, rsMsg);
     }
 
     @Override
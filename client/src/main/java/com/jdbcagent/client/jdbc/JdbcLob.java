@@ -0,0 +1,257 @@
+package com.jdbcagent.client.jdbc;
+
+import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.core.protocol.LobMsg;
+import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.support.LobLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * JDBC-Agent client 远程大对象
+ * <p>
+ * 只持有服务端的定位符, 内容按块远程读取; 作为参数时超过内联阈值的流按块上传, 只发送定位符
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+abstract class JdbcLob {
+    final static int CHUNK_SIZE = 256 * 1024;           // 每次读写的块大小, BLOB为字节数, CLOB为字符数
+
+    final JdbcAgentConnector jdbcAgentConnector;        // tcp连接器
+
+    final LobLocator locator;                           // 服务端定位符
+
+    private boolean freed;                              // 是否已释放
+
+    JdbcLob(JdbcAgentConnector jdbcAgentConnector, LobLocator locator) {
+        this.jdbcAgentConnector = jdbcAgentConnector;
+        this.locator = locator;
+    }
+
+    /**
+     * 转换分页中的定位符
+     *
+     * @param jdbcAgentConnector tcp连接器
+     * @param locator            定位符
+     * @return JdbcBlob或JdbcClob
+     */
+    static Object of(JdbcAgentConnector jdbcAgentConnector, LobLocator locator) {
+        if (locator.getType() == Types.BLOB) {
+            return new JdbcBlob(jdbcAgentConnector, locator);
+        }
+        return new JdbcClob(jdbcAgentConnector, locator);
+    }
+
+    LobLocator getLocator() {
+        return locator;
+    }
+
+    public long length() throws SQLException {
+        checkFreed();
+        return locator.getLength();
+    }
+
+    public void free() throws SQLException {
+        if (freed) {
+            return;
+        }
+        freed = true;
+        jdbcAgentConnector.defer(Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.LOB_FREE)
+                .setBody(LobMsg.newBuilder().setId(locator.getId()).build())
+                .build());
+    }
+
+    private void checkFreed() throws SQLException {
+        if (freed) {
+            throw new SQLException("LOB has been freed");
+        }
+    }
+
+    /**
+     * 检查是否已释放及起始位置
+     *
+     * @param position 起始位置, 从1开始
+     * @throws SQLException
+     */
+    void checkPosition(long position) throws SQLException {
+        checkFreed();
+        if (position < 1) {
+            throw new SQLException("Invalid position " + position);
+        }
+    }
+
+    /**
+     * 远程读取一块
+     *
+     * @param position 起始位置, 从1开始
+     * @param length   最大长度
+     * @return BLOB为byte[], CLOB为String
+     * @throws SQLException
+     */
+    Serializable read(long position, int length) throws SQLException {
+        checkPosition(position);
+        Packet responsePacket = jdbcAgentConnector.write(Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.LOB_READ)
+                .setBody(LobMsg.newBuilder().setId(locator.getId())
+                        .setPosition(position).setLength(length).build())
+                .build());
+        return ((LobMsg) responsePacket.getBody()).getData();
+    }
+
+    /**
+     * 可读取的长度
+     *
+     * @param position 起始位置, 从1开始
+     * @param length   请求的长度
+     * @return 不超过末尾的长度
+     */
+    long readable(long position, long length) {
+        return Math.max(0, Math.min(length, locator.getLength() - position + 1));
+    }
+
+    /**
+     * 读取字节流作为参数, 不超过内联阈值时返回byte[], 否则按块上传后返回定位符
+     *
+     * @param jdbcAgentConnector tcp连接器
+     * @param connectionId       远程connection id
+     * @param inlineThreshold    内联阈值
+     * @param in                 字节流
+     * @param length             最大长度, 小于0时读到末尾
+     * @return byte[]或定位符
+     * @throws SQLException
+     */
+    static Serializable binaryValue(JdbcAgentConnector jdbcAgentConnector, long connectionId,
+                                    int inlineThreshold, InputStream in, long length) throws SQLException {
+        if (in == null) {
+            return new byte[0];
+        }
+        long remaining = length < 0 ? Long.MAX_VALUE : length;
+        try {
+            byte[] head = readBytes(in, (int) Math.min(remaining, inlineThreshold + 1L));
+            if (head.length <= inlineThreshold) {
+                return head;
+            }
+            remaining -= head.length;
+            LobLocator locator = upload(jdbcAgentConnector, connectionId, Types.BLOB, null, head);
+            while (remaining > 0) {
+                byte[] chunk = readBytes(in, (int) Math.min(remaining, CHUNK_SIZE));
+                if (chunk.length == 0) {
+                    break;
+                }
+                remaining -= chunk.length;
+                locator = upload(jdbcAgentConnector, connectionId, Types.BLOB, locator, chunk);
+            }
+            return locator;
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * 读取字符流作为参数, 不超过内联阈值时返回String, 否则按块上传后返回定位符
+     *
+     * @param jdbcAgentConnector tcp连接器
+     * @param connectionId       远程connection id
+     * @param inlineThreshold    内联阈值
+     * @param type               java.sql.Types.CLOB/NCLOB
+     * @param reader             字符流
+     * @param length             最大长度, 小于0时读到末尾
+     * @return String或定位符
+     * @throws SQLException
+     */
+    static Serializable characterValue(JdbcAgentConnector jdbcAgentConnector, long connectionId,
+                                       int inlineThreshold, int type, Reader reader, long length)
+            throws SQLException {
+        if (reader == null) {
+            return null;
+        }
+        long remaining = length < 0 ? Long.MAX_VALUE : length;
+        try {
+            char[] head = readChars(reader, (int) Math.min(remaining, inlineThreshold + 1L));
+            if (head.length <= inlineThreshold) {
+                return new String(head);
+            }
+            remaining -= head.length;
+            LobLocator locator = null;
+            char[] chunk = head;
+            while (true) {
+                char[] next = remaining > 0 ? readChars(reader, (int) Math.min(remaining, CHUNK_SIZE)) : new char[0];
+                remaining -= next.length;
+                int end = chunk.length;
+                if (next.length > 0 && Character.isHighSurrogate(chunk[end - 1])) {
+                    // 代理对不拆到两块中, 以免分别编码时损坏
+                    end--;
+                    char[] joined = new char[next.length + 1];
+                    joined[0] = chunk[end];
+                    System.arraycopy(next, 0, joined, 1, next.length);
+                    next = joined;
+                }
+                locator = upload(jdbcAgentConnector, connectionId, type, locator, new String(chunk, 0, end));
+                if (next.length == 0) {
+                    return locator;
+                }
+                chunk = next;
+            }
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * 上传一块, 第一块时新建远程大对象
+     *
+     * @return 当前的定位符
+     */
+    private static LobLocator upload(JdbcAgentConnector jdbcAgentConnector, long connectionId, int type,
+                                     LobLocator locator, Serializable data) throws SQLException {
+        LobMsg.Builder builder = LobMsg.newBuilder().setData(data);
+        if (locator == null) {
+            builder.setConnectionId(connectionId).setType(type);
+        } else {
+            builder.setId(locator.getId());
+        }
+        Packet responsePacket = jdbcAgentConnector.write(Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.LOB_WRITE)
+                .setBody(builder.build())
+                .build());
+        return ((LobMsg) responsePacket.getBody()).getLocator();
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        int n = 0;
+        while (n < length) {
+            int read = in.read(buffer, n, length - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        return n == length ? buffer : Arrays.copyOf(buffer, n);
+    }
+
+    private static char[] readChars(Reader reader, int length) throws IOException {
+        char[] buffer = new char[length];
+        int n = 0;
+        while (n < length) {
+            int read = reader.read(buffer, n, length - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        return n == length ? buffer : Arrays.copyOf(buffer, n);
+    }
+}
@@ -1,11 +1,18 @@
 package com.jdbcagent.client.jdbc;
 
 import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.core.protocol.ConnectionMsg;
+import com.jdbcagent.core.protocol.LobMsg;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
 import com.jdbcagent.core.protocol.PreparedStatementMsg;
 import com.jdbcagent.core.protocol.PreparedStatementMsg.Method;
 import com.jdbcagent.core.protocol.PreparedStatementMsg.ParamType;
+import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.protocol.StatementMsg;
+import com.jdbcagent.core.support.ColumnarPage;
+import com.jdbcagent.core.support.LobLocator;
+import com.jdbcagent.core.support.ParamBlock;
 import com.jdbcagent.core.support.serial.SerialNClob;
 import com.jdbcagent.core.support.serial.SerialRowId;
 import com.jdbcagent.core.util.Util;
@@ -21,8 +28,9 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.LinkedList;
 
 /**
  * JDBC-Agent client jdbc preparedStatement impl
@@ -31,10 +39,25 @@ import java.util.LinkedList;
  * @version 1.0 2018-07-10
  */
 public class JdbcPreparedStatement extends JdbcStatement implements PreparedStatement {
+    private final static int BATCH_CHUNK_PARAMS = 8192;                             // 累积的批量参数个数达到此值时先发送一批
 
     private final JdbcAgentConnector jdbcAgentConnector;                            // tcp连接器
 
-    protected LinkedList<PreparedStatementMsg> paramsQueue = new LinkedList<>();    // 参数队列
+    protected ParamBlock paramBlock = new ParamBlock();                              // 参数块, 多次执行间复用
+
+    private JdbcConnection connection;                                              // 延迟预编译所在的connection
+
+    private Serializable[] prepareParams;                                           // 延迟预编译的参数, 为null表示已预编译
+
+    private String cacheKey;                                                        // 关闭时保留句柄的缓存key, 为null不缓存
+
+    private ArrayList<ParamBlock> batches = new ArrayList<>();                        // 尚未发送的批量参数, 每组为相邻两次addBatch之间设置的参数
+
+    private int batchParamCount;                                                    // 尚未发送的批量参数个数
+
+    private ArrayList<Long> uploadedLobs = new ArrayList<>();                        // 分块上传的大对象id, 清除参数或关闭时释放
+
+    private ArrayList<StatementMsg> pendingStatementMethods = new ArrayList<>();     // 预编译前设置的statement属性调用, 随预编译发送
 
     /**
      * 构造方法
@@ -49,92 +72,261 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
     }
 
     /**
-     * PreparedStatement方法远程调用, 带参数
+     * 延迟预编译的构造方法, 预编译随第一次执行一起发送
+     *
+     * @param conn               connection
+     * @param jdbcAgentConnector tcp连接器
+     * @param prepareParams      Connection.prepareStatement 的参数
+     */
+    JdbcPreparedStatement(JdbcConnection conn, JdbcAgentConnector jdbcAgentConnector,
+                          Serializable[] prepareParams) {
+        this(conn, jdbcAgentConnector, prepareParams, null, 0);
+    }
+
+    /**
+     * 可缓存句柄的构造方法
+     * <p>
+     * 复用缓存的句柄时, 第一次执行仍带上预编译参数, 服务端据此清理上次使用的状态, 句柄已失效时重新预编译
+     *
+     * @param conn               connection
+     * @param jdbcAgentConnector tcp连接器
+     * @param prepareParams      Connection.prepareStatement 的参数
+     * @param cacheKey           缓存key, 为null不缓存
+     * @param cachedId           缓存的远程preparedStatement id, 0为没有
+     */
+    JdbcPreparedStatement(JdbcConnection conn, JdbcAgentConnector jdbcAgentConnector,
+                          Serializable[] prepareParams, String cacheKey, long cachedId) {
+        super(conn, jdbcAgentConnector, cachedId);
+        this.jdbcAgentConnector = jdbcAgentConnector;
+        this.connection = conn;
+        this.prepareParams = prepareParams;
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * 获取远程preparedStatement id, 尚未预编译时先单独远程预编译
+     *
+     * @return 远程preparedStatement id
+     * @throws SQLException
+     */
+    @Override
+    long getRemoteId() throws SQLException {
+        if (prepareParams != null && remoteId == 0) {
+            remoteId = (Long) connection.invokeConnMethod(ConnectionMsg.Method.prepareStatement, prepareParams);
+            prepareParams = null;
+            // 暂存的属性调用按原顺序延迟发送
+            for (StatementMsg statementMsg : pendingStatementMethods) {
+                statementMsg.setId(remoteId);
+                jdbcAgentConnector.defer(Packet.newBuilder()
+                        .incrementAndGetId()
+                        .setType(PacketType.STMT_METHOD)
+                        .setBody(statementMsg)
+                        .build());
+            }
+            pendingStatementMethods.clear();
+        }
+        return remoteId;
+    }
+
+    @Override
+    boolean queueUntilPrepared(StatementMsg statementMsg) {
+        if (prepareParams == null) {
+            return false;
+        }
+        pendingStatementMethods.add(statementMsg);
+        return true;
+    }
+
+    /**
+     * PreparedStatement无返回值方法的延迟调用, 随下一个请求发送
      *
      * @param method 方法名
      * @param params 方法参数
+     * @throws SQLException
+     */
+    private void deferPreparedStatementMethod(Method method, Serializable... params) throws SQLException {
+        jdbcAgentConnector.defer(Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.PRE_STMT_METHOD)
+                .setBody(PreparedStatementMsg.newBuilder().setId(getRemoteId())
+                        .setMethod(method).setParams(params).build())
+                .build());
+    }
+
+    /**
+     * 执行方法远程调用, 尚未预编译时预编译、预编译前设置的属性、绑定参数和执行合并为一次请求
+     * <p>
+     * 查询时服务端随结果集描述一起返回第一页
+     *
+     * @param method 执行方法
+     * @param params 方法参数
      * @return 可序列化返回值
      * @throws SQLException
      */
-    private Serializable invokePreparedStatementMethod(Method method, Serializable... params)
-            throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet responsePacket = Packet.parse(
-                    jdbcAgentConnector.write(Packet.newBuilder()
-                            .incrementAndGetId()
-                            .setType(PacketType.PRE_STMT_METHOD)
-                            .setBody(PreparedStatementMsg.newBuilder().setId(remoteId)
-                                    .setMethod(method).setParams(params).build())
-                            .build()));
-            return ((PreparedStatementMsg) responsePacket.getBody()).getResponse();
+    private Serializable invokeExecuteMethod(Method method, Serializable... params) throws SQLException {
+        PreparedStatementMsg.Builder builder = PreparedStatementMsg.newBuilder()
+                .setMethod(method).setParams(params);
+        if (prepareParams != null) {
+            builder.setConnectionId(connection.getRemoteId()).setPrepareParams(prepareParams);
+            if (!pendingStatementMethods.isEmpty()) {
+                builder.setStatementMethods(pendingStatementMethods);
+            }
         }
+        if (remoteId != 0) {
+            builder.setId(remoteId);
+        }
+        if (method == Method.executeQuery) {
+            builder.setBatchSize(fetchSize);
+        }
+        Packet responsePacket = jdbcAgentConnector.write(Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.PRE_STMT_METHOD)
+                .setBody(builder.build())
+                .build());
+        PreparedStatementMsg response = (PreparedStatementMsg) responsePacket.getBody();
+        if (prepareParams != null) {
+            remoteId = response.getId();
+            prepareParams = null;
+            pendingStatementMethods = new ArrayList<>();
+        }
+        return response.getResponse();
     }
 
     /**
-     * 设置参数队列
+     * 设置参数, 第一个为参数值, 其余为附加值
      *
      * @param paramType      参数类型
      * @param parameterIndex 参数索引值
      * @param param          参数值
      */
     protected void setParam(ParamType paramType, int parameterIndex, Serializable... param) {
-        PreparedStatementMsg.Builder builder = PreparedStatementMsg.newBuilder().setId(remoteId)
-                .setParamType(paramType).setParameterIndex(parameterIndex);
+        paramBlock.setObject(paramType, parameterIndex, param[0],
+                Arrays.copyOfRange(param, 1, param.length));
+    }
 
-        PreparedStatementMsg preparedStatementMsg = builder.setParams(param).build();
+    /**
+     * @return 大对象参数的内联阈值
+     */
+    private int lobInlineThreshold() throws SQLException {
+        return ((JdbcConnection) getConnection()).getLobInlineThreshold();
+    }
 
-        paramsQueue.offer(preparedStatementMsg);
+    /**
+     * 读取字节流参数, 超过内联阈值时分块上传
+     *
+     * @param in     字节流
+     * @param length 最大长度, 小于0时读到末尾
+     * @return byte[]或定位符
+     * @throws SQLException
+     */
+    private Serializable binaryValue(InputStream in, long length) throws SQLException {
+        JdbcConnection conn = (JdbcConnection) getConnection();
+        return trackLob(JdbcLob.binaryValue(jdbcAgentConnector, conn.getRemoteId(),
+                conn.getLobInlineThreshold(), in, length));
+    }
+
+    /**
+     * 读取字符流参数, 超过内联阈值时分块上传
+     *
+     * @param type   java.sql.Types.CLOB/NCLOB
+     * @param reader 字符流
+     * @param length 最大长度, 小于0时读到末尾
+     * @return String或定位符
+     * @throws SQLException
+     */
+    private Serializable characterValue(int type, Reader reader, long length) throws SQLException {
+        JdbcConnection conn = (JdbcConnection) getConnection();
+        return trackLob(JdbcLob.characterValue(jdbcAgentConnector, conn.getRemoteId(),
+                conn.getLobInlineThreshold(), type, reader, length));
+    }
+
+    /**
+     * 记录上传的大对象, 关闭时释放
+     */
+    private Serializable trackLob(Serializable value) {
+        if (value instanceof LobLocator) {
+            uploadedLobs.add(((LobLocator) value).getId());
+        }
+        return value;
+    }
+
+    private static Serializable blobValue(Serializable value) throws SQLException {
+        return value instanceof byte[] ? new SerialBlob((byte[]) value) : value;
+    }
+
+    private static Serializable clobValue(Serializable value, boolean national) throws SQLException {
+        if (value instanceof String) {
+            char[] chars = ((String) value).toCharArray();
+            return national ? new SerialNClob(chars) : new SerialClob(chars);
+        }
+        return value;
+    }
+
+    /**
+     * 释放上传的大对象, 随下一个请求发送
+     *
+     * @throws SQLException
+     */
+    private void freeUploadedLobs() throws SQLException {
+        for (Long id : uploadedLobs) {
+            jdbcAgentConnector.defer(Packet.newBuilder()
+                    .incrementAndGetId()
+                    .setType(PacketType.LOB_FREE)
+                    .setBody(LobMsg.newBuilder().setId(id).build())
+                    .build());
+        }
+        uploadedLobs.clear();
     }
 
     @Override
     public ResultSet executeQuery() throws SQLException {
-        Long resultSetId = (Long) invokePreparedStatementMethod(Method.executeQuery, paramsQueue);
-        return new JdbcResultSet(jdbcAgentConnector, resultSetId);
+        ResultSetMsg resultSetMsg = (ResultSetMsg) invokeExecuteMethod(Method.executeQuery, paramBlock);
+        return new JdbcResultSet(jdbcAgentConnector, resultSetMsg, fetchSize);
     }
 
     @Override
     public int executeUpdate() throws SQLException {
-        return (Integer) invokePreparedStatementMethod(Method.executeUpdate, paramsQueue);
+        return (Integer) invokeExecuteMethod(Method.executeUpdate, paramBlock);
     }
 
     @Override
     public void setNull(int parameterIndex, int sqlType) throws SQLException {
-        setParam(ParamType.NULL, parameterIndex, sqlType);
+        paramBlock.setLong(ParamType.NULL, parameterIndex, sqlType);
     }
 
     @Override
     public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-        setParam(ParamType.BOOLEAN, parameterIndex, x);
+        paramBlock.setLong(ParamType.BOOLEAN, parameterIndex, x ? 1 : 0);
     }
 
     @Override
     public void setByte(int parameterIndex, byte x) throws SQLException {
-        setParam(ParamType.BYTE, parameterIndex, x);
+        paramBlock.setLong(ParamType.BYTE, parameterIndex, x);
     }
 
     @Override
     public void setShort(int parameterIndex, short x) throws SQLException {
-        setParam(ParamType.SHORT, parameterIndex, x);
+        paramBlock.setLong(ParamType.SHORT, parameterIndex, x);
     }
 
     @Override
     public void setInt(int parameterIndex, int x) throws SQLException {
-        setParam(ParamType.INT, parameterIndex, x);
+        paramBlock.setLong(ParamType.INT, parameterIndex, x);
     }
 
     @Override
     public void setLong(int parameterIndex, long x) throws SQLException {
-        setParam(ParamType.LONG, parameterIndex, x);
+        paramBlock.setLong(ParamType.LONG, parameterIndex, x);
     }
 
     @Override
     public void setFloat(int parameterIndex, float x) throws SQLException {
-        setParam(ParamType.FLOAT, parameterIndex, x);
+        paramBlock.setDouble(ParamType.FLOAT, parameterIndex, x);
     }
 
     @Override
     public void setDouble(int parameterIndex, double x) throws SQLException {
-        setParam(ParamType.DOUBLE, parameterIndex, x);
+        paramBlock.setDouble(ParamType.DOUBLE, parameterIndex, x);
     }
 
     @Override
@@ -169,11 +361,7 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
-        try {
-            setParam(ParamType.ASCII_STREAM, parameterIndex, Util.input2Bytes(x, length), length);
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.ASCII_STREAM, parameterIndex, binaryValue(x, length), length);
     }
 
     @Override
@@ -188,17 +376,19 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
-        try {
-            setParam(ParamType.BINARY_STREAM, parameterIndex, Util.input2Bytes(x, length), length);
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.BINARY_STREAM, parameterIndex, binaryValue(x, length), length);
     }
 
     @Override
     public void clearParameters() throws SQLException {
-        invokePreparedStatementMethod(Method.clearParameters);
-        paramsQueue.clear();
+        if (prepareParams == null || remoteId != 0) {
+            deferPreparedStatementMethod(Method.clearParameters);
+        }
+        paramBlock.clear();
+        if (batches.isEmpty()) {
+            // 尚未发送的批量可能引用上传的大对象
+            freeUploadedLobs();
+        }
     }
 
     @Override
@@ -213,23 +403,50 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     @Override
     public boolean execute() throws SQLException {
-        return (Boolean) invokePreparedStatementMethod(Method.clearParameters, paramsQueue);
+        return (Boolean) invokeExecuteMethod(Method.execute, paramBlock);
     }
 
     @Override
     public void addBatch() throws SQLException {
-        invokePreparedStatementMethod(Method.addBatch);
+        // 在本地累积, 服务端按顺序重放每组参数, 未重新设置的参数沿用上一组的值
+        batches.add(paramBlock.copy());
+        batchParamCount += paramBlock.size() + 1;
+        paramBlock.clear();
+        if (batchParamCount >= BATCH_CHUNK_PARAMS) {
+            invokeExecuteMethod(Method.addBatch, drainBatches());
+        }
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        batches.clear();
+        batchParamCount = 0;
+        if (prepareParams == null || remoteId != 0) {
+            super.clearBatch();
+        }
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return (int[]) invokeExecuteMethod(Method.executeBatch, drainBatches());
+    }
+
+    /**
+     * 取出尚未发送的批量参数
+     *
+     * @return 每组参数一个元素
+     */
+    private Serializable[] drainBatches() {
+        Serializable[] params = batches.toArray(new Serializable[batches.size()]);
+        batches.clear();
+        batchParamCount = 0;
+        return params;
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, int length)
             throws SQLException {
-        try {
-            setParam(ParamType.CHARACTER_STREAM, parameterIndex, Util.reader2String(reader, length),
-                    length);
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.CHARACTER_STREAM, parameterIndex, characterValue(Types.CLOB, reader, length), length);
     }
 
     @Override
@@ -239,12 +456,26 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     @Override
     public void setBlob(int parameterIndex, Blob x) throws SQLException {
-        setParam(ParamType.BLOB, parameterIndex, new SerialBlob(x));
+        if (x instanceof JdbcBlob) {
+            // 结果集中的远程Blob, 服务端直接使用对应的驱动对象
+            setParam(ParamType.BLOB, parameterIndex, ((JdbcBlob) x).getLocator());
+        } else if (x != null && x.length() > lobInlineThreshold()) {
+            setParam(ParamType.BLOB, parameterIndex, binaryValue(x.getBinaryStream(), x.length()));
+        } else {
+            setParam(ParamType.BLOB, parameterIndex, ColumnarPage.serialBlob(x));
+        }
     }
 
     @Override
     public void setClob(int parameterIndex, Clob x) throws SQLException {
-        setParam(ParamType.CLOB, parameterIndex, new SerialClob(x));
+        if (x instanceof JdbcClob) {
+            setParam(ParamType.CLOB, parameterIndex, ((JdbcClob) x).getLocator());
+        } else if (x != null && x.length() > lobInlineThreshold()) {
+            setParam(ParamType.CLOB, parameterIndex,
+                    characterValue(Types.CLOB, x.getCharacterStream(), x.length()));
+        } else {
+            setParam(ParamType.CLOB, parameterIndex, ColumnarPage.serialClob(x));
+        }
     }
 
     @Override
@@ -274,7 +505,7 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     @Override
     public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
-        setParam(ParamType.NULL, parameterIndex, sqlType, typeName);
+        paramBlock.setLong(ParamType.NULL, parameterIndex, sqlType, typeName);
     }
 
     @Override
@@ -300,46 +531,36 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value, long length)
             throws SQLException {
-        try {
-            setParam(ParamType.NCHARACTER_STREAM, parameterIndex,
-                    Util.reader2String(value, (int) length), length);
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.NCHARACTER_STREAM, parameterIndex, characterValue(Types.NCLOB, value, length), length);
     }
 
     @Override
     public void setNClob(int parameterIndex, NClob value) throws SQLException {
-        setParam(ParamType.NCLOB, parameterIndex, new SerialNClob(value));
+        if (value instanceof JdbcClob) {
+            setParam(ParamType.NCLOB, parameterIndex, ((JdbcClob) value).getLocator());
+        } else if (value != null && value.length() > lobInlineThreshold()) {
+            setParam(ParamType.NCLOB, parameterIndex,
+                    characterValue(Types.NCLOB, value.getCharacterStream(), value.length()));
+        } else {
+            setParam(ParamType.NCLOB, parameterIndex, 
+                    new SerialNClob(value.getSubString(1, (int) value.length()).toCharArray()));
+        }
     }
 
     @Override
     public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        try {
-            setParam(ParamType.CLOB, parameterIndex, new SerialClob(Util.reader2Chars(reader, (int) length)));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.CLOB, parameterIndex, clobValue(characterValue(Types.CLOB, reader, length), false));
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream, long length)
             throws SQLException {
-        try {
-            setParam(ParamType.BLOB, parameterIndex,
-                    new SerialBlob(Util.input2Bytes(inputStream, (int) length)));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.BLOB, parameterIndex, blobValue(binaryValue(inputStream, length)));
     }
 
     @Override
     public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
-        try {
-            setParam(ParamType.NCLOB, parameterIndex, new SerialNClob(Util.reader2Chars(reader, (int) length)));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.NCLOB, parameterIndex, clobValue(characterValue(Types.NCLOB, reader, length), true));
     }
 
     @Override
@@ -355,109 +576,78 @@ public class JdbcPreparedStatement extends JdbcStatement implements PreparedStat
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        try {
-            setParam(ParamType.ASCII_STREAM, parameterIndex,
-                    (Serializable) Util.input2Bytes(x, (int) length));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.ASCII_STREAM, parameterIndex, binaryValue(x, length));
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x, long length)
             throws SQLException {
-        try {
-            setParam(ParamType.BINARY_STREAM, parameterIndex,
-                    (Serializable) Util.input2Bytes(x, (int) length));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.BINARY_STREAM, parameterIndex, binaryValue(x, length));
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader, long length)
             throws SQLException {
-        try {
-            setParam(ParamType.CHARACTER_STREAM, parameterIndex,
-                    Util.reader2String(reader, (int) length));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.CHARACTER_STREAM, parameterIndex, characterValue(Types.CLOB, reader, length));
     }
 
     @Override
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
-        try {
-            setParam(ParamType.ASCII_STREAM, parameterIndex, (Serializable) Util.input2Bytes(x));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.ASCII_STREAM, parameterIndex, binaryValue(x, -1));
     }
 
     @Override
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
-        try {
-            setParam(ParamType.BINARY_STREAM, parameterIndex, (Serializable) Util.input2Bytes(x));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.BINARY_STREAM, parameterIndex, binaryValue(x, -1));
     }
 
     @Override
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
-        try {
-            setParam(ParamType.CHARACTER_STREAM, parameterIndex, Util.reader2String(reader));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.CHARACTER_STREAM, parameterIndex, characterValue(Types.CLOB, reader, -1));
     }
 
     @Override
     public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
-        try {
-            setParam(ParamType.NCHARACTER_STREAM, parameterIndex, Util.reader2String(value));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.NCHARACTER_STREAM, parameterIndex, characterValue(Types.NCLOB, value, -1));
     }
 
     @Override
     public void setClob(int parameterIndex, Reader reader) throws SQLException {
-        try {
-            setParam(ParamType.CLOB, parameterIndex, new SerialNClob(Util.reader2Chars(reader)));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.CLOB, parameterIndex, clobValue(characterValue(Types.CLOB, reader, -1), true));
     }
 
     @Override
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
-        try {
-            setParam(ParamType.BLOB, parameterIndex, new SerialBlob(Util.input2Bytes(inputStream)));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.BLOB, parameterIndex, blobValue(binaryValue(inputStream, -1)));
     }
 
     @Override
     public void setNClob(int parameterIndex, Reader reader) throws SQLException {
-        try {
-            setParam(ParamType.NCLOB, parameterIndex, new SerialNClob(Util.reader2Chars(reader)));
-        } catch (IOException e) {
-            throw new SQLException(e);
-        }
+        setParam(ParamType.NCLOB, parameterIndex, clobValue(characterValue(Types.NCLOB, reader, -1), true));
     }
 
     @Override
     public void close() throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            paramsQueue.clear(); // 清除参数队列
-            Packet packet = Packet.newBuilder()
-                    .incrementAndGetId()
-                    .setType(PacketType.PRE_STMT_CLOSE)
-                    .setBody(PreparedStatementMsg.newBuilder().setId(remoteId).build()).build();
-            Packet.parse(jdbcAgentConnector.write(packet)).getAck();
+        paramBlock.clear(); // 清除参数
+        batches.clear();
+        batchParamCount = 0;
+        freeUploadedLobs();
+        pendingStatementMethods.clear();
+        if (remoteId == 0) {
+            // 从未执行过或已关闭, 服务端没有对应的preparedStatement
+            return;
+        }
+        long statementId = remoteId;
+        remoteId = 0;
+        if (cacheKey != null && !modified && connection.releaseStatement(cacheKey, statementId)) {
+            // 保留远程句柄, 下次相同的prepareStatement直接复用
+            return;
         }
+        Packet packet = Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.PRE_STMT_CLOSE)
+                .setBody(PreparedStatementMsg.newBuilder().setId(statementId).build()).build();
+        jdbcAgentConnector.defer(packet);
     }
 
 }
@@ -1,102 +1,238 @@
 package com.jdbcagent.client.jdbc;
 
 import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.client.PacketStream;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
 import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.support.ColumnarPage;
+import com.jdbcagent.core.support.LobLocator;
 
-import javax.sql.RowSet;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * JDBC-Agent client jdbc resultSet impl
+ * <p>
+ * 按批从服务端获取按列存储的分页, 只支持在当前分页内移动游标
  *
  * @author Machengyuan
  * @version 1.0 2018-07-10
  */
 public class JdbcResultSet implements ResultSet {
-    private final static int BATCH_SIZE = 500;              // 每次批量获取的行数
+    private final static int STREAM_CREDITS = 4;            // 推送模式下服务端可以领先推送的页数
 
     private final JdbcAgentConnector jdbcAgentConnector;    // tcp连接器
 
     private long remoteId;                                  // 远程resultSetId
 
-    private int offset = 1;                                 // 当前偏移量
+    private int fetchSize;                                  // 每页行数, 0为由服务端按字节数自适应
 
-    private RowSet rowSet;                                  // 可序列化的resultSet
+    private ColumnarPage page;                              // 当前分页
+
+    private int pageStart;                                  // 当前分页之前的行数
+
+    private int row = -1;                                   // 当前行在分页中的下标
+
+    private boolean lastPage;                               // 是否最后一页
+
+    private boolean wasNull;                                // 最后读取的值是否为null
+
+    private boolean closed;                                 // 是否已关闭
+
+    private Map<String, Integer> columnIndexes;             // 列标签对应的下标
+
+    private ResultSetMetaData metaData;                     // 元数据, 随结果集描述一起返回
+
+    private PacketStream stream;                            // 服务端推送流
+
+    private boolean pullMode;                               // 连接器不支持推送时按页拉取
 
     /**
      * ResutSet构造方法
      *
      * @param jdbcAgentConnector tcp连接器
-     * @param remoteId           远程resultSetId
+     * @param resultSetMsg       远程结果集描述, 包含id和元数据
      * @throws SQLException
      */
-    JdbcResultSet(JdbcAgentConnector jdbcAgentConnector, long remoteId) throws SQLException {
-        this.remoteId = remoteId;
-        this.jdbcAgentConnector = jdbcAgentConnector;
+    JdbcResultSet(JdbcAgentConnector jdbcAgentConnector, ResultSetMsg resultSetMsg) throws SQLException {
+        this(jdbcAgentConnector, resultSetMsg, 0);
     }
 
     /**
-     * 远程调用获取resultSet的元数据并转换为可序列化rs返回
+     * ResutSet构造方法
      *
+     * @param jdbcAgentConnector tcp连接器
+     * @param resultSetMsg       远程结果集描述, 包含id和元数据, 可能包含第一页
+     * @param fetchSize          每页行数, 0为由服务端自适应
      * @throws SQLException
      */
-    private void invokeMetaData() throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet packet = Packet.newBuilder()
-                    .incrementAndGetId()
-                    .setType(PacketType.RS_META_DATA)
-                    .setBody(ResultSetMsg.newBuilder()
-                            .setId(remoteId).build())
-                    .build();
-            Packet responsePacket = Packet.parse(jdbcAgentConnector.write(packet));
-            ResultSetMsg resultSetMsg = (ResultSetMsg) responsePacket.getBody();
-            clearRowSet();
-            rowSet = resultSetMsg.getRowSet();
+    JdbcResultSet(JdbcAgentConnector jdbcAgentConnector, ResultSetMsg resultSetMsg, int fetchSize)
+            throws SQLException {
+        this.remoteId = resultSetMsg.getId();
+        this.metaData = resultSetMsg.getMetaData();
+        this.jdbcAgentConnector = jdbcAgentConnector;
+        this.fetchSize = Math.max(fetchSize, 0);
+        if (resultSetMsg.getPage() != null) {
+            page = convertLobs(resultSetMsg.getPage());
+            lastPage = page.isLast();
         }
     }
 
     /**
-     * 远程调用批量获取指定行数的resultSet并转换为可序列化rs返回
+     * 把分页中的大对象定位符转为按块远程读取的Blob/Clob
+     *
+     * @param page 分页
+     * @return 分页
+     * @throws SQLException
+     */
+    private ColumnarPage convertLobs(ColumnarPage page) throws SQLException {
+        page.convertLobs(new ColumnarPage.LobConverter() {
+            public Object convert(Object lob) {
+                return JdbcLob.of(jdbcAgentConnector, (LobLocator) lob);
+            }
+        });
+        return page;
+    }
+
+    /**
+     * 远程调用批量获取指定行数的分页
      *
      * @throws SQLException
      */
     private void fetchRows() throws SQLException {
-        synchronized (jdbcAgentConnector) {
+        ColumnarPage nextPage = pullMode ? pullPage() : streamPage();
+        if (page != null && nextPage.getRowCount() == 0) {
+            // 上一页恰好是最后一页, 保留上一页并定位到末尾
+            lastPage = true;
+            row = page.getRowCount();
+            return;
+        }
+        if (page != null) {
+            pageStart += page.getRowCount();
+        }
+        page = convertLobs(nextPage);
+        row = -1;
+        lastPage = page.isLast();
+    }
+
+    /**
+     * 远程调用拉取一页
+     *
+     * @return 分页
+     * @throws SQLException
+     */
+    private ColumnarPage pullPage() throws SQLException {
+        Packet packet = Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.RS_FETCH_ROWS)
+                .setBody(ResultSetMsg.newBuilder()
+                        .setId(remoteId).setBatchSize(fetchSize).build())
+                .build();
+        Packet responsePacket = jdbcAgentConnector.write(packet);
+        ResultSetMsg resultSetMsg = (ResultSetMsg) responsePacket.getBody();
+        return resultSetMsg.getPage();
+    }
+
+    /**
+     * 从服务端推送流读取一页, 每读取一页向服务端归还一页额度
+     * <p>
+     * 第一次调用时打开推送流, 连接器不支持推送时改为按页拉取
+     *
+     * @return 分页
+     * @throws SQLException
+     */
+    private ColumnarPage streamPage() throws SQLException {
+        if (stream == null) {
             Packet packet = Packet.newBuilder()
                     .incrementAndGetId()
-                    .setType(PacketType.RS_FETCH_ROWS)
+                    .setType(PacketType.RS_STREAM)
                     .setBody(ResultSetMsg.newBuilder()
-                            .setId(remoteId).setBatchSize(BATCH_SIZE).build())
+                            .setId(remoteId).setBatchSize(fetchSize).setCredits(STREAM_CREDITS).build())
                     .build();
-            Packet responsePacket = Packet.parse(jdbcAgentConnector.write(packet));
-            ResultSetMsg resultSetMsg = (ResultSetMsg) responsePacket.getBody();
-            clearRowSet();
-            rowSet = resultSetMsg.getRowSet();
+            stream = jdbcAgentConnector.openStream(packet);
+            if (stream == null) {
+                pullMode = true;
+                return pullPage();
+            }
+        }
+        ColumnarPage nextPage;
+        try {
+            ResultSetMsg resultSetMsg = (ResultSetMsg) stream.take().getBody();
+            nextPage = resultSetMsg.getPage();
+        } catch (SQLException e) {
+            closeStream();
+            throw e;
+        }
+        if (nextPage.isLast()) {
+            closeStream();
+        } else {
+            jdbcAgentConnector.send(Packet.newBuilder()
+                    .incrementAndGetId()
+                    .setType(PacketType.RS_STREAM)
+                    .setBody(ResultSetMsg.newBuilder()
+                            .setId(remoteId).setBatchSize(fetchSize).setCredits(1).build())
+                    .build());
+        }
+        return nextPage;
+    }
+
+    private void closeStream() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+            pullMode = true;
         }
     }
 
     /**
-     * 清除可序列化结果集
+     * 确保已获取第一页
      *
      * @throws SQLException
      */
-    private void clearRowSet() throws SQLException {
-        if (rowSet != null) {
-            rowSet.close();
-            rowSet = null;
+    private void ensurePage() throws SQLException {
+        checkClosed();
+        if (page == null) {
+            fetchRows();
+        }
+    }
+
+    private void checkClosed() throws SQLException {
+        if (closed) {
+            throw new SQLException("ResultSet is closed");
         }
     }
 
-    private RowSet getRowSet() {
-        return rowSet;
+    /**
+     * 检查当前行和列下标
+     *
+     * @param columnIndex 列下标
+     * @return 当前行在分页中的下标
+     * @throws SQLException
+     */
+    private int checkRow(int columnIndex) throws SQLException {
+        checkClosed();
+        if (page == null || row < 0 || row >= page.getRowCount()) {
+            throw new SQLException("No current row");
+        }
+        if (columnIndex < 1 || columnIndex > page.getColumnCount()) {
+            throw new SQLException("Invalid column index: " + columnIndex);
+        }
+        wasNull = page.isNull(row, columnIndex);
+        return row;
     }
 
     /**
@@ -107,992 +243,1169 @@ public class JdbcResultSet implements ResultSet {
      */
     @Override
     public boolean next() throws SQLException {
-        if (offset == 1) {
-            fetchRows();
-            offset++;
-            return rowSet.next();
-        } else {
-            if (rowSet.next()) {
-                offset++;
-                return true;
-            } else {
-                if ((offset - 1) % BATCH_SIZE == 0) {
-                    fetchRows();
-                    offset++;
-                    return rowSet.next();
-                } else {
-                    return false;
-                }
-            }
+        ensurePage();
+        if (row < page.getRowCount()) {
+            row++;
+        }
+        if (row < page.getRowCount()) {
+            return true;
+        }
+        if (lastPage) {
+            return false;
+        }
+        fetchRows();
+        if (row < 0 && page.getRowCount() > 0) {
+            row = 0;
+            return true;
         }
+        row = page.getRowCount();
+        return false;
     }
 
     @Override
     public void close() throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet packet = Packet.newBuilder()
-                    .incrementAndGetId()
-                    .setType(PacketType.RS_CLOSE)
-                    .setBody(ResultSetMsg.newBuilder().setId(remoteId).build()).build();
-            Packet responsePacket = Packet.parse(jdbcAgentConnector.write(packet));
-            responsePacket.getAck();
+        if (closed) {
+            return;
         }
+        closed = true;
+        page = null;
+        closeStream();
+        if (lastPage) {
+            // 服务端交付最后一页时已关闭结果集
+            return;
+        }
+        Packet packet = Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.RS_CLOSE)
+                .setBody(ResultSetMsg.newBuilder().setId(remoteId).build()).build();
+        jdbcAgentConnector.defer(packet);
     }
 
     @Override
     public boolean wasNull() throws SQLException {
-        return getRowSet().wasNull();
+        return wasNull;
     }
 
     @Override
     public String getString(int columnIndex) throws SQLException {
-        return getRowSet().getString(columnIndex);
-
+        return page.getString(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public boolean getBoolean(int columnIndex) throws SQLException {
-        return getRowSet().getBoolean(columnIndex);
+        return page.getBoolean(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public byte getByte(int columnIndex) throws SQLException {
-        return getRowSet().getByte(columnIndex);
+        return (byte) page.getLong(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public short getShort(int columnIndex) throws SQLException {
-        return getRowSet().getShort(columnIndex);
+        return (short) page.getLong(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public int getInt(int columnIndex) throws SQLException {
-        return getRowSet().getInt(columnIndex);
+        return (int) page.getLong(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public long getLong(int columnIndex) throws SQLException {
-        return getRowSet().getLong(columnIndex);
+        return page.getLong(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public float getFloat(int columnIndex) throws SQLException {
-        return getRowSet().getFloat(columnIndex);
+        return (float) page.getDouble(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public double getDouble(int columnIndex) throws SQLException {
-        return getRowSet().getFloat(columnIndex);
+        return page.getDouble(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
-        return getRowSet().getBigDecimal(columnIndex, scale);
+        BigDecimal value = getBigDecimal(columnIndex);
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
     }
 
     @Override
     public byte[] getBytes(int columnIndex) throws SQLException {
-        return getRowSet().getBytes(columnIndex);
+        return page.getBytes(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public Date getDate(int columnIndex) throws SQLException {
-        return getRowSet().getDate(columnIndex);
+        return page.getDate(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public Time getTime(int columnIndex) throws SQLException {
-        return getRowSet().getTime(columnIndex);
+        return page.getTime(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public Timestamp getTimestamp(int columnIndex) throws SQLException {
-        return getRowSet().getTimestamp(columnIndex);
+        return page.getTimestamp(checkRow(columnIndex), columnIndex);
     }
 
     @Override
     public InputStream getAsciiStream(int columnIndex) throws SQLException {
-        return getRowSet().getAsciiStream(columnIndex);
+        Object value = getObject(columnIndex);
+        if (value instanceof Clob) {
+            return ((Clob) value).getAsciiStream();
+        }
+        String str = getString(columnIndex);
+        return str == null ? null : new ByteArrayInputStream(str.getBytes(StandardCharsets.US_ASCII));
     }
 
     @Override
     public InputStream getUnicodeStream(int columnIndex) throws SQLException {
-        return getRowSet().getUnicodeStream(columnIndex);
+        String str = getString(columnIndex);
+        return str == null ? null : new ByteArrayInputStream(str.getBytes(StandardCharsets.UTF_16BE));
     }
 
     @Override
     public InputStream getBinaryStream(int columnIndex) throws SQLException {
-        return getRowSet().getBinaryStream(columnIndex);
+        Object value = getObject(columnIndex);
+        if (value instanceof Blob) {
+            return ((Blob) value).getBinaryStream();
+        }
+        byte[] bytes = getBytes(columnIndex);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
     }
 
     @Override
-    public String getString(String columnLabel) throws SQLException {
-        return getRowSet().getString(columnLabel);
+    public SQLWarning getWarnings() throws SQLException {
+        return null;
     }
 
     @Override
-    public boolean getBoolean(String columnLabel) throws SQLException {
-        return getRowSet().getBoolean(columnLabel);
+    public void clearWarnings() throws SQLException {
+
     }
 
     @Override
-    public byte getByte(String columnLabel) throws SQLException {
-        return getRowSet().getByte(columnLabel);
+    public String getCursorName() throws SQLException {
+        throw new UnsupportedOperationException();
     }
 
     @Override
-    public short getShort(String columnLabel) throws SQLException {
-        return getRowSet().getShort(columnLabel);
+    public ResultSetMetaData getMetaData() throws SQLException {
+        checkClosed();
+        return metaData;
     }
 
     @Override
-    public int getInt(String columnLabel) throws SQLException {
-        return getRowSet().getInt(columnLabel);
+    public Object getObject(int columnIndex) throws SQLException {
+        return page.getObject(checkRow(columnIndex), columnIndex);
     }
 
     @Override
-    public long getLong(String columnLabel) throws SQLException {
-        return getRowSet().getLong(columnLabel);
+    public int findColumn(String columnLabel) throws SQLException {
+        checkClosed();
+        if (columnIndexes == null) {
+            columnIndexes = new HashMap<>();
+            for (int i = metaData.getColumnCount(); i > 0; i--) {
+                // 同名列取第一个
+                columnIndexes.put(metaData.getColumnLabel(i).toLowerCase(), i);
+            }
+        }
+        Integer columnIndex = columnIndexes.get(columnLabel.toLowerCase());
+        if (columnIndex == null) {
+            throw new SQLException("Invalid column label: " + columnLabel);
+        }
+        return columnIndex;
     }
 
     @Override
-    public float getFloat(String columnLabel) throws SQLException {
-        return getRowSet().getFloat(columnLabel);
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        if (value instanceof Clob) {
+            return ((Clob) value).getCharacterStream();
+        }
+        String str = getString(columnIndex);
+        return str == null ? null : new StringReader(str);
     }
 
     @Override
-    public double getDouble(String columnLabel) throws SQLException {
-        return getRowSet().getDouble(columnLabel);
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        return page.getBigDecimal(checkRow(columnIndex), columnIndex);
     }
 
     @Override
-    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
-        return getRowSet().getBigDecimal(columnLabel, scale);
+    public boolean isBeforeFirst() throws SQLException {
+        ensurePage();
+        return pageStart == 0 && row < 0 && page.getRowCount() > 0;
     }
 
     @Override
-    public byte[] getBytes(String columnLabel) throws SQLException {
-        return getRowSet().getBytes(columnLabel);
+    public boolean isAfterLast() throws SQLException {
+        ensurePage();
+        return lastPage && row >= page.getRowCount() && pageStart + page.getRowCount() > 0;
     }
 
     @Override
-    public Date getDate(String columnLabel) throws SQLException {
-        return getRowSet().getDate(columnLabel);
+    public boolean isFirst() throws SQLException {
+        ensurePage();
+        return pageStart == 0 && row == 0 && page.getRowCount() > 0;
     }
 
     @Override
-    public Time getTime(String columnLabel) throws SQLException {
-        return getRowSet().getTime(columnLabel);
+    public boolean isLast() throws SQLException {
+        ensurePage();
+        return lastPage && row >= 0 && row == page.getRowCount() - 1;
     }
 
     @Override
-    public Timestamp getTimestamp(String columnLabel) throws SQLException {
-        return getRowSet().getTimestamp(columnLabel);
+    public void beforeFirst() throws SQLException {
+        ensurePage();
+        if (pageStart > 0) {
+            throw new SQLException("Cannot scroll before the current page of a forward only result set");
+        }
+        row = -1;
     }
 
     @Override
-    public InputStream getAsciiStream(String columnLabel) throws SQLException {
-        return getRowSet().getAsciiStream(columnLabel);
+    public void afterLast() throws SQLException {
+        ensurePage();
+        while (!lastPage) {
+            fetchRows();
+        }
+        row = page.getRowCount();
     }
 
     @Override
-    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
-        return getRowSet().getUnicodeStream(columnLabel);
+    public boolean first() throws SQLException {
+        return absolute(1);
     }
 
     @Override
-    public InputStream getBinaryStream(String columnLabel) throws SQLException {
-        return getRowSet().getBinaryStream(columnLabel);
+    public boolean last() throws SQLException {
+        afterLast();
+        return previous();
     }
 
     @Override
-    public SQLWarning getWarnings() throws SQLException {
-        return getRowSet().getWarnings();
+    public int getRow() throws SQLException {
+        checkClosed();
+        if (page == null || row < 0 || row >= page.getRowCount()) {
+            return 0;
+        }
+        return pageStart + row + 1;
     }
 
+    /**
+     * 移动到指定行, 可以向后跨页移动, 向前只能在当前分页内移动
+     *
+     * @param row 行号
+     * @return 是否在结果集中
+     * @throws SQLException
+     */
     @Override
-    public void clearWarnings() throws SQLException {
-        getRowSet().clearWarnings();
+    public boolean absolute(int row) throws SQLException {
+        ensurePage();
+        if (row < 0) {
+            afterLast();
+            row = pageStart + page.getRowCount() + 1 + row;
+            if (row <= 0) {
+                beforeFirst();
+                return false;
+            }
+        }
+        if (row == 0) {
+            beforeFirst();
+            return false;
+        }
+        if (row <= pageStart) {
+            throw new SQLException("Cannot scroll before the current page of a forward only result set");
+        }
+        while (row > pageStart + page.getRowCount()) {
+            if (lastPage) {
+                this.row = page.getRowCount();
+                return false;
+            }
+            fetchRows();
+        }
+        this.row = row - pageStart - 1;
+        return true;
     }
 
     @Override
-    public String getCursorName() throws SQLException {
-        return getRowSet().getCursorName();
+    public boolean relative(int rows) throws SQLException {
+        ensurePage();
+        int current = row < 0 ? pageStart : pageStart + row + 1;
+        int target = current + rows;
+        if (target <= 0) {
+            beforeFirst();
+            return false;
+        }
+        return absolute(target);
     }
 
     @Override
-    public ResultSetMetaData getMetaData() throws SQLException {
-        invokeMetaData();
-        return getRowSet().getMetaData();
+    public boolean previous() throws SQLException {
+        return relative(-1);
     }
 
     @Override
-    public Object getObject(int columnIndex) throws SQLException {
-        return getRowSet().getObject(columnIndex);
+    public void setFetchDirection(int direction) throws SQLException {
+        if (direction != FETCH_FORWARD) {
+            throw new SQLException("Only FETCH_FORWARD is supported");
+        }
     }
 
     @Override
-    public Object getObject(String columnLabel) throws SQLException {
-        return getRowSet().getObject(columnLabel);
+    public int getFetchDirection() throws SQLException {
+        return FETCH_FORWARD;
     }
 
     @Override
-    public int findColumn(String columnLabel) throws SQLException {
-        return getRowSet().findColumn(columnLabel);
+    public void setFetchSize(int rows) throws SQLException {
+        checkClosed();
+        if (rows < 0) {
+            throw new SQLException("Invalid fetch size: " + rows);
+        }
+        fetchSize = rows;
     }
 
     @Override
-    public Reader getCharacterStream(int columnIndex) throws SQLException {
-        return getRowSet().getCharacterStream(columnIndex);
+    public int getFetchSize() throws SQLException {
+        return fetchSize;
     }
 
     @Override
-    public Reader getCharacterStream(String columnLabel) throws SQLException {
-        return getRowSet().getCharacterStream(columnLabel);
+    public int getType() throws SQLException {
+        return TYPE_FORWARD_ONLY;
     }
 
     @Override
-    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-        return getRowSet().getBigDecimal(columnIndex);
+    public int getConcurrency() throws SQLException {
+        return CONCUR_READ_ONLY;
     }
 
     @Override
-    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
-        return getRowSet().getBigDecimal(columnLabel);
+    public boolean rowUpdated() throws SQLException {
+        return false;
     }
 
     @Override
-    public boolean isBeforeFirst() throws SQLException {
-        return getRowSet().isBeforeFirst();
+    public boolean rowInserted() throws SQLException {
+        return false;
     }
 
     @Override
-    public boolean isAfterLast() throws SQLException {
-        return getRowSet().isAfterLast();
+    public boolean rowDeleted() throws SQLException {
+        return false;
     }
 
     @Override
-    public boolean isFirst() throws SQLException {
-        return getRowSet().isFirst();
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
     }
 
     @Override
-    public boolean isLast() throws SQLException {
-        return getRowSet().isLast();
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
     }
 
     @Override
-    public void beforeFirst() throws SQLException {
-        getRowSet().beforeFirst();
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
     }
 
     @Override
-    public void afterLast() throws SQLException {
-        getRowSet().afterLast();
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
     }
 
     @Override
-    public boolean first() throws SQLException {
-        return getRowSet().first();
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
     }
 
     @Override
-    public boolean last() throws SQLException {
-        return getRowSet().last();
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
     }
 
     @Override
-    public int getRow() throws SQLException {
-        return getRowSet().getRow();
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
     }
 
     @Override
-    public boolean absolute(int row) throws SQLException {
-        return getRowSet().absolute(row);
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
     }
 
     @Override
-    public boolean relative(int rows) throws SQLException {
-        return getRowSet().relative(rows);
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel), scale);
     }
 
     @Override
-    public boolean previous() throws SQLException {
-        return getRowSet().previous();
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
     }
 
     @Override
-    public void setFetchDirection(int direction) throws SQLException {
-        getRowSet().setFetchDirection(direction);
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
     }
 
     @Override
-    public int getFetchDirection() throws SQLException {
-        return getRowSet().getFetchDirection();
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
     }
 
     @Override
-    public void setFetchSize(int rows) throws SQLException {
-        getRowSet().setFetchDirection(rows);
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
     }
 
     @Override
-    public int getFetchSize() throws SQLException {
-        return getRowSet().getFetchSize();
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        return getAsciiStream(findColumn(columnLabel));
     }
 
     @Override
-    public int getType() throws SQLException {
-        return getRowSet().getType();
+    public InputStream getUnicodeStream(String columnLabel) throws SQLException {
+        return getUnicodeStream(findColumn(columnLabel));
     }
 
     @Override
-    public int getConcurrency() throws SQLException {
-        return getRowSet().getConcurrency();
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        return getBinaryStream(findColumn(columnLabel));
     }
 
     @Override
-    public boolean rowUpdated() throws SQLException {
-        return getRowSet().rowUpdated();
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
     }
 
     @Override
-    public boolean rowInserted() throws SQLException {
-        return getRowSet().rowInserted();
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        return getCharacterStream(findColumn(columnLabel));
     }
 
     @Override
-    public boolean rowDeleted() throws SQLException {
-        return getRowSet().rowDeleted();
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
     }
 
     @Override
     public void updateNull(int columnIndex) throws SQLException {
-        getRowSet().updateNull(columnIndex);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBoolean(int columnIndex, boolean x) throws SQLException {
-        getRowSet().updateBoolean(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateByte(int columnIndex, byte x) throws SQLException {
-        getRowSet().updateByte(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateShort(int columnIndex, short x) throws SQLException {
-        getRowSet().updateShort(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateInt(int columnIndex, int x) throws SQLException {
-        getRowSet().updateInt(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateLong(int columnIndex, long x) throws SQLException {
-        getRowSet().updateLong(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateFloat(int columnIndex, float x) throws SQLException {
-        getRowSet().updateFloat(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateDouble(int columnIndex, double x) throws SQLException {
-        getRowSet().updateDouble(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBigDecimal(int columnIndex, BigDecimal x) throws SQLException {
-        getRowSet().updateBigDecimal(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateString(int columnIndex, String x) throws SQLException {
-        getRowSet().updateString(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBytes(int columnIndex, byte[] x) throws SQLException {
-        getRowSet().updateBytes(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateDate(int columnIndex, Date x) throws SQLException {
-        getRowSet().updateDate(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateTime(int columnIndex, Time x) throws SQLException {
-        getRowSet().updateTime(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException {
-        getRowSet().updateTimestamp(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateAsciiStream(int columnIndex, InputStream x, int length) throws SQLException {
-        getRowSet().updateAsciiStream(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBinaryStream(int columnIndex, InputStream x, int length) throws SQLException {
-        getRowSet().updateBinaryStream(columnIndex, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateCharacterStream(int columnIndex, Reader x, int length) throws SQLException {
-        getRowSet().updateCharacterStream(columnIndex, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException {
-        getRowSet().updateObject(columnIndex, x, scaleOrLength);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateObject(int columnIndex, Object x) throws SQLException {
-        getRowSet().updateObject(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNull(String columnLabel) throws SQLException {
-        getRowSet().updateNull(columnLabel);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBoolean(String columnLabel, boolean x) throws SQLException {
-        getRowSet().updateBoolean(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateByte(String columnLabel, byte x) throws SQLException {
-        getRowSet().updateByte(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateShort(String columnLabel, short x) throws SQLException {
-        getRowSet().updateShort(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateInt(String columnLabel, int x) throws SQLException {
-        getRowSet().updateInt(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateLong(String columnLabel, long x) throws SQLException {
-        getRowSet().updateLong(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateFloat(String columnLabel, float x) throws SQLException {
-        getRowSet().updateFloat(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateDouble(String columnLabel, double x) throws SQLException {
-        getRowSet().updateDouble(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBigDecimal(String columnLabel, BigDecimal x) throws SQLException {
-        getRowSet().updateBigDecimal(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateString(String columnLabel, String x) throws SQLException {
-        getRowSet().updateString(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBytes(String columnLabel, byte[] x) throws SQLException {
-        getRowSet().updateBytes(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateDate(String columnLabel, Date x) throws SQLException {
-        getRowSet().updateDate(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateTime(String columnLabel, Time x) throws SQLException {
-        getRowSet().updateTime(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateTimestamp(String columnLabel, Timestamp x) throws SQLException {
-        getRowSet().updateTimestamp(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateAsciiStream(String columnLabel, InputStream x, int length)
             throws SQLException {
-        getRowSet().updateAsciiStream(columnLabel, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBinaryStream(String columnLabel, InputStream x, int length)
             throws SQLException {
-        getRowSet().updateBinaryStream(columnLabel, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateCharacterStream(String columnLabel, Reader reader, int length)
             throws SQLException {
-        getRowSet().updateCharacterStream(columnLabel, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException {
-        getRowSet().updateObject(columnLabel, x, scaleOrLength);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateObject(String columnLabel, Object x) throws SQLException {
-        getRowSet().updateObject(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void insertRow() throws SQLException {
-        getRowSet().insertRow();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateRow() throws SQLException {
-        getRowSet().updateRow();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void deleteRow() throws SQLException {
-        getRowSet().deleteRow();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void refreshRow() throws SQLException {
-        getRowSet().refreshRow();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void cancelRowUpdates() throws SQLException {
-        getRowSet().cancelRowUpdates();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void moveToInsertRow() throws SQLException {
-        getRowSet().moveToInsertRow();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void moveToCurrentRow() throws SQLException {
-        getRowSet().moveToCurrentRow();
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public Statement getStatement() throws SQLException {
-        return getRowSet().getStatement();
+        return null;
     }
 
     @Override
     public Object getObject(int columnIndex, Map<String, Class<?>> map) throws SQLException {
-        return getRowSet().getObject(columnIndex, map);
+        return getObject(columnIndex);
     }
 
     @Override
     public Ref getRef(int columnIndex) throws SQLException {
-        return getRowSet().getRef(columnIndex);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public Blob getBlob(int columnIndex) throws SQLException {
-        return getRowSet().getBlob(columnIndex);
+        Object value = getObject(columnIndex);
+        if (value == null || value instanceof Blob) {
+            return (Blob) value;
+        }
+        return new SerialBlob(getBytes(columnIndex));
     }
 
     @Override
     public Clob getClob(int columnIndex) throws SQLException {
-        return getRowSet().getClob(columnIndex);
+        Object value = getObject(columnIndex);
+        if (value == null || value instanceof Clob) {
+            return (Clob) value;
+        }
+        return new SerialClob(getString(columnIndex).toCharArray());
     }
 
     @Override
     public Array getArray(int columnIndex) throws SQLException {
-        return getRowSet().getArray(columnIndex);
+        return (Array) getObject(columnIndex);
     }
 
     @Override
     public Object getObject(String columnLabel, Map<String, Class<?>> map) throws SQLException {
-        return getRowSet().getObject(columnLabel, map);
+        return getObject(findColumn(columnLabel), map);
     }
 
     @Override
     public Ref getRef(String columnLabel) throws SQLException {
-        return getRowSet().getRef(columnLabel);
+        return getRef(findColumn(columnLabel));
     }
 
     @Override
     public Blob getBlob(String columnLabel) throws SQLException {
-        return getRowSet().getBlob(columnLabel);
+        return getBlob(findColumn(columnLabel));
     }
 
     @Override
     public Clob getClob(String columnLabel) throws SQLException {
-        return getRowSet().getClob(columnLabel);
+        return getClob(findColumn(columnLabel));
     }
 
     @Override
     public Array getArray(String columnLabel) throws SQLException {
-        return getRowSet().getArray(columnLabel);
+        return getArray(findColumn(columnLabel));
     }
 
     @Override
     public Date getDate(int columnIndex, Calendar cal) throws SQLException {
-        return getRowSet().getDate(columnIndex, cal);
+        Date value = getDate(columnIndex);
+        return value == null ? null : new Date(toCalendar(value, cal));
     }
 
     @Override
     public Date getDate(String columnLabel, Calendar cal) throws SQLException {
-        return getRowSet().getDate(columnLabel, cal);
+        return getDate(findColumn(columnLabel), cal);
     }
 
     @Override
     public Time getTime(int columnIndex, Calendar cal) throws SQLException {
-        return getRowSet().getTime(columnIndex, cal);
+        Time value = getTime(columnIndex);
+        return value == null ? null : new Time(toCalendar(value, cal));
     }
 
     @Override
     public Time getTime(String columnLabel, Calendar cal) throws SQLException {
-        return getRowSet().getTime(columnLabel, cal);
+        return getTime(findColumn(columnLabel), cal);
     }
 
     @Override
     public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
-        return getRowSet().getTimestamp(columnIndex, cal);
+        Timestamp value = getTimestamp(columnIndex);
+        if (value == null) {
+            return null;
+        }
+        Timestamp ts = new Timestamp(toCalendar(value, cal));
+        ts.setNanos(value.getNanos());
+        return ts;
     }
 
     @Override
     public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
-        return getRowSet().getTimestamp(columnLabel, cal);
+        return getTimestamp(findColumn(columnLabel), cal);
     }
 
     @Override
     public URL getURL(int columnIndex) throws SQLException {
-        return getRowSet().getURL(columnIndex);
+        Object value = getObject(columnIndex);
+        if (value == null || value instanceof URL) {
+            return (URL) value;
+        }
+        try {
+            return new URL(value.toString());
+        } catch (MalformedURLException e) {
+            throw new SQLException(e);
+        }
     }
 
     @Override
     public URL getURL(String columnLabel) throws SQLException {
-        return getRowSet().getURL(columnLabel);
+        return getURL(findColumn(columnLabel));
     }
 
     @Override
     public void updateRef(int columnIndex, Ref x) throws SQLException {
-        getRowSet().updateRef(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateRef(String columnLabel, Ref x) throws SQLException {
-        getRowSet().updateRef(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBlob(int columnIndex, Blob x) throws SQLException {
-        getRowSet().updateBlob(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBlob(String columnLabel, Blob x) throws SQLException {
-        getRowSet().updateBlob(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateClob(int columnIndex, Clob x) throws SQLException {
-        getRowSet().updateClob(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateClob(String columnLabel, Clob x) throws SQLException {
-        getRowSet().updateClob(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateArray(int columnIndex, Array x) throws SQLException {
-        getRowSet().updateArray(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateArray(String columnLabel, Array x) throws SQLException {
-        getRowSet().updateArray(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public RowId getRowId(int columnIndex) throws SQLException {
-        return getRowSet().getRowId(columnIndex);
+        return (RowId) getObject(columnIndex);
     }
 
     @Override
     public RowId getRowId(String columnLabel) throws SQLException {
-        return getRowSet().getRowId(columnLabel);
+        return getRowId(findColumn(columnLabel));
     }
 
     @Override
     public void updateRowId(int columnIndex, RowId x) throws SQLException {
-        getRowSet().updateRowId(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateRowId(String columnLabel, RowId x) throws SQLException {
-        getRowSet().updateRowId(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public int getHoldability() throws SQLException {
-        return getRowSet().getHoldability();
+        return CLOSE_CURSORS_AT_COMMIT;
     }
 
     @Override
     public boolean isClosed() throws SQLException {
-        return getRowSet().isClosed();
+        return closed;
     }
 
     @Override
     public void updateNString(int columnIndex, String nString) throws SQLException {
-        getRowSet().updateNString(columnIndex, nString);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNString(String columnLabel, String nString) throws SQLException {
-        getRowSet().updateNString(columnLabel, nString);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNClob(int columnIndex, NClob nClob) throws SQLException {
-        getRowSet().updateNClob(columnIndex, nClob);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNClob(String columnLabel, NClob nClob) throws SQLException {
-        getRowSet().updateNClob(columnLabel, nClob);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public NClob getNClob(int columnIndex) throws SQLException {
-        return getRowSet().getNClob(columnIndex);
+        return (NClob) getObject(columnIndex);
     }
 
     @Override
     public NClob getNClob(String columnLabel) throws SQLException {
-        return getRowSet().getNClob(columnLabel);
+        return getNClob(findColumn(columnLabel));
     }
 
     @Override
     public SQLXML getSQLXML(int columnIndex) throws SQLException {
-        return getRowSet().getSQLXML(columnIndex);
+        return (SQLXML) getObject(columnIndex);
     }
 
     @Override
     public SQLXML getSQLXML(String columnLabel) throws SQLException {
-        return getRowSet().getSQLXML(columnLabel);
+        return getSQLXML(findColumn(columnLabel));
     }
 
     @Override
     public void updateSQLXML(int columnIndex, SQLXML xmlObject) throws SQLException {
-        getRowSet().updateSQLXML(columnIndex, xmlObject);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateSQLXML(String columnLabel, SQLXML xmlObject) throws SQLException {
-        getRowSet().updateSQLXML(columnLabel, xmlObject);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public String getNString(int columnIndex) throws SQLException {
-        return getRowSet().getNString(columnIndex);
+        return getString(columnIndex);
     }
 
     @Override
     public String getNString(String columnLabel) throws SQLException {
-        return getRowSet().getNString(columnLabel);
+        return getNString(findColumn(columnLabel));
     }
 
     @Override
     public Reader getNCharacterStream(int columnIndex) throws SQLException {
-        return getRowSet().getNCharacterStream(columnIndex);
+        return getCharacterStream(columnIndex);
     }
 
     @Override
     public Reader getNCharacterStream(String columnLabel) throws SQLException {
-        return getRowSet().getNCharacterStream(columnLabel);
+        return getNCharacterStream(findColumn(columnLabel));
     }
 
     @Override
     public void updateNCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
-        getRowSet().updateNCharacterStream(columnIndex, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNCharacterStream(String columnLabel, Reader reader, long length)
             throws SQLException {
-        getRowSet().updateNCharacterStream(columnLabel, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateAsciiStream(int columnIndex, InputStream x, long length) throws SQLException {
-        getRowSet().updateAsciiStream(columnIndex, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBinaryStream(int columnIndex, InputStream x, long length)
             throws SQLException {
-        getRowSet().updateBinaryStream(columnIndex, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateCharacterStream(int columnIndex, Reader x, long length) throws SQLException {
-        getRowSet().updateCharacterStream(columnIndex, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateAsciiStream(String columnLabel, InputStream x, long length)
             throws SQLException {
-        getRowSet().updateAsciiStream(columnLabel, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBinaryStream(String columnLabel, InputStream x, long length)
             throws SQLException {
-        getRowSet().updateBinaryStream(columnLabel, x, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateCharacterStream(String columnLabel, Reader reader, long length)
             throws SQLException {
-        getRowSet().updateCharacterStream(columnLabel, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBlob(int columnIndex, InputStream inputStream, long length)
             throws SQLException {
-        getRowSet().updateBlob(columnIndex, inputStream, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBlob(String columnLabel, InputStream inputStream, long length)
             throws SQLException {
-        getRowSet().updateBlob(columnLabel, inputStream, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateClob(int columnIndex, Reader reader, long length) throws SQLException {
-        getRowSet().updateClob(columnIndex, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateClob(String columnLabel, Reader reader, long length) throws SQLException {
-        getRowSet().updateClob(columnLabel, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNClob(int columnIndex, Reader reader, long length) throws SQLException {
-        getRowSet().updateNClob(columnIndex, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNClob(String columnLabel, Reader reader, long length) throws SQLException {
-        getRowSet().updateNClob(columnLabel, reader, length);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNCharacterStream(int columnIndex, Reader x) throws SQLException {
-        getRowSet().updateNCharacterStream(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNCharacterStream(String columnLabel, Reader reader) throws SQLException {
-        getRowSet().updateNCharacterStream(columnLabel, reader);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateAsciiStream(int columnIndex, InputStream x) throws SQLException {
-        getRowSet().updateAsciiStream(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBinaryStream(int columnIndex, InputStream x) throws SQLException {
-        getRowSet().updateBinaryStream(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateCharacterStream(int columnIndex, Reader x) throws SQLException {
-        getRowSet().updateCharacterStream(columnIndex, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateAsciiStream(String columnLabel, InputStream x) throws SQLException {
-        getRowSet().updateBinaryStream(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBinaryStream(String columnLabel, InputStream x) throws SQLException {
-        getRowSet().updateBinaryStream(columnLabel, x);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateCharacterStream(String columnLabel, Reader reader) throws SQLException {
-        getRowSet().updateCharacterStream(columnLabel, reader);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBlob(int columnIndex, InputStream inputStream) throws SQLException {
-        getRowSet().updateBlob(columnIndex, inputStream);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateBlob(String columnLabel, InputStream inputStream) throws SQLException {
-        getRowSet().updateBlob(columnLabel, inputStream);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateClob(int columnIndex, Reader reader) throws SQLException {
-        getRowSet().updateClob(columnIndex, reader);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateClob(String columnLabel, Reader reader) throws SQLException {
-        getRowSet().updateClob(columnLabel, reader);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNClob(int columnIndex, Reader reader) throws SQLException {
-        getRowSet().updateNClob(columnIndex, reader);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void updateNClob(String columnLabel, Reader reader) throws SQLException {
-        getRowSet().updateNClob(columnLabel, reader);
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
-        return getRowSet().getObject(columnIndex, type);
+        Object value = getObject(columnIndex);
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        }
+        Object converted;
+        if (type == String.class) {
+            converted = getString(columnIndex);
+        } else if (type == Integer.class) {
+            converted = getInt(columnIndex);
+        } else if (type == Long.class) {
+            converted = getLong(columnIndex);
+        } else if (type == Short.class) {
+            converted = getShort(columnIndex);
+        } else if (type == Byte.class) {
+            converted = getByte(columnIndex);
+        } else if (type == Double.class) {
+            converted = getDouble(columnIndex);
+        } else if (type == Float.class) {
+            converted = getFloat(columnIndex);
+        } else if (type == Boolean.class) {
+            converted = getBoolean(columnIndex);
+        } else if (type == BigDecimal.class) {
+            converted = getBigDecimal(columnIndex);
+        } else if (type == Timestamp.class) {
+            converted = getTimestamp(columnIndex);
+        } else if (type == Date.class) {
+            converted = getDate(columnIndex);
+        } else if (type == Time.class) {
+            converted = getTime(columnIndex);
+        } else if (type == byte[].class) {
+            converted = getBytes(columnIndex);
+        } else {
+            throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + type.getName());
+        }
+        return type.cast(converted);
     }
 
     @Override
     public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
-        return getRowSet().getObject(columnLabel, type);
+        return getObject(findColumn(columnLabel), type);
     }
 
     @Override
     public <T> T unwrap(Class<T> iface) throws SQLException {
-        return getRowSet().unwrap(iface);
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Cannot unwrap to " + iface.getName());
     }
 
     @Override
     public boolean isWrapperFor(Class<?> iface) throws SQLException {
-        return getRowSet().isWrapperFor(iface);
+        return iface.isInstance(this);
+    }
+
+    /**
+     * 将按默认时区解析的时间转换为按指定日历时区解析的时间
+     *
+     * @param value 时间
+     * @param cal   日历
+     * @return 毫秒数
+     */
+    private static long toCalendar(java.util.Date value, Calendar cal) {
+        if (cal == null) {
+            return value.getTime();
+        }
+        Calendar local = Calendar.getInstance();
+        local.setTime(value);
+        Calendar target = (Calendar) cal.clone();
+        target.clear();
+        target.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH), local.get(Calendar.DAY_OF_MONTH),
+                local.get(Calendar.HOUR_OF_DAY), local.get(Calendar.MINUTE), local.get(Calendar.SECOND));
+        target.set(Calendar.MILLISECOND, local.get(Calendar.MILLISECOND));
+        return target.getTimeInMillis();
     }
 }
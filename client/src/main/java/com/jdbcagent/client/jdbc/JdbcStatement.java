@@ -3,8 +3,10 @@ package com.jdbcagent.client.jdbc;
 import com.jdbcagent.client.JdbcAgentConnector;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.protocol.ResultSetMsg;
 import com.jdbcagent.core.protocol.StatementMsg;
 import com.jdbcagent.core.protocol.StatementMsg.Method;
+import com.jdbcagent.core.support.serial.SerialStatement;
 
 import java.io.Serializable;
 import java.sql.*;
@@ -24,6 +26,14 @@ public class JdbcStatement implements Statement {
 
     private JdbcResultSet results;                          // resultSet结果集
 
+    int fetchSize;                                          // 结果集每页行数, 0为由服务端自适应
+
+    boolean modified;                                       // 是否修改过远程statement的属性
+
+    SerialStatement state;                                  // statement属性快照, 为null时远程获取属性
+
+    private boolean ddlBatched;                             // 批量中是否有DDL
+
     /**
      * stateme 构造方法
      *
@@ -37,6 +47,16 @@ public class JdbcStatement implements Statement {
         this.jdbcAgentConnector = jdbcAgentConnector;
     }
 
+    /**
+     * 获取远程statement id
+     *
+     * @return 远程statement id
+     * @throws SQLException
+     */
+    long getRemoteId() throws SQLException {
+        return remoteId;
+    }
+
     /**
      * Statement方法远程调用, 无参数
      *
@@ -58,25 +78,86 @@ public class JdbcStatement implements Statement {
      */
     private Serializable invokeStatementMethod(StatementMsg.Method method, Serializable[] params)
             throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet responsePacket =
-                    Packet.parse(
-                            jdbcAgentConnector.write(
-                                    Packet.newBuilder()
-                                            .incrementAndGetId()
-                                            .setType(PacketType.STMT_METHOD)
-                                            .setBody(StatementMsg.newBuilder().setId(remoteId)
-                                                    .setMethod(method).setParams(params).build())
-                                            .build()));
-            return ((StatementMsg) responsePacket.getBody()).getResponse();
+        if (method.name().startsWith("set") || method == Method.closeOnCompletion) {
+            modified = true;
+        }
+        Packet responsePacket;
+        try {
+            responsePacket =
+                    jdbcAgentConnector.write(
+                            Packet.newBuilder()
+                                    .incrementAndGetId()
+                                    .setType(PacketType.STMT_METHOD)
+                                    .setBody(StatementMsg.newBuilder().setId(getRemoteId())
+                                            .setMethod(method).setParams(params)
+                                            .setBatchSize(method == Method.executeQuery ? fetchSize : null).build())
+                                    .build());
+        } finally {
+            invalidateMetaDataCacheOnDdl(method, params);
+        }
+        return ((StatementMsg) responsePacket.getBody()).getResponse();
+    }
+
+    /**
+     * 执行DDL后清空元数据缓存, 批量中的DDL在执行批量时清空
+     *
+     * @param method 方法名
+     * @param params 方法参数
+     */
+    private void invalidateMetaDataCacheOnDdl(StatementMsg.Method method, Serializable[] params) {
+        boolean ddl;
+        if (method == Method.executeBatch) {
+            ddl = ddlBatched;
+            ddlBatched = false;
+        } else {
+            ddl = (method == Method.execute || method == Method.executeUpdate)
+                    && params.length > 0 && params[0] instanceof String && MetaDataCache.isDdl((String) params[0]);
+        }
+        if (ddl && conn instanceof JdbcConnection) {
+            ((JdbcConnection) conn).invalidateMetaDataCache();
         }
     }
 
+    /**
+     * Statement无返回值方法的延迟调用, 随下一个请求发送
+     *
+     * @param method 方法名
+     * @param params 方法参数
+     * @throws SQLException
+     */
+    private void deferStatementMethod(StatementMsg.Method method, Serializable... params)
+            throws SQLException {
+        if (method.name().startsWith("set") || method == Method.closeOnCompletion) {
+            modified = true;
+        }
+        StatementMsg statementMsg = StatementMsg.newBuilder().setMethod(method).setParams(params).build();
+        if (queueUntilPrepared(statementMsg)) {
+            return;
+        }
+        statementMsg.setId(getRemoteId());
+        jdbcAgentConnector.defer(
+                Packet.newBuilder()
+                        .incrementAndGetId()
+                        .setType(PacketType.STMT_METHOD)
+                        .setBody(statementMsg)
+                        .build());
+    }
+
+    /**
+     * 尚未预编译时在本地暂存延迟调用, 随预编译一起发送, 避免为此单独远程预编译
+     *
+     * @param statementMsg 延迟调用
+     * @return 是否已暂存
+     */
+    boolean queueUntilPrepared(StatementMsg statementMsg) {
+        return false;
+    }
+
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
-        long resultSetId =
-                (Long) invokeStatementMethod(Method.executeQuery, new Serializable[]{sql});
-        this.results = new JdbcResultSet(jdbcAgentConnector, resultSetId);
+        ResultSetMsg resultSetMsg =
+                (ResultSetMsg) invokeStatementMethod(Method.executeQuery, new Serializable[]{sql});
+        this.results = new JdbcResultSet(jdbcAgentConnector, resultSetMsg, fetchSize);
         return this.results;
     }
 
@@ -87,48 +168,73 @@ public class JdbcStatement implements Statement {
 
     @Override
     public void close() throws SQLException {
-        synchronized (jdbcAgentConnector) {
-            Packet packet = Packet.newBuilder()
-                    .incrementAndGetId()
-                    .setType(PacketType.STMT_CLOSE)
-                    .setBody(StatementMsg.newBuilder().setId(remoteId).build()).build();
-            Packet.parse(jdbcAgentConnector.write(packet)).getAck();
-        }
+        Packet packet = Packet.newBuilder()
+                .incrementAndGetId()
+                .setType(PacketType.STMT_CLOSE)
+                .setBody(StatementMsg.newBuilder().setId(remoteId).build()).build();
+        jdbcAgentConnector.defer(packet);
     }
 
     @Override
     public int getMaxFieldSize() throws SQLException {
+        if (state != null) {
+            return state.getMaxFieldSize();
+        }
         return (Integer) invokeStatementMethod(Method.getMaxFieldSize);
     }
 
     @Override
     public void setMaxFieldSize(int max) throws SQLException {
-        invokeStatementMethod(Method.setMaxFieldSize, new Serializable[]{max});
+        if (max < 0) {
+            throw new SQLException("Max field size must be >= 0");
+        }
+        deferStatementMethod(Method.setMaxFieldSize, max);
+        if (state != null) {
+            state.setMaxFieldSize(max);
+        }
     }
 
     @Override
     public int getMaxRows() throws SQLException {
+        if (state != null) {
+            return state.getMaxRows();
+        }
         return (Integer) invokeStatementMethod(Method.getMaxRows);
     }
 
     @Override
     public void setMaxRows(int max) throws SQLException {
-        invokeStatementMethod(Method.setMaxRows, new Serializable[]{max});
+        if (max < 0) {
+            throw new SQLException("Max rows must be >= 0");
+        }
+        deferStatementMethod(Method.setMaxRows, max);
+        if (state != null) {
+            state.setMaxRows(max);
+        }
     }
 
     @Override
     public void setEscapeProcessing(boolean enable) throws SQLException {
-        invokeStatementMethod(Method.setEscapeProcessing, new Serializable[]{enable});
+        deferStatementMethod(Method.setEscapeProcessing, enable);
     }
 
     @Override
     public int getQueryTimeout() throws SQLException {
+        if (state != null) {
+            return state.getQueryTimeout();
+        }
         return (Integer) invokeStatementMethod(Method.getQueryTimeout);
     }
 
     @Override
     public void setQueryTimeout(int seconds) throws SQLException {
-        invokeStatementMethod(Method.setQueryTimeout, new Serializable[]{seconds});
+        if (seconds < 0) {
+            throw new SQLException("Query timeout must be >= 0");
+        }
+        deferStatementMethod(Method.setQueryTimeout, seconds);
+        if (state != null) {
+            state.setQueryTimeout(seconds);
+        }
     }
 
     @Override
@@ -148,12 +254,12 @@ public class JdbcStatement implements Statement {
 
     @Override
     public void clearWarnings() throws SQLException {
-        invokeStatementMethod(Method.clearWarnings);
+        deferStatementMethod(Method.clearWarnings);
     }
 
     @Override
     public void setCursorName(String name) throws SQLException {
-        invokeStatementMethod(Method.setCursorName, new Serializable[]{name});
+        deferStatementMethod(Method.setCursorName, name);
     }
 
     @Override
@@ -178,42 +284,64 @@ public class JdbcStatement implements Statement {
 
     @Override
     public void setFetchDirection(int direction) throws SQLException {
-        invokeStatementMethod(Method.setFetchDirection, new Serializable[]{direction});
+        deferStatementMethod(Method.setFetchDirection, direction);
+        if (state != null) {
+            state.setFetchDirection(direction);
+        }
     }
 
     @Override
     public int getFetchDirection() throws SQLException {
+        if (state != null) {
+            return state.getFetchDirection();
+        }
         return (Integer) invokeStatementMethod(Method.getFetchDirection);
     }
 
     @Override
     public void setFetchSize(int rows) throws SQLException {
-        invokeStatementMethod(Method.setFetchSize, new Serializable[]{rows});
+        deferStatementMethod(Method.setFetchSize, rows);
+        if (state != null) {
+            state.setFetchSize(rows);
+        }
+        fetchSize = Math.max(rows, 0);
     }
 
     @Override
     public int getFetchSize() throws SQLException {
+        if (state != null) {
+            return state.getFetchSize();
+        }
         return (Integer) invokeStatementMethod(Method.getFetchSize);
     }
 
     @Override
     public int getResultSetConcurrency() throws SQLException {
+        if (state != null) {
+            return state.getResultSetConcurrency();
+        }
         return (Integer) invokeStatementMethod(Method.getResultSetConcurrency);
     }
 
     @Override
     public int getResultSetType() throws SQLException {
+        if (state != null) {
+            return state.getResultSetType();
+        }
         return (Integer) invokeStatementMethod(Method.getResultSetType);
     }
 
     @Override
     public void addBatch(String sql) throws SQLException {
-        invokeStatementMethod(Method.addBatch, new Serializable[]{sql});
+        if (MetaDataCache.isDdl(sql)) {
+            ddlBatched = true;
+        }
+        deferStatementMethod(Method.addBatch, sql);
     }
 
     @Override
     public void clearBatch() throws SQLException {
-        invokeStatementMethod(Method.clearBatch);
+        deferStatementMethod(Method.clearBatch);
     }
 
     @Override
@@ -274,6 +402,9 @@ public class JdbcStatement implements Statement {
 
     @Override
     public int getResultSetHoldability() throws SQLException {
+        if (state != null) {
+            return state.getResultSetHoldability();
+        }
         return (Integer) invokeStatementMethod(Method.getResultSetHoldability);
     }
 
@@ -284,21 +415,33 @@ public class JdbcStatement implements Statement {
 
     @Override
     public void setPoolable(boolean poolable) throws SQLException {
-        invokeStatementMethod(Method.setPoolable, new Serializable[]{poolable});
+        deferStatementMethod(Method.setPoolable, poolable);
+        if (state != null) {
+            state.setPoolable(poolable);
+        }
     }
 
     @Override
     public boolean isPoolable() throws SQLException {
+        if (state != null) {
+            return state.isPoolable();
+        }
         return (Boolean) invokeStatementMethod(Method.isPoolable);
     }
 
     @Override
     public void closeOnCompletion() throws SQLException {
-        invokeStatementMethod(Method.closeOnCompletion);
+        deferStatementMethod(Method.closeOnCompletion);
+        if (state != null) {
+            state.setCloseOnCompletion(true);
+        }
     }
 
     @Override
     public boolean isCloseOnCompletion() throws SQLException {
+        if (state != null) {
+            return state.isCloseOnCompletion();
+        }
         return (Boolean) invokeStatementMethod(Method.isCloseOnCompletion);
     }
 
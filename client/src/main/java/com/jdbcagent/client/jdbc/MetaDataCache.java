@@ -0,0 +1,179 @@
+package com.jdbcagent.client.jdbc;
+
+import com.jdbcagent.core.protocol.ResultSetMsg;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JDBC-Agent client DatabaseMetaData 缓存
+ * <p>
+ * 同一url和用户的连接共用一个缓存, 按方法名、参数及连接当前的catalog/schema缓存返回值, 到期后重新远程获取.
+ * 返回结果集的方法只缓存已全部取回的结果集(服务端交付最后一页时已关闭), 每次命中时重新包装为新的结果集.
+ * 本客户端执行DDL后清空所在缓存, 其它客户端的DDL在到期前不可见, 也可以显式清空
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class MetaDataCache {
+    public final static int DEFAULT_MAX_ENTRIES = 1024;     // 每个缓存的最大条目数
+
+    private final static ConcurrentHashMap<String, MetaDataCache> CACHES =
+            new ConcurrentHashMap<>();                      // 共用的缓存, key为url和用户
+
+    private final long ttl;                                 // 缓存有效期, 毫秒
+
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {   // 按最近使用排序, 超过上限时淘汰最久未用的
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > DEFAULT_MAX_ENTRIES;
+                }
+            };
+
+    private MetaDataCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * 获取共用的缓存
+     *
+     * @param url      jdbc url
+     * @param username 用户名
+     * @param ttl      缓存有效期, 毫秒, 不大于0时不缓存
+     * @return 缓存, 不缓存时为null
+     */
+    public static MetaDataCache shared(String url, String username, long ttl) {
+        if (ttl <= 0) {
+            return null;
+        }
+        String scope = url + '\0' + username + '\0' + ttl;
+        MetaDataCache cache = CACHES.get(scope);
+        if (cache == null) {
+            MetaDataCache newCache = new MetaDataCache(ttl);
+            cache = CACHES.putIfAbsent(scope, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 清空所有共用的缓存
+     */
+    public static void invalidateAll() {
+        for (MetaDataCache cache : CACHES.values()) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * 清空本缓存
+     */
+    public void invalidate() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * 生成缓存key
+     *
+     * @param catalog 连接当前的catalog
+     * @param schema  连接当前的schema
+     * @param method  方法名
+     * @param params  方法参数
+     * @return key
+     */
+    static String key(String catalog, String schema, Enum<?> method, Serializable[] params) {
+        StringBuilder key = new StringBuilder(method.name());
+        appendPart(key, catalog);
+        appendPart(key, schema);
+        for (Serializable param : params) {
+            appendPart(key, param instanceof String[] ? Arrays.toString((String[]) param)
+                    : param instanceof int[] ? Arrays.toString((int[]) param) : param);
+        }
+        return key.toString();
+    }
+
+    private static void appendPart(StringBuilder key, Object part) {
+        // null 与字符串"null"区分开
+        key.append('\0').append(part == null ? "\1" : part.toString());
+    }
+
+    /**
+     * 读取缓存
+     *
+     * @param key key
+     * @return 未过期的返回值, 不存在时为null
+     */
+    Serializable get(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * 写入缓存, 未全部取回的结果集不缓存
+     *
+     * @param key   key
+     * @param value 返回值
+     */
+    void put(String key, Serializable value) {
+        if (value instanceof ResultSetMsg) {
+            ResultSetMsg resultSetMsg = (ResultSetMsg) value;
+            if (resultSetMsg.getPage() == null || !resultSetMsg.getPage().isLast()) {
+                return;
+            }
+        }
+        synchronized (entries) {
+            entries.put(key, new Entry(value, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * 是否为DDL语句, 执行后需要清空元数据缓存
+     *
+     * @param sql sql
+     * @return 是否DDL
+     */
+    static boolean isDdl(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+        String keyword = sql.substring(start, end).toLowerCase();
+        return keyword.equals("create") || keyword.equals("alter") || keyword.equals("drop")
+                || keyword.equals("rename") || keyword.equals("truncate") || keyword.equals("comment");
+    }
+
+    private static class Entry {
+        private final Serializable value;                   // 返回值
+
+        private final long expireAt;                        // 过期时间
+
+        Entry(Serializable value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
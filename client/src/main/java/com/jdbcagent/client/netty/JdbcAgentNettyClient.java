@@ -2,9 +2,12 @@ package com.jdbcagent.client.netty;
 
 import com.jdbcagent.client.JdbcAgentConnector;
 import com.jdbcagent.client.JdbcAgentDataSource;
+import com.jdbcagent.client.PacketStream;
 import com.jdbcagent.client.netty.NettyUtils.NettyResponse;
+import com.jdbcagent.client.netty.NettyUtils.StreamEntry;
 import com.jdbcagent.client.netty.handler.ClientHandler;
 import com.jdbcagent.client.netty.handler.FixedHeaderFrameDecoder;
+import com.jdbcagent.client.netty.handler.FrameFragmentEncoder;
 import com.jdbcagent.core.protocol.Packet;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.*;
@@ -12,19 +15,23 @@ import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 
 import java.net.InetSocketAddress;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * JDBC-Agent client netty 客户端
+ * <p>
+ * 多个连接共用一个通道, 每个请求按数据包id对应一个响应future, 请求之间互不阻塞
  *
  * @author Machengyuan
  * @version 1.0 2018-07-10
  */
 public class JdbcAgentNettyClient implements JdbcAgentConnector {
-    public static volatile boolean connected = false;   //是否已经连接
-
     private volatile boolean running = false;           // 是否运行中
 
     private String ip;                                  // 启动IP
@@ -37,6 +44,8 @@ public class JdbcAgentNettyClient implements JdbcAgentConnector {
 
     private JdbcAgentDataSource jdbcAgentDataSource;
 
+    private final CompletableFuture<Void> authFuture = new CompletableFuture<>();   // 认证结果
+
     public void setIp(String ip) {
         this.ip = ip;
     }
@@ -68,18 +77,61 @@ public class JdbcAgentNettyClient implements JdbcAgentConnector {
                 @Override
                 public ChannelPipeline getPipeline() throws Exception {
                     ChannelPipeline pipeline = Channels.pipeline();
-                    pipeline.addLast(FixedHeaderFrameDecoder.class.getName(), new FixedHeaderFrameDecoder());
-                    pipeline.addLast(ClientHandler.class.getName(), new ClientHandler(jdbcAgentDataSource));
+                    pipeline.addLast(FrameFragmentEncoder.class.getName(), new FrameFragmentEncoder());
+                    pipeline.addLast(FixedHeaderFrameDecoder.class.getName(),
+                            new FixedHeaderFrameDecoder(jdbcAgentDataSource.getMaxMessageLength()));
+                    pipeline.addLast(ClientHandler.class.getName(), new ClientHandler(JdbcAgentNettyClient.this,
+                            jdbcAgentDataSource));
                     return pipeline;
                 }
             });
             ChannelFuture channelFuture = bootstrap.connect(new InetSocketAddress(ip, port)).sync();
             channel = channelFuture.getChannel();
+
+            // 等待认证通过
+            authFuture.get(jdbcAgentDataSource.getTimeout(), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 认证完成
+     *
+     * @param cause 认证失败原因, 成功为null
+     */
+    public void authenticated(Throwable cause) {
+        if (cause == null) {
+            authFuture.complete(null);
+        } else {
+            authFuture.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 通道关闭, 未响应的请求全部失败
+     *
+     * @param channel 关闭的通道
+     */
+    public static void failPending(Channel channel) {
+        Iterator<NettyResponse> it = NettyUtils.RESPONSE_MAP.values().iterator();
+        while (it.hasNext()) {
+            NettyResponse nettyRes = it.next();
+            if (nettyRes.getChannel() == channel) {
+                it.remove();
+                nettyRes.completeExceptionally(new SQLException("connection to jdbc agent server closed"));
+            }
+        }
+        Iterator<StreamEntry> streamIt = NettyUtils.STREAM_MAP.values().iterator();
+        while (streamIt.hasNext()) {
+            StreamEntry streamEntry = streamIt.next();
+            if (streamEntry.getChannel() == channel) {
+                streamIt.remove();
+                streamEntry.getStream().fail(new SQLException("connection to jdbc agent server closed"));
+            }
+        }
+    }
+
     public Channel getChannel() {
         return channel;
     }
@@ -91,36 +143,106 @@ public class JdbcAgentNettyClient implements JdbcAgentConnector {
      * @return
      * @throws SQLException
      */
-    public byte[] write(Packet packet) throws SQLException {
-        while (!connected) ;
-
-        NettyResponse nettyRes = new NettyResponse();
-        ReentrantLock lock = NettyUtils.lock;
-        Condition condition = lock.newCondition();
-        nettyRes.setCondition(condition);
-
-        NettyUtils.RESPONSE_MAP.put(packet.getId(), nettyRes);
+    public Packet write(Packet packet) throws SQLException {
+        if (!authFuture.isDone() || authFuture.isCompletedExceptionally()) {
+            throw new SQLException("jdbc agent client is not connected");
+        }
+        Channel channel = getChannel();
+        final Long packetId = packet.getId();
+        final NettyResponse nettyRes = new NettyResponse(channel);
+        NettyUtils.RESPONSE_MAP.put(packetId, nettyRes);
 
-        NettyUtils.write(getChannel(), packet, null);
+        NettyUtils.write(channel, packet, new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    NettyUtils.RESPONSE_MAP.remove(packetId);
+                    nettyRes.completeExceptionally(future.getCause());
+                }
+            }
+        });
 
         try {
-            lock.lock();
-            condition.await();
-            Packet packetAck = NettyUtils.RESPONSE_MAP.remove(packet.getId()).getPacket();
-            return packetAck.toByteArray();
-        } catch (Exception e) {
+            return nettyRes.get(jdbcAgentDataSource.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SQLTimeoutException("wait for response of packet " + packetId + " timeout");
+        } catch (ExecutionException e) {
+            throw new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new SQLException(e);
         } finally {
-            lock.unlock();
+            NettyUtils.RESPONSE_MAP.remove(packetId);
         }
     }
 
+    /**
+     * 发送数据, 不等待响应
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    public void send(Packet packet) throws SQLException {
+        if (!authFuture.isDone() || authFuture.isCompletedExceptionally()) {
+            throw new SQLException("jdbc agent client is not connected");
+        }
+        NettyUtils.write(getChannel(), packet, null);
+    }
+
+    /**
+     * 连接器本身不缓存延迟的调用, 直接发送并等待应答; 应答可能是ack或方法的返回值, 出错时抛出异常
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    public void defer(Packet packet) throws SQLException {
+        write(packet).getBody();
+    }
+
+    /**
+     * 没有延迟的调用, 无需发送
+     */
+    public void flush() {
+    }
+
+    /**
+     * 打开服务端推送流, 之后服务端以该数据包id推送的响应都进入推送流
+     *
+     * @param packet 数据包
+     * @return 推送流
+     * @throws SQLException
+     */
+    public PacketStream openStream(Packet packet) throws SQLException {
+        if (!authFuture.isDone() || authFuture.isCompletedExceptionally()) {
+            throw new SQLException("jdbc agent client is not connected");
+        }
+        Channel channel = getChannel();
+        final Long packetId = packet.getId();
+        final PacketStream stream = new PacketStream(packetId, jdbcAgentDataSource.getTimeout(),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        NettyUtils.STREAM_MAP.remove(packetId);
+                    }
+                });
+        NettyUtils.STREAM_MAP.put(packetId, new StreamEntry(channel, stream));
+
+        NettyUtils.write(channel, packet, new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    NettyUtils.STREAM_MAP.remove(packetId);
+                    stream.fail(future.getCause());
+                }
+            }
+        });
+        return stream;
+    }
+
     /**
      * 停止客户端
      */
     public void stop() {
-        connected = false;
-
         if (!running) {
             return;
             // throw new RuntimeException(this.getClass().getName() + " isn't start , please check");
@@ -1,16 +1,17 @@
 package com.jdbcagent.client.netty;
 
+import com.jdbcagent.client.PacketStream;
 import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.util.SerializeUtil;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.Channels;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * JDBC-Agent server netty 工具类
@@ -19,9 +20,9 @@ import java.util.concurrent.locks.ReentrantLock;
  * @version 1.0 2018-07-10
  */
 public class NettyUtils {
-    public static ReentrantLock lock = new ReentrantLock();
+    public static ConcurrentHashMap<Long, NettyResponse> RESPONSE_MAP = new ConcurrentHashMap<>();  // 等待响应的请求, key为数据包id
 
-    public static ConcurrentHashMap<Long, NettyResponse> RESPONSE_MAP = new ConcurrentHashMap<>();
+    public static ConcurrentHashMap<Long, StreamEntry> STREAM_MAP = new ConcurrentHashMap<>();     // 接收推送的流, key为推送流id
 
     private final static int HEADER_LENGTH = 4;   // 数据包头长度
 
@@ -33,35 +34,69 @@ public class NettyUtils {
      * @param channelFutureListner
      */
     public static void write(Channel channel, Packet packet, ChannelFutureListener channelFutureListner) {
-        byte[] body = packet.toByteArray();
-        byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN)
-                .putInt(body.length).array();
+        // 经线程缓冲序列化到预留包头的数组中, 包装后回填包体长度
+        ByteBuffer frame = SerializeUtil.serialize(packet, HEADER_LENGTH);
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frame);
+        buffer.setInt(0, buffer.readableBytes() - HEADER_LENGTH);
         if (channelFutureListner == null) {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body));
+            Channels.write(channel, buffer);
         } else {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body))
-                    .addListener(channelFutureListner);
+            Channels.write(channel, buffer).addListener(channelFutureListner);
         }
     }
 
-    public static class NettyResponse {
-        private Condition condition;
-        private Packet packet;
+    /**
+     * 从已解包的数据中读取数据包, 直接读取缓冲的底层数据, 不做复制
+     *
+     * @param buffer 一个完整数据包的缓冲
+     * @return 数据包
+     */
+    public static Packet read(ChannelBuffer buffer) {
+        Packet packet;
+        if (buffer.hasArray()) {
+            packet = (Packet) SerializeUtil.deserialize(buffer.array(),
+                    buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        } else {
+            packet = (Packet) SerializeUtil.deserialize(buffer.toByteBuffer());
+        }
+        buffer.skipBytes(buffer.readableBytes());
+        return packet;
+    }
+
+    /**
+     * 请求的响应, 收到与请求id相同的数据包时完成
+     */
+    public static class NettyResponse extends CompletableFuture<Packet> {
+        private final Channel channel;  // 请求所在的通道
+
+        public NettyResponse(Channel channel) {
+            this.channel = channel;
+        }
 
-        public Condition getCondition() {
-            return condition;
+        public Channel getChannel() {
+            return channel;
         }
+    }
+
+    /**
+     * 推送流及其所在的通道
+     */
+    public static class StreamEntry {
+        private final Channel channel;          // 推送流所在的通道
+
+        private final PacketStream stream;      // 推送流
 
-        public void setCondition(Condition condition) {
-            this.condition = condition;
+        public StreamEntry(Channel channel, PacketStream stream) {
+            this.channel = channel;
+            this.stream = stream;
         }
 
-        public Packet getPacket() {
-            return packet;
+        public Channel getChannel() {
+            return channel;
         }
 
-        public void setPacket(Packet packet) {
-            this.packet = packet;
+        public PacketStream getStream() {
+            return stream;
         }
     }
 }
@@ -4,16 +4,20 @@ import com.jdbcagent.client.JdbcAgentDataSource;
 import com.jdbcagent.client.netty.JdbcAgentNettyClient;
 import com.jdbcagent.client.netty.NettyUtils;
 import com.jdbcagent.client.netty.NettyUtils.NettyResponse;
+import com.jdbcagent.client.netty.NettyUtils.StreamEntry;
 import com.jdbcagent.core.protocol.ClientAuth;
+import com.jdbcagent.core.protocol.Message;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.support.compress.Compressor;
+import com.jdbcagent.core.support.compress.Compressors;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.sql.SQLException;
 
 /**
  * JDBC-Agent client netty clientHandler
@@ -22,9 +26,12 @@ import java.util.concurrent.locks.ReentrantLock;
  * @version 1.0 2018-07-10
  */
 public class ClientHandler extends SimpleChannelHandler {
+    private JdbcAgentNettyClient jdbcAgentNettyClient;
+
     private JdbcAgentDataSource jdbcAgentDataSource;
 
-    public ClientHandler(JdbcAgentDataSource jdbcAgentDataSource) {
+    public ClientHandler(JdbcAgentNettyClient jdbcAgentNettyClient, JdbcAgentDataSource jdbcAgentDataSource) {
+        this.jdbcAgentNettyClient = jdbcAgentNettyClient;
         this.jdbcAgentDataSource = jdbcAgentDataSource;
     }
 
@@ -36,6 +43,7 @@ public class ClientHandler extends SimpleChannelHandler {
                 .setBody(ClientAuth.newBuilder()
                         .setNetReadTimeout(jdbcAgentDataSource.getTimeout())
                         .setNetWriteTimeout(jdbcAgentDataSource.getTimeout())
+                        .setCompression(jdbcAgentDataSource.getCompression())
                                 .setUsername("").setPassword("").build())
                         .build();
 
@@ -46,22 +54,40 @@ public class ClientHandler extends SimpleChannelHandler {
 
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-        Packet packet = Packet.parse(buffer.readBytes(buffer.readableBytes()).array());
+        Packet packet = NettyUtils.read((ChannelBuffer) e.getMessage());
 
         if (packet.getType() == PacketType.CLIENT_AUTH) {
             //通过认证设置为已连接
-            JdbcAgentNettyClient.connected = true;
+            try {
+                Message message = packet.getBody();
+                if (packet.getVersion() != Packet.PROTOCOL_VERSION) {
+                    throw new SQLException("unsupported protocol version " + packet.getVersion()
+                            + " of jdbc agent server, client version " + Packet.PROTOCOL_VERSION);
+                }
+                if (message instanceof ClientAuth) {
+                    // 服务端同意压缩, 之后收发的数据包都带压缩标志位
+                    ClientAuth negotiated = (ClientAuth) message;
+                    Compressor compressor = Compressors.get(negotiated.getCompression());
+                    if (compressor != null) {
+                        ctx.getPipeline().addAfter(FixedHeaderFrameDecoder.class.getName(),
+                                CompressionHandler.class.getName(),
+                                new CompressionHandler(compressor, negotiated.getCompressThreshold(),
+                                        jdbcAgentDataSource.getMaxMessageLength()));
+                    }
+                }
+                jdbcAgentNettyClient.authenticated(null);
+            } catch (SQLException ex) {
+                jdbcAgentNettyClient.authenticated(ex);
+            }
         } else {
-            NettyResponse nettyRes = NettyUtils.RESPONSE_MAP.get(packet.getId());
+            NettyResponse nettyRes = NettyUtils.RESPONSE_MAP.remove(packet.getId());
             if (nettyRes != null) {
-                ReentrantLock lock = NettyUtils.lock;
-                nettyRes.setPacket(packet);
-                try {
-                    lock.lock();
-                    nettyRes.getCondition().signal();
-                } finally {
-                    lock.unlock();
+                nettyRes.complete(packet);
+            } else {
+                // 服务端推送的数据包
+                StreamEntry streamEntry = NettyUtils.STREAM_MAP.get(packet.getId());
+                if (streamEntry != null) {
+                    streamEntry.getStream().offer(packet);
                 }
             }
         }
@@ -73,6 +99,8 @@ public class ClientHandler extends SimpleChannelHandler {
     @Override
     public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
         //如果连接断开了关闭释放客户端连接
+        JdbcAgentNettyClient.failPending(ctx.getChannel());
+        jdbcAgentNettyClient.authenticated(new SQLException("connection to jdbc agent server closed"));
         jdbcAgentDataSource.close();
     }
 }
@@ -1,16 +1,27 @@
 package com.jdbcagent.client.nio;
 
 import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.client.JdbcAgentDataSource;
+import com.jdbcagent.client.PacketStream;
 import com.jdbcagent.core.protocol.ClientAuth;
+import com.jdbcagent.core.protocol.Frames;
+import com.jdbcagent.core.protocol.Message;
 import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.support.compress.Compressor;
+import com.jdbcagent.core.support.compress.Compressors;
+import com.jdbcagent.core.util.SerializeUtil;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.*;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.jdbcagent.core.protocol.Packet.PacketType;
 
@@ -35,11 +46,15 @@ public class JdbcAgentNioClient implements JdbcAgentConnector {
     private int soTimeout = 60000;                      // 超时时间
     private int idleTimeout = 30 * 60 * 1000;           // 连接超时时间
 
+    private String compression = Compressors.names();   // 支持的压缩算法, 为空不压缩
+    private Compressor compressor;                      // 协商的压缩算法, 为null时不压缩
+    private int compressThreshold;                      // 压缩阈值
+    private int maxMessageLength = JdbcAgentDataSource.DEFAULT_MAX_MESSAGE_LENGTH; // 响应包体的最大长度
+
     private final Object readDataLock = new Object();   // 读的排他锁
     private final Object writeDataLock = new Object();  // 写的排他锁
 
     private final ByteBuffer readHeader = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
-    private final ByteBuffer writeHeader = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
 
     /**
      * 连接器构造方法
@@ -59,6 +74,14 @@ public class JdbcAgentNioClient implements JdbcAgentConnector {
         this.idleTimeout = idleTimeout;
     }
 
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public void setMaxMessageLength(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
     public SocketAddress getAddress() {
         return address;
     }
@@ -107,12 +130,25 @@ public class JdbcAgentNioClient implements JdbcAgentConnector {
                     .setPassword(password != null ? password : "")
                     .setNetReadTimeout(idleTimeout)
                     .setNetWriteTimeout(idleTimeout)
+                    .setCompression(compression)
                     .build();
 
-            Packet.parse(write(Packet.newBuilder()
+            compressor = null;
+            Packet authAck = write(Packet.newBuilder()
                     .incrementAndGetId()
                     .setType(PacketType.CLIENT_AUTH)
-                    .setBody(ca).build())).getAck();
+                    .setBody(ca).build());
+            Message message = authAck.getBody();
+            if (authAck.getVersion() != Packet.PROTOCOL_VERSION) {
+                throw new SQLException("unsupported protocol version " + authAck.getVersion()
+                        + " of jdbc agent server, client version " + Packet.PROTOCOL_VERSION);
+            }
+            if (message instanceof ClientAuth) {
+                // 服务端同意压缩, 之后收发的数据包都带压缩标志位
+                ClientAuth negotiated = (ClientAuth) message;
+                compressThreshold = negotiated.getCompressThreshold();
+                compressor = Compressors.get(negotiated.getCompression());
+            }
 
             connected = true;
             return new InetSocketAddress(channel.socket().getLocalAddress(),
@@ -151,24 +187,100 @@ public class JdbcAgentNioClient implements JdbcAgentConnector {
      * @param packet 数据包
      * @return
      */
-    public byte[] write(Packet packet) {
+    public Packet write(Packet packet) {
         synchronized (writeDataLock) {
             try {
-                byte[] body = packet.toByteArray();
-                writeHeader.clear();
-                writeHeader.putInt(body.length);
-                writeHeader.flip();
-                channel.write(writeHeader);
-                channel.write(ByteBuffer.wrap(body));
+                // 包头和包体在同一个数组中, 一次写出
+                ByteBuffer frame;
+                if (compressor == null) {
+                    frame = SerializeUtil.serialize(packet, 4);
+                } else {
+                    byte[] body = packet.toByteArray();
+                    frame = Compressors.encode(compressor, compressThreshold, body, 0, body.length, 4);
+                }
+                writeFrames(channel, frame);
 
                 // 写完立即从通道读取返回值
-                return read();
+                byte[] body = read();
+                return body == null ? null : Packet.parse(body);
             } catch (IOException e) {
                 throw new RuntimeException(e.getMessage());
             }
         }
     }
 
+    /**
+     * 写出预留了包头的数据包, 超过单帧上限时拆成多帧, 后续帧的包头单独写出
+     *
+     * @param out   写通道
+     * @param frame 包头 + 包体
+     * @throws IOException
+     */
+    static void writeFrames(WritableByteChannel out, ByteBuffer frame) throws IOException {
+        int length = frame.remaining() - Frames.HEADER_LENGTH;
+        int count = Frames.frameCount(length);
+        int start = frame.position();
+        ByteBuffer header = ByteBuffer.allocate(Frames.HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            int offset = i * Frames.MAX_FRAME_LENGTH;
+            int n = Math.min(Frames.MAX_FRAME_LENGTH, length - offset);
+            int headerValue = Frames.header(n, i < count - 1);
+            ByteBuffer part = frame.duplicate();
+            part.limit(start + Frames.HEADER_LENGTH + offset + n);
+            if (i == 0) {
+                part.putInt(start, headerValue);
+                part.position(start);
+            } else {
+                header.clear();
+                header.putInt(0, headerValue);
+                writeFully(out, header);
+                part.position(start + Frames.HEADER_LENGTH + offset);
+            }
+            writeFully(out, part);
+        }
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * 同步客户端每次写后都读取响应, 不支持不等待响应的发送
+     *
+     * @param packet 数据包
+     */
+    public void send(Packet packet) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 连接器本身不缓存延迟的调用, 直接发送并等待应答; 应答可能是ack或方法的返回值, 出错时抛出异常
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    public void defer(Packet packet) throws SQLException {
+        write(packet).getBody();
+    }
+
+    /**
+     * 没有延迟的调用, 无需发送
+     */
+    public void flush() {
+    }
+
+    /**
+     * 同步客户端不支持服务端推送
+     *
+     * @param packet 数据包
+     * @return null
+     */
+    public PacketStream openStream(Packet packet) {
+        return null;
+    }
+
     /**
      * 读取数据
      *
@@ -177,23 +289,74 @@ public class JdbcAgentNioClient implements JdbcAgentConnector {
     private byte[] read() {
         synchronized (readDataLock) {
             try {
-                readHeader.clear();
-                read(channel, readHeader);
-                int bodyLen = readHeader.getInt(0);
-                if (bodyLen != 0) {
-                    ByteBuffer bodyBuf = ByteBuffer.allocate(bodyLen).order(ByteOrder.BIG_ENDIAN);
-                    read(channel, bodyBuf);
-                    return bodyBuf.array();
-                } else {
+                byte[] body;
+                try {
+                    body = readFrames(channel, readHeader, maxMessageLength);
+                } catch (ProtocolException e) {
+                    // 超长后无法再定位后续数据包, 断开连接
+                    disconnect();
+                    throw e;
+                }
+                if (body == null) {
                     return null;
                 }
+                int bodyLen = body.length;
+                if (compressor == null) {
+                    return body;
+                }
+                if (body[0] == Compressors.COMPRESSED) {
+                    return Compressors.decompress(compressor, body, 1, bodyLen - 1, maxMessageLength);
+                }
+                return Arrays.copyOfRange(body, 1, bodyLen);
             } catch (IOException e) {
                 throw new RuntimeException(e.getMessage());
             }
         }
     }
 
-    private void read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+    /**
+     * 读取一个数据包的所有帧, 校验长度后拼接, 超长的帧在读取包体前拒绝
+     *
+     * @param in               读通道
+     * @param header           包头缓冲
+     * @param maxMessageLength 拼接后包体的最大长度
+     * @return 包体, 长度为0时返回null
+     * @throws ProtocolException 帧长度超限
+     * @throws IOException
+     */
+    static byte[] readFrames(ReadableByteChannel in, ByteBuffer header, int maxMessageLength) throws IOException {
+        List<byte[]> frames = new ArrayList<>(1);
+        int bodyLen = 0;
+        boolean more = true;
+        while (more) {
+            header.clear();
+            read(in, header);
+            int headerValue = header.getInt(0);
+            int length = Frames.length(headerValue);
+            more = Frames.hasMore(headerValue);
+            if (length > Frames.MAX_FRAME_LENGTH || (long) bodyLen + length > maxMessageLength) {
+                throw new ProtocolException("frame length " + length + " (" + bodyLen + " buffered) exceeds limit");
+            }
+            byte[] frame = new byte[length];
+            read(in, ByteBuffer.wrap(frame));
+            frames.add(frame);
+            bodyLen += length;
+        }
+        if (bodyLen == 0) {
+            return null;
+        } else if (frames.size() == 1) {
+            return frames.get(0);
+        }
+        byte[] body = new byte[bodyLen];
+        int offset = 0;
+        for (byte[] frame : frames) {
+            System.arraycopy(frame, 0, body, offset, frame.length);
+            offset += frame.length;
+        }
+        return body;
+    }
+
+    private static void read(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
         while (buffer.hasRemaining()) {
             int r = channel.read(buffer);
             if (r == -1) {
@@ -0,0 +1,179 @@
+package com.jdbcagent.client;
+
+import com.jdbcagent.core.protocol.Ack;
+import com.jdbcagent.core.protocol.ConnectionMsg;
+import com.jdbcagent.core.protocol.Message;
+import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.protocol.StatementMsg;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PipelinedConnectorTest {
+    private final RecordingConnector connector = new RecordingConnector();
+
+    private final PipelinedConnector pipelined = new PipelinedConnector(connector);
+
+    @Test
+    public void testDeferredRideWithNextRequest() throws Exception {
+        Packet setAutoCommit = connMethod(ConnectionMsg.Method.setAutoCommit);
+        Packet closeStatement = packet(PacketType.STMT_CLOSE);
+        pipelined.defer(setAutoCommit);
+        pipelined.defer(closeStatement);
+        Assert.assertTrue(connector.written.isEmpty());
+
+        Packet request = connMethod(ConnectionMsg.Method.commit);
+        pipelined.write(request);
+        Assert.assertEquals(1, connector.written.size());
+        Assert.assertSame(request, connector.written.get(0));
+        Assert.assertEquals(2, request.getDeferred().size());
+        Assert.assertSame(setAutoCommit, request.getDeferred().get(0));
+        Assert.assertSame(closeStatement, request.getDeferred().get(1));
+
+        // 已发送的调用不再附带
+        Packet next = connMethod(ConnectionMsg.Method.rollback);
+        pipelined.write(next);
+        Assert.assertNull(next.getDeferred());
+    }
+
+    @Test
+    public void testOpenStreamCarriesDeferred() throws Exception {
+        Packet closeResultSet = packet(PacketType.RS_CLOSE);
+        pipelined.defer(closeResultSet);
+        Packet query = packet(PacketType.RS_STREAM);
+        pipelined.openStream(query);
+        Assert.assertSame(query, connector.streamed.get(0));
+        Assert.assertEquals(1, query.getDeferred().size());
+    }
+
+    @Test
+    public void testSendDoesNotCarryDeferred() throws Exception {
+        pipelined.defer(packet(PacketType.STMT_CLOSE));
+        Packet cancel = packet(PacketType.STMT_METHOD);
+        pipelined.send(cancel);
+        Assert.assertNull(cancel.getDeferred());
+
+        Packet request = packet(PacketType.STMT_METHOD);
+        pipelined.write(request);
+        Assert.assertEquals(1, request.getDeferred().size());
+    }
+
+    @Test
+    public void testFlushSendsLastAsRequest() throws Exception {
+        pipelined.flush();
+        Assert.assertTrue(connector.written.isEmpty());
+
+        Packet setReadOnly = connMethod(ConnectionMsg.Method.setReadOnly);
+        Packet close = connMethod(ConnectionMsg.Method.close);
+        pipelined.defer(setReadOnly);
+        pipelined.defer(close);
+        // 延迟的连接方法以ConnectionMsg应答
+        connector.reply = ConnectionMsg.newBuilder().build();
+        pipelined.flush();
+        Assert.assertEquals(1, connector.written.size());
+        Assert.assertSame(close, connector.written.get(0));
+        Assert.assertEquals(1, close.getDeferred().size());
+        Assert.assertSame(setReadOnly, close.getDeferred().get(0));
+
+        pipelined.flush();
+        Assert.assertEquals(1, connector.written.size());
+    }
+
+    @Test
+    public void testFlushAtLimit() throws Exception {
+        for (int i = 0; i < 63; i++) {
+            pipelined.defer(packet(PacketType.STMT_METHOD));
+        }
+        Assert.assertTrue(connector.written.isEmpty());
+        pipelined.defer(packet(PacketType.STMT_CLOSE));
+        Assert.assertEquals(1, connector.written.size());
+        Packet request = connector.written.get(0);
+        Assert.assertEquals(PacketType.STMT_CLOSE, request.getType());
+        Assert.assertEquals(63, request.getDeferred().size());
+    }
+
+    @Test
+    public void testFlushThrowsErrorReply() throws Exception {
+        pipelined.defer(connMethod(ConnectionMsg.Method.setAutoCommit));
+        pipelined.defer(connMethod(ConnectionMsg.Method.close));
+        connector.reply = Ack.newBuilder().setErrorCode(1).setErrorMessage("Deferred CONN_METHOD failed").build();
+        try {
+            pipelined.flush();
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertEquals("Deferred CONN_METHOD failed", e.getMessage());
+        }
+        // 出错的调用已发送, 不会再次发送
+        connector.reply = Ack.newBuilder().build();
+        pipelined.flush();
+        Assert.assertEquals(1, connector.written.size());
+    }
+
+    @Test
+    public void testDisconnectDropsDeferred() throws Exception {
+        pipelined.defer(packet(PacketType.STMT_CLOSE));
+        pipelined.disconnect();
+        Assert.assertTrue(connector.disconnected);
+
+        Packet request = packet(PacketType.STMT_METHOD);
+        pipelined.write(request);
+        Assert.assertNull(request.getDeferred());
+    }
+
+    private static Packet packet(PacketType type) {
+        return Packet.newBuilder().incrementAndGetId().setType(type)
+                .setBody(StatementMsg.newBuilder().setId(1L).build()).build();
+    }
+
+    private static Packet connMethod(ConnectionMsg.Method method) {
+        return Packet.newBuilder().incrementAndGetId().setType(PacketType.CONN_METHOD)
+                .setBody(ConnectionMsg.newBuilder().setId(1L).setMethod(method).build()).build();
+    }
+
+    /**
+     * 记录发出的数据包, 以指定的消息应答
+     */
+    private static class RecordingConnector implements JdbcAgentConnector {
+        private final List<Packet> written = new ArrayList<>();
+        private final List<Packet> streamed = new ArrayList<>();
+        private Message reply = Ack.newBuilder().build();
+        private boolean disconnected;
+
+        public void connect() {
+        }
+
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        public void start() {
+        }
+
+        public void stop() {
+        }
+
+        public Packet write(Packet packet) {
+            written.add(packet);
+            return Packet.newBuilder(packet.getId()).setBody(reply).build();
+        }
+
+        public void send(Packet packet) {
+        }
+
+        public void defer(Packet packet) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void flush() {
+        }
+
+        public PacketStream openStream(Packet packet) {
+            streamed.add(packet);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.jdbcagent.client.jdbc;
+
+import com.jdbcagent.client.JdbcAgentConnector;
+import com.jdbcagent.client.PacketStream;
+import com.jdbcagent.core.protocol.LobMsg;
+import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.support.LobLocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+public class JdbcLobTest {
+    private final UploadConnector connector = new UploadConnector();
+
+    @Test
+    public void testBinaryInline() throws Exception {
+        byte[] bytes = bytes(16);
+        Serializable value = JdbcLob.binaryValue(connector, 1L, 16, new ByteArrayInputStream(bytes), -1);
+        Assert.assertArrayEquals(bytes, (byte[]) value);
+        Assert.assertTrue(connector.chunks.isEmpty());
+
+        // 长度限制在阈值以内时只读取指定长度
+        value = JdbcLob.binaryValue(connector, 1L, 16, new ByteArrayInputStream(bytes(64)), 10);
+        Assert.assertEquals(10, ((byte[]) value).length);
+        Assert.assertTrue(connector.chunks.isEmpty());
+
+        Assert.assertEquals(0, ((byte[]) JdbcLob.binaryValue(connector, 1L, 16, null, -1)).length);
+    }
+
+    @Test
+    public void testBinaryThresholdBoundary() throws Exception {
+        // 超过阈值一个字节时上传, 预读的一块为阈值加一
+        byte[] bytes = bytes(17);
+        LobLocator locator = (LobLocator) JdbcLob.binaryValue(connector, 1L, 16,
+                new ByteArrayInputStream(bytes), -1);
+        Assert.assertEquals(1, connector.chunks.size());
+        Assert.assertEquals(17, ((byte[]) connector.chunks.get(0)).length);
+        Assert.assertEquals(Types.BLOB, locator.getType());
+        Assert.assertEquals(17, locator.getLength());
+        Assert.assertArrayEquals(bytes, connector.bytes());
+        Assert.assertEquals(Long.valueOf(1L), connector.requests.get(0).getConnectionId());
+    }
+
+    @Test
+    public void testBinaryChunkedUpload() throws Exception {
+        byte[] bytes = bytes(JdbcLob.CHUNK_SIZE * 2 + 100);
+        LobLocator locator = (LobLocator) JdbcLob.binaryValue(connector, 1L, 16,
+                new ByteArrayInputStream(bytes), -1);
+        Assert.assertEquals(4, connector.chunks.size());
+        Assert.assertEquals(17, ((byte[]) connector.chunks.get(0)).length);
+        Assert.assertEquals(JdbcLob.CHUNK_SIZE, ((byte[]) connector.chunks.get(1)).length);
+        Assert.assertEquals(bytes.length, locator.getLength());
+        Assert.assertArrayEquals(bytes, connector.bytes());
+        // 第一块新建, 之后按id追加
+        Assert.assertNull(connector.requests.get(0).getId());
+        for (int i = 1; i < connector.requests.size(); i++) {
+            Assert.assertEquals(Long.valueOf(locator.getId()), connector.requests.get(i).getId());
+            Assert.assertNull(connector.requests.get(i).getConnectionId());
+        }
+
+        // 按指定长度截断
+        connector.reset();
+        locator = (LobLocator) JdbcLob.binaryValue(connector, 1L, 16,
+                new ByteArrayInputStream(bytes), JdbcLob.CHUNK_SIZE);
+        Assert.assertEquals(JdbcLob.CHUNK_SIZE, locator.getLength());
+        Assert.assertEquals(2, connector.chunks.size());
+    }
+
+    @Test
+    public void testCharacterThresholdBoundary() throws Exception {
+        Assert.assertEquals("abcd", JdbcLob.characterValue(connector, 1L, 4, Types.CLOB,
+                new StringReader("abcd"), -1));
+        Assert.assertTrue(connector.chunks.isEmpty());
+        Assert.assertNull(JdbcLob.characterValue(connector, 1L, 4, Types.CLOB, null, -1));
+
+        LobLocator locator = (LobLocator) JdbcLob.characterValue(connector, 1L, 4, Types.NCLOB,
+                new StringReader("abcde"), -1);
+        Assert.assertEquals(1, connector.chunks.size());
+        Assert.assertEquals("abcde", connector.string());
+        Assert.assertEquals(Types.NCLOB, locator.getType());
+        Assert.assertEquals(Integer.valueOf(Types.NCLOB), connector.requests.get(0).getType());
+    }
+
+    @Test
+    public void testCharacterSurrogatePair() throws Exception {
+        // 预读的第5个字符是代理对的高位, 移到下一块
+        String str = "abcd\uD83D\uDE00xyz";
+        LobLocator locator = (LobLocator) JdbcLob.characterValue(connector, 1L, 4, Types.CLOB,
+                new StringReader(str), -1);
+        Assert.assertEquals(2, connector.chunks.size());
+        Assert.assertEquals("abcd", connector.chunks.get(0));
+        Assert.assertEquals("\uD83D\uDE00xyz", connector.chunks.get(1));
+        Assert.assertEquals(str, connector.string());
+        Assert.assertEquals(str.length(), locator.getLength());
+
+        // 代理对跨越整块的边界
+        connector.reset();
+        StringBuilder sb = new StringBuilder("abcde");
+        while (sb.length() < 5 + JdbcLob.CHUNK_SIZE - 1) {
+            sb.append('x');
+        }
+        sb.append("\uD83D\uDE00yz");
+        str = sb.toString();
+        JdbcLob.characterValue(connector, 1L, 4, Types.CLOB, new StringReader(str), -1);
+        Assert.assertEquals(3, connector.chunks.size());
+        Assert.assertEquals(JdbcLob.CHUNK_SIZE - 1, ((String) connector.chunks.get(1)).length());
+        Assert.assertTrue(((String) connector.chunks.get(2)).startsWith("\uD83D\uDE00"));
+        Assert.assertEquals(str, connector.string());
+    }
+
+    @Test
+    public void testCharacterChunkedUpload() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < JdbcLob.CHUNK_SIZE + 10; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String str = sb.toString();
+        LobLocator locator = (LobLocator) JdbcLob.characterValue(connector, 1L, 4, Types.CLOB,
+                new StringReader(str), -1);
+        Assert.assertEquals(3, connector.chunks.size());
+        Assert.assertEquals(str, connector.string());
+        Assert.assertEquals(str.length(), locator.getLength());
+
+        connector.reset();
+        locator = (LobLocator) JdbcLob.characterValue(connector, 1L, 4, Types.CLOB,
+                new StringReader(str), 100);
+        Assert.assertEquals(100, locator.getLength());
+        Assert.assertEquals(str.substring(0, 100), connector.string());
+    }
+
+    @Test
+    public void testFree() throws Exception {
+        JdbcLob lob = (JdbcLob) JdbcLob.of(connector, new LobLocator(9L, Types.BLOB, 100));
+        Assert.assertTrue(lob instanceof JdbcBlob);
+        Assert.assertEquals(100, lob.length());
+        lob.free();
+        lob.free();
+        // 只延迟发送一次释放
+        Assert.assertEquals(1, connector.deferred.size());
+        Assert.assertEquals(PacketType.LOB_FREE, connector.deferred.get(0).getType());
+        Assert.assertEquals(Long.valueOf(9L), ((LobMsg) connector.deferred.get(0).getMessage()).getId());
+        try {
+            lob.length();
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertEquals("LOB has been freed", e.getMessage());
+        }
+        try {
+            lob.read(1, 10);
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertEquals("LOB has been freed", e.getMessage());
+        }
+        Assert.assertTrue(JdbcLob.of(connector, new LobLocator(10L, Types.NCLOB, 1)) instanceof JdbcClob);
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * 模拟服务端接收上传的块, 应答累计长度的定位符
+     */
+    private static class UploadConnector implements JdbcAgentConnector {
+        private final List<LobMsg> requests = new ArrayList<>();
+        private final List<Serializable> chunks = new ArrayList<>();
+        private final List<Packet> deferred = new ArrayList<>();
+        private long length;
+
+        void reset() {
+            requests.clear();
+            chunks.clear();
+            length = 0;
+        }
+
+        byte[] bytes() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (Serializable chunk : chunks) {
+                out.write((byte[]) chunk, 0, ((byte[]) chunk).length);
+            }
+            return out.toByteArray();
+        }
+
+        String string() {
+            StringBuilder sb = new StringBuilder();
+            for (Serializable chunk : chunks) {
+                sb.append((String) chunk);
+            }
+            return sb.toString();
+        }
+
+        public void connect() {
+        }
+
+        public void disconnect() {
+        }
+
+        public void start() {
+        }
+
+        public void stop() {
+        }
+
+        public Packet write(Packet packet) {
+            Assert.assertEquals(PacketType.LOB_WRITE, packet.getType());
+            LobMsg lobMsg = (LobMsg) packet.getMessage();
+            requests.add(lobMsg);
+            chunks.add(lobMsg.getData());
+            Serializable data = lobMsg.getData();
+            length += data instanceof byte[] ? ((byte[]) data).length : ((String) data).length();
+            int type = requests.get(0).getType();
+            return Packet.newBuilder(packet.getId())
+                    .setBody(LobMsg.newBuilder().setLocator(new LobLocator(5L, type, length)).build())
+                    .build();
+        }
+
+        public void send(Packet packet) {
+        }
+
+        public void defer(Packet packet) {
+            deferred.add(packet);
+        }
+
+        public void flush() {
+        }
+
+        public PacketStream openStream(Packet packet) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.jdbcagent.client.jdbc;
+
+import com.jdbcagent.core.protocol.DatabaseMetaDataMsg;
+import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.support.ColumnarPage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+
+public class MetaDataCacheTest {
+
+    @Test
+    public void testShared() {
+        Assert.assertNull(MetaDataCache.shared("jdbc:agent:shared", "user", 0));
+        MetaDataCache cache = MetaDataCache.shared("jdbc:agent:shared", "user", 1000);
+        Assert.assertSame(cache, MetaDataCache.shared("jdbc:agent:shared", "user", 1000));
+        Assert.assertNotSame(cache, MetaDataCache.shared("jdbc:agent:shared", "other", 1000));
+        Assert.assertNotSame(cache, MetaDataCache.shared("jdbc:agent:other", "user", 1000));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        MetaDataCache cache = MetaDataCache.shared("jdbc:agent:expiry", "user", 100);
+        String key = MetaDataCache.key(null, null, DatabaseMetaDataMsg.Method.getUserName, new Serializable[0]);
+        cache.put(key, "user");
+        Assert.assertEquals("user", cache.get(key));
+        Thread.sleep(200);
+        Assert.assertNull(cache.get(key));
+
+        // 过期后重新写入
+        cache.put(key, "user2");
+        Assert.assertEquals("user2", cache.get(key));
+    }
+
+    @Test
+    public void testInvalidate() {
+        MetaDataCache cache = MetaDataCache.shared("jdbc:agent:invalidate", "user", 60000);
+        MetaDataCache other = MetaDataCache.shared("jdbc:agent:invalidate", "other", 60000);
+        cache.put("a", 1);
+        other.put("a", 2);
+
+        cache.invalidate();
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(2, other.get("a"));
+
+        cache.put("a", 1);
+        MetaDataCache.invalidateAll();
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(other.get("a"));
+    }
+
+    @Test
+    public void testResultSetOnlyWhenLast() throws Exception {
+        MetaDataCache cache = MetaDataCache.shared("jdbc:agent:resultset", "user", 60000);
+        cache.put("none", ResultSetMsg.newBuilder().build());
+        Assert.assertNull(cache.get("none"));
+
+        ResultSetMsg partial = ResultSetMsg.newBuilder().setPage(page(2, 1)).build();
+        Assert.assertFalse(partial.getPage().isLast());
+        cache.put("partial", partial);
+        Assert.assertNull(cache.get("partial"));
+
+        ResultSetMsg complete = ResultSetMsg.newBuilder().setPage(page(2, 10)).build();
+        Assert.assertTrue(complete.getPage().isLast());
+        cache.put("complete", complete);
+        Assert.assertSame(complete, cache.get("complete"));
+    }
+
+    @Test
+    public void testEviction() {
+        MetaDataCache cache = MetaDataCache.shared("jdbc:agent:eviction", "user", 60000);
+        cache.put("first", 0);
+        for (int i = 1; i < MetaDataCache.DEFAULT_MAX_ENTRIES; i++) {
+            cache.put("key" + i, i);
+        }
+        // 访问后不再是最久未用的
+        Assert.assertEquals(0, cache.get("first"));
+        cache.put("overflow", -1);
+        Assert.assertEquals(0, cache.get("first"));
+        Assert.assertNull(cache.get("key1"));
+        Assert.assertEquals(-1, cache.get("overflow"));
+    }
+
+    @Test
+    public void testKey() {
+        DatabaseMetaDataMsg.Method method = DatabaseMetaDataMsg.Method.getTables;
+        String key = MetaDataCache.key("db", "public", method,
+                new Serializable[]{null, null, "T%", new String[]{"TABLE", "VIEW"}});
+        Assert.assertEquals(key, MetaDataCache.key("db", "public", method,
+                new Serializable[]{null, null, "T%", new String[]{"TABLE", "VIEW"}}));
+
+        // 当前catalog/schema是key的一部分
+        Assert.assertNotEquals(key, MetaDataCache.key("db2", "public", method,
+                new Serializable[]{null, null, "T%", new String[]{"TABLE", "VIEW"}}));
+        Assert.assertNotEquals(key, MetaDataCache.key("db", null, method,
+                new Serializable[]{null, null, "T%", new String[]{"TABLE", "VIEW"}}));
+        // 数组按内容区分
+        Assert.assertNotEquals(key, MetaDataCache.key("db", "public", method,
+                new Serializable[]{null, null, "T%", new String[]{"TABLE"}}));
+        // null 与字符串"null"不同
+        Assert.assertNotEquals(MetaDataCache.key(null, null, method, new Serializable[]{null}),
+                MetaDataCache.key(null, null, method, new Serializable[]{"null"}));
+        Assert.assertNotEquals(MetaDataCache.key(null, null, method, new Serializable[]{"a", null}),
+                MetaDataCache.key(null, null, method, new Serializable[]{null, "a"}));
+        Assert.assertNotEquals(key, MetaDataCache.key("db", "public", DatabaseMetaDataMsg.Method.getColumns,
+                new Serializable[]{null, null, "T%", new String[]{"TABLE", "VIEW"}}));
+        Assert.assertEquals(MetaDataCache.key(null, null, DatabaseMetaDataMsg.Method.getTypeInfo,
+                new Serializable[]{new int[]{1, 2}}),
+                MetaDataCache.key(null, null, DatabaseMetaDataMsg.Method.getTypeInfo,
+                        new Serializable[]{new int[]{1, 2}}));
+    }
+
+    @Test
+    public void testIsDdl() {
+        Assert.assertTrue(MetaDataCache.isDdl("create table t (id int)"));
+        Assert.assertTrue(MetaDataCache.isDdl("  \n\tALTER TABLE t ADD c INT"));
+        Assert.assertTrue(MetaDataCache.isDdl("Drop view v"));
+        Assert.assertTrue(MetaDataCache.isDdl("rename table a to b"));
+        Assert.assertTrue(MetaDataCache.isDdl("truncate table t"));
+        Assert.assertTrue(MetaDataCache.isDdl("comment on table t is 'x'"));
+        Assert.assertTrue(MetaDataCache.isDdl("create"));
+
+        Assert.assertFalse(MetaDataCache.isDdl(null));
+        Assert.assertFalse(MetaDataCache.isDdl(""));
+        Assert.assertFalse(MetaDataCache.isDdl("   "));
+        Assert.assertFalse(MetaDataCache.isDdl("select * from created"));
+        Assert.assertFalse(MetaDataCache.isDdl("insert into t values (1)"));
+        Assert.assertFalse(MetaDataCache.isDdl("update t set dropped = 1"));
+        Assert.assertFalse(MetaDataCache.isDdl("creates"));
+        Assert.assertFalse(MetaDataCache.isDdl("/* create */ select 1"));
+    }
+
+    /**
+     * 从只有rows行、没有列的结果集装填最多size行的分页
+     */
+    private static ColumnarPage page(final int rows, int size) throws Exception {
+        ResultSet resultSet = (ResultSet) Proxy.newProxyInstance(MetaDataCacheTest.class.getClassLoader(),
+                new Class[]{ResultSet.class}, new InvocationHandler() {
+                    private int row;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("next")) {
+                            return row++ < rows;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return ColumnarPage.populate(resultSet, new byte[0], size);
+    }
+}
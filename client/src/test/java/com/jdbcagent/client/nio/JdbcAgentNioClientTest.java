@@ -0,0 +1,125 @@
+package com.jdbcagent.client.nio;
+
+import com.jdbcagent.core.protocol.Frames;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+public class JdbcAgentNioClientTest {
+    private final ByteBuffer header = ByteBuffer.allocate(Frames.HEADER_LENGTH);
+
+    @Test
+    public void testExactMaxFrameLength() throws IOException {
+        byte[] wire = write(body(Frames.MAX_FRAME_LENGTH));
+        Assert.assertEquals(Frames.HEADER_LENGTH + Frames.MAX_FRAME_LENGTH, wire.length);
+        int first = ByteBuffer.wrap(wire).getInt(0);
+        Assert.assertFalse(Frames.hasMore(first));
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, Frames.length(first));
+
+        Assert.assertArrayEquals(body(Frames.MAX_FRAME_LENGTH), read(wire, Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void testSplitAboveMaxFrameLength() throws IOException {
+        int length = Frames.MAX_FRAME_LENGTH + 1;
+        byte[] wire = write(body(length));
+        Assert.assertEquals(2 * Frames.HEADER_LENGTH + length, wire.length);
+        int first = ByteBuffer.wrap(wire).getInt(0);
+        Assert.assertTrue(Frames.hasMore(first));
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, Frames.length(first));
+        int second = ByteBuffer.wrap(wire).getInt(Frames.HEADER_LENGTH + Frames.MAX_FRAME_LENGTH);
+        Assert.assertFalse(Frames.hasMore(second));
+        Assert.assertEquals(1, Frames.length(second));
+
+        Assert.assertArrayEquals(body(length), read(wire, Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void testReassembleFragments() throws IOException {
+        int length = Frames.MAX_FRAME_LENGTH * 3 + 17;
+        byte[] wire = write(body(length));
+        Assert.assertEquals(4 * Frames.HEADER_LENGTH + length, wire.length);
+        Assert.assertArrayEquals(body(length), read(wire, Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void testEmptyBody() throws IOException {
+        byte[] wire = write(new byte[0]);
+        Assert.assertEquals(Frames.HEADER_LENGTH, wire.length);
+        Assert.assertNull(read(wire, Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void testRejectBeforeBodyBuffered() throws IOException {
+        ByteBuffer wire = ByteBuffer.allocate(Frames.HEADER_LENGTH);
+        wire.putInt(0, Frames.header(1001, false));
+        // 只有包头, 包体尚未到达, 若先读包体会因数据结束而失败
+        try {
+            read(wire.array(), 1000);
+            Assert.fail();
+        } catch (ProtocolException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejectFragmentsAboveMaxMessageLength() throws IOException {
+        byte[] wire = write(body(Frames.MAX_FRAME_LENGTH + 101));
+        // 截掉第二帧的包体, 只留包头
+        byte[] truncated = new byte[2 * Frames.HEADER_LENGTH + Frames.MAX_FRAME_LENGTH];
+        System.arraycopy(wire, 0, truncated, 0, truncated.length);
+        try {
+            read(truncated, Frames.MAX_FRAME_LENGTH + 100);
+            Assert.fail();
+        } catch (ProtocolException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejectFrameAboveMaxFrameLength() throws IOException {
+        ByteBuffer wire = ByteBuffer.allocate(Frames.HEADER_LENGTH);
+        wire.putInt(0, Frames.header(Frames.MAX_FRAME_LENGTH + 1, true));
+        try {
+            read(wire.array(), Frames.DEFAULT_MAX_MESSAGE_LENGTH);
+            Assert.fail();
+        } catch (ProtocolException e) {
+            // expected
+        }
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) (i % 251);
+        }
+        return body;
+    }
+
+    /**
+     * 模拟写出: 数据包前预留包头, 经分片写出
+     */
+    private static byte[] write(byte[] body) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(Frames.HEADER_LENGTH + body.length);
+        frame.position(Frames.HEADER_LENGTH);
+        frame.put(body);
+        frame.flip();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JdbcAgentNioClient.writeFrames(Channels.newChannel(out), frame);
+        return out.toByteArray();
+    }
+
+    private byte[] read(byte[] wire, int maxMessageLength) throws IOException {
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(wire));
+        byte[] body = JdbcAgentNioClient.readFrames(in, header, maxMessageLength);
+        Assert.assertEquals(-1, in.read(ByteBuffer.allocate(1)));
+        return body;
+    }
+}
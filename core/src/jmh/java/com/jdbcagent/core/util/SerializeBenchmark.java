@@ -0,0 +1,139 @@
+package com.jdbcagent.core.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.protocol.PreparedStatementMsg;
+import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.protocol.StatementMsg;
+import com.jdbcagent.core.support.ColumnarPage;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 序列化基准测试, 对比每次新建 ByteArrayOutputStream 的旧方式和线程缓冲的新方式
+ * <p>
+ * 运行: mvn -Pbenchmark test-compile, 然后以 test classpath 执行 org.openjdk.jmh.Main SerializeBenchmark
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+
+    @Param({"statement", "prepared", "page"})
+    public String type;                 // 数据包类型
+
+    private Packet packet;              // 待序列化的数据包
+
+    private Kryo kryo;                  // 旧方式使用的kryo
+
+    @Setup
+    public void setup() throws Exception {
+        kryo = new Kryo();
+        kryo.setReferences(false);
+        KryoRegistry.register(kryo);
+
+        switch (type) {
+            case "statement":
+                packet = Packet.newBuilder().incrementAndGetId()
+                        .setType(PacketType.STMT_METHOD)
+                        .setBody(StatementMsg.newBuilder().setId(1L)
+                                .setMethod(StatementMsg.Method.executeQuery)
+                                .setParams(new Serializable[]{"select id, name, amount from t_order where id = 1"})
+                                .build())
+                        .build();
+                break;
+            case "prepared":
+                packet = Packet.newBuilder().incrementAndGetId()
+                        .setType(PacketType.PRE_STMT_METHOD)
+                        .setBody(PreparedStatementMsg.newBuilder().setId(1L)
+                                .setMethod(PreparedStatementMsg.Method.executeUpdate)
+                                .setParams(new Serializable[]{1L, "name", 10.5D})
+                                .build())
+                        .build();
+                break;
+            default:
+                packet = Packet.newBuilder().incrementAndGetId()
+                        .setType(PacketType.RS_FETCH_ROWS)
+                        .setBody(ResultSetMsg.newBuilder().setId(1L).setPage(page(500)).build())
+                        .build();
+        }
+    }
+
+    /**
+     * 构造一个 id/name/amount/created 四列的结果分页
+     */
+    private static ColumnarPage page(int rows) throws Exception {
+        RowSetMetaData metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(4);
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.DOUBLE, Types.TIMESTAMP};
+        String[] names = {"id", "name", "amount", "created"};
+        for (int i = 0; i < types.length; i++) {
+            metaData.setColumnType(i + 1, types[i]);
+            metaData.setColumnName(i + 1, names[i]);
+        }
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        for (int i = 0; i < rows; i++) {
+            rowSet.moveToInsertRow();
+            rowSet.updateLong(1, i);
+            rowSet.updateString(2, "name-" + (i % 20));
+            rowSet.updateDouble(3, i * 1.5D);
+            rowSet.updateTimestamp(4, new Timestamp(1531180800000L + i * 1000L));
+            rowSet.insertRow();
+        }
+        rowSet.moveToCurrentRow();
+        rowSet.beforeFirst();
+        byte[] kinds = {ColumnarPage.KIND_LONG, ColumnarPage.KIND_STRING, ColumnarPage.KIND_DOUBLE,
+                ColumnarPage.KIND_TIMESTAMP};
+        return ColumnarPage.populate(rowSet, kinds, rows);
+    }
+
+    /**
+     * 旧方式: 每次新建 ByteArrayOutputStream 和 Output
+     */
+    @Benchmark
+    public byte[] byteArrayOutputStream() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Output output = new Output(baos);
+        kryo.writeClassAndObject(output, packet);
+        output.flush();
+        byte[] b = baos.toByteArray();
+        output.close();
+        return b;
+    }
+
+    /**
+     * 新方式: 线程缓冲序列化为二进制数组
+     */
+    @Benchmark
+    public byte[] threadLocalOutput() {
+        return SerializeUtil.serialize(packet);
+    }
+
+    /**
+     * 新方式: 线程缓冲序列化为预留包头的网络帧
+     */
+    @Benchmark
+    public ByteBuffer threadLocalFrame() {
+        return SerializeUtil.serialize(packet, 4);
+    }
+}
@@ -18,6 +18,7 @@ public class CallableStatementMsg extends Message implements Serializable {
     private Method method;
     private Serializable[] params;
     private ParamType paramType;
+    private Integer batchSize;
     private Serializable response;
 
     public static Builder newBuilder() {
@@ -72,6 +73,14 @@ public class CallableStatementMsg extends Message implements Serializable {
         this.paramType = paramType;
     }
 
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public Serializable getResponse() {
         return response;
     }
@@ -117,6 +126,11 @@ public class CallableStatementMsg extends Message implements Serializable {
             return this;
         }
 
+        public Builder setBatchSize(Integer batchSize) {
+            callableStatementMsg.setBatchSize(batchSize);
+            return this;
+        }
+
         public Builder setResponse(Serializable response) {
             callableStatementMsg.setResponse(response);
             return this;
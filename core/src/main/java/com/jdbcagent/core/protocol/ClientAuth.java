@@ -9,6 +9,8 @@ public class ClientAuth extends Message implements Serializable {
     private String password;
     private int netReadTimeout = 5 * 60 * 1000;
     private int netWriteTimeout = 5 * 60 * 1000;
+    private String compression;         // 请求时为客户端支持的压缩算法, 应答时为协商结果
+    private int compressThreshold;      // 应答时为压缩阈值
 
     public static Builder newBuilder() {
         return new Builder(new ClientAuth());
@@ -46,6 +48,22 @@ public class ClientAuth extends Message implements Serializable {
         this.netWriteTimeout = netWriteTimeout;
     }
 
+    public String getCompression() {
+        return compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     public static class Builder {
         private ClientAuth clientAuth;
 
@@ -73,6 +91,16 @@ public class ClientAuth extends Message implements Serializable {
             return this;
         }
 
+        public Builder setCompression(String compression) {
+            clientAuth.setCompression(compression);
+            return this;
+        }
+
+        public Builder setCompressThreshold(int compressThreshold) {
+            clientAuth.setCompressThreshold(compressThreshold);
+            return this;
+        }
+
         public ClientAuth build() {
             return clientAuth;
         }
@@ -1,6 +1,7 @@
 package com.jdbcagent.core.protocol;
 
 import com.jdbcagent.core.support.serial.SerialConnection;
+import com.jdbcagent.core.support.serial.SerialDatabaseMetaData;
 
 import java.io.Serializable;
 
@@ -18,6 +19,7 @@ public class ConnectionMsg extends Message implements Serializable {
     private String username;
     private String password;
     private SerialConnection serialConnection;
+    private SerialDatabaseMetaData serialDatabaseMetaData;
     private Serializable[] params;
     private Serializable response;
     private Method method;
@@ -91,6 +93,14 @@ public class ConnectionMsg extends Message implements Serializable {
         this.serialConnection = serialConnection;
     }
 
+    public SerialDatabaseMetaData getSerialDatabaseMetaData() {
+        return serialDatabaseMetaData;
+    }
+
+    public void setSerialDatabaseMetaData(SerialDatabaseMetaData serialDatabaseMetaData) {
+        this.serialDatabaseMetaData = serialDatabaseMetaData;
+    }
+
     public String getWarnings() {
         return warnings;
     }
@@ -146,6 +156,11 @@ public class ConnectionMsg extends Message implements Serializable {
             return this;
         }
 
+        public Builder setSerialDatabaseMetaData(SerialDatabaseMetaData serialDatabaseMetaData) {
+            connectMsg.setSerialDatabaseMetaData(serialDatabaseMetaData);
+            return this;
+        }
+
         public Builder setWarnings(String warnings) {
             connectMsg.setWarnings(warnings);
             return this;
@@ -192,6 +207,7 @@ public class ConnectionMsg extends Message implements Serializable {
         setSchema,
         getSchema,
         getNetworkTimeout,
-        release
+        release,
+        close
     }
 }
@@ -0,0 +1,58 @@
+package com.jdbcagent.core.protocol;
+
+/**
+ * JDBC-Agent 数据包分帧
+ * <p>
+ * 每帧以4字节包头开头, 低31位为本帧包体长度, 最高位表示后面还有同一数据包的分片.
+ * 包体超过 {@link #MAX_FRAME_LENGTH} 的数据包拆成多帧连续发送, 接收方按帧长度上限校验后拼接,
+ * 拼接后的总长度不能超过接收方配置的消息长度上限
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class Frames {
+    public static final int HEADER_LENGTH = 4;                              // 包头长度
+
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;                 // 单帧包体的最大长度
+
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 64 * 1024 * 1024;  // 默认的消息(拼接后的包体)最大长度
+
+    private static final int MORE_FRAGMENTS = 0x80000000;                   // 包头最高位, 后面还有分片
+
+    /**
+     * 生成包头
+     *
+     * @param length 本帧包体长度
+     * @param more   后面是否还有分片
+     * @return 包头
+     */
+    public static int header(int length, boolean more) {
+        return more ? length | MORE_FRAGMENTS : length;
+    }
+
+    /**
+     * @param header 包头
+     * @return 本帧包体长度
+     */
+    public static int length(int header) {
+        return header & ~MORE_FRAGMENTS;
+    }
+
+    /**
+     * @param header 包头
+     * @return 后面是否还有分片
+     */
+    public static boolean hasMore(int header) {
+        return (header & MORE_FRAGMENTS) != 0;
+    }
+
+    /**
+     * 包体需要拆分的帧数
+     *
+     * @param length 包体长度
+     * @return 帧数, 至少为1
+     */
+    public static int frameCount(int length) {
+        return Math.max(1, (length + MAX_FRAME_LENGTH - 1) / MAX_FRAME_LENGTH);
+    }
+}
@@ -0,0 +1,133 @@
+package com.jdbcagent.core.protocol;
+
+import com.jdbcagent.core.support.LobLocator;
+
+import java.io.Serializable;
+
+/**
+ * JDBC-Agent protocol LobMsg
+ * <p>
+ * 大对象的分块读写: 读取时指定位置和长度, 返回byte[]或String块;
+ * 写入时第一块不带id, 由服务端在指定连接下新建大对象, 之后的块带上返回的id依次追加
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class LobMsg extends Message implements Serializable {
+    private static final long serialVersionUID = -6377516300927716532L;
+
+    private Long id;
+    private Long connectionId;
+    private Integer type;
+    private Long position;
+    private Integer length;
+    private Serializable data;
+    private LobLocator locator;
+
+    public static Builder newBuilder() {
+        return new Builder(new LobMsg());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getConnectionId() {
+        return connectionId;
+    }
+
+    public void setConnectionId(Long connectionId) {
+        this.connectionId = connectionId;
+    }
+
+    public Integer getType() {
+        return type;
+    }
+
+    public void setType(Integer type) {
+        this.type = type;
+    }
+
+    public Long getPosition() {
+        return position;
+    }
+
+    public void setPosition(Long position) {
+        this.position = position;
+    }
+
+    public Integer getLength() {
+        return length;
+    }
+
+    public void setLength(Integer length) {
+        this.length = length;
+    }
+
+    public Serializable getData() {
+        return data;
+    }
+
+    public void setData(Serializable data) {
+        this.data = data;
+    }
+
+    public LobLocator getLocator() {
+        return locator;
+    }
+
+    public void setLocator(LobLocator locator) {
+        this.locator = locator;
+    }
+
+    public static class Builder {
+        private LobMsg lobMsg;
+
+        public Builder(LobMsg lobMsg) {
+            this.lobMsg = lobMsg;
+        }
+
+        public Builder setId(Long id) {
+            lobMsg.setId(id);
+            return this;
+        }
+
+        public Builder setConnectionId(Long connectionId) {
+            lobMsg.setConnectionId(connectionId);
+            return this;
+        }
+
+        public Builder setType(Integer type) {
+            lobMsg.setType(type);
+            return this;
+        }
+
+        public Builder setPosition(Long position) {
+            lobMsg.setPosition(position);
+            return this;
+        }
+
+        public Builder setLength(Integer length) {
+            lobMsg.setLength(length);
+            return this;
+        }
+
+        public Builder setData(Serializable data) {
+            lobMsg.setData(data);
+            return this;
+        }
+
+        public Builder setLocator(LobLocator locator) {
+            lobMsg.setLocator(locator);
+            return this;
+        }
+
+        public LobMsg build() {
+            return lobMsg;
+        }
+    }
+}
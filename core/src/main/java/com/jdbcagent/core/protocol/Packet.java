@@ -4,6 +4,7 @@ import com.jdbcagent.core.util.SerializeUtil;
 
 import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -15,12 +16,15 @@ import java.util.concurrent.atomic.AtomicLong;
 public class Packet implements Serializable {
     private static final long serialVersionUID = 3848315821658610391L;
 
+    public static final int PROTOCOL_VERSION = 14;   // 协议版本, 类注册表或序列化格式变化时升级
+
     private static final AtomicLong packetId = new AtomicLong();
 
     private Long id;
     private Message message;
     private PacketType type;
-    private int version = 1;
+    private int version = PROTOCOL_VERSION;
+    private List<Packet> deferred;  // 随本请求一起发送、在本请求之前按顺序执行的无返回值调用
 
 
     public Packet() {
@@ -78,6 +82,14 @@ public class Packet implements Serializable {
         this.version = version;
     }
 
+    public List<Packet> getDeferred() {
+        return deferred;
+    }
+
+    public void setDeferred(List<Packet> deferred) {
+        this.deferred = deferred;
+    }
+
     public Message getBody() throws SQLException {
         if (message == null) {
             return null;
@@ -140,6 +152,11 @@ public class Packet implements Serializable {
             return this;
         }
 
+        public Builder setDeferred(List<Packet> deferred) {
+            packet.setDeferred(deferred);
+            return this;
+        }
+
         public Packet build() {
             return packet;
         }
@@ -169,6 +186,11 @@ public class Packet implements Serializable {
 
         RS_CLOSE,
         RS_META_DATA,
-        RS_FETCH_ROWS
+        RS_FETCH_ROWS,
+        RS_STREAM,
+
+        LOB_READ,
+        LOB_WRITE,
+        LOB_FREE
     }
 }
@@ -1,6 +1,7 @@
 package com.jdbcagent.core.protocol;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * JDBC-Agent protocol PreparedStatementMsg
@@ -17,6 +18,10 @@ public class PreparedStatementMsg extends Message implements Serializable {
     private Serializable[] params;
     private ParamType paramType;
     private Serializable response;
+    private Long connectionId;
+    private Serializable[] prepareParams;
+    private Integer batchSize;
+    private List<StatementMsg> statementMethods;
 
     public static Builder newBuilder() {
         return new Builder(new PreparedStatementMsg());
@@ -70,6 +75,38 @@ public class PreparedStatementMsg extends Message implements Serializable {
         this.response = response;
     }
 
+    public Long getConnectionId() {
+        return connectionId;
+    }
+
+    public void setConnectionId(Long connectionId) {
+        this.connectionId = connectionId;
+    }
+
+    public Serializable[] getPrepareParams() {
+        return prepareParams;
+    }
+
+    public void setPrepareParams(Serializable[] prepareParams) {
+        this.prepareParams = prepareParams;
+    }
+
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public List<StatementMsg> getStatementMethods() {
+        return statementMethods;
+    }
+
+    public void setStatementMethods(List<StatementMsg> statementMethods) {
+        this.statementMethods = statementMethods;
+    }
+
     public static class Builder {
         private PreparedStatementMsg preparedStatementMsg;
 
@@ -107,6 +144,26 @@ public class PreparedStatementMsg extends Message implements Serializable {
             return this;
         }
 
+        public Builder setConnectionId(Long connectionId) {
+            preparedStatementMsg.setConnectionId(connectionId);
+            return this;
+        }
+
+        public Builder setPrepareParams(Serializable[] prepareParams) {
+            preparedStatementMsg.setPrepareParams(prepareParams);
+            return this;
+        }
+
+        public Builder setBatchSize(Integer batchSize) {
+            preparedStatementMsg.setBatchSize(batchSize);
+            return this;
+        }
+
+        public Builder setStatementMethods(List<StatementMsg> statementMethods) {
+            preparedStatementMsg.setStatementMethods(statementMethods);
+            return this;
+        }
+
         public PreparedStatementMsg build() {
             return preparedStatementMsg;
         }
@@ -117,7 +174,8 @@ public class PreparedStatementMsg extends Message implements Serializable {
         executeUpdate,
         clearParameters,
         execute,
-        addBatch
+        addBatch,
+        executeBatch
     }
 
     public enum ParamType {
@@ -1,5 +1,8 @@
 package com.jdbcagent.core.protocol;
 
+import com.jdbcagent.core.support.ColumnarPage;
+import com.jdbcagent.core.support.SerialRowSetMetaDataImpl;
+
 import javax.sql.RowSet;
 import java.io.Serializable;
 
@@ -14,7 +17,10 @@ public class ResultSetMsg extends Message implements Serializable {
 
     private Long id;
     private Integer batchSize;
+    private Integer credits;
     private RowSet rowSet;
+    private ColumnarPage page;
+    private SerialRowSetMetaDataImpl metaData;
 
     public static Builder newBuilder() {
         return new Builder(new ResultSetMsg());
@@ -36,6 +42,22 @@ public class ResultSetMsg extends Message implements Serializable {
         this.rowSet = rowSet;
     }
 
+    public ColumnarPage getPage() {
+        return page;
+    }
+
+    public void setPage(ColumnarPage page) {
+        this.page = page;
+    }
+
+    public SerialRowSetMetaDataImpl getMetaData() {
+        return metaData;
+    }
+
+    public void setMetaData(SerialRowSetMetaDataImpl metaData) {
+        this.metaData = metaData;
+    }
+
     public Integer getBatchSize() {
         return batchSize;
     }
@@ -44,6 +66,14 @@ public class ResultSetMsg extends Message implements Serializable {
         this.batchSize = batchSize;
     }
 
+    public Integer getCredits() {
+        return credits;
+    }
+
+    public void setCredits(Integer credits) {
+        this.credits = credits;
+    }
+
     public static class Builder {
         private ResultSetMsg resultSetMsg;
 
@@ -61,11 +91,26 @@ public class ResultSetMsg extends Message implements Serializable {
             return this;
         }
 
+        public Builder setPage(ColumnarPage page) {
+            resultSetMsg.setPage(page);
+            return this;
+        }
+
+        public Builder setMetaData(SerialRowSetMetaDataImpl metaData) {
+            resultSetMsg.setMetaData(metaData);
+            return this;
+        }
+
         public Builder setBatchSize(Integer batchSize) {
             resultSetMsg.setBatchSize(batchSize);
             return this;
         }
 
+        public Builder setCredits(Integer credits) {
+            resultSetMsg.setCredits(credits);
+            return this;
+        }
+
         public ResultSetMsg build() {
             return resultSetMsg;
         }
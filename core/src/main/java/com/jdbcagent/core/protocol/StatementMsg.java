@@ -15,6 +15,7 @@ public class StatementMsg extends Message implements Serializable {
     private String sql;
     private Method method;
     private Serializable[] params;
+    private Integer batchSize;
     private Serializable response;
 
     public static Builder newBuilder() {
@@ -53,6 +54,14 @@ public class StatementMsg extends Message implements Serializable {
         this.params = params;
     }
 
+    public Integer getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(Integer batchSize) {
+        this.batchSize = batchSize;
+    }
+
     public Serializable getResponse() {
         return response;
     }
@@ -88,6 +97,11 @@ public class StatementMsg extends Message implements Serializable {
             return this;
         }
 
+        public Builder setBatchSize(Integer batchSize) {
+            statementMsg.setBatchSize(batchSize);
+            return this;
+        }
+
         public Builder setResponse(Serializable response) {
             statementMsg.setResponse(response);
             return this;
@@ -0,0 +1,920 @@
+package com.jdbcagent.core.support;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.jdbcagent.core.util.SerializeUtil;
+
+import javax.sql.rowset.serial.SerialArray;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import javax.sql.rowset.serial.SerialStruct;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JDBC-Agent 按列存储的结果集分页
+ * <p>
+ * 每列按类型保存为基本类型数组, null值用位图表示, 字符串列按字典编码,
+ * 其它类型按对象保存。服务端直接通过ResultSet的get方法装填, 客户端按行列下标读取
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class ColumnarPage implements KryoSerializable, Serializable {
+    private static final long serialVersionUID = -3519036524513823218L;
+
+    public static final byte KIND_OBJECT = 0;       // 任意对象
+    public static final byte KIND_INT = 1;          // int
+    public static final byte KIND_LONG = 2;         // long
+    public static final byte KIND_DOUBLE = 3;       // double
+    public static final byte KIND_FLOAT = 4;        // float
+    public static final byte KIND_BOOLEAN = 5;      // boolean
+    public static final byte KIND_STRING = 6;       // 字典编码的字符串
+    public static final byte KIND_TIMESTAMP = 7;    // 毫秒数 + 纳秒
+    public static final byte KIND_DATE = 8;         // 毫秒数
+    public static final byte KIND_TIME = 9;         // 毫秒数
+
+    private static final int INITIAL_CAPACITY = 64; // 列数组初始容量
+
+    private byte[] kinds;                           // 每列的存储类型
+
+    private int rowCount;                           // 行数
+
+    private boolean last;                           // 是否已读到结果集末尾
+
+    private Object[] columns;                       // 每列的数据数组
+
+    private long[][] nulls;                         // 每列的null位图, 没有null时为null
+
+    private String[][] dictionaries;                // 字符串列的字典
+
+    private int[][] nanos;                          // timestamp列的纳秒
+
+    private transient byte[] encoded;               // 预先编码的数据
+
+    private transient LobConverter lobConverter;    // 装填时的大对象转换, 为null时整体序列化
+
+    /**
+     * 大对象转换
+     * <p>
+     * 服务端装填时把驱动的Blob/Clob转为可传输的值, 客户端收到分页后把定位符转为可分块读取的对象
+     */
+    public interface LobConverter {
+        /**
+         * @param lob 大对象或定位符
+         * @return 转换后的值
+         * @throws SQLException
+         */
+        Object convert(Object lob) throws SQLException;
+    }
+
+    public ColumnarPage() {
+    }
+
+    /**
+     * 根据结果集元数据确定每列的存储类型
+     *
+     * @param rsmd 结果集元数据
+     * @return 每列的存储类型
+     * @throws SQLException
+     */
+    public static byte[] columnKinds(ResultSetMetaData rsmd) throws SQLException {
+        int columnCount = rsmd.getColumnCount();
+        byte[] kinds = new byte[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            String className;
+            try {
+                className = rsmd.getColumnClassName(i);
+            } catch (SQLException e) {
+                className = null;
+            }
+            kinds[i - 1] = kindOf(className);
+        }
+        return kinds;
+    }
+
+    private static byte kindOf(String className) {
+        if (className == null) {
+            return KIND_OBJECT;
+        }
+        switch (className) {
+            case "java.lang.Integer":
+                return KIND_INT;
+            case "java.lang.Long":
+                return KIND_LONG;
+            case "java.lang.Double":
+                return KIND_DOUBLE;
+            case "java.lang.Float":
+                return KIND_FLOAT;
+            case "java.lang.Boolean":
+                return KIND_BOOLEAN;
+            case "java.lang.String":
+                return KIND_STRING;
+            case "java.sql.Timestamp":
+                return KIND_TIMESTAMP;
+            case "java.sql.Date":
+                return KIND_DATE;
+            case "java.sql.Time":
+                return KIND_TIME;
+            default:
+                return KIND_OBJECT;
+        }
+    }
+
+    /**
+     * 从结果集的当前位置读取最多size行装填分页
+     *
+     * @param resultSet 结果集
+     * @param kinds     每列的存储类型, 见 {@link #columnKinds(ResultSetMetaData)}
+     * @param size      最大行数
+     * @return 分页
+     * @throws SQLException
+     */
+    public static ColumnarPage populate(ResultSet resultSet, byte[] kinds, int size)
+            throws SQLException {
+        return populate(resultSet, kinds, size, null);
+    }
+
+    /**
+     * 从结果集的当前位置读取最多size行装填分页, Blob/Clob由转换器处理
+     *
+     * @param resultSet    结果集
+     * @param kinds        每列的存储类型, 见 {@link #columnKinds(ResultSetMetaData)}
+     * @param size         最大行数
+     * @param lobConverter 大对象转换, 为null时转为SerialBlob/SerialClob
+     * @return 分页
+     * @throws SQLException
+     */
+    public static ColumnarPage populate(ResultSet resultSet, byte[] kinds, int size, LobConverter lobConverter)
+            throws SQLException {
+        int columnCount = kinds.length;
+        ColumnarPage page = new ColumnarPage();
+        page.kinds = kinds;
+        page.lobConverter = lobConverter;
+        page.columns = new Object[columnCount];
+        page.nulls = new long[columnCount][];
+        page.dictionaries = new String[columnCount][];
+        page.nanos = new int[columnCount][];
+
+        int capacity = Math.max(1, Math.min(size, INITIAL_CAPACITY));
+        StringDictionary[] dictionaryBuilders = new StringDictionary[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            page.columns[i] = newColumn(kinds[i], capacity);
+            if (kinds[i] == KIND_TIMESTAMP) {
+                page.nanos[i] = new int[capacity];
+            } else if (kinds[i] == KIND_STRING) {
+                dictionaryBuilders[i] = new StringDictionary();
+            }
+        }
+
+        int row = 0;
+        while (row < size && resultSet.next()) {
+            if (row == capacity) {
+                capacity = (int) Math.min((long) capacity * 2, size);
+                page.grow(capacity);
+            }
+            for (int i = 0; i < columnCount; i++) {
+                page.readColumn(resultSet, i, row, dictionaryBuilders[i]);
+            }
+            row++;
+        }
+        page.rowCount = row;
+        page.last = row < size;
+        page.lobConverter = null;
+
+        for (int i = 0; i < columnCount; i++) {
+            if (dictionaryBuilders[i] != null) {
+                page.dictionaries[i] = dictionaryBuilders[i].values.toArray(new String[0]);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 字符串字典, 仅在装填时使用
+     */
+    private static class StringDictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+
+    private static Object newColumn(byte kind, int capacity) {
+        switch (kind) {
+            case KIND_INT:
+            case KIND_STRING:
+                return new int[capacity];
+            case KIND_LONG:
+            case KIND_TIMESTAMP:
+            case KIND_DATE:
+            case KIND_TIME:
+                return new long[capacity];
+            case KIND_DOUBLE:
+                return new double[capacity];
+            case KIND_FLOAT:
+                return new float[capacity];
+            case KIND_BOOLEAN:
+                return new long[words(capacity)];
+            default:
+                return new Object[capacity];
+        }
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static boolean bit(long[] words, int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void setBit(long[] words, int index) {
+        words[index >>> 6] |= 1L << index;
+    }
+
+    private void grow(int capacity) {
+        for (int i = 0; i < kinds.length; i++) {
+            Object column = columns[i];
+            if (column instanceof int[]) {
+                columns[i] = Arrays.copyOf((int[]) column, capacity);
+            } else if (kinds[i] == KIND_BOOLEAN) {
+                columns[i] = Arrays.copyOf((long[]) column, words(capacity));
+            } else if (column instanceof long[]) {
+                columns[i] = Arrays.copyOf((long[]) column, capacity);
+            } else if (column instanceof double[]) {
+                columns[i] = Arrays.copyOf((double[]) column, capacity);
+            } else if (column instanceof float[]) {
+                columns[i] = Arrays.copyOf((float[]) column, capacity);
+            } else {
+                columns[i] = Arrays.copyOf((Object[]) column, capacity);
+            }
+            if (nanos[i] != null) {
+                nanos[i] = Arrays.copyOf(nanos[i], capacity);
+            }
+            if (nulls[i] != null) {
+                nulls[i] = Arrays.copyOf(nulls[i], words(capacity));
+            }
+        }
+    }
+
+    private void setNull(int column, int row) {
+        if (nulls[column] == null) {
+            nulls[column] = new long[words(columnCapacity(column))];
+        }
+        setBit(nulls[column], row);
+    }
+
+    private int columnCapacity(int column) {
+        Object data = columns[column];
+        if (kinds[column] == KIND_BOOLEAN) {
+            return ((long[]) data).length << 6;
+        } else if (data instanceof int[]) {
+            return ((int[]) data).length;
+        } else if (data instanceof long[]) {
+            return ((long[]) data).length;
+        } else if (data instanceof double[]) {
+            return ((double[]) data).length;
+        } else if (data instanceof float[]) {
+            return ((float[]) data).length;
+        } else {
+            return ((Object[]) data).length;
+        }
+    }
+
+    private void readColumn(ResultSet rs, int i, int row, StringDictionary dictionary) throws SQLException {
+        int columnIndex = i + 1;
+        switch (kinds[i]) {
+            case KIND_INT: {
+                int v = rs.getInt(columnIndex);
+                if (rs.wasNull()) {
+                    setNull(i, row);
+                } else {
+                    ((int[]) columns[i])[row] = v;
+                }
+                break;
+            }
+            case KIND_LONG: {
+                long v = rs.getLong(columnIndex);
+                if (rs.wasNull()) {
+                    setNull(i, row);
+                } else {
+                    ((long[]) columns[i])[row] = v;
+                }
+                break;
+            }
+            case KIND_DOUBLE: {
+                double v = rs.getDouble(columnIndex);
+                if (rs.wasNull()) {
+                    setNull(i, row);
+                } else {
+                    ((double[]) columns[i])[row] = v;
+                }
+                break;
+            }
+            case KIND_FLOAT: {
+                float v = rs.getFloat(columnIndex);
+                if (rs.wasNull()) {
+                    setNull(i, row);
+                } else {
+                    ((float[]) columns[i])[row] = v;
+                }
+                break;
+            }
+            case KIND_BOOLEAN: {
+                boolean v = rs.getBoolean(columnIndex);
+                if (rs.wasNull()) {
+                    setNull(i, row);
+                } else if (v) {
+                    setBit((long[]) columns[i], row);
+                }
+                break;
+            }
+            case KIND_STRING: {
+                String v = rs.getString(columnIndex);
+                if (v == null) {
+                    setNull(i, row);
+                } else {
+                    ((int[]) columns[i])[row] = dictionary.code(v);
+                }
+                break;
+            }
+            case KIND_TIMESTAMP: {
+                Timestamp v = rs.getTimestamp(columnIndex);
+                if (v == null) {
+                    setNull(i, row);
+                } else {
+                    ((long[]) columns[i])[row] = v.getTime();
+                    nanos[i][row] = v.getNanos();
+                }
+                break;
+            }
+            case KIND_DATE: {
+                Date v = rs.getDate(columnIndex);
+                if (v == null) {
+                    setNull(i, row);
+                } else {
+                    ((long[]) columns[i])[row] = v.getTime();
+                }
+                break;
+            }
+            case KIND_TIME: {
+                Time v = rs.getTime(columnIndex);
+                if (v == null) {
+                    setNull(i, row);
+                } else {
+                    ((long[]) columns[i])[row] = v.getTime();
+                }
+                break;
+            }
+            default: {
+                Object v = toSerial(rs.getObject(columnIndex), lobConverter);
+                if (v == null) {
+                    setNull(i, row);
+                } else {
+                    ((Object[]) columns[i])[row] = v;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 将驱动相关的对象转为可序列化对象
+     *
+     * @param obj          原对象
+     * @param lobConverter 大对象转换, 为null时转为SerialBlob/SerialClob
+     * @return 可序列化对象
+     * @throws SQLException
+     */
+    private static Object toSerial(Object obj, LobConverter lobConverter) throws SQLException {
+        if (lobConverter != null && (obj instanceof Blob || obj instanceof Clob)) {
+            return lobConverter.convert(obj);
+        } else if (obj instanceof Struct) {
+            return new SerialStruct((Struct) obj, null);
+        } else if (obj instanceof SQLData) {
+            return new SerialStruct((SQLData) obj, null);
+        } else if (obj instanceof Blob) {
+            return serialBlob((Blob) obj);
+        } else if (obj instanceof Clob) {
+            return serialClob((Clob) obj);
+        } else if (obj instanceof java.sql.Array) {
+            return new SerialArray((java.sql.Array) obj);
+        }
+        return obj;
+    }
+
+    /**
+     * 按内容复制Blob, SerialBlob(Blob)会保留对驱动对象的引用, 不能序列化
+     *
+     * @param blob 驱动的Blob
+     * @return SerialBlob
+     * @throws SQLException
+     */
+    public static SerialBlob serialBlob(Blob blob) throws SQLException {
+        return new SerialBlob(blob.getBytes(1, (int) blob.length()));
+    }
+
+    /**
+     * 按内容复制Clob, 原因同上
+     *
+     * @param clob 驱动的Clob
+     * @return SerialClob
+     * @throws SQLException
+     */
+    public static SerialClob serialClob(Clob clob) throws SQLException {
+        return new SerialClob(clob.getSubString(1, (int) clob.length()).toCharArray());
+    }
+
+    /**
+     * 转换对象列中的大对象定位符, 客户端收到分页后调用
+     *
+     * @param lobConverter 定位符转换
+     * @throws SQLException
+     */
+    public void convertLobs(LobConverter lobConverter) throws SQLException {
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i] != KIND_OBJECT) {
+                continue;
+            }
+            Object[] data = (Object[]) columns[i];
+            for (int r = 0; r < rowCount; r++) {
+                if (data[r] instanceof LobLocator) {
+                    data[r] = lobConverter.convert(data[r]);
+                }
+            }
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return kinds.length;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * 预先编码, 之后序列化时直接写出编码后的数据
+     */
+    public void encode() {
+        encoded = SerializeUtil.encode(this);
+    }
+
+    /**
+     * @return 预先编码的字节数, 未编码时为0
+     */
+    public int getEncodedSize() {
+        return encoded == null ? 0 : encoded.length;
+    }
+
+    /**
+     * @param row    行下标, 从0开始
+     * @param column 列下标, 从1开始
+     * @return 是否为null
+     */
+    public boolean isNull(int row, int column) {
+        long[] words = nulls[column - 1];
+        return words != null && bit(words, row);
+    }
+
+    /**
+     * 获取对象值, 基本类型列返回对应的包装类型
+     *
+     * @param row    行下标, 从0开始
+     * @param column 列下标, 从1开始
+     * @return 值
+     */
+    public Object getObject(int row, int column) {
+        if (isNull(row, column)) {
+            return null;
+        }
+        int i = column - 1;
+        switch (kinds[i]) {
+            case KIND_INT:
+                return ((int[]) columns[i])[row];
+            case KIND_LONG:
+                return ((long[]) columns[i])[row];
+            case KIND_DOUBLE:
+                return ((double[]) columns[i])[row];
+            case KIND_FLOAT:
+                return ((float[]) columns[i])[row];
+            case KIND_BOOLEAN:
+                return bit((long[]) columns[i], row);
+            case KIND_STRING:
+                return dictionaries[i][((int[]) columns[i])[row]];
+            case KIND_TIMESTAMP: {
+                Timestamp ts = new Timestamp(((long[]) columns[i])[row]);
+                ts.setNanos(nanos[i][row]);
+                return ts;
+            }
+            case KIND_DATE:
+                return new Date(((long[]) columns[i])[row]);
+            case KIND_TIME:
+                return new Time(((long[]) columns[i])[row]);
+            default:
+                return ((Object[]) columns[i])[row];
+        }
+    }
+
+    public String getString(int row, int column) throws SQLException {
+        if (isNull(row, column)) {
+            return null;
+        }
+        int i = column - 1;
+        if (kinds[i] == KIND_STRING) {
+            return dictionaries[i][((int[]) columns[i])[row]];
+        }
+        Object value = getObject(row, column);
+        if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            return clob.getSubString(1, (int) clob.length());
+        }
+        return value.toString();
+    }
+
+    public long getLong(int row, int column) throws SQLException {
+        if (isNull(row, column)) {
+            return 0L;
+        }
+        int i = column - 1;
+        switch (kinds[i]) {
+            case KIND_INT:
+                return ((int[]) columns[i])[row];
+            case KIND_LONG:
+                return ((long[]) columns[i])[row];
+            case KIND_DOUBLE:
+                return (long) ((double[]) columns[i])[row];
+            case KIND_FLOAT:
+                return (long) ((float[]) columns[i])[row];
+            case KIND_BOOLEAN:
+                return bit((long[]) columns[i], row) ? 1L : 0L;
+            default:
+                Object value = getObject(row, column);
+                if (value instanceof Number) {
+                    return ((Number) value).longValue();
+                }
+                try {
+                    return new BigDecimal(value.toString().trim()).longValue();
+                } catch (NumberFormatException e) {
+                    throw new SQLException("Cannot convert " + value + " to long", e);
+                }
+        }
+    }
+
+    public double getDouble(int row, int column) throws SQLException {
+        if (isNull(row, column)) {
+            return 0D;
+        }
+        int i = column - 1;
+        switch (kinds[i]) {
+            case KIND_INT:
+                return ((int[]) columns[i])[row];
+            case KIND_LONG:
+                return ((long[]) columns[i])[row];
+            case KIND_DOUBLE:
+                return ((double[]) columns[i])[row];
+            case KIND_FLOAT:
+                return ((float[]) columns[i])[row];
+            case KIND_BOOLEAN:
+                return bit((long[]) columns[i], row) ? 1D : 0D;
+            default:
+                Object value = getObject(row, column);
+                if (value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                }
+                try {
+                    return Double.parseDouble(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    throw new SQLException("Cannot convert " + value + " to double", e);
+                }
+        }
+    }
+
+    public boolean getBoolean(int row, int column) throws SQLException {
+        if (isNull(row, column)) {
+            return false;
+        }
+        int i = column - 1;
+        switch (kinds[i]) {
+            case KIND_BOOLEAN:
+                return bit((long[]) columns[i], row);
+            case KIND_INT:
+            case KIND_LONG:
+            case KIND_DOUBLE:
+            case KIND_FLOAT:
+                return getDouble(row, column) != 0;
+            default:
+                Object value = getObject(row, column);
+                if (value instanceof Boolean) {
+                    return (Boolean) value;
+                } else if (value instanceof Number) {
+                    return ((Number) value).doubleValue() != 0;
+                }
+                String str = value.toString().trim();
+                return "true".equalsIgnoreCase(str) || "1".equals(str) || "y".equalsIgnoreCase(str);
+        }
+    }
+
+    public BigDecimal getBigDecimal(int row, int column) throws SQLException {
+        if (isNull(row, column)) {
+            return null;
+        }
+        int i = column - 1;
+        switch (kinds[i]) {
+            case KIND_INT:
+            case KIND_LONG:
+                return BigDecimal.valueOf(getLong(row, column));
+            case KIND_DOUBLE:
+            case KIND_FLOAT:
+                return BigDecimal.valueOf(getDouble(row, column));
+            default:
+                Object value = getObject(row, column);
+                if (value instanceof BigDecimal) {
+                    return (BigDecimal) value;
+                } else if (value instanceof Boolean) {
+                    return (Boolean) value ? BigDecimal.ONE : BigDecimal.ZERO;
+                }
+                try {
+                    return new BigDecimal(value.toString().trim());
+                } catch (NumberFormatException e) {
+                    throw new SQLException("Cannot convert " + value + " to BigDecimal", e);
+                }
+        }
+    }
+
+    public byte[] getBytes(int row, int column) throws SQLException {
+        Object value = getObject(row, column);
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            return (byte[]) value;
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            return blob.getBytes(1, (int) blob.length());
+        }
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to byte[]");
+    }
+
+    public Timestamp getTimestamp(int row, int column) throws SQLException {
+        Object value = getObject(row, column);
+        if (value == null) {
+            return null;
+        } else if (value instanceof Timestamp) {
+            return (Timestamp) value;
+        } else if (value instanceof java.util.Date) {
+            return new Timestamp(((java.util.Date) value).getTime());
+        } else if (value instanceof String) {
+            try {
+                return Timestamp.valueOf((String) value);
+            } catch (IllegalArgumentException e) {
+                throw new SQLException("Cannot convert " + value + " to Timestamp", e);
+            }
+        }
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to Timestamp");
+    }
+
+    public Date getDate(int row, int column) throws SQLException {
+        Object value = getObject(row, column);
+        if (value == null) {
+            return null;
+        } else if (value instanceof Date) {
+            return (Date) value;
+        } else if (value instanceof java.util.Date) {
+            return new Date(((java.util.Date) value).getTime());
+        } else if (value instanceof String) {
+            try {
+                return Date.valueOf((String) value);
+            } catch (IllegalArgumentException e) {
+                throw new SQLException("Cannot convert " + value + " to Date", e);
+            }
+        }
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to Date");
+    }
+
+    public Time getTime(int row, int column) throws SQLException {
+        Object value = getObject(row, column);
+        if (value == null) {
+            return null;
+        } else if (value instanceof Time) {
+            return (Time) value;
+        } else if (value instanceof java.util.Date) {
+            return new Time(((java.util.Date) value).getTime());
+        } else if (value instanceof String) {
+            try {
+                return Time.valueOf((String) value);
+            } catch (IllegalArgumentException e) {
+                throw new SQLException("Cannot convert " + value + " to Time", e);
+            }
+        }
+        throw new SQLException("Cannot convert " + value.getClass().getName() + " to Time");
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        if (encoded != null) {
+            output.writeBytes(encoded);
+            return;
+        }
+        int columnCount = kinds.length;
+        output.writeVarInt(rowCount, true);
+        output.writeBoolean(last);
+        output.writeVarInt(columnCount, true);
+        output.writeBytes(kinds);
+        int nullWords = words(rowCount);
+        for (int i = 0; i < columnCount; i++) {
+            long[] words = nulls[i];
+            output.writeBoolean(words != null);
+            if (words != null) {
+                for (int w = 0; w < nullWords; w++) {
+                    output.writeLong(words[w]);
+                }
+            }
+            switch (kinds[i]) {
+                case KIND_INT: {
+                    int[] data = (int[]) columns[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        output.writeVarInt(data[r], false);
+                    }
+                    break;
+                }
+                case KIND_LONG:
+                case KIND_DATE:
+                case KIND_TIME: {
+                    long[] data = (long[]) columns[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        output.writeVarLong(data[r], false);
+                    }
+                    break;
+                }
+                case KIND_TIMESTAMP: {
+                    long[] data = (long[]) columns[i];
+                    int[] ns = nanos[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        output.writeVarLong(data[r], false);
+                        output.writeVarInt(ns[r], true);
+                    }
+                    break;
+                }
+                case KIND_DOUBLE: {
+                    double[] data = (double[]) columns[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        output.writeDouble(data[r]);
+                    }
+                    break;
+                }
+                case KIND_FLOAT: {
+                    float[] data = (float[]) columns[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        output.writeFloat(data[r]);
+                    }
+                    break;
+                }
+                case KIND_BOOLEAN: {
+                    long[] data = (long[]) columns[i];
+                    for (int w = 0; w < nullWords; w++) {
+                        output.writeLong(data[w]);
+                    }
+                    break;
+                }
+                case KIND_STRING: {
+                    String[] dictionary = dictionaries[i];
+                    output.writeVarInt(dictionary.length, true);
+                    for (String value : dictionary) {
+                        output.writeString(value);
+                    }
+                    int[] data = (int[]) columns[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        output.writeVarInt(data[r], true);
+                    }
+                    break;
+                }
+                default: {
+                    Object[] data = (Object[]) columns[i];
+                    for (int r = 0; r < rowCount; r++) {
+                        kryo.writeClassAndObject(output, data[r]);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        rowCount = input.readVarInt(true);
+        last = input.readBoolean();
+        int columnCount = input.readVarInt(true);
+        kinds = input.readBytes(columnCount);
+        columns = new Object[columnCount];
+        nulls = new long[columnCount][];
+        dictionaries = new String[columnCount][];
+        nanos = new int[columnCount][];
+        int nullWords = words(rowCount);
+        for (int i = 0; i < columnCount; i++) {
+            if (input.readBoolean()) {
+                long[] words = new long[nullWords];
+                for (int w = 0; w < nullWords; w++) {
+                    words[w] = input.readLong();
+                }
+                nulls[i] = words;
+            }
+            switch (kinds[i]) {
+                case KIND_INT: {
+                    int[] data = new int[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = input.readVarInt(false);
+                    }
+                    columns[i] = data;
+                    break;
+                }
+                case KIND_LONG:
+                case KIND_DATE:
+                case KIND_TIME: {
+                    long[] data = new long[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = input.readVarLong(false);
+                    }
+                    columns[i] = data;
+                    break;
+                }
+                case KIND_TIMESTAMP: {
+                    long[] data = new long[rowCount];
+                    int[] ns = new int[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = input.readVarLong(false);
+                        ns[r] = input.readVarInt(true);
+                    }
+                    columns[i] = data;
+                    nanos[i] = ns;
+                    break;
+                }
+                case KIND_DOUBLE: {
+                    double[] data = new double[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = input.readDouble();
+                    }
+                    columns[i] = data;
+                    break;
+                }
+                case KIND_FLOAT: {
+                    float[] data = new float[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = input.readFloat();
+                    }
+                    columns[i] = data;
+                    break;
+                }
+                case KIND_BOOLEAN: {
+                    long[] data = new long[nullWords];
+                    for (int w = 0; w < nullWords; w++) {
+                        data[w] = input.readLong();
+                    }
+                    columns[i] = data;
+                    break;
+                }
+                case KIND_STRING: {
+                    String[] dictionary = new String[input.readVarInt(true)];
+                    for (int d = 0; d < dictionary.length; d++) {
+                        dictionary[d] = input.readString();
+                    }
+                    int[] data = new int[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = input.readVarInt(true);
+                    }
+                    dictionaries[i] = dictionary;
+                    columns[i] = data;
+                    break;
+                }
+                default: {
+                    Object[] data = new Object[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        data[r] = kryo.readClassAndObject(input);
+                    }
+                    columns[i] = data;
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.jdbcagent.core.support;
+
+import java.io.Serializable;
+
+/**
+ * JDBC-Agent 大对象定位符
+ * <p>
+ * 超过内联阈值的BLOB/CLOB不随分页或参数整体传输, 只传输定位符, 内容通过LOB数据包按块读写.
+ * 结果集中的定位符指向服务端持有的驱动对象, 参数中的定位符指向客户端已分块上传的内容
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class LobLocator implements Serializable {
+    private static final long serialVersionUID = -2302712415630528331L;
+
+    private long id;            // 服务端大对象id
+
+    private int type;           // java.sql.Types.BLOB/CLOB/NCLOB
+
+    private long length;        // 长度, BLOB为字节数, CLOB为字符数
+
+    public LobLocator() {
+    }
+
+    public LobLocator(long id, int type, long length) {
+        this.id = id;
+        this.type = type;
+        this.length = length;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public void setType(int type) {
+        this.type = type;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+}
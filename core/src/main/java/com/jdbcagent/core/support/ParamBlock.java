@@ -0,0 +1,280 @@
+package com.jdbcagent.core.support;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.jdbcagent.core.protocol.PreparedStatementMsg.ParamType;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * JDBC-Agent 预编译语句的参数块
+ * <p>
+ * 每个参数一个类型标记, 基本类型的值保存在long数组中, 其它类型保存为对象, 少数参数的附加值
+ * (如长度、Calendar、sqlType)单独保存。客户端在多次执行间复用, 同一参数重复设置时覆盖原值;
+ * 服务端按顺序读取后直接调用PreparedStatement的set方法, 不产生每个参数的对象
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class ParamBlock implements KryoSerializable, Serializable {
+    private static final long serialVersionUID = 6211880412364137597L;
+
+    private static final ParamType[] TYPES = ParamType.values();
+
+    private static final int INITIAL_CAPACITY = 16; // 初始容量
+
+    private int size;                               // 参数个数
+
+    private byte[] types = new byte[INITIAL_CAPACITY];          // 每个参数的类型
+
+    private int[] indexes = new int[INITIAL_CAPACITY];          // 每个参数的下标
+
+    private long[] primitives = new long[INITIAL_CAPACITY];     // 基本类型的值, float/double保存为位表示
+
+    private Object[] values = new Object[INITIAL_CAPACITY];     // 其它类型的值
+
+    private Serializable[][] extras = new Serializable[INITIAL_CAPACITY][];  // 附加值, 没有时为null
+
+    private transient int[] slots = new int[INITIAL_CAPACITY];  // 参数下标对应的位置+1, 只在客户端使用
+
+    public ParamBlock() {
+    }
+
+    /**
+     * 设置整数类型的参数, boolean以0/1保存
+     *
+     * @param type           参数类型
+     * @param parameterIndex 参数下标
+     * @param value          值
+     * @param extra          附加值
+     */
+    public void setLong(ParamType type, int parameterIndex, long value, Serializable... extra) {
+        int i = slot(type, parameterIndex);
+        primitives[i] = value;
+        values[i] = null;
+        extras[i] = extra.length == 0 ? null : extra;
+    }
+
+    /**
+     * 设置浮点类型的参数
+     *
+     * @param type           参数类型
+     * @param parameterIndex 参数下标
+     * @param value          值
+     */
+    public void setDouble(ParamType type, int parameterIndex, double value) {
+        int i = slot(type, parameterIndex);
+        primitives[i] = type == ParamType.FLOAT ? Float.floatToRawIntBits((float) value)
+                : Double.doubleToRawLongBits(value);
+        values[i] = null;
+        extras[i] = null;
+    }
+
+    /**
+     * 设置对象类型的参数
+     *
+     * @param type           参数类型
+     * @param parameterIndex 参数下标
+     * @param value          值
+     * @param extra          附加值
+     */
+    public void setObject(ParamType type, int parameterIndex, Object value, Serializable... extra) {
+        int i = slot(type, parameterIndex);
+        primitives[i] = 0;
+        values[i] = value;
+        extras[i] = extra.length == 0 ? null : extra;
+    }
+
+    /**
+     * 获取参数的位置, 同一下标的值参数覆盖原位置, 输出参数注册另占位置
+     */
+    private int slot(ParamType type, int parameterIndex) {
+        boolean out = type == ParamType.registerOutParameter;
+        if (!out && parameterIndex > 0 && parameterIndex < slots.length && slots[parameterIndex] > 0) {
+            int i = slots[parameterIndex] - 1;
+            types[i] = (byte) type.ordinal();
+            return i;
+        }
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            indexes = Arrays.copyOf(indexes, capacity);
+            primitives = Arrays.copyOf(primitives, capacity);
+            values = Arrays.copyOf(values, capacity);
+            extras = Arrays.copyOf(extras, capacity);
+        }
+        int i = size++;
+        types[i] = (byte) type.ordinal();
+        indexes[i] = parameterIndex;
+        if (!out && parameterIndex > 0) {
+            if (parameterIndex >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(slots.length * 2, parameterIndex + 1));
+            }
+            slots[parameterIndex] = i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * 清除所有参数
+     */
+    public void clear() {
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(extras, 0, size, null);
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    /**
+     * 复制当前参数, 用于批量
+     *
+     * @return 参数块副本
+     */
+    public ParamBlock copy() {
+        ParamBlock block = new ParamBlock();
+        block.size = size;
+        block.types = Arrays.copyOf(types, size);
+        block.indexes = Arrays.copyOf(indexes, size);
+        block.primitives = Arrays.copyOf(primitives, size);
+        block.values = Arrays.copyOf(values, size);
+        block.extras = Arrays.copyOf(extras, size);
+        block.slots = null;
+        return block;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ParamType getType(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int getIndex(int i) {
+        return indexes[i];
+    }
+
+    public long getLong(int i) {
+        return primitives[i];
+    }
+
+    public float getFloat(int i) {
+        return Float.intBitsToFloat((int) primitives[i]);
+    }
+
+    public double getDouble(int i) {
+        return Double.longBitsToDouble(primitives[i]);
+    }
+
+    public Object getValue(int i) {
+        return values[i];
+    }
+
+    /**
+     * @return 附加值, 没有时为空数组
+     */
+    public Serializable[] getExtras(int i) {
+        return extras[i] == null ? new Serializable[0] : extras[i];
+    }
+
+    public int getExtraCount(int i) {
+        return extras[i] == null ? 0 : extras[i].length;
+    }
+
+    public Serializable getExtra(int i, int n) {
+        return extras[i][n];
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        output.writeVarInt(size, true);
+        output.writeBytes(types, 0, size);
+        for (int i = 0; i < size; i++) {
+            output.writeVarInt(indexes[i], true);
+            switch (TYPES[types[i]]) {
+                case BOOLEAN:
+                case BYTE:
+                    output.writeByte((byte) primitives[i]);
+                    break;
+                case FLOAT:
+                    output.writeInt((int) primitives[i]);
+                    break;
+                case DOUBLE:
+                    output.writeLong(primitives[i]);
+                    break;
+                case NULL:
+                case SHORT:
+                case INT:
+                case LONG:
+                case registerOutParameter:
+                    output.writeVarLong(primitives[i], false);
+                    break;
+                case STRING:
+                case NSTRING:
+                    output.writeString((String) values[i]);
+                    break;
+                default:
+                    kryo.writeClassAndObject(output, values[i]);
+                    break;
+            }
+            Serializable[] extra = extras[i];
+            output.writeVarInt(extra == null ? 0 : extra.length, true);
+            if (extra != null) {
+                for (Serializable value : extra) {
+                    kryo.writeClassAndObject(output, value);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        size = input.readVarInt(true);
+        types = input.readBytes(size);
+        indexes = new int[size];
+        primitives = new long[size];
+        values = new Object[size];
+        extras = new Serializable[size][];
+        slots = null;
+        for (int i = 0; i < size; i++) {
+            indexes[i] = input.readVarInt(true);
+            switch (TYPES[types[i]]) {
+                case BOOLEAN:
+                case BYTE:
+                    primitives[i] = input.readByte();
+                    break;
+                case FLOAT:
+                    primitives[i] = input.readInt();
+                    break;
+                case DOUBLE:
+                    primitives[i] = input.readLong();
+                    break;
+                case NULL:
+                case SHORT:
+                case INT:
+                case LONG:
+                case registerOutParameter:
+                    primitives[i] = input.readVarLong(false);
+                    break;
+                case STRING:
+                case NSTRING:
+                    values[i] = input.readString();
+                    break;
+                default:
+                    values[i] = kryo.readClassAndObject(input);
+                    break;
+            }
+            int extraCount = input.readVarInt(true);
+            if (extraCount > 0) {
+                Serializable[] extra = new Serializable[extraCount];
+                for (int n = 0; n < extraCount; n++) {
+                    extra[n] = (Serializable) kryo.readClassAndObject(input);
+                }
+                extras[i] = extra;
+            }
+        }
+    }
+}
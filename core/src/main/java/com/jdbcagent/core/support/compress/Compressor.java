@@ -0,0 +1,48 @@
+package com.jdbcagent.core.support.compress;
+
+import java.io.IOException;
+
+/**
+ * JDBC-Agent 数据包压缩算法
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public interface Compressor {
+    /**
+     * @return 算法名称, 握手时用于协商
+     */
+    String getName();
+
+    /**
+     * @param length 原始数据长度
+     * @return 压缩后数据的最大长度
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * 压缩
+     *
+     * @param src    原始数据
+     * @param srcOff 原始数据偏移
+     * @param length 原始数据长度
+     * @param dst    目标数组, 长度不小于 {@link #maxCompressedLength(int)}
+     * @param dstOff 目标数组偏移
+     * @return 压缩后的长度
+     */
+    int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff);
+
+    /**
+     * 解压
+     *
+     * @param src       压缩数据
+     * @param srcOff    压缩数据偏移
+     * @param length    压缩数据长度
+     * @param dst       目标数组
+     * @param dstOff    目标数组偏移
+     * @param rawLength 原始数据长度
+     * @throws IOException 数据损坏
+     */
+    void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int rawLength)
+            throws IOException;
+}
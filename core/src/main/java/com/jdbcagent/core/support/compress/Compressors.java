@@ -0,0 +1,148 @@
+package com.jdbcagent.core.support.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JDBC-Agent 压缩算法注册及数据包帧编解码
+ * <p>
+ * 协商压缩后每个数据包体以1字节标志开头: {@link #RAW} 后跟原始数据,
+ * {@link #COMPRESSED} 后跟4字节原始长度和压缩数据
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class Compressors {
+    public static final byte RAW = 0;                   // 未压缩
+
+    public static final byte COMPRESSED = 1;            // 已压缩
+
+    public static final int DEFAULT_THRESHOLD = 4096;   // 默认压缩阈值, 小于该字节数的数据包不压缩
+
+    private static final Map<String, Compressor> COMPRESSORS = new LinkedHashMap<>();  // 按优先级排列的压缩算法
+
+    static {
+        register(new SnappyCompressor());
+        register(new DeflateCompressor());
+    }
+
+    /**
+     * 注册压缩算法, 同名覆盖
+     *
+     * @param compressor 压缩算法
+     */
+    public static synchronized void register(Compressor compressor) {
+        COMPRESSORS.put(compressor.getName(), compressor);
+    }
+
+    /**
+     * @param name 算法名称
+     * @return 压缩算法, 不存在时为null
+     */
+    public static synchronized Compressor get(String name) {
+        return name == null ? null : COMPRESSORS.get(name.trim().toLowerCase());
+    }
+
+    /**
+     * @return 所有支持的算法名称, 逗号分隔
+     */
+    public static synchronized String names() {
+        StringBuilder names = new StringBuilder();
+        for (String name : COMPRESSORS.keySet()) {
+            if (names.length() > 0) {
+                names.append(',');
+            }
+            names.append(name);
+        }
+        return names.toString();
+    }
+
+    /**
+     * 协商压缩算法, 按客户端的优先顺序选择第一个服务端也允许的算法
+     *
+     * @param offered 客户端支持的算法, 逗号分隔
+     * @param allowed 服务端允许的算法, 逗号分隔
+     * @return 协商结果, 无共同算法时为null
+     */
+    public static Compressor negotiate(String offered, String allowed) {
+        if (offered == null || allowed == null) {
+            return null;
+        }
+        for (String name : offered.split(",")) {
+            Compressor compressor = get(name);
+            if (compressor == null) {
+                continue;
+            }
+            for (String allowedName : allowed.split(",")) {
+                if (compressor.getName().equalsIgnoreCase(allowedName.trim())) {
+                    return compressor;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 编码数据包体, 达到阈值且压缩后更小时压缩
+     *
+     * @param compressor 压缩算法
+     * @param threshold  压缩阈值
+     * @param src        数据包体
+     * @param srcOff     偏移
+     * @param length     长度
+     * @param headerRoom 结果数组开头预留的字节数, 用于写包头
+     * @return 预留字节 + 标志 + 数据, 包装在数组上的缓冲
+     */
+    public static ByteBuffer encode(Compressor compressor, int threshold, byte[] src, int srcOff, int length,
+                                int headerRoom) {
+        if (length >= threshold) {
+            byte[] buf = new byte[headerRoom + 5 + compressor.maxCompressedLength(length)];
+            int compressedLength = compressor.compress(src, srcOff, length, buf, headerRoom + 5);
+            if (compressedLength < length) {
+                buf[headerRoom] = COMPRESSED;
+                writeInt(buf, headerRoom + 1, length);
+                return ByteBuffer.wrap(buf, 0, headerRoom + 5 + compressedLength);
+            }
+        }
+        byte[] frame = new byte[headerRoom + 1 + length];
+        frame[headerRoom] = RAW;
+        System.arraycopy(src, srcOff, frame, headerRoom + 1, length);
+        return ByteBuffer.wrap(frame);
+    }
+
+    /**
+     * 解码已压缩的数据包体, 不含标志位
+     *
+     * @param compressor 压缩算法
+     * @param src        4字节原始长度 + 压缩数据
+     * @param srcOff     偏移
+     * @param length     长度
+     * @param maxLength  原始长度上限, 防止损坏的长度分配过大的数组
+     * @return 原始数据包体
+     * @throws IOException 数据损坏
+     */
+    public static byte[] decompress(Compressor compressor, byte[] src, int srcOff, int length, int maxLength)
+            throws IOException {
+        int rawLength = readInt(src, srcOff);
+        if (rawLength < 0 || rawLength > maxLength) {
+            throw new IOException("decompressed length " + rawLength + " exceeds limit " + maxLength);
+        }
+        byte[] raw = new byte[rawLength];
+        compressor.decompress(src, srcOff + 4, length - 4, raw, 0, rawLength);
+        return raw;
+    }
+
+    public static void writeInt(byte[] buf, int off, int value) {
+        buf[off] = (byte) (value >>> 24);
+        buf[off + 1] = (byte) (value >>> 16);
+        buf[off + 2] = (byte) (value >>> 8);
+        buf[off + 3] = (byte) value;
+    }
+
+    public static int readInt(byte[] buf, int off) {
+        return ((buf[off] & 0xff) << 24) | ((buf[off + 1] & 0xff) << 16)
+                | ((buf[off + 2] & 0xff) << 8) | (buf[off + 3] & 0xff);
+    }
+}
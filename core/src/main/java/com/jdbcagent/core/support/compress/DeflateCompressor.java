@@ -0,0 +1,79 @@
+package com.jdbcagent.core.support.compress;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * JDBC-Agent deflate 压缩, 压缩率高, 适合带宽受限的网络
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class DeflateCompressor implements Compressor {
+    public static final String NAME = "deflate";
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // deflate 存储块的开销为每16K 5个字节
+        return length + (length >> 12) + (length >> 14) + 64;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff) {
+        Deflater deflater = DEFLATER.get();
+        try {
+            deflater.setInput(src, srcOff, length);
+            deflater.finish();
+            int off = dstOff;
+            while (!deflater.finished()) {
+                off += deflater.deflate(dst, off, dst.length - off);
+            }
+            return off - dstOff;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int rawLength)
+            throws IOException {
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(src, srcOff, length);
+            int off = dstOff;
+            int end = dstOff + rawLength;
+            while (off < end) {
+                int n = inflater.inflate(dst, off, end - off);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("corrupted deflate data");
+                }
+                off += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.reset();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.jdbcagent.core.support.compress;
+
+import org.iq80.snappy.CorruptionException;
+import org.iq80.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * JDBC-Agent snappy 压缩, 速度快, 压缩率低于deflate
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class SnappyCompressor implements Compressor {
+    public static final String NAME = "snappy";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return Snappy.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff) {
+        return Snappy.compress(src, srcOff, length, dst, dstOff);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int rawLength)
+            throws IOException {
+        try {
+            int n = Snappy.uncompress(src, srcOff, length, dst, dstOff);
+            if (n != rawLength) {
+                throw new IOException("corrupted snappy data");
+            }
+        } catch (CorruptionException e) {
+            throw new IOException(e);
+        }
+    }
+}
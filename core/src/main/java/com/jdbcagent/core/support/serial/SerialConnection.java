@@ -22,6 +22,7 @@ public class SerialConnection implements Serializable {
     private int holdability;
     private Properties clientInfo;
     private String schema;
+    private SerialStatement statementDefaults;  // 新建statement的默认属性
 
     public void setAutoCommit(boolean autoCommit) throws SQLException {
         this.autoCommit = autoCommit;
@@ -89,4 +90,12 @@ public class SerialConnection implements Serializable {
     public String getSchema() throws SQLException {
         return this.schema;
     }
+
+    public SerialStatement getStatementDefaults() {
+        return statementDefaults;
+    }
+
+    public void setStatementDefaults(SerialStatement statementDefaults) {
+        this.statementDefaults = statementDefaults;
+    }
 }
@@ -0,0 +1,74 @@
+package com.jdbcagent.core.support.serial;
+
+import com.jdbcagent.core.protocol.DatabaseMetaDataMsg;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.sql.DatabaseMetaData;
+import java.util.HashMap;
+
+/**
+ * JDBC-Agent serial databaseMetaData
+ * <p>
+ * 数据源能力信息的不可变快照, 即无参数且返回基本类型或字符串的元数据方法的返回值.
+ * 服务端每个数据源只读取一次, 随连接应答下发, 客户端据此在本地返回, 不再远程调用.
+ * 随连接状态变化的 isReadOnly 不在快照中
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class SerialDatabaseMetaData implements Serializable {
+    private static final long serialVersionUID = -3160254934582460912L;
+
+    private HashMap<String, Serializable> values = new HashMap<>();    // 方法名 -> 返回值
+
+    public SerialDatabaseMetaData() {
+    }
+
+    /**
+     * 读取databaseMetaData的能力信息, 驱动不支持的方法跳过
+     *
+     * @param databaseMetaData databaseMetaData
+     */
+    public SerialDatabaseMetaData(DatabaseMetaData databaseMetaData) {
+        for (DatabaseMetaDataMsg.Method method : DatabaseMetaDataMsg.Method.values()) {
+            if (method == DatabaseMetaDataMsg.Method.isReadOnly) {
+                continue;
+            }
+            try {
+                Method getter = DatabaseMetaData.class.getMethod(method.name());
+                Class<?> type = getter.getReturnType();
+                if (!type.isPrimitive() && type != String.class || type == void.class) {
+                    continue;
+                }
+                values.put(method.name(), (Serializable) getter.invoke(databaseMetaData));
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * 是否包含该方法的返回值
+     *
+     * @param method 方法名
+     * @return 是否包含
+     */
+    public boolean contains(DatabaseMetaDataMsg.Method method) {
+        return values.containsKey(method.name());
+    }
+
+    /**
+     * 获取该方法的返回值
+     *
+     * @param method 方法名
+     * @return 返回值
+     */
+    public Serializable get(DatabaseMetaDataMsg.Method method) {
+        return values.get(method.name());
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -14,6 +14,9 @@ public class SerialRowId implements RowId, Serializable {
 
     private byte[] bytes;
 
+    public SerialRowId() {
+    }
+
     public SerialRowId(byte[] bytes) {
         this.bytes = bytes;
     }
@@ -16,6 +16,9 @@ public class SerialSavepoint implements Savepoint, Serializable {
     private int savepointId;
     private String savepointName;
 
+    public SerialSavepoint() {
+    }
+
     public SerialSavepoint(int savepointId, String savepointName) {
         this.savepointId = savepointId;
         this.savepointName = savepointName;
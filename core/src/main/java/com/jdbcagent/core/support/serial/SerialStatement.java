@@ -0,0 +1,150 @@
+package com.jdbcagent.core.support.serial;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * JDBC-Agent serial statement
+ * <p>
+ * statement的属性快照, 客户端据此在本地返回属性, 设置属性时同步更新
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class SerialStatement implements Serializable {
+    private static final long serialVersionUID = 2871302646316447405L;
+
+    private int resultSetType;
+    private int resultSetConcurrency;
+    private int resultSetHoldability;
+    private int maxFieldSize;
+    private int maxRows;
+    private int queryTimeout;
+    private int fetchDirection;
+    private int fetchSize;
+    private boolean poolable;
+    private boolean closeOnCompletion;
+
+    public SerialStatement() {
+    }
+
+    /**
+     * 读取statement的当前属性
+     *
+     * @param statement statement
+     * @throws SQLException
+     */
+    public SerialStatement(Statement statement) throws SQLException {
+        this.resultSetType = statement.getResultSetType();
+        this.resultSetConcurrency = statement.getResultSetConcurrency();
+        this.resultSetHoldability = statement.getResultSetHoldability();
+        this.maxFieldSize = statement.getMaxFieldSize();
+        this.maxRows = statement.getMaxRows();
+        this.queryTimeout = statement.getQueryTimeout();
+        this.fetchDirection = statement.getFetchDirection();
+        this.fetchSize = statement.getFetchSize();
+        this.poolable = statement.isPoolable();
+        this.closeOnCompletion = statement.isCloseOnCompletion();
+    }
+
+    /**
+     * 复制属性, 用于新建的statement
+     *
+     * @return 属性副本
+     */
+    public SerialStatement copy() {
+        SerialStatement serialStatement = new SerialStatement();
+        serialStatement.resultSetType = resultSetType;
+        serialStatement.resultSetConcurrency = resultSetConcurrency;
+        serialStatement.resultSetHoldability = resultSetHoldability;
+        serialStatement.maxFieldSize = maxFieldSize;
+        serialStatement.maxRows = maxRows;
+        serialStatement.queryTimeout = queryTimeout;
+        serialStatement.fetchDirection = fetchDirection;
+        serialStatement.fetchSize = fetchSize;
+        serialStatement.poolable = poolable;
+        serialStatement.closeOnCompletion = closeOnCompletion;
+        return serialStatement;
+    }
+
+    public int getResultSetType() {
+        return resultSetType;
+    }
+
+    public void setResultSetType(int resultSetType) {
+        this.resultSetType = resultSetType;
+    }
+
+    public int getResultSetConcurrency() {
+        return resultSetConcurrency;
+    }
+
+    public void setResultSetConcurrency(int resultSetConcurrency) {
+        this.resultSetConcurrency = resultSetConcurrency;
+    }
+
+    public int getResultSetHoldability() {
+        return resultSetHoldability;
+    }
+
+    public void setResultSetHoldability(int resultSetHoldability) {
+        this.resultSetHoldability = resultSetHoldability;
+    }
+
+    public int getMaxFieldSize() {
+        return maxFieldSize;
+    }
+
+    public void setMaxFieldSize(int maxFieldSize) {
+        this.maxFieldSize = maxFieldSize;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public void setMaxRows(int maxRows) {
+        this.maxRows = maxRows;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    public int getFetchDirection() {
+        return fetchDirection;
+    }
+
+    public void setFetchDirection(int fetchDirection) {
+        this.fetchDirection = fetchDirection;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public boolean isPoolable() {
+        return poolable;
+    }
+
+    public void setPoolable(boolean poolable) {
+        this.poolable = poolable;
+    }
+
+    public boolean isCloseOnCompletion() {
+        return closeOnCompletion;
+    }
+
+    public void setCloseOnCompletion(boolean closeOnCompletion) {
+        this.closeOnCompletion = closeOnCompletion;
+    }
+}
@@ -0,0 +1,303 @@
+package com.jdbcagent.core.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.jdbcagent.core.protocol.*;
+import com.jdbcagent.core.support.ColumnarPage;
+import com.jdbcagent.core.support.LobLocator;
+import com.jdbcagent.core.support.ParamBlock;
+import com.jdbcagent.core.support.SerialRowSetMetaDataImpl;
+import com.jdbcagent.core.support.internal.Row;
+import com.jdbcagent.core.support.serial.SerialConnection;
+import com.jdbcagent.core.support.serial.SerialDatabaseMetaData;
+import com.jdbcagent.core.support.serial.SerialNClob;
+import com.jdbcagent.core.support.serial.SerialRowId;
+import com.jdbcagent.core.support.serial.SerialSavepoint;
+import com.jdbcagent.core.support.serial.SerialStatement;
+import com.jdbcagent.core.support.serial.SerialVoid;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * JDBC-Agent kryo 类注册表
+ * <p>
+ * client 和 server 使用同一张注册表, 注册的类只写入编号而不写类名.
+ * 编号只能追加不能修改, 修改已有编号或序列化格式时必须升级 {@link Packet#PROTOCOL_VERSION}.
+ * 继承jdk内部字段的类(如SerialBlob)注册时就要反射jdk私有字段, 只能配合按内容读写的序列化器注册
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class KryoRegistry {
+    private final static int FIRST_ID = 100;    // 第一个编号, 避开kryo默认注册的基本类型
+
+    /**
+     * 注册协议用到的类
+     *
+     * @param kryo kryo实例
+     */
+    public static void register(Kryo kryo) {
+        int id = FIRST_ID;
+        // 协议消息
+        kryo.register(Packet.class, new PacketSerializer(), id++);
+        kryo.register(Packet.PacketType.class, id++);
+        kryo.register(Ack.class, id++);
+        kryo.register(ClientAuth.class, id++);
+        kryo.register(ConnectionMsg.class, id++);
+        kryo.register(ConnectionMsg.Method.class, id++);
+        kryo.register(StatementMsg.class, id++);
+        kryo.register(StatementMsg.Method.class, id++);
+        kryo.register(PreparedStatementMsg.class, new PreparedStatementMsgSerializer(), id++);
+        kryo.register(PreparedStatementMsg.Method.class, id++);
+        kryo.register(PreparedStatementMsg.ParamType.class, id++);
+        kryo.register(CallableStatementMsg.class, id++);
+        kryo.register(CallableStatementMsg.Method.class, id++);
+        kryo.register(DatabaseMetaDataMsg.class, id++);
+        kryo.register(DatabaseMetaDataMsg.Method.class, id++);
+        kryo.register(ResultSetMsg.class, id++);
+
+        // 结果集及可序列化的jdbc对象
+        kryo.register(ColumnarPage.class, id++);
+        kryo.register(SerialRowSetMetaDataImpl.class, id++);
+        kryo.register(innerClass(SerialRowSetMetaDataImpl.class, "ColInfo"), id++);
+        kryo.register(Row.class, id++);
+        kryo.register(SerialConnection.class, id++);
+        kryo.register(SerialRowId.class, id++);
+        kryo.register(SerialSavepoint.class, id++);
+        kryo.register(SerialVoid.class, id++);
+
+        // 参数和返回值中常见的类型
+        kryo.register(Serializable[].class, id++);
+        kryo.register(Object[].class, id++);
+        kryo.register(byte[].class, id++);
+        kryo.register(int[].class, id++);
+        kryo.register(long[].class, id++);
+        kryo.register(String[].class, id++);
+        kryo.register(BigDecimal.class, id++);
+        kryo.register(BigInteger.class, id++);
+        kryo.register(java.util.Date.class, id++);
+        kryo.register(java.sql.Date.class, id++);
+        kryo.register(java.sql.Time.class, id++);
+        kryo.register(java.sql.Timestamp.class, id++);
+        kryo.register(LinkedList.class, id++);
+        kryo.register(ArrayList.class, id++);
+        kryo.register(HashMap.class, id++);
+        kryo.register(Properties.class, id++);
+        kryo.register(ParamBlock.class, id++);
+        kryo.register(SerialStatement.class, id++);
+        kryo.register(LobMsg.class, id++);
+        kryo.register(LobLocator.class, id++);
+        kryo.register(SerialBlob.class, new SerialLobSerializer(), id++);
+        kryo.register(SerialClob.class, new SerialLobSerializer(), id++);
+        kryo.register(SerialNClob.class, new SerialLobSerializer(), id++);
+        kryo.register(SerialDatabaseMetaData.class, id++);
+    }
+
+    private static Class<?> innerClass(Class<?> outer, String name) {
+        for (Class<?> clazz : outer.getDeclaredClasses()) {
+            if (clazz.getSimpleName().equals(name)) {
+                return clazz;
+            }
+        }
+        throw new IllegalStateException("No inner class " + name + " in " + outer.getName());
+    }
+
+    /**
+     * 数据包序列化, 版本号在最前面, 便于以后按版本解析; 延迟调用的数据包写在最后
+     */
+    static class PacketSerializer extends Serializer<Packet> {
+        @Override
+        public void write(Kryo kryo, Output output, Packet packet) {
+            output.writeVarInt(packet.getVersion(), true);
+            output.writeVarLong(packet.getId() == null ? 0 : packet.getId(), true);
+            output.writeVarInt(packet.getType() == null ? 0 : packet.getType().ordinal() + 1, true);
+            kryo.writeClassAndObject(output, packet.getMessage());
+            List<Packet> deferred = packet.getDeferred();
+            output.writeVarInt(deferred == null ? 0 : deferred.size(), true);
+            if (deferred != null) {
+                for (Packet deferredPacket : deferred) {
+                    write(kryo, output, deferredPacket);
+                }
+            }
+        }
+
+        @Override
+        public Packet read(Kryo kryo, Input input, Class<Packet> type) {
+            Packet packet = new Packet();
+            packet.setVersion(input.readVarInt(true));
+            long id = input.readVarLong(true);
+            packet.setId(id == 0 ? null : id);
+            int packetType = input.readVarInt(true);
+            packet.setType(packetType == 0 ? null : Packet.PacketType.values()[packetType - 1]);
+            packet.setMessage((Message) kryo.readClassAndObject(input));
+            int deferredCount = input.readVarInt(true);
+            if (deferredCount > 0) {
+                List<Packet> deferred = new ArrayList<>(deferredCount);
+                for (int i = 0; i < deferredCount; i++) {
+                    deferred.add(read(kryo, input, type));
+                }
+                packet.setDeferred(deferred);
+            }
+            return packet;
+        }
+    }
+
+    /**
+     * 内联大对象序列化, 只写入内容; SerialBlob/SerialClob 没有无参构造方法, 不能按字段读写
+     */
+    static class SerialLobSerializer extends Serializer<Object> {
+        @Override
+        public void write(Kryo kryo, Output output, Object lob) {
+            try {
+                if (lob instanceof SerialBlob) {
+                    SerialBlob blob = (SerialBlob) lob;
+                    byte[] bytes = blob.getBytes(1, (int) blob.length());
+                    output.writeVarInt(bytes.length, true);
+                    output.writeBytes(bytes);
+                } else {
+                    SerialClob clob = (SerialClob) lob;
+                    output.writeString(clob.getSubString(1, (int) clob.length()));
+                }
+            } catch (SQLException e) {
+                throw new KryoException(e);
+            }
+        }
+
+        @Override
+        public Object read(Kryo kryo, Input input, Class<Object> type) {
+            try {
+                if (SerialBlob.class.equals(type)) {
+                    return new SerialBlob(input.readBytes(input.readVarInt(true)));
+                }
+                char[] chars = input.readString().toCharArray();
+                return SerialNClob.class.equals(type) ? new SerialNClob(chars) : new SerialClob(chars);
+            } catch (SQLException e) {
+                throw new KryoException(e);
+            }
+        }
+    }
+
+    /**
+     * 预编译语句消息序列化, 每个参数一个消息, 只写入非空字段; 延迟预编译时附带预编译前设置的statement属性调用
+     */
+    static class PreparedStatementMsgSerializer extends Serializer<PreparedStatementMsg> {
+        private final static int ID = 1;
+        private final static int METHOD = 1 << 1;
+        private final static int PARAM_TYPE = 1 << 2;
+        private final static int PARAMS = 1 << 3;
+        private final static int RESPONSE = 1 << 4;
+        private final static int CONNECTION_ID = 1 << 5;
+        private final static int PREPARE_PARAMS = 1 << 6;
+        private final static int BATCH_SIZE = 1 << 7;
+        private final static int STATEMENT_METHODS = 1 << 8;
+
+        @Override
+        public void write(Kryo kryo, Output output, PreparedStatementMsg msg) {
+            int flags = (msg.getId() != null ? ID : 0)
+                    | (msg.getMethod() != null ? METHOD : 0)
+                    | (msg.getParamType() != null ? PARAM_TYPE : 0)
+                    | (msg.getParams() != null ? PARAMS : 0)
+                    | (msg.getResponse() != null ? RESPONSE : 0)
+                    | (msg.getConnectionId() != null ? CONNECTION_ID : 0)
+                    | (msg.getPrepareParams() != null ? PREPARE_PARAMS : 0)
+                    | (msg.getBatchSize() != null ? BATCH_SIZE : 0)
+                    | (msg.getStatementMethods() != null ? STATEMENT_METHODS : 0);
+            output.writeVarInt(flags, true);
+            if ((flags & ID) != 0) {
+                output.writeVarLong(msg.getId(), true);
+            }
+            output.writeVarInt(msg.getParameterIndex(), true);
+            if ((flags & METHOD) != 0) {
+                output.writeVarInt(msg.getMethod().ordinal(), true);
+            }
+            if ((flags & PARAM_TYPE) != 0) {
+                output.writeVarInt(msg.getParamType().ordinal(), true);
+            }
+            if ((flags & PARAMS) != 0) {
+                writeParams(kryo, output, msg.getParams());
+            }
+            if ((flags & RESPONSE) != 0) {
+                kryo.writeClassAndObject(output, msg.getResponse());
+            }
+            if ((flags & CONNECTION_ID) != 0) {
+                output.writeVarLong(msg.getConnectionId(), true);
+            }
+            if ((flags & PREPARE_PARAMS) != 0) {
+                writeParams(kryo, output, msg.getPrepareParams());
+            }
+            if ((flags & BATCH_SIZE) != 0) {
+                output.writeVarInt(msg.getBatchSize(), true);
+            }
+            if ((flags & STATEMENT_METHODS) != 0) {
+                output.writeVarInt(msg.getStatementMethods().size(), true);
+                for (StatementMsg statementMsg : msg.getStatementMethods()) {
+                    kryo.writeObject(output, statementMsg);
+                }
+            }
+        }
+
+        @Override
+        public PreparedStatementMsg read(Kryo kryo, Input input, Class<PreparedStatementMsg> type) {
+            PreparedStatementMsg msg = PreparedStatementMsg.newBuilder().build();
+            int flags = input.readVarInt(true);
+            if ((flags & ID) != 0) {
+                msg.setId(input.readVarLong(true));
+            }
+            msg.setParameterIndex(input.readVarInt(true));
+            if ((flags & METHOD) != 0) {
+                msg.setMethod(PreparedStatementMsg.Method.values()[input.readVarInt(true)]);
+            }
+            if ((flags & PARAM_TYPE) != 0) {
+                msg.setParamType(PreparedStatementMsg.ParamType.values()[input.readVarInt(true)]);
+            }
+            if ((flags & PARAMS) != 0) {
+                msg.setParams(readParams(kryo, input));
+            }
+            if ((flags & RESPONSE) != 0) {
+                msg.setResponse((Serializable) kryo.readClassAndObject(input));
+            }
+            if ((flags & CONNECTION_ID) != 0) {
+                msg.setConnectionId(input.readVarLong(true));
+            }
+            if ((flags & PREPARE_PARAMS) != 0) {
+                msg.setPrepareParams(readParams(kryo, input));
+            }
+            if ((flags & BATCH_SIZE) != 0) {
+                msg.setBatchSize(input.readVarInt(true));
+            }
+            if ((flags & STATEMENT_METHODS) != 0) {
+                int count = input.readVarInt(true);
+                List<StatementMsg> statementMethods = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    statementMethods.add(kryo.readObject(input, StatementMsg.class));
+                }
+                msg.setStatementMethods(statementMethods);
+            }
+            return msg;
+        }
+
+        private static void writeParams(Kryo kryo, Output output, Serializable[] params) {
+            output.writeVarInt(params.length, true);
+            for (Serializable param : params) {
+                kryo.writeClassAndObject(output, param);
+            }
+        }
+
+        private static Serializable[] readParams(Kryo kryo, Input input) {
+            Serializable[] params = new Serializable[input.readVarInt(true)];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = (Serializable) kryo.readClassAndObject(input);
+            }
+            return params;
+        }
+    }
+}
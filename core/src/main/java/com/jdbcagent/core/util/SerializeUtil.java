@@ -1,9 +1,10 @@
 package com.jdbcagent.core.util;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoFactory;
@@ -16,6 +17,27 @@ import com.esotericsoftware.kryo.pool.KryoPool;
  * @version 1.0 2018-07-10
  */
 public class SerializeUtil {
+    private final static int BUFFER_SIZE = 4096;                    // 线程缓冲初始大小
+
+    private final static int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024; // 线程缓冲最大保留大小, 超过则用完即弃
+
+    private final static byte[] EMPTY = new byte[0];
+
+    // 每个线程复用的输出/输入缓冲, 槽位为null表示正在使用(嵌套调用时临时新建)
+    private final static ThreadLocal<Output[]> OUTPUTS = new ThreadLocal<Output[]>() {
+        @Override
+        protected Output[] initialValue() {
+            return new Output[1];
+        }
+    };
+
+    private final static ThreadLocal<Input[]> INPUTS = new ThreadLocal<Input[]>() {
+        @Override
+        protected Input[] initialValue() {
+            return new Input[1];
+        }
+    };
+
     /**
      * 序列化
      *
@@ -26,36 +48,77 @@ public class SerializeUtil {
         if (obj == null)
             return null;
 
-        KryoPool pool = null;
-        Kryo kryo = null;
-        ByteArrayOutputStream baos = null;
-        Output output = null;
+        Output output = acquireOutput();
+        try {
+            writeClassAndObject(output, obj);
+            return output.toBytes();
+        } finally {
+            releaseOutput(output);
+        }
+    }
+
+    /**
+     * 序列化到一个大小正好的数组中, 数组头部预留指定长度的空间(如数据包头)
+     *
+     * @param obj        可序列化对象
+     * @param headerRoom 头部预留长度
+     * @return 包含预留空间的数据缓冲
+     */
+    public static ByteBuffer serialize(Object obj, int headerRoom) {
+        Output output = acquireOutput();
+        try {
+            writeClassAndObject(output, obj);
+            byte[] frame = new byte[headerRoom + output.position()];
+            System.arraycopy(output.getBuffer(), 0, frame, headerRoom, output.position());
+            return ByteBuffer.wrap(frame);
+        } finally {
+            releaseOutput(output);
+        }
+    }
+
+    /**
+     * 预先编码对象自身的数据(不含类信息), 用于提前序列化
+     *
+     * @param obj 自定义序列化对象
+     * @return 二进制数据
+     */
+    public static byte[] encode(KryoSerializable obj) {
+        KryoPool pool = KryoPoolFactory.getKryoPoolInstance();
+        Kryo kryo = pool.borrow();
+        Output output = acquireOutput();
+        try {
+            obj.write(kryo, output);
+            return output.toBytes();
+        } finally {
+            releaseOutput(output);
+            pool.release(kryo);
+        }
+    }
+
+    private static void writeClassAndObject(Output output, Object obj) {
+        KryoPool pool = KryoPoolFactory.getKryoPoolInstance();
+        Kryo kryo = pool.borrow();
         try {
-            pool = KryoPoolFactory.getKryoPoolInstance();
-            kryo = pool.borrow();
-            baos = new ByteArrayOutputStream();
-            output = new Output(baos);
             kryo.writeClassAndObject(output, obj);
-            output.flush();
-            byte[] b = baos.toByteArray();
-            baos.flush();
-            return b;
-        } catch (IOException e) {
-            return null;
         } finally {
-            if (output != null) {
-                output.close();
-            }
-            if (baos != null) {
-                try {
-                    baos.close();
-                } catch (IOException e) {
-                    // ignore
-                }
-            }
-            if (kryo != null) {
-                pool.release(kryo);
-            }
+            pool.release(kryo);
+        }
+    }
+
+    private static Output acquireOutput() {
+        Output[] slot = OUTPUTS.get();
+        Output output = slot[0];
+        if (output == null) {
+            return new Output(BUFFER_SIZE, -1);
+        }
+        slot[0] = null;
+        output.clear();
+        return output;
+    }
+
+    private static void releaseOutput(Output output) {
+        if (output.getBuffer().length <= MAX_RETAINED_BUFFER_SIZE) {
+            OUTPUTS.get()[0] = output;
         }
     }
 
@@ -68,18 +131,53 @@ public class SerializeUtil {
     public static Object deserialize(byte[] bytes) {
         if (bytes == null)
             return null;
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 从数组的指定区间反序列化, 不复制数据
+     *
+     * @param bytes  二进制数据
+     * @param offset 起始位置
+     * @param count  长度
+     * @return 反序列化对象
+     */
+    public static Object deserialize(byte[] bytes, int offset, int count) {
+        Input[] slot = INPUTS.get();
+        Input input = slot[0];
+        if (input == null) {
+            input = new Input();
+        } else {
+            slot[0] = null;
+        }
+        input.setBuffer(bytes, offset, count);
+        try {
+            return read(input);
+        } finally {
+            // 释放对数据的引用后归还
+            input.setBuffer(EMPTY);
+            slot[0] = input;
+        }
+    }
+
+    /**
+     * 从ByteBuffer的可读区间反序列化, 不复制数据
+     *
+     * @param buffer 数据缓冲
+     * @return 反序列化对象
+     */
+    public static Object deserialize(ByteBuffer buffer) {
+        return read(new ByteBufferInput(buffer));
+    }
+
+    private static Object read(Input input) {
         KryoPool pool = null;
         Kryo kryo = null;
-        Input input = null;
         try {
             pool = KryoPoolFactory.getKryoPoolInstance();
             kryo = pool.borrow();
-            input = new Input(bytes);
             return kryo.readClassAndObject(input);
         } finally {
-            if (input != null) {
-                input.close();
-            }
             if (kryo != null) {
                 pool.release(kryo);
             }
@@ -99,6 +197,7 @@ public class SerializeUtil {
                 public Kryo create() {
                     Kryo kryo = new Kryo();
                     kryo.setReferences(false);
+                    KryoRegistry.register(kryo);
                     // kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
                     return kryo;
                 }
@@ -1,6 +1,7 @@
 package com.jdbcagent.core.util;
 
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * JDBC-Agent 工具类
@@ -179,4 +180,28 @@ public class Util {
         }
         return reader2String(reader, length).toCharArray();
     }
+
+    /**
+     * 生成预编译语句的缓存key, 包含sql及其它预编译参数
+     *
+     * @param params Connection.prepareStatement 的参数
+     * @return 缓存key
+     */
+    public static String statementKey(Serializable[] params) {
+        if (params.length == 1) {
+            return (String) params[0];
+        }
+        StringBuilder key = new StringBuilder((String) params[0]);
+        for (int i = 1; i < params.length; i++) {
+            key.append('\0');
+            if (params[i] instanceof int[]) {
+                key.append(Arrays.toString((int[]) params[i]));
+            } else if (params[i] instanceof String[]) {
+                key.append(Arrays.toString((String[]) params[i]));
+            } else {
+                key.append(params[i]);
+            }
+        }
+        return key.toString();
+    }
 }
@@ -0,0 +1,34 @@
+package com.jdbcagent.core.protocol;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FramesTest {
+
+    @Test
+    public void testHeader() {
+        int last = Frames.header(Frames.MAX_FRAME_LENGTH, false);
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, last);
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, Frames.length(last));
+        Assert.assertFalse(Frames.hasMore(last));
+
+        int more = Frames.header(Frames.MAX_FRAME_LENGTH, true);
+        Assert.assertTrue(more < 0);
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, Frames.length(more));
+        Assert.assertTrue(Frames.hasMore(more));
+
+        Assert.assertEquals(0, Frames.length(Frames.header(0, true)));
+        Assert.assertTrue(Frames.hasMore(Frames.header(0, true)));
+    }
+
+    @Test
+    public void testFrameCount() {
+        Assert.assertEquals(1, Frames.frameCount(0));
+        Assert.assertEquals(1, Frames.frameCount(1));
+        Assert.assertEquals(1, Frames.frameCount(Frames.MAX_FRAME_LENGTH));
+        Assert.assertEquals(2, Frames.frameCount(Frames.MAX_FRAME_LENGTH + 1));
+        Assert.assertEquals(3, Frames.frameCount(Frames.MAX_FRAME_LENGTH * 3));
+        Assert.assertEquals(Frames.DEFAULT_MAX_MESSAGE_LENGTH / Frames.MAX_FRAME_LENGTH,
+                Frames.frameCount(Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+}
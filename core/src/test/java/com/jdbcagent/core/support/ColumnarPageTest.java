@@ -0,0 +1,189 @@
+package com.jdbcagent.core.support;
+
+import com.jdbcagent.core.util.SerializeUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ColumnarPageTest {
+    private static final byte[] KINDS = {
+            ColumnarPage.KIND_INT, ColumnarPage.KIND_LONG, ColumnarPage.KIND_DOUBLE, ColumnarPage.KIND_FLOAT,
+            ColumnarPage.KIND_BOOLEAN, ColumnarPage.KIND_STRING, ColumnarPage.KIND_TIMESTAMP,
+            ColumnarPage.KIND_DATE, ColumnarPage.KIND_TIME, ColumnarPage.KIND_OBJECT
+    };
+
+    private static final String[] WORDS = {"alpha", "beta", "gamma"};
+
+    // 超过初始容量64, 覆盖扩容和第二个位图字
+    private static final int ROWS = 150;
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ColumnarPage page = ColumnarPage.populate(resultSet(rows(ROWS)), KINDS, 200);
+        Assert.assertEquals(ROWS, page.getRowCount());
+        Assert.assertTrue(page.isLast());
+        assertRows(page, ROWS);
+
+        ColumnarPage copy = (ColumnarPage) SerializeUtil.deserialize(SerializeUtil.serialize(page));
+        Assert.assertEquals(ROWS, copy.getRowCount());
+        Assert.assertEquals(KINDS.length, copy.getColumnCount());
+        Assert.assertTrue(copy.isLast());
+        assertRows(copy, ROWS);
+    }
+
+    @Test
+    public void testEncodedRoundTrip() throws Exception {
+        ColumnarPage page = ColumnarPage.populate(resultSet(rows(ROWS)), KINDS, 100);
+        Assert.assertEquals(100, page.getRowCount());
+        Assert.assertFalse(page.isLast());
+        page.encode();
+        Assert.assertTrue(page.getEncodedSize() > 0);
+
+        ColumnarPage copy = (ColumnarPage) SerializeUtil.deserialize(SerializeUtil.serialize(page));
+        Assert.assertEquals(100, copy.getRowCount());
+        Assert.assertFalse(copy.isLast());
+        assertRows(copy, 100);
+    }
+
+    @Test
+    public void testDictionaryStrings() throws Exception {
+        ColumnarPage page = ColumnarPage.populate(resultSet(rows(ROWS)), KINDS, 200);
+        ColumnarPage copy = (ColumnarPage) SerializeUtil.deserialize(SerializeUtil.serialize(page));
+        // 相同的值在字典中只有一份
+        for (int r = 3; r < ROWS; r++) {
+            if (!copy.isNull(r, 6)) {
+                Assert.assertSame(copy.getString(3 + r % 3, 6), copy.getString(r, 6));
+            }
+        }
+
+        // 重复值多的字符串列比逐行保存的对象列小
+        List<Object[]> repeated = new ArrayList<>();
+        for (int r = 0; r < 1000; r++) {
+            repeated.add(new Object[]{"a fairly long repeated value " + (r % 2)});
+        }
+        int dictionarySize = SerializeUtil.serialize(ColumnarPage.populate(resultSet(repeated),
+                new byte[]{ColumnarPage.KIND_STRING}, 1000)).length;
+        int objectSize = SerializeUtil.serialize(ColumnarPage.populate(resultSet(repeated),
+                new byte[]{ColumnarPage.KIND_OBJECT}, 1000)).length;
+        Assert.assertTrue(dictionarySize * 5 < objectSize);
+    }
+
+    @Test
+    public void testAllNullColumn() throws Exception {
+        List<Object[]> rows = new ArrayList<>();
+        for (int r = 0; r < 70; r++) {
+            rows.add(new Object[]{null, null});
+        }
+        ColumnarPage page = ColumnarPage.populate(resultSet(rows),
+                new byte[]{ColumnarPage.KIND_INT, ColumnarPage.KIND_STRING}, 70);
+        ColumnarPage copy = (ColumnarPage) SerializeUtil.deserialize(SerializeUtil.serialize(page));
+        Assert.assertFalse(copy.isLast());
+        for (int r = 0; r < 70; r++) {
+            Assert.assertTrue(copy.isNull(r, 1));
+            Assert.assertTrue(copy.isNull(r, 2));
+            Assert.assertNull(copy.getObject(r, 1));
+            Assert.assertEquals(0L, copy.getLong(r, 1));
+            Assert.assertNull(copy.getString(r, 2));
+        }
+    }
+
+    @Test
+    public void testEmptyPage() throws Exception {
+        ColumnarPage page = ColumnarPage.populate(resultSet(new ArrayList<Object[]>()), KINDS, 10);
+        ColumnarPage copy = (ColumnarPage) SerializeUtil.deserialize(SerializeUtil.serialize(page));
+        Assert.assertEquals(0, copy.getRowCount());
+        Assert.assertTrue(copy.isLast());
+    }
+
+    private static List<Object[]> rows(int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int r = 0; r < count; r++) {
+            rows.add(row(r));
+        }
+        return rows;
+    }
+
+    /**
+     * 每列按不同的间隔取null, 使各列的位图不同
+     */
+    private static Object[] row(int r) {
+        Timestamp ts = new Timestamp(1500000000000L + r * 1000L);
+        ts.setNanos(r * 1001);
+        return new Object[]{
+                r % 3 == 0 ? null : r,
+                r % 4 == 0 ? null : (long) r << 33,
+                r % 5 == 0 ? null : r + 0.25D,
+                r % 6 == 0 ? null : r + 0.5F,
+                r % 7 == 0 ? null : r % 2 == 0,
+                r % 8 == 0 ? null : WORDS[r % 3],
+                r % 9 == 0 ? null : ts,
+                r % 10 == 0 ? null : new Date(86400000L * r),
+                r % 11 == 0 ? null : new Time(1000L * r),
+                r % 12 == 0 ? null : new BigDecimal(r).movePointLeft(2)
+        };
+    }
+
+    private static void assertRows(ColumnarPage page, int count) throws Exception {
+        for (int r = 0; r < count; r++) {
+            Object[] expected = row(r);
+            for (int c = 0; c < expected.length; c++) {
+                Assert.assertEquals("row " + r + " column " + (c + 1), expected[c] == null, page.isNull(r, c + 1));
+                Assert.assertEquals("row " + r + " column " + (c + 1), expected[c], page.getObject(r, c + 1));
+            }
+            if (expected[6] != null) {
+                Assert.assertEquals(((Timestamp) expected[6]).getNanos(), page.getTimestamp(r, 7).getNanos());
+            }
+        }
+    }
+
+    /**
+     * 按行数据模拟只进的结果集
+     */
+    private static ResultSet resultSet(final List<Object[]> rows) {
+        return (ResultSet) Proxy.newProxyInstance(ColumnarPageTest.class.getClassLoader(),
+                new Class[]{ResultSet.class}, new InvocationHandler() {
+                    private int row = -1;
+                    private boolean wasNull;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("next")) {
+                            return ++row < rows.size();
+                        } else if (name.equals("wasNull")) {
+                            return wasNull;
+                        } else if (name.startsWith("get") && args != null && args[0] instanceof Integer) {
+                            Object value = rows.get(row)[(Integer) args[0] - 1];
+                            wasNull = value == null;
+                            return value == null ? defaultValue(method.getReturnType()) : value;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0D;
+        } else if (type == float.class) {
+            return 0F;
+        } else if (type == boolean.class) {
+            return false;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,145 @@
+package com.jdbcagent.core.support;
+
+import com.jdbcagent.core.protocol.PreparedStatementMsg.ParamType;
+import com.jdbcagent.core.support.serial.SerialNClob;
+import com.jdbcagent.core.support.serial.SerialRowId;
+import com.jdbcagent.core.util.SerializeUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URL;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.EnumSet;
+
+public class ParamBlockTest {
+
+    @Test
+    public void testParamBlockAllTypes() throws Exception {
+        ParamBlock block = new ParamBlock();
+        int i = 1;
+        block.setLong(ParamType.NULL, i++, Types.VARCHAR);
+        block.setLong(ParamType.NULL, i++, Types.STRUCT, "MY_TYPE");
+        block.setLong(ParamType.BOOLEAN, i++, 1);
+        block.setLong(ParamType.BYTE, i++, Byte.MIN_VALUE);
+        block.setLong(ParamType.SHORT, i++, Short.MIN_VALUE);
+        block.setLong(ParamType.INT, i++, Integer.MIN_VALUE);
+        block.setLong(ParamType.LONG, i++, Long.MIN_VALUE);
+        block.setLong(ParamType.LONG, i++, Long.MAX_VALUE);
+        block.setDouble(ParamType.FLOAT, i++, -0.0F);
+        block.setDouble(ParamType.FLOAT, i++, Float.MIN_VALUE);
+        block.setDouble(ParamType.FLOAT, i++, Float.NaN);
+        block.setDouble(ParamType.FLOAT, i++, Float.NEGATIVE_INFINITY);
+        block.setDouble(ParamType.DOUBLE, i++, -0.0D);
+        block.setDouble(ParamType.DOUBLE, i++, Double.MIN_VALUE);
+        block.setDouble(ParamType.DOUBLE, i++, Double.longBitsToDouble(0x7ff0000000000123L));
+        block.setDouble(ParamType.DOUBLE, i++, Double.POSITIVE_INFINITY);
+        block.setObject(ParamType.BIG_DECIMAL, i++, new BigDecimal("-12345678901234567890.123456789"));
+        block.setObject(ParamType.STRING, i++, "字符串 string");
+        block.setObject(ParamType.STRING, i++, null);
+        block.setObject(ParamType.NSTRING, i++, "");
+        block.setObject(ParamType.BYTES, i++, new byte[]{0, -1, 127});
+        block.setObject(ParamType.DATE, i++, new Date(86400000L * 17000));
+        block.setObject(ParamType.TIME, i++, new Time(3723000L));
+        block.setObject(ParamType.TIMESTAMP, i++, new Timestamp(1500000000123L));
+        block.setObject(ParamType.URL, i++, new URL("http://localhost:8080/path?q=1"));
+        block.setObject(ParamType.OBJECT, i++, new BigInteger("123456789012345678901234567890"), Types.NUMERIC, 2);
+        // 以下类型的值按对象写出, 编码与值的具体类型无关
+        block.setObject(ParamType.REF, i++, "ref");
+        block.setObject(ParamType.BLOB, i++, new SerialBlob(new byte[]{1, 2, 3}));
+        block.setObject(ParamType.CLOB, i++, new SerialClob("clob".toCharArray()));
+        block.setObject(ParamType.NCLOB, i++, new SerialNClob("nclob".toCharArray()));
+        block.setObject(ParamType.ARRAY, i++, new String[]{"a", null, "c"});
+        block.setObject(ParamType.ROW_ID, i++, new SerialRowId(new byte[]{9, 8}));
+        block.setObject(ParamType.NCHARACTER_STREAM, i++, "nchars", 6L);
+        block.setObject(ParamType.CHARACTER_STREAM, i++, "chars", 5);
+        block.setObject(ParamType.BINARY_STREAM, i++, new byte[]{4, 5}, 2L);
+        block.setObject(ParamType.ASCII_STREAM, i++, new byte[]{'a'}, 1);
+        block.setObject(ParamType.UNICODE_STREAM, i++, new byte[]{0, 'u'}, 2);
+        // 输出参数注册不覆盖同一下标的值参数, 也不互相覆盖
+        block.setLong(ParamType.registerOutParameter, 1, Types.INTEGER);
+        block.setLong(ParamType.registerOutParameter, 1, Types.DECIMAL, 4);
+        block.setLong(ParamType.registerOutParameter, 2, Types.STRUCT, "MY_TYPE");
+
+        EnumSet<ParamType> covered = EnumSet.noneOf(ParamType.class);
+        for (int n = 0; n < block.size(); n++) {
+            covered.add(block.getType(n));
+        }
+        Assert.assertEquals(EnumSet.allOf(ParamType.class), covered);
+
+        ParamBlock copy = (ParamBlock) SerializeUtil.deserialize(SerializeUtil.serialize(block));
+        assertParamBlock(block, copy);
+        assertParamBlock(block, (ParamBlock) SerializeUtil.deserialize(SerializeUtil.serialize(block.copy())));
+
+        Assert.assertEquals(Float.floatToRawIntBits(-0.0F), Float.floatToRawIntBits(copy.getFloat(8)));
+        Assert.assertTrue(Float.isNaN(copy.getFloat(10)));
+        Assert.assertEquals(0x7ff0000000000123L, Double.doubleToRawLongBits(copy.getDouble(14)));
+        Assert.assertEquals(Types.STRUCT, copy.getLong(1));
+        Assert.assertEquals("MY_TYPE", copy.getExtra(1, 0));
+        Assert.assertEquals(0, copy.getExtraCount(0));
+    }
+
+    @Test
+    public void testParamBlockOverwrite() {
+        ParamBlock block = new ParamBlock();
+        block.setLong(ParamType.INT, 1, 10);
+        block.setObject(ParamType.STRING, 2, "first", 5);
+        block.setLong(ParamType.NULL, 3, Types.VARCHAR, "VARCHAR");
+        // 同一下标再次设置, 覆盖原位置
+        block.setObject(ParamType.STRING, 1, "second");
+        block.setDouble(ParamType.DOUBLE, 2, 1.5D);
+        block.setLong(ParamType.LONG, 3, 7L);
+        block.setLong(ParamType.BOOLEAN, 300, 1);
+        block.setLong(ParamType.BOOLEAN, 300, 0);
+        Assert.assertEquals(4, block.size());
+
+        ParamBlock copy = (ParamBlock) SerializeUtil.deserialize(SerializeUtil.serialize(block));
+        assertParamBlock(block, copy);
+        Assert.assertEquals(ParamType.STRING, copy.getType(0));
+        Assert.assertEquals("second", copy.getValue(0));
+        Assert.assertEquals(ParamType.DOUBLE, copy.getType(1));
+        Assert.assertEquals(1.5D, copy.getDouble(1), 0D);
+        Assert.assertEquals(0, copy.getExtraCount(1));
+        Assert.assertEquals(ParamType.LONG, copy.getType(2));
+        Assert.assertEquals(7L, copy.getLong(2));
+        Assert.assertEquals(0, copy.getExtraCount(2));
+        Assert.assertEquals(300, copy.getIndex(3));
+        Assert.assertEquals(0L, copy.getLong(3));
+
+        // 清除后下标重新占位
+        block.clear();
+        block.setLong(ParamType.INT, 3, 1);
+        block.setLong(ParamType.INT, 1, 2);
+        Assert.assertEquals(2, block.size());
+        Assert.assertEquals(3, block.getIndex(0));
+        Assert.assertNull(block.getValue(1));
+    }
+
+    private static void assertParamBlock(ParamBlock expected, ParamBlock actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String message = "param " + i + " " + expected.getType(i);
+            Assert.assertEquals(message, expected.getType(i), actual.getType(i));
+            Assert.assertEquals(message, expected.getIndex(i), actual.getIndex(i));
+            Assert.assertEquals(message, expected.getLong(i), actual.getLong(i));
+            Object value = expected.getValue(i);
+            if (value instanceof byte[]) {
+                Assert.assertArrayEquals(message, (byte[]) value, (byte[]) actual.getValue(i));
+            } else if (value instanceof Object[]) {
+                Assert.assertArrayEquals(message, (Object[]) value, (Object[]) actual.getValue(i));
+            } else if (value instanceof SerialRowId) {
+                Assert.assertArrayEquals(message, ((SerialRowId) value).getBytes(),
+                        ((SerialRowId) actual.getValue(i)).getBytes());
+            } else {
+                Assert.assertEquals(message, value, actual.getValue(i));
+            }
+            Assert.assertArrayEquals(message, expected.getExtras(i), actual.getExtras(i));
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.jdbcagent.server.config;
 
+import com.jdbcagent.core.protocol.Frames;
 import com.jdbcagent.server.datasources.DataSourceFactory;
+import com.jdbcagent.server.jdbc.DatabaseMetaDataServer;
 import org.apache.commons.lang.StringUtils;
 
 import javax.sql.DataSource;
@@ -20,7 +22,7 @@ public class JdbcAgentConf {
     private JdbcAgent jdbcAgent;    // 配置对象
 
     /**
-     * 初始化配置及数据源连接池
+     * 初始化配置及数据源连接池, 并读取各数据源的能力信息快照
      */
     public void init() {
         if (jdbcAgent != null && jdbcAgent.dataSources != null) {
@@ -42,6 +44,7 @@ public class JdbcAgentConf {
                             + StringUtils.trimToEmpty(dsConf.getAccessUsername()) + "|"
                             + StringUtils.trimToEmpty(dsConf.getAccessPassword());
                     DATASOURCE_MAP.put(key, dataSource);
+                    DatabaseMetaDataServer.initSnapshot(dataSource);
                 }
             }
             USER_MAP.clear();
@@ -65,6 +68,21 @@ public class JdbcAgentConf {
         private String ip;
         private int port;
         private String catalog;
+        private int executorThreads = 64;                               // sql执行线程数
+        private long maxChannelMemorySize = 16 * 1024 * 1024;           // 单个通道待执行请求的最大字节数
+        private long maxTotalMemorySize = 256 * 1024 * 1024;            // 所有通道待执行请求的最大字节数
+        private int prefetchPages = 0;                                  // 每个结果集预读的页数, 0为不预读
+        private int prefetchThreads = 16;                               // 预读线程数
+        private long maxPrefetchMemorySize = 64 * 1024 * 1024;          // 所有结果集预读分页的最大字节数
+        private long maxConnectionPrefetchMemorySize = 16 * 1024 * 1024;    // 每个连接的结果集预读分页的最大字节数
+        private int maxOpenResultSets = 4096;                           // 所有连接同时打开的结果集上限, 0为不限制
+        private int maxConnectionOpenResultSets = 256;                  // 每个连接同时打开的结果集上限, 0为不限制
+        private long targetPageSize = 256 * 1024;                       // 客户端未指定fetchSize时每页的目标字节数
+        private int lobInlineThreshold = 64 * 1024;                     // 不超过此长度的BLOB/CLOB随分页整体传输, 否则按块读取
+        private String compression;                                     // 允许的压缩算法, 逗号分隔, 为空不压缩
+        private int compressThreshold = 4096;                           // 压缩阈值, 小于该字节数的数据包不压缩
+        private int maxMessageLength = Frames.DEFAULT_MAX_MESSAGE_LENGTH;   // 单个请求包体(分片拼接、解压后)的最大字节数, 超过时关闭通道
+        private int preparedStatementCacheSize = 64;                    // 每个连接缓存的空闲preparedStatement数, 0为不缓存
         private List<DataSourceConf> dataSources;
 
         public String getZkServers() {
@@ -99,6 +117,126 @@ public class JdbcAgentConf {
             this.catalog = catalog;
         }
 
+        public int getExecutorThreads() {
+            return executorThreads;
+        }
+
+        public void setExecutorThreads(int executorThreads) {
+            this.executorThreads = executorThreads;
+        }
+
+        public long getMaxChannelMemorySize() {
+            return maxChannelMemorySize;
+        }
+
+        public void setMaxChannelMemorySize(long maxChannelMemorySize) {
+            this.maxChannelMemorySize = maxChannelMemorySize;
+        }
+
+        public long getMaxTotalMemorySize() {
+            return maxTotalMemorySize;
+        }
+
+        public void setMaxTotalMemorySize(long maxTotalMemorySize) {
+            this.maxTotalMemorySize = maxTotalMemorySize;
+        }
+
+        public int getPrefetchPages() {
+            return prefetchPages;
+        }
+
+        public void setPrefetchPages(int prefetchPages) {
+            this.prefetchPages = prefetchPages;
+        }
+
+        public int getPrefetchThreads() {
+            return prefetchThreads;
+        }
+
+        public void setPrefetchThreads(int prefetchThreads) {
+            this.prefetchThreads = prefetchThreads;
+        }
+
+        public long getMaxPrefetchMemorySize() {
+            return maxPrefetchMemorySize;
+        }
+
+        public void setMaxPrefetchMemorySize(long maxPrefetchMemorySize) {
+            this.maxPrefetchMemorySize = maxPrefetchMemorySize;
+        }
+
+        public long getMaxConnectionPrefetchMemorySize() {
+            return maxConnectionPrefetchMemorySize;
+        }
+
+        public void setMaxConnectionPrefetchMemorySize(long maxConnectionPrefetchMemorySize) {
+            this.maxConnectionPrefetchMemorySize = maxConnectionPrefetchMemorySize;
+        }
+
+        public int getMaxOpenResultSets() {
+            return maxOpenResultSets;
+        }
+
+        public void setMaxOpenResultSets(int maxOpenResultSets) {
+            this.maxOpenResultSets = maxOpenResultSets;
+        }
+
+        public int getMaxConnectionOpenResultSets() {
+            return maxConnectionOpenResultSets;
+        }
+
+        public void setMaxConnectionOpenResultSets(int maxConnectionOpenResultSets) {
+            this.maxConnectionOpenResultSets = maxConnectionOpenResultSets;
+        }
+
+        public long getTargetPageSize() {
+            return targetPageSize;
+        }
+
+        public void setTargetPageSize(long targetPageSize) {
+            this.targetPageSize = targetPageSize;
+        }
+
+        public int getLobInlineThreshold() {
+            return lobInlineThreshold;
+        }
+
+        public void setLobInlineThreshold(int lobInlineThreshold) {
+            this.lobInlineThreshold = lobInlineThreshold;
+        }
+
+        public String getCompression() {
+            return compression;
+        }
+
+        public void setCompression(String compression) {
+            this.compression = compression;
+        }
+
+        public int getCompressThreshold() {
+            return compressThreshold;
+        }
+
+        public void setCompressThreshold(int compressThreshold) {
+            this.compressThreshold = compressThreshold;
+        }
+
+        public int getMaxMessageLength() {
+            return maxMessageLength;
+        }
+
+        public void setMaxMessageLength(int maxMessageLength) {
+            this.maxMessageLength = maxMessageLength;
+        }
+
+        public int getPreparedStatementCacheSize() {
+            return preparedStatementCacheSize;
+        }
+
+        public void setPreparedStatementCacheSize(int preparedStatementCacheSize) {
+            this.preparedStatementCacheSize = preparedStatementCacheSize;
+        }
+
         public List<DataSourceConf> getDataSources() {
             return dataSources;
         }
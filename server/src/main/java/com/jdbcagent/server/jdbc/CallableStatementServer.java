@@ -2,8 +2,8 @@ package com.jdbcagent.server.jdbc;
 
 import com.jdbcagent.core.protocol.CallableStatementMsg;
 import com.jdbcagent.core.protocol.CallableStatementMsg.Method;
-import com.jdbcagent.core.protocol.PreparedStatementMsg;
 import com.jdbcagent.core.protocol.PreparedStatementMsg.ParamType;
+import com.jdbcagent.core.support.ParamBlock;
 import com.jdbcagent.core.support.serial.SerialNClob;
 import com.jdbcagent.core.support.serial.SerialRowId;
 import com.jdbcagent.core.support.serial.SerialVoid;
@@ -35,9 +35,10 @@ public class CallableStatementServer extends PreparedStatementServer {
      * 构造方法
      *
      * @param callableStatement
+     * @param owner             所属连接
      */
-    public CallableStatementServer(CallableStatement callableStatement) {
-        super(callableStatement);
+    CallableStatementServer(CallableStatement callableStatement, ConnectionServer owner) {
+        super(callableStatement, owner, null);
         this.callableStatement = callableStatement;
     }
 
@@ -67,12 +68,14 @@ public class CallableStatementServer extends PreparedStatementServer {
             Serializable response = new SerialVoid();
             Method method = callableStatementMsg.getMethod();
 
-            Queue<PreparedStatementMsg> paramsQueue = null;
+            ParamBlock paramBlock = null;
             Queue<CallableStatementMsg> csParamsQueue = null;
-            if (callableStatementMsg.getParams() != null) {
-                paramsQueue = (Queue<PreparedStatementMsg>) callableStatementMsg.getParams()[0];
+            if (callableStatementMsg.getParams() != null
+                    && callableStatementMsg.getParams().length == 2
+                    && callableStatementMsg.getParams()[0] instanceof ParamBlock) {
+                paramBlock = (ParamBlock) callableStatementMsg.getParams()[0];
                 csParamsQueue = (Queue<CallableStatementMsg>) callableStatementMsg.getParams()[1];
-                setParams(paramsQueue);
+                setParams(paramBlock);
                 setCSParams(csParamsQueue);
             }
 
@@ -82,25 +85,25 @@ public class CallableStatementServer extends PreparedStatementServer {
                     break;
                 }
                 case execute: {
-                    if (csParamsQueue == null || paramsQueue == null) {
+                    if (csParamsQueue == null || paramBlock == null) {
                         throw new IllegalArgumentException();
                     }
                     response = callableStatement.execute();
                     break;
                 }
                 case executeUpdate: {
-                    if (csParamsQueue == null || paramsQueue == null) {
+                    if (csParamsQueue == null || paramBlock == null) {
                         throw new IllegalArgumentException();
                     }
                     response = callableStatement.executeUpdate();
                     break;
                 }
                 case executeQuery: {
-                    if (csParamsQueue == null || paramsQueue == null) {
+                    if (csParamsQueue == null || paramBlock == null) {
                         throw new IllegalArgumentException();
                     }
-                    ResultSetServer resultSetServer = new ResultSetServer(callableStatement.executeQuery());
-                    response = resultSetServer.currentId;
+                    response = openResultSet(callableStatement.executeQuery())
+                            .describe(callableStatementMsg.getBatchSize());
                     break;
                 }
                 default: {
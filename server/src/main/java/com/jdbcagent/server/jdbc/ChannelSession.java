@@ -0,0 +1,117 @@
+package com.jdbcagent.server.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JDBC-Agent server 端通道会话
+ * <p>
+ * 记录一个客户端通道上创建的所有连接, netty客户端在同一通道上复用多个连接;
+ * 通道关闭时关闭其全部连接, 各连接再关闭自己打开的statement和结果集
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class ChannelSession {
+    private final static Logger logger = LoggerFactory.getLogger(ChannelSession.class);
+
+    private final static ConcurrentHashMap<Integer, ChannelSession>
+            SESSIONS = new ConcurrentHashMap<>();                   // 通道id-会话映射
+
+    private final Integer channelId;                                // 通道id
+
+    private final Set<ConnectionServer> connections = new HashSet<>();  // 本通道上未关闭的连接
+
+    private boolean closed;                                         // 通道是否已关闭
+
+    private ChannelSession(Integer channelId) {
+        this.channelId = channelId;
+    }
+
+    /**
+     * 获取通道的会话, 不存在时创建
+     *
+     * @param channelId 通道id
+     * @return 会话
+     */
+    public static ChannelSession open(Integer channelId) {
+        ChannelSession session = SESSIONS.get(channelId);
+        if (session == null) {
+            ChannelSession newSession = new ChannelSession(channelId);
+            session = SESSIONS.putIfAbsent(channelId, newSession);
+            if (session == null) {
+                session = newSession;
+            }
+        }
+        return session;
+    }
+
+    /**
+     * 通道关闭时关闭其会话
+     *
+     * @param channelId 通道id
+     */
+    public static void close(Integer channelId) {
+        ChannelSession session = SESSIONS.remove(channelId);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * 关闭会话及其所有连接, 会话关闭后不再接受新的连接
+     */
+    public void close() {
+        List<ConnectionServer> connectionServers;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connectionServers = new ArrayList<>(connections);
+            connections.clear();
+        }
+        SESSIONS.remove(channelId, this);
+        for (ConnectionServer connectionServer : connectionServers) {
+            try {
+                connectionServer.close();
+            } catch (SQLException e) {
+                logger.warn("Close connection " + connectionServer.getCurrentId() + " of channel "
+                        + channelId + " error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 登记新建的连接
+     *
+     * @param connectionServer 连接
+     * @throws SQLException 通道已关闭
+     */
+    synchronized void addConnection(ConnectionServer connectionServer) throws SQLException {
+        if (closed) {
+            throw new SQLException("Channel " + channelId + " is closed");
+        }
+        connections.add(connectionServer);
+    }
+
+    /**
+     * 连接单独关闭时注销
+     *
+     * @param connectionServer 连接
+     */
+    synchronized void removeConnection(ConnectionServer connectionServer) {
+        connections.remove(connectionServer);
+    }
+
+    public synchronized int getConnectionCount() {
+        return connections.size();
+    }
+}
@@ -2,11 +2,16 @@ package com.jdbcagent.server.jdbc;
 
 import com.jdbcagent.core.protocol.ConnectionMsg;
 import com.jdbcagent.core.support.serial.SerialConnection;
+import com.jdbcagent.core.support.serial.SerialDatabaseMetaData;
 import com.jdbcagent.core.support.serial.SerialNClob;
 import com.jdbcagent.core.support.serial.SerialSavepoint;
+import com.jdbcagent.core.support.serial.SerialStatement;
 import com.jdbcagent.core.support.serial.SerialVoid;
+import com.jdbcagent.core.util.Util;
 import com.jdbcagent.server.config.JdbcAgentConf;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import javax.sql.rowset.serial.SerialArray;
@@ -14,8 +19,12 @@ import javax.sql.rowset.serial.SerialBlob;
 import javax.sql.rowset.serial.SerialClob;
 import java.io.Serializable;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -26,16 +35,23 @@ import java.util.concurrent.atomic.AtomicLong;
  * @version 1.0 2018-07-10
  */
 public class ConnectionServer {
-    private final static AtomicLong CONNECTION_ID = new AtomicLong(0);    // id与client对应
+    private final static Logger logger = LoggerFactory.getLogger(ConnectionServer.class);
 
-    private final static ConcurrentHashMap<Integer, Long>
-            CHANNELID_CONNID = new ConcurrentHashMap<>();           // 通道id-连接服务id映射缓存
+    private final static AtomicLong CONNECTION_ID = new AtomicLong(0);    // id与client对应
 
     public static ConcurrentHashMap<Long, ConnectionServer>
             CONNECTIONS = new ConcurrentHashMap<>();                // connectionServer 缓存
 
+    private static volatile int STATEMENT_CACHE_SIZE = 0;           // 每个连接缓存的空闲preparedStatement数, 0为不缓存
+
+    private final static AtomicLong STATEMENT_CACHE_HITS = new AtomicLong(0);     // preparedStatement缓存命中次数
+
+    private final static AtomicLong STATEMENT_CACHE_MISSES = new AtomicLong(0);   // preparedStatement缓存未命中次数
+
     private long currentId = -1;                                    // 当前id
 
+    private ChannelSession session;                                 // 所属通道会话
+
     private Connection connection;                                  // 实际调用的connection
 
     private String catalog;                                         // 目录名
@@ -46,58 +62,111 @@ public class ConnectionServer {
 
     private SerialConnection serialConnection;                      // 可序列化的conn, 用于保存部分conn信息
 
+    private SerialDatabaseMetaData serialDatabaseMetaData;          // 所属数据源的能力信息快照
+
+    private final Set<StatementServer> statements =
+            Collections.newSetFromMap(new ConcurrentHashMap<StatementServer, Boolean>());   // 本连接打开的statement
+
+    private final Set<ResultSetServer> resultSets =
+            Collections.newSetFromMap(new ConcurrentHashMap<ResultSetServer, Boolean>());   // 本连接打开的结果集
+
+    private final Set<DatabaseMetaDataServer> metaDatas =
+            Collections.newSetFromMap(new ConcurrentHashMap<DatabaseMetaDataServer, Boolean>());  // 本连接的databaseMetaData
+
+    private final Set<LobServer> lobs =
+            Collections.newSetFromMap(new ConcurrentHashMap<LobServer, Boolean>());         // 本连接未释放的大对象
+
+    final AtomicLong prefetchMemorySize = new AtomicLong(0);       // 本连接的结果集预读分页占用的字节数
+
+    private LinkedHashMap<String, PreparedStatement> statementCache;    // 空闲的preparedStatement, 按最近使用排序
+
+    private boolean statementCacheClosed;                           // 连接已关闭, 不再缓存
+
+    private long statementCacheHits;                                // 本连接的缓存命中次数
+
+    private long statementCacheMisses;                              // 本连接的缓存未命中次数
+
     /**
      * 客户端创建与server连接
      *
-     * @param channelId 链接通道id
+     * @param session   所属通道会话
      * @param username  用户名
      * @param password  密码
      * @return connectionServer的id
      * @throws SQLException
      */
-    public long connect(Integer channelId, String catalog, String username, String password) throws SQLException {
+    public long connect(ChannelSession session, String catalog, String username, String password)
+            throws SQLException {
         if (currentId == -1) {
+            session.addConnection(this);
+            this.session = session;
             this.catalog = catalog;
             this.username = username;
             this.password = password;
             currentId = CONNECTION_ID.incrementAndGet();
             CONNECTIONS.put(currentId, this);
-            CHANNELID_CONNID.put(channelId, currentId);
         }
 
         if (connection == null) {
-            DataSource dataSource = JdbcAgentConf.getDataSource(
-                    StringUtils.trimToEmpty(catalog)
-                            + "|" + StringUtils.trimToEmpty(username)
-                            + "|" + StringUtils.trimToEmpty(password));
-            if (dataSource == null) {
-                throw new SQLException("Error username or password to access. ");
-            }
-            connection = dataSource.getConnection();
-
-            serialConnection = new SerialConnection();
             try {
-                serialConnection.setAutoCommit(connection.getAutoCommit());
-                serialConnection.setCatalog(connection.getCatalog());
-                serialConnection.setClientInfo(connection.getClientInfo());
-                serialConnection.setHoldability(connection.getHoldability());
-                serialConnection.setReadOnly(connection.isReadOnly());
-                serialConnection.setTransactionIsolation(connection.getTransactionIsolation());
-                serialConnection.setSchema(connection.getSchema());
-            } catch (Exception e) {
-                //ignore
+                openConnection();
+            } catch (SQLException e) {
+                close();
+                throw e;
             }
         }
 
         return currentId;
     }
 
+    /**
+     * 从数据源获取实际的connection并读取其属性
+     *
+     * @throws SQLException
+     */
+    private void openConnection() throws SQLException {
+        DataSource dataSource = JdbcAgentConf.getDataSource(
+                StringUtils.trimToEmpty(catalog)
+                        + "|" + StringUtils.trimToEmpty(username)
+                        + "|" + StringUtils.trimToEmpty(password));
+        if (dataSource == null) {
+            throw new SQLException("Error username or password to access. ");
+        }
+        connection = dataSource.getConnection();
+        serialDatabaseMetaData = DatabaseMetaDataServer.snapshot(dataSource, connection);
+
+        serialConnection = new SerialConnection();
+        try {
+            serialConnection.setAutoCommit(connection.getAutoCommit());
+            serialConnection.setCatalog(connection.getCatalog());
+            serialConnection.setClientInfo(connection.getClientInfo());
+            serialConnection.setHoldability(connection.getHoldability());
+            serialConnection.setReadOnly(connection.isReadOnly());
+            serialConnection.setTransactionIsolation(connection.getTransactionIsolation());
+            serialConnection.setSchema(connection.getSchema());
+        } catch (Exception e) {
+            //ignore
+        }
+        // 新建statement的默认属性, 客户端创建statement时不再逐个远程获取
+        try (Statement statement = connection.createStatement()) {
+            serialConnection.setStatementDefaults(new SerialStatement(statement));
+        } catch (Exception e) {
+            //ignore
+        }
+    }
+
     /**
      * 客户端关闭与server连接
      *
      * @throws SQLException
      */
     public void close() throws SQLException {
+        CONNECTIONS.remove(currentId);
+        if (session != null) {
+            session.removeConnection(this);
+        }
+        closeStatementCache();
+        closeResources();
         if (connection != null && !connection.isClosed()) {
             connection.close();
             connection = null;
@@ -105,18 +174,162 @@ public class ConnectionServer {
     }
 
     /**
-     * 通过通道关闭链接
+     * 关闭本连接打开的所有结果集和statement并释放大对象, 客户端异常断开时它们不会被逐个关闭
+     */
+    private void closeResources() {
+        if (!resultSets.isEmpty() || !statements.isEmpty()) {
+            logger.debug("Connection {} closing {} result sets and {} statements", currentId,
+                    resultSets.size(), statements.size());
+        }
+        for (ResultSetServer resultSetServer : new ArrayList<>(resultSets)) {
+            resultSetServer.closeQuietly();
+        }
+        for (StatementServer statementServer : new ArrayList<>(statements)) {
+            statementServer.closeQuietly();
+        }
+        for (DatabaseMetaDataServer databaseMetaDataServer : new ArrayList<>(metaDatas)) {
+            databaseMetaDataServer.close();
+        }
+        for (LobServer lobServer : new ArrayList<>(lobs)) {
+            lobServer.freeQuietly();
+        }
+    }
+
+    void addStatement(StatementServer statementServer) {
+        statements.add(statementServer);
+    }
+
+    void removeStatement(StatementServer statementServer) {
+        statements.remove(statementServer);
+    }
+
+    void addResultSet(ResultSetServer resultSetServer) {
+        resultSets.add(resultSetServer);
+    }
+
+    void removeResultSet(ResultSetServer resultSetServer) {
+        resultSets.remove(resultSetServer);
+    }
+
+    void addMetaData(DatabaseMetaDataServer databaseMetaDataServer) {
+        metaDatas.add(databaseMetaDataServer);
+    }
+
+    void removeMetaData(DatabaseMetaDataServer databaseMetaDataServer) {
+        metaDatas.remove(databaseMetaDataServer);
+    }
+
+    void addLob(LobServer lobServer) {
+        lobs.add(lobServer);
+    }
+
+    void removeLob(LobServer lobServer) {
+        lobs.remove(lobServer);
+    }
+
+    int getOpenResultSetCount() {
+        return resultSets.size();
+    }
+
+    public long getCurrentId() {
+        return currentId;
+    }
+
+    /**
+     * 设置每个连接缓存的空闲preparedStatement数
      *
-     * @param channelId 通道id
-     * @throws SQLException
+     * @param size 缓存数, 0为不缓存
      */
-    public static void close(Integer channelId) throws SQLException {
-        Long connId = CHANNELID_CONNID.remove(channelId);
-        if (connId != null) {
-            ConnectionServer cs = CONNECTIONS.remove(connId);
-            if (cs != null) {
-                cs.close();
+    public static void setStatementCacheSize(int size) {
+        STATEMENT_CACHE_SIZE = Math.max(size, 0);
+    }
+
+    public static long getStatementCacheHits() {
+        return STATEMENT_CACHE_HITS.get();
+    }
+
+    public static long getStatementCacheMisses() {
+        return STATEMENT_CACHE_MISSES.get();
+    }
+
+    /**
+     * 从缓存中取出空闲的preparedStatement
+     *
+     * @param key 缓存key
+     * @return preparedStatement, 没有时返回null
+     */
+    private synchronized PreparedStatement takeStatement(String key) {
+        PreparedStatement preparedStatement = statementCache == null ? null : statementCache.remove(key);
+        if (preparedStatement != null) {
+            statementCacheHits++;
+            STATEMENT_CACHE_HITS.incrementAndGet();
+        } else {
+            statementCacheMisses++;
+            STATEMENT_CACHE_MISSES.incrementAndGet();
+        }
+        return preparedStatement;
+    }
+
+    /**
+     * 客户端关闭preparedStatement后放回缓存, 超过缓存数时关闭最久未使用的
+     *
+     * @param key               缓存key
+     * @param preparedStatement 已清除参数的preparedStatement
+     * @return 是否放回了缓存, 否则由调用方关闭
+     */
+    synchronized boolean releaseStatement(String key, PreparedStatement preparedStatement) {
+        if (statementCacheClosed || STATEMENT_CACHE_SIZE <= 0) {
+            return false;
+        }
+        if (statementCache == null) {
+            statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > STATEMENT_CACHE_SIZE) {
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+        if (statementCache.containsKey(key)) {
+            // 同一sql同时打开了多个preparedStatement, 只缓存一个
+            return false;
+        }
+        statementCache.put(key, preparedStatement);
+        return true;
+    }
+
+    /**
+     * 连接关闭时关闭缓存中所有的preparedStatement并停止缓存
+     */
+    private synchronized void closeStatementCache() {
+        statementCacheClosed = true;
+        clearStatementCache();
+    }
+
+    /**
+     * 关闭缓存中所有的preparedStatement, 连接池中的连接关闭时不会关闭它们; 缓存仍可用于重新打开的连接
+     */
+    private synchronized void clearStatementCache() {
+        if (statementCache != null) {
+            for (PreparedStatement preparedStatement : statementCache.values()) {
+                closeQuietly(preparedStatement);
             }
+            statementCache = null;
+        }
+        if (statementCacheHits > 0 || statementCacheMisses > 0) {
+            logger.debug("Connection {} preparedStatement cache hits: {}, misses: {}",
+                    currentId, statementCacheHits, statementCacheMisses);
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // ignore
         }
     }
 
@@ -124,6 +337,10 @@ public class ConnectionServer {
         return serialConnection;
     }
 
+    public SerialDatabaseMetaData getSerialDatabaseMetaData() {
+        return serialDatabaseMetaData;
+    }
+
     /**
      * 获取DataSource的connection
      */
@@ -141,6 +358,51 @@ public class ConnectionServer {
         return null;
     }
 
+    /**
+     * 按 Connection.prepareStatement 的参数创建预编译语句
+     *
+     * @param params sql及可选的 autoGeneratedKeys/columnIndexes/columnNames 或结果集类型等参数
+     * @return preparedStatementServer
+     * @throws SQLException
+     */
+    public PreparedStatementServer prepareStatement(Serializable[] params) throws SQLException {
+        String sql = (String) params[0];
+        String key = null;
+        PreparedStatement preparedStatement = null;
+        if (STATEMENT_CACHE_SIZE > 0) {
+            key = Util.statementKey(params);
+            preparedStatement = takeStatement(key);
+        }
+        if (preparedStatement != null) {
+            return new PreparedStatementServer(preparedStatement, this, key);
+        }
+        if (params.length == 1) {
+            preparedStatement = getConnection().prepareStatement(sql);
+        } else if (params.length == 2) {
+            Object param2 = params[1];
+            if (param2 instanceof Integer) {
+                preparedStatement = getConnection().prepareStatement(sql, (Integer) param2);
+            } else if (param2 instanceof int[]) {
+                preparedStatement = getConnection().prepareStatement(sql, (int[]) param2);
+            } else if (param2 instanceof String[]) {
+                preparedStatement = getConnection().prepareStatement(sql, (String[]) param2);
+            } else {
+                throw new SQLException("Unsupported prepareStatement parameter: " + param2);
+            }
+        } else if (params.length == 3) {
+            int resultSetType = (Integer) params[1];
+            int resultSetConcurrency = (Integer) params[2];
+            preparedStatement = getConnection().prepareStatement(sql, resultSetType, resultSetConcurrency);
+        } else {
+            int resultSetType = (Integer) params[1];
+            int resultSetConcurrency = (Integer) params[2];
+            int resultSetHoldability = (Integer) params[3];
+            preparedStatement = getConnection().prepareStatement(sql, resultSetType, resultSetConcurrency,
+                    resultSetHoldability);
+        }
+        return new PreparedStatementServer(preparedStatement, this, key);
+    }
+
     /**
      * 公共方法调用
      *
@@ -156,67 +418,26 @@ public class ConnectionServer {
                 case createStatement: {
                     int len = connectMsg.getParams().length;
                     if (len == 0) {
-                        StatementServer statementServer = new StatementServer(
-                                getConnection().createStatement());
+                        StatementServer statementServer = new StatementServer(getConnection().createStatement(), this);
                         response = statementServer.currentId;
                     } else if (len == 2) {
                         int resultSetType = (Integer) connectMsg.getParams()[0];
                         int resultSetConcurrency = (Integer) connectMsg.getParams()[1];
                         StatementServer statementServer =
-                                new StatementServer(getConnection().createStatement(resultSetType, resultSetConcurrency));
+                                new StatementServer(getConnection().createStatement(resultSetType, resultSetConcurrency), this);
                         response = statementServer.currentId;
                     } else if (len == 3) {
                         int resultSetType = (Integer) connectMsg.getParams()[0];
                         int resultSetConcurrency = (Integer) connectMsg.getParams()[1];
-                        int resultSetHoldability = (Integer) connectMsg.getParams()[3];
+                        int resultSetHoldability = (Integer) connectMsg.getParams()[2];
                         StatementServer statementServer =
-                                new StatementServer(getConnection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+                                new StatementServer(getConnection().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this);
                         response = statementServer.currentId;
                     }
                     break;
                 }
                 case prepareStatement: {
-                    int len = connectMsg.getParams().length;
-                    if (len == 1) {
-                        String sql = (String) connectMsg.getParams()[0];
-                        PreparedStatementServer preparedStatementServer =
-                                new PreparedStatementServer(getConnection()
-                                        .prepareStatement(sql));
-                        response = preparedStatementServer.currentId;
-                    } else if (len == 2) {
-                        String sql = (String) connectMsg.getParams()[0];
-                        Object param2 = connectMsg.getParams()[1];
-                        if (param2 instanceof Integer) {
-                            PreparedStatementServer preparedStatementServer =
-                                    new PreparedStatementServer(getConnection().prepareStatement(sql, (Integer) param2));
-                            response = preparedStatementServer.currentId;
-                        } else if (param2 instanceof int[]) {
-                            PreparedStatementServer preparedStatementServer =
-                                    new PreparedStatementServer(getConnection().prepareStatement(sql, (int[]) param2));
-                            response = preparedStatementServer.currentId;
-                        } else if (param2 instanceof String[]) {
-                            PreparedStatementServer preparedStatementServer =
-                                    new PreparedStatementServer(getConnection().prepareStatement(sql, (String[]) param2));
-                            response = preparedStatementServer.currentId;
-                        }
-                    } else if (len == 3) {
-                        String sql = (String) connectMsg.getParams()[0];
-                        int resultSetType = (Integer) connectMsg.getParams()[1];
-                        int resultSetConcurrency = (Integer) connectMsg.getParams()[2];
-                        PreparedStatementServer preparedStatementServer =
-                                new PreparedStatementServer(getConnection().prepareStatement(sql,
-                                        resultSetType, resultSetConcurrency));
-                        response = preparedStatementServer.currentId;
-                    } else if (len == 4) {
-                        String sql = (String) connectMsg.getParams()[0];
-                        int resultSetType = (Integer) connectMsg.getParams()[1];
-                        int resultSetConcurrency = (Integer) connectMsg.getParams()[2];
-                        int resultSetHoldability = (Integer) connectMsg.getParams()[3];
-                        PreparedStatementServer preparedStatementServer =
-                                new PreparedStatementServer(getConnection().prepareStatement(sql,
-                                        resultSetType, resultSetConcurrency, resultSetHoldability));
-                        response = preparedStatementServer.currentId;
-                    }
+                    response = prepareStatement(connectMsg.getParams()).currentId;
                     break;
                 }
                 case prepareCall: {
@@ -225,7 +446,7 @@ public class ConnectionServer {
                         String sql = (String) connectMsg.getParams()[0];
                         CallableStatementServer callableStatementServer =
                                 new CallableStatementServer(getConnection()
-                                        .prepareCall(sql));
+                                        .prepareCall(sql), this);
                         response = callableStatementServer.currentId;
                     } else if (len == 3) {
                         String sql = (String) connectMsg.getParams()[0];
@@ -233,7 +454,7 @@ public class ConnectionServer {
                         int resultSetConcurrency = (Integer) connectMsg.getParams()[2];
                         CallableStatementServer callableStatementServer =
                                 new CallableStatementServer(getConnection().prepareCall(sql,
-                                        resultSetType, resultSetConcurrency));
+                                        resultSetType, resultSetConcurrency), this);
                         response = callableStatementServer.currentId;
                     } else if (len == 4) {
                         String sql = (String) connectMsg.getParams()[0];
@@ -242,14 +463,14 @@ public class ConnectionServer {
                         int resultSetHoldability = (Integer) connectMsg.getParams()[3];
                         CallableStatementServer callableStatementServer =
                                 new CallableStatementServer(getConnection().prepareCall(sql,
-                                        resultSetType, resultSetConcurrency, resultSetHoldability));
+                                        resultSetType, resultSetConcurrency, resultSetHoldability), this);
                         response = callableStatementServer.currentId;
                     }
                     break;
                 }
                 case getMetaData: {
                     DatabaseMetaDataServer databaseMetaDataServer =
-                            new DatabaseMetaDataServer(getConnection().getMetaData());
+                            new DatabaseMetaDataServer(getConnection().getMetaData(), this);
                     response = databaseMetaDataServer.currentId;
                     break;
                 }
@@ -414,6 +635,9 @@ public class ConnectionServer {
                 }
                 // 附加方法，用于释放与数据库的连接而不断开与客户端的连接
                 case release: {
+                    // 关闭本连接打开的所有资源, 包括客户端缓存的preparedStatement句柄
+                    clearStatementCache();
+                    closeResources();
                     if (connection != null && !connection.isClosed()) {
                         connection.clearWarnings();
                         connection.close();
@@ -421,6 +645,11 @@ public class ConnectionServer {
                     }
                     break;
                 }
+                // 附加方法, 客户端关闭连接, 同一通道上的其它连接不受影响
+                case close: {
+                    close();
+                    break;
+                }
                 default: {
                     break;
                 }
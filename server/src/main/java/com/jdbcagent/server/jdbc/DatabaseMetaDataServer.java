@@ -2,13 +2,21 @@ package com.jdbcagent.server.jdbc;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.jdbcagent.core.protocol.DatabaseMetaDataMsg;
 import com.jdbcagent.core.protocol.DatabaseMetaDataMsg.Method;
+import com.jdbcagent.core.support.serial.SerialDatabaseMetaData;
 import com.jdbcagent.core.support.serial.SerialVoid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import java.io.Serializable;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -19,26 +27,89 @@ import java.util.concurrent.atomic.AtomicLong;
  * @version 1.0 2018-07-10
  */
 public class DatabaseMetaDataServer {
+    private final static Logger logger = LoggerFactory.getLogger(DatabaseMetaDataServer.class);
+
+    private final static ConcurrentHashMap<DataSource, SerialDatabaseMetaData>
+            SNAPSHOTS = new ConcurrentHashMap<>();                      // 每个数据源的能力信息快照
+
     private static AtomicLong DB_META_DATA_ID = new AtomicLong(0);      // id与client对应
     public static Cache<Long, DatabaseMetaDataServer> DB_META_DATAS =   // databaseMetaDataServer 缓存, 保存60分钟自动删除
             CacheBuilder.newBuilder()
                     .initialCapacity(5)
                     .concurrencyLevel(10)
                     .expireAfterAccess(3, TimeUnit.MINUTES)
+                    .removalListener(new RemovalListener<Long, DatabaseMetaDataServer>() {
+                        public void onRemoval(RemovalNotification<Long, DatabaseMetaDataServer> notification) {
+                            if (notification.wasEvicted()) {
+                                DatabaseMetaDataServer databaseMetaDataServer = notification.getValue();
+                                databaseMetaDataServer.owner.removeMetaData(databaseMetaDataServer);
+                            }
+                        }
+                    })
                     .build();
 
     long currentId;                                                     // 当前id
 
     private DatabaseMetaData databaseMetaData;                          // 实际调用的databaseMetaData
 
-    DatabaseMetaDataServer(DatabaseMetaData databaseMetaData) {
+    private final ConnectionServer owner;                               // 所属连接, 连接关闭时删除本对象
+
+    DatabaseMetaDataServer(DatabaseMetaData databaseMetaData, ConnectionServer owner) {
         currentId = DB_META_DATA_ID.incrementAndGet();
         this.databaseMetaData = databaseMetaData;
+        this.owner = owner;
+        owner.addMetaData(this);
         DB_META_DATAS.put(currentId, this);
     }
 
+    /**
+     * 启动时读取数据源的能力信息快照, 失败时在第一次连接时再读取
+     *
+     * @param dataSource 数据源
+     */
+    public static void initSnapshot(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            SerialDatabaseMetaData snapshot = new SerialDatabaseMetaData(connection.getMetaData());
+            SNAPSHOTS.put(dataSource, snapshot);
+            logger.info("Loaded {} database capabilities of {}", snapshot.size(),
+                    snapshot.get(Method.getDatabaseProductName));
+        } catch (SQLException e) {
+            logger.warn("Failed to load database capabilities, retry on first connect: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取数据源的能力信息快照, 还没有时从已打开的连接读取
+     *
+     * @param dataSource 数据源
+     * @param connection 该数据源已打开的连接
+     * @return 快照
+     * @throws SQLException
+     */
+    static SerialDatabaseMetaData snapshot(DataSource dataSource, Connection connection) throws SQLException {
+        SerialDatabaseMetaData snapshot = SNAPSHOTS.get(dataSource);
+        if (snapshot == null) {
+            snapshot = new SerialDatabaseMetaData(connection.getMetaData());
+            SerialDatabaseMetaData existing = SNAPSHOTS.putIfAbsent(dataSource, snapshot);
+            if (existing != null) {
+                snapshot = existing;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 删除本对象, databaseMetaData没有需要关闭的资源
+     */
+    void close() {
+        DB_META_DATAS.invalidate(currentId);
+        owner.removeMetaData(this);
+    }
+
     /**
      * databaseMetaData 公共方法调用
+     * <p>
+     * 元数据结果集通常很小, 随描述附带自适应大小的第一页; 快照中的能力信息直接返回
      *
      * @param databaseMetaDataMsg 调用信息
      * @return 返回结果
@@ -49,6 +120,10 @@ public class DatabaseMetaDataServer {
             Serializable response = new SerialVoid();
             Method method = databaseMetaDataMsg.getMethod();
             Serializable[] params = databaseMetaDataMsg.getParams();
+            SerialDatabaseMetaData snapshot = owner.getSerialDatabaseMetaData();
+            if ((params == null || params.length == 0) && snapshot != null && snapshot.contains(method)) {
+                return snapshot.get(method);
+            }
             switch (method) {
                 case allProceduresAreCallable:
                     response = databaseMetaData.allProceduresAreCallable();
@@ -90,7 +165,7 @@ public class DatabaseMetaDataServer {
                     response = databaseMetaData.getDriverMajorVersion();
                     break;
                 case getDriverMinorVersion:
-                    response = databaseMetaData.getURL();
+                    response = databaseMetaData.getDriverMinorVersion();
                     break;
                 case usesLocalFiles:
                     response = databaseMetaData.usesLocalFiles();
@@ -397,68 +472,68 @@ public class DatabaseMetaDataServer {
                     break;
                 case getProcedures:
                     response = new ResultSetServer(databaseMetaData.getProcedures((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getProcedureColumns:
                     response = new ResultSetServer(databaseMetaData.getProcedureColumns((String) params[0],
-                            (String) params[1], (String) params[2], (String) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String) params[3]), owner).describe(0);
                     break;
                 case getTables:
                     response = new ResultSetServer(databaseMetaData.getTables((String) params[0],
-                            (String) params[1], (String) params[2], (String[]) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String[]) params[3]), owner).describe(0);
                     break;
                 case getSchemas:
-                    response = new ResultSetServer(databaseMetaData.getSchemas()).currentId;
+                    response = new ResultSetServer(databaseMetaData.getSchemas(), owner).describe(0);
                     break;
                 case getCatalogs:
-                    response = new ResultSetServer(databaseMetaData.getCatalogs()).currentId;
+                    response = new ResultSetServer(databaseMetaData.getCatalogs(), owner).describe(0);
                     break;
                 case getTableTypes:
-                    response = new ResultSetServer(databaseMetaData.getTableTypes()).currentId;
+                    response = new ResultSetServer(databaseMetaData.getTableTypes(), owner).describe(0);
                     break;
                 case getColumns:
                     response = new ResultSetServer(databaseMetaData.getColumns((String) params[0],
-                            (String) params[1], (String) params[2], (String) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String) params[3]), owner).describe(0);
                     break;
                 case getColumnPrivileges:
                     response = new ResultSetServer(databaseMetaData.getColumnPrivileges((String) params[0],
-                            (String) params[1], (String) params[2], (String) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String) params[3]), owner).describe(0);
                     break;
                 case getTablePrivileges:
                     response = new ResultSetServer(databaseMetaData.getTablePrivileges((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getBestRowIdentifier:
                     response = new ResultSetServer(databaseMetaData.getBestRowIdentifier((String) params[0],
-                            (String) params[1], (String) params[2], (Integer) params[3], (Boolean) params[4])).currentId;
+                            (String) params[1], (String) params[2], (Integer) params[3], (Boolean) params[4]), owner).describe(0);
                     break;
                 case getVersionColumns:
                     response = new ResultSetServer(databaseMetaData.getVersionColumns((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getPrimaryKeys:
                     response = new ResultSetServer(databaseMetaData.getPrimaryKeys((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getImportedKeys:
                     response = new ResultSetServer(databaseMetaData.getImportedKeys((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getExportedKeys:
                     response = new ResultSetServer(databaseMetaData.getExportedKeys((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getCrossReference:
                     response = new ResultSetServer(databaseMetaData.getCrossReference((String) params[0],
                             (String) params[1], (String) params[2], (String) params[3],
-                            (String) params[4], (String) params[5])).currentId;
+                            (String) params[4], (String) params[5]), owner).describe(0);
                     break;
                 case getTypeInfo:
-                    response = new ResultSetServer(databaseMetaData.getTypeInfo()).currentId;
+                    response = new ResultSetServer(databaseMetaData.getTypeInfo(), owner).describe(0);
                     break;
                 case getIndexInfo:
                     response = new ResultSetServer(databaseMetaData.getIndexInfo((String) params[0],
-                            (String) params[1], (String) params[2], (Boolean) params[3], (Boolean) params[4])).currentId;
+                            (String) params[1], (String) params[2], (Boolean) params[3], (Boolean) params[4]), owner).describe(0);
                     break;
                 case supportsResultSetType:
                     response = databaseMetaData.supportsResultSetType((Integer) params[0]);
@@ -498,7 +573,7 @@ public class DatabaseMetaDataServer {
                     break;
                 case getUDTs:
                     response = new ResultSetServer(databaseMetaData.getUDTs((String) params[0],
-                            (String) params[1], (String) params[2], (int[]) params[3])).currentId;
+                            (String) params[1], (String) params[2], (int[]) params[3]), owner).describe(0);
                     break;
                 case supportsSavepoints:
                     response = databaseMetaData.supportsSavepoints();
@@ -514,15 +589,15 @@ public class DatabaseMetaDataServer {
                     break;
                 case getSuperTypes:
                     response = new ResultSetServer(databaseMetaData.getSuperTypes((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getSuperTables:
                     response = new ResultSetServer(databaseMetaData.getSuperTables((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getAttributes:
                     response = new ResultSetServer(databaseMetaData.getAttributes((String) params[0],
-                            (String) params[1], (String) params[2], (String) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String) params[3]), owner).describe(0);
                     break;
                 case supportsResultSetHoldability:
                     response = databaseMetaData.supportsResultSetHoldability((Integer) params[0]);
@@ -561,19 +636,19 @@ public class DatabaseMetaDataServer {
                     response = databaseMetaData.autoCommitFailureClosesAllResultSets();
                     break;
                 case getClientInfoProperties:
-                    response = new ResultSetServer(databaseMetaData.getClientInfoProperties()).currentId;
+                    response = new ResultSetServer(databaseMetaData.getClientInfoProperties(), owner).describe(0);
                     break;
                 case getFunctions:
                     response = new ResultSetServer(databaseMetaData.getFunctions((String) params[0],
-                            (String) params[1], (String) params[2])).currentId;
+                            (String) params[1], (String) params[2]), owner).describe(0);
                     break;
                 case getFunctionColumns:
                     response = new ResultSetServer(databaseMetaData.getFunctionColumns((String) params[0],
-                            (String) params[1], (String) params[2], (String) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String) params[3]), owner).describe(0);
                     break;
                 case getPseudoColumns:
                     response = new ResultSetServer(databaseMetaData.getPseudoColumns((String) params[0],
-                            (String) params[1], (String) params[2], (String) params[3])).currentId;
+                            (String) params[1], (String) params[2], (String) params[3]), owner).describe(0);
                     break;
                 case generatedKeyAlwaysReturned:
                     response = databaseMetaData.generatedKeyAlwaysReturned();
@@ -0,0 +1,325 @@
+package com.jdbcagent.server.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.jdbcagent.core.support.ColumnarPage;
+import com.jdbcagent.core.support.LobLocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JDBC-Agent server 端大对象操作类
+ * <p>
+ * 两种来源: 结果集中超过内联阈值的驱动Blob/Clob, 由客户端按块读取;
+ * 客户端分块上传的参数, 写入临时文件, 绑定参数时以流的方式交给驱动, 不在内存中整体保存
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class LobServer {
+    private static AtomicLong LOB_ID = new AtomicLong(0);           // id与client对应
+
+    private static Logger logger = LoggerFactory.getLogger(LobServer.class);
+
+    public static Cache<Long, LobServer> LOBS =                     // lobServer 缓存, 60分钟未访问时释放并删除
+            CacheBuilder.newBuilder()
+                    .initialCapacity(50)
+                    .concurrencyLevel(100)
+                    .expireAfterAccess(60, TimeUnit.MINUTES)
+                    .removalListener(new RemovalListener<Long, LobServer>() {
+                        public void onRemoval(RemovalNotification<Long, LobServer> notification) {
+                            if (notification.wasEvicted()) {
+                                LobServer lobServer = notification.getValue();
+                                logger.warn("LOB {} of connection {} was not freed by client, freeing it",
+                                        notification.getKey(), lobServer.owner.getCurrentId());
+                                lobServer.freeQuietly();
+                            }
+                        }
+                    })
+                    .build();
+
+    private static volatile int INLINE_THRESHOLD = 64 * 1024;      // 不超过此长度的大对象随分页整体传输
+
+    long currentId;                                                 // 当前id
+
+    private final ConnectionServer owner;                           // 所属连接, 连接关闭时释放本对象
+
+    private final int type;                                         // java.sql.Types.BLOB/CLOB/NCLOB
+
+    private long length;                                            // 长度, BLOB为字节数, CLOB为字符数
+
+    private Blob blob;                                              // 结果集中的驱动Blob
+
+    private Clob clob;                                              // 结果集中的驱动Clob
+
+    private File file;                                              // 上传内容的临时文件, CLOB按UTF-8保存
+
+    private OutputStream out;                                       // 上传中的输出流, 第一次绑定时关闭
+
+    private final List<Closeable> opened = new ArrayList<>();       // 绑定参数时打开的流, 释放时关闭
+
+    private boolean freed;                                          // 是否已释放
+
+    private LobServer(ConnectionServer owner, int type) {
+        this.owner = owner;
+        this.type = type;
+        currentId = LOB_ID.incrementAndGet();
+        owner.addLob(this);
+        LOBS.put(currentId, this);
+    }
+
+    /**
+     * 设置内联阈值
+     *
+     * @param inlineThreshold 不超过此长度(字节数或字符数)的大对象整体传输
+     */
+    public static void setInlineThreshold(int inlineThreshold) {
+        if (inlineThreshold >= 0) {
+            INLINE_THRESHOLD = inlineThreshold;
+        }
+    }
+
+    /**
+     * 转换结果集中的Blob/Clob, 不超过内联阈值时转为SerialBlob/SerialClob, 否则登记后返回定位符
+     *
+     * @param lob   驱动的Blob或Clob
+     * @param owner 所属连接
+     * @return 可传输的值
+     * @throws SQLException
+     */
+    static Object convert(Object lob, ConnectionServer owner) throws SQLException {
+        if (lob instanceof Blob) {
+            Blob blob = (Blob) lob;
+            long length = blob.length();
+            if (length <= INLINE_THRESHOLD) {
+                return ColumnarPage.serialBlob(blob);
+            }
+            LobServer lobServer = new LobServer(owner, Types.BLOB);
+            lobServer.blob = blob;
+            lobServer.length = length;
+            return lobServer.locator();
+        }
+        Clob clob = (Clob) lob;
+        long length = clob.length();
+        if (length <= INLINE_THRESHOLD) {
+            return ColumnarPage.serialClob(clob);
+        }
+        LobServer lobServer = new LobServer(owner, clob instanceof NClob ? Types.NCLOB : Types.CLOB);
+        lobServer.clob = clob;
+        lobServer.length = length;
+        return lobServer.locator();
+    }
+
+    /**
+     * 新建接收客户端上传内容的大对象
+     *
+     * @param owner 所属连接
+     * @param type  java.sql.Types.BLOB/CLOB/NCLOB
+     * @return lobServer
+     * @throws SQLException
+     */
+    public static LobServer create(ConnectionServer owner, int type) throws SQLException {
+        LobServer lobServer = new LobServer(owner, type);
+        try {
+            lobServer.file = File.createTempFile("jdbc-agent-lob-", ".tmp");
+            lobServer.out = new BufferedOutputStream(new FileOutputStream(lobServer.file));
+        } catch (IOException e) {
+            lobServer.freeQuietly();
+            throw new SQLException(e);
+        }
+        return lobServer;
+    }
+
+    /**
+     * @return 定位符
+     */
+    public LobLocator locator() {
+        return new LobLocator(currentId, type, length);
+    }
+
+    public boolean isUploaded() {
+        return file != null;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public Blob getBlob() {
+        return blob;
+    }
+
+    public Clob getClob() {
+        return clob;
+    }
+
+    /**
+     * 追加上传的一块内容
+     *
+     * @param data byte[]或String
+     * @throws SQLException
+     */
+    public synchronized void append(Serializable data) throws SQLException {
+        if (out == null) {
+            throw new SQLException("LOB " + currentId + " is not writable");
+        }
+        try {
+            if (data instanceof byte[]) {
+                byte[] bytes = (byte[]) data;
+                out.write(bytes);
+                length += bytes.length;
+            } else {
+                String str = (String) data;
+                out.write(str.getBytes(StandardCharsets.UTF_8));
+                length += str.length();
+            }
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * 按块读取结果集中的大对象
+     *
+     * @param position 起始位置, 从1开始
+     * @param size     最大长度
+     * @return BLOB为byte[], CLOB为String
+     * @throws SQLException
+     */
+    public synchronized Serializable read(long position, int size) throws SQLException {
+        if (blob == null && clob == null) {
+            throw new SQLException("LOB " + currentId + " is not readable");
+        }
+        int n = (int) Math.max(0, Math.min(size, length - position + 1));
+        if (blob != null) {
+            return n == 0 ? new byte[0] : blob.getBytes(position, n);
+        }
+        return n == 0 ? "" : clob.getSubString(position, n);
+    }
+
+    /**
+     * 打开字节流, 用于绑定参数
+     *
+     * @return 输入流
+     * @throws SQLException
+     */
+    public synchronized InputStream openStream() throws SQLException {
+        if (blob != null) {
+            return blob.getBinaryStream();
+        } else if (clob != null) {
+            return clob.getAsciiStream();
+        }
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(finishWrite()));
+            opened.add(in);
+            return in;
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * 打开字符流, 用于绑定参数
+     *
+     * @return 字符流
+     * @throws SQLException
+     */
+    public synchronized Reader openReader() throws SQLException {
+        if (clob != null) {
+            return clob.getCharacterStream();
+        } else if (blob != null) {
+            throw new SQLException("LOB " + currentId + " is not a character LOB");
+        }
+        try {
+            Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(finishWrite()),
+                    StandardCharsets.UTF_8));
+            opened.add(reader);
+            return reader;
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * 结束上传, 之后不能再追加
+     *
+     * @return 临时文件
+     * @throws IOException
+     */
+    private File finishWrite() throws IOException {
+        if (freed) {
+            throw new IOException("LOB " + currentId + " was freed");
+        }
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        return file;
+    }
+
+    /**
+     * 释放方法, 关闭打开的流并删除临时文件
+     */
+    public synchronized void free() {
+        freed = true;
+        LOBS.invalidate(currentId);
+        owner.removeLob(this);
+        closeQuietly(out);
+        out = null;
+        for (Closeable closeable : opened) {
+            closeQuietly(closeable);
+        }
+        opened.clear();
+        if (file != null && !file.delete() && file.exists()) {
+            logger.warn("Delete LOB file " + file + " failed");
+        }
+        try {
+            if (blob != null) {
+                blob.free();
+            } else if (clob != null) {
+                clob.free();
+            }
+        } catch (Exception e) {
+            // 部分驱动不支持free, 忽略
+        } catch (AbstractMethodError e) {
+            // ignore
+        }
+        blob = null;
+        clob = null;
+    }
+
+    /**
+     * 释放, 忽略异常
+     */
+    void freeQuietly() {
+        try {
+            free();
+        } catch (Exception e) {
+            logger.warn("Free LOB " + currentId + " error: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
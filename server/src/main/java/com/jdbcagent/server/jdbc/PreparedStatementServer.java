@@ -2,6 +2,8 @@ package com.jdbcagent.server.jdbc;
 
 import com.jdbcagent.core.protocol.PreparedStatementMsg;
 import com.jdbcagent.core.protocol.PreparedStatementMsg.ParamType;
+import com.jdbcagent.core.support.LobLocator;
+import com.jdbcagent.core.support.ParamBlock;
 import com.jdbcagent.core.support.serial.SerialVoid;
 import com.jdbcagent.core.util.Util;
 
@@ -10,7 +12,6 @@ import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
 import java.util.Calendar;
-import java.util.Queue;
 
 /**
  * JDBC-Agent server 端 preparedStatement 操作类
@@ -22,22 +23,30 @@ public class PreparedStatementServer extends StatementServer {
 
     private PreparedStatement preparedStatement;    // 实际调用的preparedStatement
 
+    private String cacheKey;                        // 关闭时放回所属连接缓存的key, 为null不缓存
+
     /**
      * 构造方法
      *
-     * @param preparedStatement
+     * @param preparedStatement 新建或从缓存取出的preparedStatement
+     * @param owner             所属连接
+     * @param cacheKey          缓存key, 为null不缓存
      */
-    public PreparedStatementServer(PreparedStatement preparedStatement) {
-        super(preparedStatement);
+    PreparedStatementServer(PreparedStatement preparedStatement, ConnectionServer owner, String cacheKey) {
+        super(preparedStatement, owner);
         this.preparedStatement = preparedStatement;
+        this.cacheKey = cacheKey;
     }
 
     /**
-     * 关闭方法
+     * 关闭方法, 未修改过属性的preparedStatement清理后放回连接的缓存
      *
      * @throws SQLException
      */
     public void close() throws SQLException {
+        if (cacheKey != null && !modified && preparedStatement != null && release()) {
+            return;
+        }
         super.close();
         if (preparedStatement != null && !preparedStatement.isClosed()) {
             preparedStatement.close();
@@ -63,33 +72,28 @@ public class PreparedStatementServer extends StatementServer {
                     break;
                 }
                 case addBatch: {
-                    preparedStatement.addBatch();
+                    addBatches(preparedStatementMsg.getParams());
+                    break;
+                }
+                case executeBatch: {
+                    addBatches(preparedStatementMsg.getParams());
+                    response = preparedStatement.executeBatch();
                     break;
                 }
                 case execute: {
-                    // noinspection unchecked
-                    Queue<PreparedStatementMsg> paramsQueue =
-                            (Queue<PreparedStatementMsg>) preparedStatementMsg.getParams()[0];
-                    setParams(paramsQueue);
+                    setParams((ParamBlock) preparedStatementMsg.getParams()[0]);
                     response = preparedStatement.execute();
                     break;
                 }
                 case executeUpdate: {
-                    // noinspection unchecked
-                    Queue<PreparedStatementMsg> paramsQueue =
-                            (Queue<PreparedStatementMsg>) preparedStatementMsg.getParams()[0];
-                    setParams(paramsQueue);
+                    setParams((ParamBlock) preparedStatementMsg.getParams()[0]);
                     response = preparedStatement.executeUpdate();
                     break;
                 }
                 case executeQuery: {
-                    // noinspection unchecked
-                    Queue<PreparedStatementMsg> paramsQueue =
-                            (Queue<PreparedStatementMsg>) preparedStatementMsg.getParams()[0];
-                    setParams(paramsQueue);
-                    ResultSetServer resultSetServer =
-                            new ResultSetServer(preparedStatement.executeQuery());
-                    response = resultSetServer.currentId;
+                    setParams((ParamBlock) preparedStatementMsg.getParams()[0]);
+                    response = openResultSet(preparedStatement.executeQuery())
+                            .describe(preparedStatementMsg.getBatchSize());
                     break;
                 }
             }
@@ -99,236 +103,282 @@ public class PreparedStatementServer extends StatementServer {
         }
     }
 
-    protected void setParams(Queue<PreparedStatementMsg> paramsQueue) throws SQLException {
-        if (paramsQueue == null) {
+    /**
+     * 清理上次使用留下的结果集、参数、批量及警告, 客户端复用缓存的句柄时调用
+     *
+     * @throws SQLException
+     */
+    public void reset() throws SQLException {
+        closeResultSet();
+        preparedStatement.clearParameters();
+        preparedStatement.clearBatch();
+        preparedStatement.clearWarnings();
+    }
+
+    /**
+     * 清理状态后放回连接的缓存
+     *
+     * @return 是否已放回缓存
+     */
+    private boolean release() {
+        try {
+            reset();
+        } catch (SQLException e) {
+            return false;
+        }
+        if (!owner.releaseStatement(cacheKey, preparedStatement)) {
+            return false;
+        }
+        detach();
+        preparedStatement = null;
+        return true;
+    }
+
+    /**
+     * 按顺序重放客户端累积的每组参数并加入批量
+     *
+     * @param batches 每组参数一个参数块, 为相邻两次addBatch之间设置的参数
+     * @throws SQLException
+     */
+    private void addBatches(Serializable[] batches) throws SQLException {
+        if (batches == null) {
             return;
         }
-        for (; ; ) {
-            PreparedStatementMsg preparedStatementMsg = paramsQueue.poll();
-            if (preparedStatementMsg == null) {
-                break;
-            }
-            ParamType paramType = preparedStatementMsg.getParamType();
-            int parameterIndex = preparedStatementMsg.getParameterIndex();
-            Serializable[] params = preparedStatementMsg.getParams();
-            int len = 0;
-            if (params != null) {
-                len = params.length;
+        for (Serializable batch : batches) {
+            setParams((ParamBlock) batch);
+            preparedStatement.addBatch();
+        }
+    }
+
+    /**
+     * 按参数块依次设置参数, 基本类型直接从参数块中读取
+     *
+     * @param paramBlock 参数块
+     * @throws SQLException
+     */
+    protected void setParams(ParamBlock paramBlock) throws SQLException {
+        if (paramBlock == null) {
+            return;
+        }
+        for (int i = 0, size = paramBlock.size(); i < size; i++) {
+            int parameterIndex = paramBlock.getIndex(i);
+            Object value = paramBlock.getValue(i);
+            if (value instanceof LobLocator) {
+                setLob(parameterIndex, paramBlock.getType(i), (LobLocator) value);
+                continue;
             }
-            switch (paramType) {
+            int extraCount = paramBlock.getExtraCount(i);
+            switch (paramBlock.getType(i)) {
                 case NULL:
-                    if (len == 2) {
-                        int sqlType = (Integer) params[0];
-                        String typeName = (String) params[1];
-                        preparedStatement.setNull(parameterIndex, sqlType, typeName);
-                    } else if (len == 1) {
-                        preparedStatement.setNull(parameterIndex, (Integer) params[0]);
+                    if (extraCount == 1) {
+                        preparedStatement.setNull(parameterIndex, (int) paramBlock.getLong(i),
+                                (String) paramBlock.getExtra(i, 0));
+                    } else {
+                        preparedStatement.setNull(parameterIndex, (int) paramBlock.getLong(i));
                     }
                     break;
                 case BOOLEAN:
-                    if (len == 1) {
-                        preparedStatement.setBoolean(parameterIndex, (Boolean) params[0]);
-                    }
+                    preparedStatement.setBoolean(parameterIndex, paramBlock.getLong(i) != 0);
                     break;
                 case BYTE:
-                    if (len == 1) {
-                        preparedStatement.setByte(parameterIndex, (Byte) params[0]);
-                    }
+                    preparedStatement.setByte(parameterIndex, (byte) paramBlock.getLong(i));
                     break;
                 case SHORT:
-                    if (len == 1) {
-                        preparedStatement.setShort(parameterIndex, (Short) params[0]);
-                    }
+                    preparedStatement.setShort(parameterIndex, (short) paramBlock.getLong(i));
                     break;
                 case INT:
-                    if (len == 1) {
-                        preparedStatement.setInt(parameterIndex, (Integer) params[0]);
-                    }
+                    preparedStatement.setInt(parameterIndex, (int) paramBlock.getLong(i));
                     break;
                 case LONG:
-                    if (len == 1) {
-                        preparedStatement.setLong(parameterIndex, (Long) params[0]);
-                    }
+                    preparedStatement.setLong(parameterIndex, paramBlock.getLong(i));
                     break;
                 case FLOAT:
-                    if (len == 1) {
-                        preparedStatement.setFloat(parameterIndex, (Float) params[0]);
-                    }
+                    preparedStatement.setFloat(parameterIndex, paramBlock.getFloat(i));
                     break;
                 case DOUBLE:
-                    if (len == 1) {
-                        preparedStatement.setDouble(parameterIndex, (Double) params[0]);
-                    }
+                    preparedStatement.setDouble(parameterIndex, paramBlock.getDouble(i));
                     break;
                 case BIG_DECIMAL:
-                    if (len == 1) {
-                        preparedStatement.setBigDecimal(parameterIndex, (BigDecimal) params[0]);
-                    }
+                    preparedStatement.setBigDecimal(parameterIndex, (BigDecimal) value);
                     break;
                 case STRING:
-                    if (len == 1) {
-                        preparedStatement.setString(parameterIndex, (String) params[0]);
-                    }
+                    preparedStatement.setString(parameterIndex, (String) value);
                     break;
                 case BYTES:
-                    if (len == 1) {
-                        preparedStatement.setBytes(parameterIndex, (byte[]) params[0]);
-                    }
+                    preparedStatement.setBytes(parameterIndex, (byte[]) value);
                     break;
                 case DATE:
-                    if (len == 2) {
-                        Date value = (Date) params[0];
-                        Calendar calendar = (Calendar) params[1];
-                        preparedStatement.setDate(parameterIndex, value, calendar);
-                    } else if (len == 1) {
-                        preparedStatement.setDate(parameterIndex, (Date) params[0]);
+                    if (extraCount == 1) {
+                        preparedStatement.setDate(parameterIndex, (Date) value,
+                                (Calendar) paramBlock.getExtra(i, 0));
+                    } else {
+                        preparedStatement.setDate(parameterIndex, (Date) value);
                     }
                     break;
                 case TIME:
-                    if (len == 2) {
-                        Time value = (Time) params[0];
-                        Calendar calendar = (Calendar) params[1];
-                        preparedStatement.setTime(parameterIndex, value, calendar);
-                    } else if (len == 1) {
-                        preparedStatement.setTime(parameterIndex, (Time) params[0]);
+                    if (extraCount == 1) {
+                        preparedStatement.setTime(parameterIndex, (Time) value,
+                                (Calendar) paramBlock.getExtra(i, 0));
+                    } else {
+                        preparedStatement.setTime(parameterIndex, (Time) value);
                     }
                     break;
                 case TIMESTAMP:
-                    if (len == 2) {
-                        Timestamp value = (Timestamp) params[0];
-                        Calendar calendar = (Calendar) params[1];
-                        preparedStatement.setTimestamp(parameterIndex, value, calendar);
-                    } else if (len == 1) {
-                        preparedStatement.setTimestamp(parameterIndex, (Timestamp) params[0]);
+                    if (extraCount == 1) {
+                        preparedStatement.setTimestamp(parameterIndex, (Timestamp) value,
+                                (Calendar) paramBlock.getExtra(i, 0));
+                    } else {
+                        preparedStatement.setTimestamp(parameterIndex, (Timestamp) value);
                     }
                     break;
                 case ASCII_STREAM:
-                    if (len == 2) {
-                        byte[] buf = (byte[]) params[0];
-                        if (params[1] instanceof Integer) {
-                            int length = (Integer) params[1];
-                            preparedStatement.setAsciiStream(parameterIndex, Util.byte2Input(buf),
-                                    length);
-                        } else if (params[1] instanceof Long) {
-                            long length = (Long) params[1];
-                            preparedStatement.setAsciiStream(parameterIndex, Util.byte2Input(buf),
-                                    length);
+                    if (extraCount == 1) {
+                        Serializable length = paramBlock.getExtra(i, 0);
+                        if (length instanceof Integer) {
+                            preparedStatement.setAsciiStream(parameterIndex, Util.byte2Input((byte[]) value),
+                                    (Integer) length);
+                        } else if (length instanceof Long) {
+                            preparedStatement.setAsciiStream(parameterIndex, Util.byte2Input((byte[]) value),
+                                    (Long) length);
                         }
-                    } else if (len == 1) {
-                        preparedStatement.setAsciiStream(parameterIndex,
-                                Util.byte2Input((byte[]) params[0]));
+                    } else {
+                        preparedStatement.setAsciiStream(parameterIndex, Util.byte2Input((byte[]) value));
                     }
                     break;
                 case UNICODE_STREAM:
-                    if (len == 1) {
-                        byte[] buf = (byte[]) params[0];
-                        int length = (Integer) params[1];
-                        preparedStatement.setUnicodeStream(parameterIndex, Util.byte2Input(buf),
-                                length);
+                    if (extraCount == 1) {
+                        // noinspection deprecation
+                        preparedStatement.setUnicodeStream(parameterIndex, Util.byte2Input((byte[]) value),
+                                (Integer) paramBlock.getExtra(i, 0));
                     }
                     break;
                 case BINARY_STREAM:
-                    if (len == 2) {
-                        byte[] buf = (byte[]) params[0];
-                        if (params[1] instanceof Integer) {
-                            int length = (Integer) params[1];
-                            preparedStatement.setBinaryStream(parameterIndex, Util.byte2Input(buf),
-                                    length);
-                        } else if (params[1] instanceof Long) {
-                            long length = (Long) params[1];
-                            preparedStatement.setBinaryStream(parameterIndex, Util.byte2Input(buf),
-                                    length);
+                    if (extraCount == 1) {
+                        Serializable length = paramBlock.getExtra(i, 0);
+                        if (length instanceof Integer) {
+                            preparedStatement.setBinaryStream(parameterIndex, Util.byte2Input((byte[]) value),
+                                    (Integer) length);
+                        } else if (length instanceof Long) {
+                            preparedStatement.setBinaryStream(parameterIndex, Util.byte2Input((byte[]) value),
+                                    (Long) length);
                         }
-                    } else if (len == 1) {
-                        preparedStatement.setBinaryStream(parameterIndex,
-                                Util.byte2Input((byte[]) params[0]));
+                    } else {
+                        preparedStatement.setBinaryStream(parameterIndex, Util.byte2Input((byte[]) value));
                     }
                     break;
                 case OBJECT:
-                    if (len == 2) {
-                        Object value = params[0];
-                        int targetSqlType = (Integer) params[1];
-                        preparedStatement.setObject(parameterIndex, value, targetSqlType);
-                    } else if (params != null && params.length == 3) {
-                        Object value = params[0];
-                        int targetSqlType = (Integer) params[1];
-                        int scaleOrLength = (Integer) params[2];
-                        preparedStatement.setObject(parameterIndex, value, targetSqlType,
-                                scaleOrLength);
-                    } else if (len == 1) {
-                        preparedStatement.setObject(parameterIndex, params[0]);
+                    if (extraCount == 1) {
+                        preparedStatement.setObject(parameterIndex, value,
+                                (Integer) paramBlock.getExtra(i, 0));
+                    } else if (extraCount == 2) {
+                        preparedStatement.setObject(parameterIndex, value,
+                                (Integer) paramBlock.getExtra(i, 0), (Integer) paramBlock.getExtra(i, 1));
+                    } else {
+                        preparedStatement.setObject(parameterIndex, value);
                     }
                     break;
                 case CHARACTER_STREAM:
-                    if (params != null && params.length == 2) {
-                        String str = (String) params[0];
-                        if (params[1] instanceof Integer) {
-                            int length = (Integer) params[1];
+                    if (extraCount == 1) {
+                        Serializable length = paramBlock.getExtra(i, 0);
+                        if (length instanceof Integer) {
                             preparedStatement.setCharacterStream(parameterIndex,
-                                    Util.string2Reader(str), length);
-                        } else if (params[1] instanceof Long) {
-                            long length = (Long) params[1];
+                                    Util.string2Reader((String) value), (Integer) length);
+                        } else if (length instanceof Long) {
                             preparedStatement.setCharacterStream(parameterIndex,
-                                    Util.string2Reader(str), length);
+                                    Util.string2Reader((String) value), (Long) length);
                         }
-                    } else if (len == 1) {
+                    } else {
                         preparedStatement.setCharacterStream(parameterIndex,
-                                Util.string2Reader((String) params[0]));
+                                Util.string2Reader((String) value));
                     }
                     break;
                 case REF:
-                    if (len == 1) {
-                        preparedStatement.setRef(parameterIndex, (Ref) params[0]);
-                    }
+                    preparedStatement.setRef(parameterIndex, (Ref) value);
                     break;
                 case BLOB:
-                    if (len == 1) {
-                        preparedStatement.setBlob(parameterIndex, (Blob) params[0]);
-                    }
+                    preparedStatement.setBlob(parameterIndex, (Blob) value);
                     break;
                 case CLOB:
-                    if (len == 1) {
-                        preparedStatement.setClob(parameterIndex, (Clob) params[0]);
-                    }
+                    preparedStatement.setClob(parameterIndex, (Clob) value);
                     break;
                 case ARRAY:
-                    if (len == 1) {
-                        preparedStatement.setArray(parameterIndex, (Array) params[0]);
-                    }
+                    preparedStatement.setArray(parameterIndex, (Array) value);
                     break;
                 case URL:
-                    if (len == 1) {
-                        preparedStatement.setURL(parameterIndex, (URL) params[0]);
-                    }
+                    preparedStatement.setURL(parameterIndex, (URL) value);
                     break;
                 case ROW_ID:
-                    if (len == 1) {
-                        preparedStatement.setRowId(parameterIndex, (RowId) params[0]);
-                    }
+                    preparedStatement.setRowId(parameterIndex, (RowId) value);
                     break;
                 case NSTRING:
-                    if (len == 1) {
-                        preparedStatement.setNString(parameterIndex, (String) params[0]);
-                    }
+                    preparedStatement.setNString(parameterIndex, (String) value);
                     break;
                 case NCHARACTER_STREAM:
-                    if (len == 2) {
-                        String str = (String) params[0];
-                        int length = (Integer) params[1];
+                    if (extraCount == 1) {
                         preparedStatement.setNCharacterStream(parameterIndex,
-                                Util.string2Reader(str), length);
-                    } else if (len == 1) {
+                                Util.string2Reader((String) value), ((Number) paramBlock.getExtra(i, 0)).longValue());
+                    } else {
                         preparedStatement.setNCharacterStream(parameterIndex,
-                                Util.string2Reader((String) params[0]));
+                                Util.string2Reader((String) value));
                     }
                     break;
                 case NCLOB:
-                    if (len == 1) {
-                        preparedStatement.setNClob(parameterIndex, (NClob) params[0]);
-                    }
+                    preparedStatement.setNClob(parameterIndex, (NClob) value);
                     break;
             }
         }
+    }
 
+    /**
+     * 按定位符设置大对象参数, 结果集中的Blob/Clob直接设置, 上传的内容以流的方式交给驱动
+     *
+     * @param parameterIndex 参数下标
+     * @param paramType      参数类型
+     * @param locator        定位符
+     * @throws SQLException
+     */
+    private void setLob(int parameterIndex, ParamType paramType, LobLocator locator) throws SQLException {
+        LobServer lobServer = LobServer.LOBS.getIfPresent(locator.getId());
+        if (lobServer == null) {
+            throw new SQLException("No LOB found");
+        }
+        long length = lobServer.getLength();
+        switch (paramType) {
+            case BLOB:
+                if (lobServer.getBlob() != null) {
+                    preparedStatement.setBlob(parameterIndex, lobServer.getBlob());
+                } else {
+                    preparedStatement.setBlob(parameterIndex, lobServer.openStream(), length);
+                }
+                break;
+            case CLOB:
+                if (lobServer.getClob() != null) {
+                    preparedStatement.setClob(parameterIndex, lobServer.getClob());
+                } else {
+                    preparedStatement.setClob(parameterIndex, lobServer.openReader(), length);
+                }
+                break;
+            case NCLOB:
+                if (lobServer.getClob() instanceof NClob) {
+                    preparedStatement.setNClob(parameterIndex, (NClob) lobServer.getClob());
+                } else {
+                    preparedStatement.setNClob(parameterIndex, lobServer.openReader(), length);
+                }
+                break;
+            case BINARY_STREAM:
+                preparedStatement.setBinaryStream(parameterIndex, lobServer.openStream(), length);
+                break;
+            case ASCII_STREAM:
+                preparedStatement.setAsciiStream(parameterIndex, lobServer.openStream(), length);
+                break;
+            case CHARACTER_STREAM:
+                preparedStatement.setCharacterStream(parameterIndex, lobServer.openReader(), length);
+                break;
+            case NCHARACTER_STREAM:
+                preparedStatement.setNCharacterStream(parameterIndex, lobServer.openReader(), length);
+                break;
+            default:
+                throw new SQLException("Unsupported LOB parameter type " + paramType);
+        }
     }
 }
@@ -2,12 +2,24 @@ package com.jdbcagent.server.jdbc;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.support.ColumnarPage;
 import com.jdbcagent.core.support.SerialRowSetImpl;
+import com.jdbcagent.core.support.SerialRowSetMetaDataImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.sql.RowSet;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -19,88 +31,505 @@ import java.util.concurrent.atomic.AtomicLong;
 public class ResultSetServer {
     private static AtomicLong RESULTSET_ID = new AtomicLong(0);     // id与client对应
 
-    public static Cache<Long, ResultSetServer> RESULTSETS =         // resultSetServer 缓存, 保存60分钟自动删除
+    private static Logger logger = LoggerFactory.getLogger(ResultSetServer.class);
+
+    public static Cache<Long, ResultSetServer> RESULTSETS =         // resultSetServer 缓存, 60分钟未访问时关闭并删除
             CacheBuilder.newBuilder()
                     .initialCapacity(50)
                     .concurrencyLevel(100)
                     .expireAfterAccess(60, TimeUnit.MINUTES)
+                    .removalListener(new RemovalListener<Long, ResultSetServer>() {
+                        public void onRemoval(RemovalNotification<Long, ResultSetServer> notification) {
+                            // 客户端正常关闭时为显式删除, 过期删除说明客户端遗漏了关闭
+                            if (notification.wasEvicted()) {
+                                ResultSetServer resultSetServer = notification.getValue();
+                                logger.warn("ResultSet {} of connection {} was not closed by client, closing it",
+                                        notification.getKey(), resultSetServer.owner.getCurrentId());
+                                resultSetServer.closeQuietly();
+                            }
+                        }
+                    })
                     .build();
 
+    private static int MAX_OPEN_RESULTSETS = 4096;                  // 所有连接同时打开的结果集上限, 0为不限制
+
+    private static int MAX_CONNECTION_OPEN_RESULTSETS = 256;        // 每个连接同时打开的结果集上限, 0为不限制
+
+    private static volatile ExecutorService PREFETCH_EXECUTOR;      // 预读线程池, 为null时不预读
+
+    private final static long PREFETCH_WAIT_MILLIS = 1000;          // 等待预读任务时的检查间隔, 线程池终止后不再等待
+
+    private static int PREFETCH_PAGES;                              // 每个结果集预读的页数
+
+    private static long MAX_PREFETCH_MEMORY_SIZE;                   // 所有结果集预读分页的最大字节数
+
+    private static AtomicLong PREFETCH_MEMORY_SIZE = new AtomicLong(0);  // 当前预读分页占用的字节数
+
+    private static long MAX_CONNECTION_PREFETCH_MEMORY_SIZE;        // 每个连接的结果集预读分页的最大字节数
+
+    private static volatile long TARGET_PAGE_SIZE = 256 * 1024;     // 自适应分页的目标字节数
+
+    private final static int INITIAL_PAGE_ROWS = 128;               // 自适应分页第一页的行数
+
+    private final static int MIN_PAGE_ROWS = 16;                    // 自适应分页的最小行数
+
+    private final static int MAX_PAGE_ROWS = 65536;                 // 自适应分页的最大行数
+
     long currentId;                                                 // 当前id
 
+    private final ConnectionServer owner;                           // 所属连接, 连接关闭时关闭本结果集
+
     private ResultSet resultSet;                                    // 实际调用的resultSet
 
-    private SerialRowSetImpl serialRowSet;                          // 可序列化的rowSet
+    private SerialRowSetMetaDataImpl metaData;                      // 可序列化的元数据
+
+    private byte[] columnKinds;                                     // 每列的分页存储类型
+
+    private final ColumnarPage.LobConverter lobConverter;           // 超过内联阈值的大对象登记为定位符
+
+    private final Deque<ColumnarPage> prefetched = new ArrayDeque<>();  // 已预读并编码的分页
+
+    private boolean prefetching;                                    // 是否有预读任务在读取resultSet
+
+    private ExecutorService prefetchExecutor;                       // 执行当前预读任务的线程池
+
+    private boolean exhausted;                                      // 是否已读到最后一页
+
+    private SQLException prefetchError;                             // 预读时的异常, 在下次获取时抛出
+
+    private double bytesPerRow;                                     // 已观测到的每行平均字节数, 0为尚未观测
+
+    private Long streamId;                                          // 推送流id, 即打开推送的数据包id
+
+    private int streamBatchSize;                                    // 推送每页的行数
+
+    private int streamCredits;                                      // 客户端授予的剩余推送页数
+
+    private boolean streaming;                                      // 是否有线程正在推送
+
+    private boolean streamEnded;                                    // 推送是否已结束
 
     /**
-     * 构造方法
+     * 构造方法, 超出打开结果集的上限时关闭resultSet并抛出异常
      *
      * @param resultSet
+     * @param owner     所属连接
      * @throws SQLException
      */
-    ResultSetServer(ResultSet resultSet) throws SQLException {
+    ResultSetServer(ResultSet resultSet, final ConnectionServer owner) throws SQLException {
+        this.owner = owner;
+        this.lobConverter = new ColumnarPage.LobConverter() {
+            public Object convert(Object lob) throws SQLException {
+                return LobServer.convert(lob, owner);
+            }
+        };
+        try {
+            checkOpenLimits(owner);
+        } catch (SQLException e) {
+            try {
+                resultSet.close();
+            } catch (SQLException e1) {
+                // ignore
+            }
+            throw e;
+        }
         try {
             currentId = RESULTSET_ID.incrementAndGet();
             this.resultSet = resultSet;
+            owner.addResultSet(this);
             RESULTSETS.put(currentId, this);
         } catch (Exception e) {
             throw new SQLException(e);
         }
     }
 
+    /**
+     * 检查打开结果集的数量是否已达上限, 全局超出时先清理过期的结果集再检查
+     *
+     * @param owner 所属连接
+     * @throws SQLException
+     */
+    private static void checkOpenLimits(ConnectionServer owner) throws SQLException {
+        if (MAX_CONNECTION_OPEN_RESULTSETS > 0 && owner.getOpenResultSetCount() >= MAX_CONNECTION_OPEN_RESULTSETS) {
+            throw new SQLException("Too many open result sets on connection " + owner.getCurrentId()
+                    + ", limit " + MAX_CONNECTION_OPEN_RESULTSETS);
+        }
+        if (MAX_OPEN_RESULTSETS > 0 && RESULTSETS.size() >= MAX_OPEN_RESULTSETS) {
+            RESULTSETS.cleanUp();
+            if (RESULTSETS.size() >= MAX_OPEN_RESULTSETS) {
+                throw new SQLException("Too many open result sets, limit " + MAX_OPEN_RESULTSETS);
+            }
+        }
+    }
+
+    /**
+     * 设置同时打开的结果集上限
+     *
+     * @param maxOpenResultSets           所有连接的上限, 0为不限制
+     * @param maxConnectionOpenResultSets 每个连接的上限, 0为不限制
+     */
+    public static void setOpenResultSetLimits(int maxOpenResultSets, int maxConnectionOpenResultSets) {
+        MAX_OPEN_RESULTSETS = Math.max(maxOpenResultSets, 0);
+        MAX_CONNECTION_OPEN_RESULTSETS = Math.max(maxConnectionOpenResultSets, 0);
+    }
+
+    /**
+     * 启动结果集预读
+     *
+     * @param pages                   每个结果集预读的页数, 小于等于0时不预读
+     * @param threads                 预读线程数
+     * @param maxMemorySize           所有结果集预读分页的最大字节数
+     * @param maxConnectionMemorySize 每个连接的结果集预读分页的最大字节数
+     */
+    public static synchronized void startPrefetch(int pages, int threads, long maxMemorySize,
+                                                  long maxConnectionMemorySize) {
+        if (pages <= 0 || PREFETCH_EXECUTOR != null) {
+            return;
+        }
+        PREFETCH_PAGES = pages;
+        MAX_PREFETCH_MEMORY_SIZE = maxMemorySize;
+        MAX_CONNECTION_PREFETCH_MEMORY_SIZE = maxConnectionMemorySize;
+        PREFETCH_EXECUTOR = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jdbc-agent-prefetch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 设置自适应分页的目标字节数
+     *
+     * @param targetPageSize 目标字节数
+     */
+    public static void setTargetPageSize(long targetPageSize) {
+        if (targetPageSize > 0) {
+            TARGET_PAGE_SIZE = targetPageSize;
+        }
+    }
+
+    /**
+     * 停止结果集预读
+     */
+    public static synchronized void stopPrefetch() {
+        if (PREFETCH_EXECUTOR != null) {
+            // 未开始的预读任务被丢弃, 需要唤醒等待它们的结果集
+            for (Runnable task : PREFETCH_EXECUTOR.shutdownNow()) {
+                if (task instanceof PrefetchTask) {
+                    ((PrefetchTask) task).cancel();
+                }
+            }
+            PREFETCH_EXECUTOR = null;
+        }
+    }
+
+    /**
+     * 等待预读任务结束, 线程池已终止时不再等待
+     *
+     * @param untilPrefetched 已有预读分页时即返回
+     * @throws InterruptedException
+     */
+    private void awaitPrefetch(boolean untilPrefetched) throws InterruptedException {
+        while (prefetching && !(untilPrefetched && !prefetched.isEmpty())) {
+            if (prefetchExecutor == null || prefetchExecutor.isTerminated()) {
+                prefetching = false;
+                break;
+            }
+            wait(PREFETCH_WAIT_MILLIS);
+        }
+    }
+
     /**
      * 关闭方法
      *
      * @throws SQLException
      */
-    public void close() throws SQLException {
+    public synchronized void close() throws SQLException {
         try {
+            // 等待正在读取的预读任务结束后再关闭resultSet
+            awaitPrefetch(false);
+            releasePrefetched();
             if (resultSet != null && !resultSet.isClosed()) {
                 resultSet.close();
                 resultSet = null;
             }
             RESULTSETS.invalidate(currentId);
+            owner.removeResultSet(this);
         } catch (Exception e) {
             throw new SQLException(e);
         }
     }
 
+    /**
+     * 关闭, 忽略异常
+     */
+    void closeQuietly() {
+        try {
+            close();
+        } catch (SQLException e) {
+            logger.warn("Close resultSet " + currentId + " error: " + e.getMessage());
+        }
+    }
+
     /**
      * 获取rs的元数据
      *
-     * @return RowSet
+     * @return 可序列化的元数据
+     * @throws SQLException
+     */
+    public SerialRowSetMetaDataImpl getMetaData() throws SQLException {
+        if (resultSet != null && metaData == null) {
+            SerialRowSetImpl serialRowSet = new SerialRowSetImpl(resultSet);
+            serialRowSet.populateRSMD();
+            metaData = (SerialRowSetMetaDataImpl) serialRowSet.getMetaData();
+        }
+        return metaData;
+    }
+
+    /**
+     * 返回给客户端的结果集描述, 包含id和元数据, 元数据只在此时传输一次
+     *
+     * @return 结果集描述
      * @throws SQLException
      */
-    public RowSet getMetaData() throws SQLException {
-        if (resultSet != null) {
-            if (serialRowSet == null) {
-                serialRowSet = new SerialRowSetImpl(resultSet);
+    public ResultSetMsg describe() throws SQLException {
+        return ResultSetMsg.newBuilder().setId(currentId).setMetaData(getMetaData()).build();
+    }
+
+    /**
+     * 返回结果集描述并附带第一页, 只有一页时结果集随即关闭, 客户端不必再获取分页或发送关闭请求
+     *
+     * @param batchSize 第一页的批大小, 小于等于0时自适应, 为null时不附带分页
+     * @return 结果集描述
+     * @throws SQLException
+     */
+    public ResultSetMsg describe(Integer batchSize) throws SQLException {
+        ResultSetMsg resultSetMsg = describe();
+        if (batchSize != null) {
+            resultSetMsg.setPage(fetchRows(batchSize));
+        }
+        return resultSetMsg;
+    }
+
+    /**
+     * 获取指定数量的rs记录转为按列存储的分页
+     * <p>
+     * 开启预读时优先返回已预读的分页, 返回前在后台继续读取下一页, 返回最后一页时自动关闭结果集
+     *
+     * @param size 批大小, 小于等于0时按观测到的每行字节数自适应
+     * @return 分页
+     * @throws SQLException
+     */
+    public synchronized ColumnarPage fetchRows(int size) throws SQLException {
+        if (resultSet == null) {
+            return null;
+        }
+        if (columnKinds == null) {
+            columnKinds = ColumnarPage.columnKinds(resultSet.getMetaData());
+        }
+        try {
+            awaitPrefetch(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        if (prefetchError != null) {
+            SQLException e = prefetchError;
+            prefetchError = null;
+            throw e;
+        }
+
+        ColumnarPage page = prefetched.poll();
+        if (page != null) {
+            addPrefetchMemorySize(-page.getEncodedSize());
+        } else {
+            page = readPage(size, false);
+            if (page.isLast()) {
+                exhausted = true;
             }
+        }
+        if (page.isLast()) {
+            // 最后一页已交付, 客户端不必再发送关闭请求
+            close();
+        } else {
+            prefetch(size);
+        }
+        return page;
+    }
 
-            serialRowSet.populateRSMD();
+    /**
+     * 读取一页, 自适应时按目标字节数计算行数, 并根据编码后的大小更新每行字节数
+     *
+     * @param size   批大小, 小于等于0时自适应
+     * @param encode 是否预先编码
+     * @return 分页
+     * @throws SQLException
+     */
+    private ColumnarPage readPage(int size, boolean encode) throws SQLException {
+        boolean adaptive = size <= 0;
+        ColumnarPage page = ColumnarPage.populate(resultSet, columnKinds, adaptive ? adaptivePageRows() : size,
+                lobConverter);
+        if (encode || adaptive) {
+            page.encode();
+        }
+        if (adaptive && page.getRowCount() > 0) {
+            double observed = (double) page.getEncodedSize() / page.getRowCount();
+            bytesPerRow = bytesPerRow == 0 ? observed : (bytesPerRow + observed) / 2;
+        }
+        return page;
+    }
 
-            return serialRowSet;
+    /**
+     * @return 自适应分页的行数
+     */
+    private int adaptivePageRows() {
+        if (bytesPerRow == 0) {
+            return INITIAL_PAGE_ROWS;
         }
-        return null;
+        long rows = (long) (TARGET_PAGE_SIZE / bytesPerRow);
+        return (int) Math.max(MIN_PAGE_ROWS, Math.min(MAX_PAGE_ROWS, rows));
     }
 
     /**
-     * 获取指定数量的rs记录集合转为可序列化的RowSet
+     * 在后台读取并编码下一页, 每个结果集同时只有一个预读任务
      *
      * @param size 批大小
-     * @return RowSet
-     * @throws SQLException
      */
-    public RowSet fetchRows(int size) throws SQLException {
-        if (resultSet != null) {
-            if (serialRowSet == null) {
-                serialRowSet = new SerialRowSetImpl(resultSet);
+    private void prefetch(final int size) {
+        final ExecutorService executor = PREFETCH_EXECUTOR;
+        if (executor == null || resultSet == null || prefetching || exhausted || prefetchError != null
+                || prefetched.size() >= PREFETCH_PAGES
+                || PREFETCH_MEMORY_SIZE.get() >= MAX_PREFETCH_MEMORY_SIZE
+                || owner.prefetchMemorySize.get() >= MAX_CONNECTION_PREFETCH_MEMORY_SIZE) {
+            return;
+        }
+        prefetching = true;
+        prefetchExecutor = executor;
+        try {
+            executor.execute(new PrefetchTask(size));
+        } catch (Exception e) {
+            // 线程池已关闭, 不再预读
+            prefetching = false;
+        }
+    }
+
+    /**
+     * 预读任务, 线程池关闭时未开始的任务通过 {@link #cancel()} 唤醒等待的结果集
+     */
+    private class PrefetchTask implements Runnable {
+        private final int size;                                     // 批大小
+
+        PrefetchTask(int size) {
+            this.size = size;
+        }
+
+        public void run() {
+            ColumnarPage page = null;
+            SQLException error = null;
+            try {
+                page = readPage(size, true);
+            } catch (SQLException e) {
+                error = e;
+            } catch (Exception e) {
+                error = new SQLException(e);
+            }
+            synchronized (ResultSetServer.this) {
+                prefetching = false;
+                if (error != null) {
+                    prefetchError = error;
+                } else {
+                    addPrefetchMemorySize(page.getEncodedSize());
+                    prefetched.add(page);
+                    if (page.isLast()) {
+                        exhausted = true;
+                    }
+                    prefetch(size);
+                }
+                ResultSetServer.this.notifyAll();
             }
-            // 装填RowSet
-            serialRowSet.populate(size);
+        }
 
-            return serialRowSet;
+        /**
+         * 任务被丢弃, 清除预读状态
+         */
+        void cancel() {
+            synchronized (ResultSetServer.this) {
+                prefetching = false;
+                ResultSetServer.this.notifyAll();
+            }
         }
-        return null;
+    }
+
+    /**
+     * 释放已预读的分页占用的内存
+     */
+    private void releasePrefetched() {
+        ColumnarPage page;
+        while ((page = prefetched.poll()) != null) {
+            addPrefetchMemorySize(-page.getEncodedSize());
+        }
+    }
+
+    /**
+     * 同时计入全局和所属连接的预读字节数
+     *
+     * @param delta 增加的字节数, 释放时为负数
+     */
+    private void addPrefetchMemorySize(long delta) {
+        PREFETCH_MEMORY_SIZE.addAndGet(delta);
+        owner.prefetchMemorySize.addAndGet(delta);
+    }
+
+    /**
+     * 增加推送额度, 第一次调用时打开推送流
+     *
+     * @param packetId  数据包id, 打开推送时作为推送流id
+     * @param batchSize 之后推送每页的行数, 小于等于0时自适应
+     * @param credits   增加的页数
+     * @return 调用方是否需要开始推送
+     */
+    public synchronized boolean grantCredits(long packetId, int batchSize, int credits) {
+        if (streamId == null) {
+            streamId = packetId;
+        }
+        streamBatchSize = batchSize;
+        streamCredits += credits;
+        if (streaming || streamEnded) {
+            return false;
+        }
+        streaming = true;
+        return true;
+    }
+
+    /**
+     * 消耗一页推送额度, 没有额度、推送结束或已关闭时停止推送
+     *
+     * @return 是否可以继续推送一页
+     */
+    public synchronized boolean takeCredit() {
+        if (streamCredits <= 0 || streamEnded || resultSet == null) {
+            streaming = false;
+            return false;
+        }
+        streamCredits--;
+        return true;
+    }
+
+    /**
+     * 结束推送
+     */
+    public synchronized void endStream() {
+        streamEnded = true;
+    }
+
+    public synchronized Long getStreamId() {
+        return streamId;
+    }
+
+    public synchronized int getStreamBatchSize() {
+        return streamBatchSize;
     }
 }
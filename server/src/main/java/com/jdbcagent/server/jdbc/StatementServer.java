@@ -2,10 +2,15 @@ package com.jdbcagent.server.jdbc;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.jdbcagent.core.protocol.StatementMsg;
 import com.jdbcagent.core.support.serial.SerialVoid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
@@ -21,28 +26,54 @@ import java.util.concurrent.atomic.AtomicLong;
 public class StatementServer {
     private static AtomicLong STATEMENTS_ID = new AtomicLong(0);    // id与client对应
 
-    public static Cache<Long, StatementServer> STATEMENTS =         // statementServer 缓存, 保存60分钟自动删除
+    private static Logger logger = LoggerFactory.getLogger(StatementServer.class);
+
+    public static Cache<Long, StatementServer> STATEMENTS =         // statementServer 缓存, 60分钟未访问时关闭并删除
             CacheBuilder.newBuilder()
                     .initialCapacity(50)
                     .concurrencyLevel(100)
                     .expireAfterAccess(60, TimeUnit.MINUTES)
+                    .removalListener(new RemovalListener<Long, StatementServer>() {
+                        public void onRemoval(RemovalNotification<Long, StatementServer> notification) {
+                            // 客户端正常关闭时为显式删除, 过期删除说明客户端遗漏了关闭
+                            if (notification.wasEvicted()) {
+                                StatementServer statementServer = notification.getValue();
+                                logger.warn("Statement {} of connection {} was not closed by client, closing it",
+                                        notification.getKey(), statementServer.owner.getCurrentId());
+                                statementServer.closeQuietly();
+                            }
+                        }
+                    })
                     .build();
 
     long currentId;                                                 // 当前id
 
     private Statement statement;                                    // 实际调用的statement
 
+    final ConnectionServer owner;                                   // 所属连接, 连接关闭时关闭本statement
+
+    ResultSetServer resultSetServer;                                // 最近一次查询的结果集, 再次执行或关闭时关闭
+
+    boolean modified;                                               // 客户端是否修改过statement的属性
+
     /**
      * 构造方法
      *
      * @param statement
+     * @param owner     所属连接
      */
-    StatementServer(Statement statement) {
+    StatementServer(Statement statement, ConnectionServer owner) {
         currentId = STATEMENTS_ID.incrementAndGet();
         this.statement = statement;
+        this.owner = owner;
+        owner.addStatement(this);
         STATEMENTS.put(currentId, this);
     }
 
+    public long getCurrentId() {
+        return currentId;
+    }
+
     /**
      * 关闭方法
      *
@@ -50,16 +81,63 @@ public class StatementServer {
      */
     public void close() throws SQLException {
         try {
+            closeResultSet();
             if (statement != null && !statement.isClosed()) {
                 statement.close();
                 statement = null;
             }
             STATEMENTS.invalidate(currentId);
+            owner.removeStatement(this);
         } catch (Exception e) {
             throw new SQLException(e);
         }
     }
 
+    /**
+     * 关闭, 忽略异常
+     */
+    void closeQuietly() {
+        try {
+            close();
+        } catch (SQLException e) {
+            logger.warn("Close statement " + currentId + " error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 与实际的statement脱离, 由其它对象继续持有该statement
+     */
+    void detach() {
+        statement = null;
+        STATEMENTS.invalidate(currentId);
+        owner.removeStatement(this);
+    }
+
+    /**
+     * 登记新的查询结果集, 同一statement再次执行时上一个结果集已被数据库关闭
+     *
+     * @param resultSet 查询结果集
+     * @return resultSetServer
+     * @throws SQLException
+     */
+    ResultSetServer openResultSet(ResultSet resultSet) throws SQLException {
+        closeResultSet();
+        resultSetServer = new ResultSetServer(resultSet, owner);
+        return resultSetServer;
+    }
+
+    /**
+     * 关闭最近一次查询的结果集
+     *
+     * @throws SQLException
+     */
+    void closeResultSet() throws SQLException {
+        if (resultSetServer != null) {
+            resultSetServer.close();
+            resultSetServer = null;
+        }
+    }
+
     /**
      * statement 公共方法调用
      *
@@ -71,12 +149,13 @@ public class StatementServer {
         try {
             Serializable response = new SerialVoid();
             StatementMsg.Method method = statementMsg.getMethod();
+            if (method.name().startsWith("set") || method == StatementMsg.Method.closeOnCompletion) {
+                modified = true;
+            }
             switch (method) {
                 case executeQuery: {
                     String sql = (String) statementMsg.getParams()[0];
-                    ResultSetServer resultSetServer =
-                            new ResultSetServer(statement.executeQuery(sql));
-                    response = resultSetServer.currentId;
+                    response = openResultSet(statement.executeQuery(sql)).describe(statementMsg.getBatchSize());
                     break;
                 }
                 case getMaxFieldSize: {
@@ -85,7 +164,7 @@ public class StatementServer {
                 }
                 case setMaxFieldSize: {
                     int max = (Integer) statementMsg.getParams()[0];
-                    statement.setMaxRows(max);
+                    statement.setMaxFieldSize(max);
                     break;
                 }
                 case getMaxRows: {
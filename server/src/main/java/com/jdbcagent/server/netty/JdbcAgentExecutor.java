@@ -0,0 +1,35 @@
+package com.jdbcagent.server.netty;
+
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JDBC-Agent server sql执行线程池
+ * <p>
+ * 客户端在同一通道上复用多个连接并发送多个未完成的请求, 因此数据包之间不保证顺序, 直接并发执行;
+ * 通道的状态事件(连接、关闭等)仍按通道顺序执行
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class JdbcAgentExecutor extends OrderedMemoryAwareThreadPoolExecutor {
+
+    public JdbcAgentExecutor(int corePoolSize, long maxChannelMemorySize, long maxTotalMemorySize,
+                             long keepAliveTime, TimeUnit unit, ThreadFactory threadFactory) {
+        super(corePoolSize, maxChannelMemorySize, maxTotalMemorySize, keepAliveTime, unit, threadFactory);
+    }
+
+    @Override
+    protected void doExecute(Runnable task) {
+        if (task instanceof ChannelEventRunnable
+                && ((ChannelEventRunnable) task).getEvent() instanceof MessageEvent) {
+            doUnorderedExecute(task);
+        } else {
+            super.doExecute(task);
+        }
+    }
+}
@@ -3,8 +3,12 @@ package com.jdbcagent.server.netty;
 import com.jdbcagent.core.util.ByteSerializer;
 import com.jdbcagent.server.JdbcAgentServer;
 import com.jdbcagent.server.config.JdbcAgentConf;
+import com.jdbcagent.server.jdbc.ConnectionServer;
+import com.jdbcagent.server.jdbc.LobServer;
+import com.jdbcagent.server.jdbc.ResultSetServer;
 import com.jdbcagent.server.netty.handler.ClientAuthenticationHandler;
 import com.jdbcagent.server.netty.handler.FixedHeaderFrameDecoder;
+import com.jdbcagent.server.netty.handler.FrameFragmentEncoder;
 import com.jdbcagent.server.netty.handler.SessionHandler;
 import com.jdbcagent.server.running.ServerRunningData;
 import com.jdbcagent.server.running.ServerRunningMonitor;
@@ -18,9 +22,13 @@ import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * JDBC-Agent server netty server
@@ -39,6 +47,8 @@ public class JdbcAgentNettyServer implements JdbcAgentServer {
 
     private ChannelGroup childGroups;           // socket channel container, used to close sockets explicitly.
 
+    private ExecutionHandler executionHandler;  // sql执行线程池, 避免阻塞netty的I/O线程
+
     private ServerRunningMonitor runningMonitor;
 
     public void setJdbcAgentConf(JdbcAgentConf jdbcAgentConf) {
@@ -115,13 +125,28 @@ public class JdbcAgentNettyServer implements JdbcAgentServer {
          */
         bootstrap.setOption("child.tcpNoDelay", true);
 
+        this.executionHandler = new ExecutionHandler(newExecutor());
+
+        final JdbcAgentConf.JdbcAgent conf = jdbcAgentConf.getJdbcAgent();
+        ResultSetServer.startPrefetch(conf.getPrefetchPages(), conf.getPrefetchThreads(),
+                conf.getMaxPrefetchMemorySize(), conf.getMaxConnectionPrefetchMemorySize());
+        ResultSetServer.setOpenResultSetLimits(conf.getMaxOpenResultSets(), conf.getMaxConnectionOpenResultSets());
+        ResultSetServer.setTargetPageSize(conf.getTargetPageSize());
+        LobServer.setInlineThreshold(conf.getLobInlineThreshold());
+        ConnectionServer.setStatementCacheSize(conf.getPreparedStatementCacheSize());
+
         bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
 
             public ChannelPipeline getPipeline() throws Exception {
                 ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast(FrameFragmentEncoder.class.getName(), new FrameFragmentEncoder());
                 pipeline.addLast(FixedHeaderFrameDecoder.class.getName(),
-                        new FixedHeaderFrameDecoder());
-                pipeline.addLast(ClientAuthenticationHandler.class.getName(), new ClientAuthenticationHandler());
+                        new FixedHeaderFrameDecoder(conf.getMaxMessageLength()));
+                // 解包之后的请求交由执行线程池处理
+                pipeline.addLast(ExecutionHandler.class.getName(), executionHandler);
+                pipeline.addLast(ClientAuthenticationHandler.class.getName(),
+                        new ClientAuthenticationHandler(conf.getCompression(), conf.getCompressThreshold(),
+                                conf.getMaxMessageLength()));
                 pipeline.addLast(SessionHandler.class.getName(), new SessionHandler());
                 return pipeline;
             }
@@ -160,11 +185,44 @@ public class JdbcAgentNettyServer implements JdbcAgentServer {
             this.bootstrap.releaseExternalResources();
         }
 
+        if (this.executionHandler != null) {
+            this.executionHandler.releaseExternalResources();
+            this.executionHandler = null;
+        }
+
+        ResultSetServer.stopPrefetch();
+
         if (runningMonitor != null && runningMonitor.isStart()) {
             runningMonitor.stop();
         }
     }
 
+    /**
+     * 创建sql执行线程池
+     * <p>
+     * 限制排队请求占用的内存, 超过限制时暂停读取对应通道
+     *
+     * @return 线程池
+     */
+    private JdbcAgentExecutor newExecutor() {
+        JdbcAgentConf.JdbcAgent conf = jdbcAgentConf.getJdbcAgent();
+        int threads = conf.getExecutorThreads();
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        return new JdbcAgentExecutor(threads,
+                conf.getMaxChannelMemorySize(), conf.getMaxTotalMemorySize(),
+                60, TimeUnit.SECONDS, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jdbc-agent-executor-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     @Override
     public boolean isStart() {
         return running;
@@ -1,8 +1,11 @@
 package com.jdbcagent.server.netty;
 
 import com.jdbcagent.core.protocol.Ack;
+import com.jdbcagent.core.protocol.ClientAuth;
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.util.SerializeUtil;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
@@ -11,7 +14,6 @@ import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timer;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /**
  * JDBC-Agent server netty 工具类
@@ -32,17 +34,35 @@ public class NettyUtils {
      * @param channelFutureListner
      */
     public static void write(Channel channel, Packet packet, ChannelFutureListener channelFutureListner) {
-        byte[] body = packet.toByteArray();
-        byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN)
-                .putInt(body.length).array();
+        // 经线程缓冲序列化到预留包头的数组中, 包装后回填包体长度
+        ByteBuffer frame = SerializeUtil.serialize(packet, HEADER_LENGTH);
+        ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frame);
+        buffer.setInt(0, buffer.readableBytes() - HEADER_LENGTH);
         if (channelFutureListner == null) {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body));
+            Channels.write(channel, buffer);
         } else {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body))
-                    .addListener(channelFutureListner);
+            Channels.write(channel, buffer).addListener(channelFutureListner);
         }
     }
 
+    /**
+     * 从已解包的数据中读取数据包, 直接读取缓冲的底层数据, 不做复制
+     *
+     * @param buffer 一个完整数据包的缓冲
+     * @return 数据包
+     */
+    public static Packet read(ChannelBuffer buffer) {
+        Packet packet;
+        if (buffer.hasArray()) {
+            packet = (Packet) SerializeUtil.deserialize(buffer.array(),
+                    buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+        } else {
+            packet = (Packet) SerializeUtil.deserialize(buffer.toByteBuffer());
+        }
+        buffer.skipBytes(buffer.readableBytes());
+        return packet;
+    }
+
     /**
      * 向客户端应答数据
      *
@@ -71,6 +91,23 @@ public class NettyUtils {
         write(channel, packetAck, channelFutureListner);
     }
 
+    /**
+     * 响应认证信息, 带上协商的压缩算法
+     *
+     * @param channel              通道
+     * @param packet               认证数据包
+     * @param negotiated           协商结果
+     * @param channelFutureListner
+     */
+    public static void ackAuth(Channel channel, Packet packet, ClientAuth negotiated,
+                               ChannelFutureListener channelFutureListner) {
+        Packet packetAck =
+                Packet.newBuilder(packet.getId())
+                        .setType(PacketType.CLIENT_AUTH)
+                        .setBody(negotiated).build();
+        write(channel, packetAck, channelFutureListner);
+    }
+
     /**
      * 响应错误信息
      *
@@ -81,6 +118,20 @@ public class NettyUtils {
      */
     public static void error(Packet packet, int errorCode, String errorMessage, Channel channel,
                              ChannelFutureListener channelFutureListener) {
+        error(PacketType.ACK, packet, errorCode, errorMessage, channel, channelFutureListener);
+    }
+
+    /**
+     * 以指定类型的数据包响应错误信息, 认证失败时客户端只处理认证类型的应答
+     *
+     * @param type                  应答数据包类型
+     * @param errorCode             错误代码
+     * @param errorMessage          错误信息
+     * @param channel
+     * @param channelFutureListener
+     */
+    public static void error(PacketType type, Packet packet, int errorCode, String errorMessage, Channel channel,
+                             ChannelFutureListener channelFutureListener) {
         // if (channelFutureListener == null) {
         //     channelFutureListener = ChannelFutureListener.CLOSE;
         // }
@@ -94,7 +145,7 @@ public class NettyUtils {
 
         Packet packetError =
                 Packet.newBuilder(packet.getId())
-                        .setType(PacketType.ACK).setBody(Ack.newBuilder()
+                        .setType(type).setBody(Ack.newBuilder()
                         .setErrorCode(errorCode).setErrorMessage(errorMessage).build())
                         .build();
         write(channel, packetError, channelFutureListener);
@@ -25,6 +25,17 @@ public class CallableStatementInvoker {
      * @throws SQLException
      */
     static void close(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        closeCallableStatement(packet);
+        NettyUtils.ack(ctx.getChannel(), packet, null);
+    }
+
+    /**
+     * 关闭callableStatement, 不存在时忽略
+     *
+     * @param packet
+     * @throws SQLException
+     */
+    static void closeCallableStatement(Packet packet) throws SQLException {
         CallableStatementMsg callableStatementMsg = (CallableStatementMsg) packet.getMessage();
         if (callableStatementMsg != null && callableStatementMsg.getId() != null) {
             CallableStatementServer callableStatementServer =
@@ -34,7 +45,6 @@ public class CallableStatementInvoker {
                 callableStatementServer.close();
             }
         }
-        NettyUtils.ack(ctx.getChannel(), packet, null);
     }
 
     /**
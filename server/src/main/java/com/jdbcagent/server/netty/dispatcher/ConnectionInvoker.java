@@ -2,6 +2,7 @@ package com.jdbcagent.server.netty.dispatcher;
 
 import com.jdbcagent.core.protocol.ConnectionMsg;
 import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.server.jdbc.ChannelSession;
 import com.jdbcagent.server.jdbc.ConnectionServer;
 import com.jdbcagent.server.netty.NettyUtils;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -26,17 +27,25 @@ public class ConnectionInvoker {
      */
     static void connect(Integer channelId, ChannelHandlerContext ctx, Packet packet) throws SQLException {
         ConnectionMsg connectMsg = (ConnectionMsg) packet.getMessage();
+        ChannelSession session = ChannelSession.open(channelId);
         ConnectionServer connectionServer = new ConnectionServer();
-        long connectionId = connectionServer.connect(channelId, connectMsg.getCatalog(),
+        long connectionId = connectionServer.connect(session, connectMsg.getCatalog(),
                 connectMsg.getUsername(), connectMsg.getPassword());
+        if (!ctx.getChannel().isOpen()) {
+            // 执行线程池不保证同一通道的顺序, 通道关闭可能已先于本次连接处理
+            session.close();
+            return;
+        }
         NettyUtils.write(ctx.getChannel(), Packet.newBuilder(packet.getId())
                         .setBody(ConnectionMsg.newBuilder()
-                                .setId(connectionId).build()).build(),
+                                .setId(connectionId)
+                                .setSerialConnection(connectionServer.getSerialConnection())
+                                .setSerialDatabaseMetaData(connectionServer.getSerialDatabaseMetaData()).build()).build(),
                 null);
     }
 
-    static void channelClose(Integer channelId) throws SQLException {
-        ConnectionServer.close(channelId);
+    static void channelClose(Integer channelId) {
+        ChannelSession.close(channelId);
     }
 
     /**
@@ -48,7 +57,7 @@ public class ConnectionInvoker {
      */
     static void connMethod(ChannelHandlerContext ctx, Packet packet) throws SQLException {
         ConnectionMsg connectMsg = (ConnectionMsg) packet.getMessage();
-        ConnectionServer connectionServer = ConnectionServer.CONNECTIONS.get(connectMsg.getId());
+        ConnectionServer connectionServer = getConnectionServer(connectMsg);
         Serializable response = connectionServer.connMethod(connectMsg);
         NettyUtils.write(ctx.getChannel(),
                 Packet.newBuilder(packet.getId())
@@ -58,6 +67,25 @@ public class ConnectionInvoker {
                         .build(), null);
     }
 
+    /**
+     * 调用无需应答的connection方法
+     *
+     * @param packet
+     * @throws SQLException
+     */
+    static void invokeConnMethod(Packet packet) throws SQLException {
+        ConnectionMsg connectMsg = (ConnectionMsg) packet.getMessage();
+        getConnectionServer(connectMsg).connMethod(connectMsg);
+    }
+
+    private static ConnectionServer getConnectionServer(ConnectionMsg connectMsg) throws SQLException {
+        ConnectionServer connectionServer = ConnectionServer.CONNECTIONS.get(connectMsg.getId());
+        if (connectionServer == null) {
+            throw new SQLException("No connection found");
+        }
+        return connectionServer;
+    }
+
     /**
      * 可序列化conn公共方法调用
      *
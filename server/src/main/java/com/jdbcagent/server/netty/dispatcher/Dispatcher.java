@@ -1,9 +1,11 @@
 package com.jdbcagent.server.netty.dispatcher;
 
+import com.jdbcagent.core.protocol.ConnectionMsg;
 import com.jdbcagent.core.protocol.Packet;
 import org.jboss.netty.channel.ChannelHandlerContext;
 
 import java.sql.SQLException;
+import java.util.List;
 
 /**
  * JDBC-Agent server 端调用分发类
@@ -20,6 +22,9 @@ public class Dispatcher {
      * @throws SQLException
      */
     public static void dispatch(Integer channelId, ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        if (packet.getDeferred() != null) {
+            dispatchDeferred(packet.getDeferred(), packet);
+        }
         switch (packet.getType()) {
             case CONN_CONNECT:
                 ConnectionInvoker.connect(channelId, ctx, packet);
@@ -68,6 +73,119 @@ public class Dispatcher {
             case RS_FETCH_ROWS:
                 ResultSetInvoker.fetchRows(ctx, packet);
                 break;
+            case RS_STREAM:
+                ResultSetInvoker.stream(ctx, packet);
+                break;
+
+            case LOB_READ:
+                LobInvoker.read(ctx, packet);
+                break;
+            case LOB_WRITE:
+                LobInvoker.write(ctx, packet);
+                break;
+            case LOB_FREE:
+                LobInvoker.free(ctx, packet);
+                break;
+        }
+    }
+
+    /**
+     * 按顺序执行客户端延迟发送的无返回值调用, 不单独应答
+     * <p>
+     * 任一调用出错时不再执行后续的其它调用及本次请求, 错误作为本次请求的应答返回;
+     * 但之后的关闭和释放调用(包括作为本次请求的关闭)仍然执行, 否则连接、statement等资源要一直占用到通道关闭
+     *
+     * @param deferred 延迟调用的数据包
+     * @param request  本次请求
+     * @throws SQLException
+     */
+    static void dispatchDeferred(List<Packet> deferred, Packet request) throws SQLException {
+        SQLException error = null;
+        for (Packet packet : deferred) {
+            if (error != null && !isRelease(packet)) {
+                continue;
+            }
+            try {
+                invokeDeferred(packet);
+            } catch (SQLException e) {
+                SQLException failed = new SQLException("Deferred " + packet.getType() + " failed: "
+                        + e.getMessage(), e);
+                if (error == null) {
+                    error = failed;
+                } else {
+                    error.addSuppressed(failed);
+                }
+            }
+        }
+        if (error == null) {
+            return;
+        }
+        if (isRelease(request)) {
+            try {
+                invokeDeferred(request);
+            } catch (SQLException e) {
+                error.addSuppressed(e);
+            }
+        }
+        throw error;
+    }
+
+    /**
+     * 执行一个无需应答的调用
+     *
+     * @param packet 数据包
+     * @throws SQLException
+     */
+    private static void invokeDeferred(Packet packet) throws SQLException {
+        switch (packet.getType()) {
+            case CONN_METHOD:
+                ConnectionInvoker.invokeConnMethod(packet);
+                break;
+            case STMT_METHOD:
+                StatementInvoker.invokeStatementMethod(packet);
+                break;
+            case STMT_CLOSE:
+                StatementInvoker.closeStatement(packet);
+                break;
+            case PRE_STMT_METHOD:
+                PreparedStatementInvoker.invokePreparedStatementMethod(packet);
+                break;
+            case PRE_STMT_CLOSE:
+                PreparedStatementInvoker.closePreparedStatement(packet);
+                break;
+            case CLA_STMT_CLOSE:
+                CallableStatementInvoker.closeCallableStatement(packet);
+                break;
+            case RS_CLOSE:
+                ResultSetInvoker.closeResultSet(packet);
+                break;
+            case LOB_FREE:
+                LobInvoker.freeLob(packet);
+                break;
+            default:
+                throw new SQLException("Unsupported deferred call " + packet.getType());
+        }
+    }
+
+    /**
+     * 是否为关闭或释放资源的调用
+     *
+     * @param packet 数据包
+     * @return 是否关闭或释放
+     */
+    private static boolean isRelease(Packet packet) {
+        switch (packet.getType()) {
+            case STMT_CLOSE:
+            case PRE_STMT_CLOSE:
+            case CLA_STMT_CLOSE:
+            case RS_CLOSE:
+            case LOB_FREE:
+                return true;
+            case CONN_METHOD:
+                return packet.getMessage() instanceof ConnectionMsg
+                        && ((ConnectionMsg) packet.getMessage()).getMethod() == ConnectionMsg.Method.close;
+            default:
+                return false;
         }
     }
 }
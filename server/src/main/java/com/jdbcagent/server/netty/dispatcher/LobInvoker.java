@@ -0,0 +1,98 @@
+package com.jdbcagent.server.netty.dispatcher;
+
+import com.jdbcagent.core.protocol.LobMsg;
+import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.server.jdbc.ConnectionServer;
+import com.jdbcagent.server.jdbc.LobServer;
+import com.jdbcagent.server.netty.NettyUtils;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+import java.sql.SQLException;
+
+/**
+ * JDBC-Agent server 端大对象调用
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+class LobInvoker {
+    /**
+     * 按块读取
+     *
+     * @param ctx
+     * @param packet
+     * @throws SQLException
+     */
+    static void read(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        LobMsg lobMsg = (LobMsg) packet.getMessage();
+        LobServer lobServer = getLobServer(lobMsg.getId());
+        NettyUtils.write(ctx.getChannel(), Packet.newBuilder(packet.getId())
+                        .setBody(LobMsg.newBuilder().setId(lobMsg.getId())
+                                .setData(lobServer.read(lobMsg.getPosition(), lobMsg.getLength())).build())
+                        .build(),
+                null);
+    }
+
+    /**
+     * 按块写入, 不带id时先在指定连接下新建, 返回当前的定位符
+     *
+     * @param ctx
+     * @param packet
+     * @throws SQLException
+     */
+    static void write(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        LobMsg lobMsg = (LobMsg) packet.getMessage();
+        LobServer lobServer;
+        if (lobMsg.getId() == null) {
+            ConnectionServer connectionServer = ConnectionServer.CONNECTIONS.get(lobMsg.getConnectionId());
+            if (connectionServer == null) {
+                throw new SQLException("No connection found");
+            }
+            lobServer = LobServer.create(connectionServer, lobMsg.getType());
+        } else {
+            lobServer = getLobServer(lobMsg.getId());
+        }
+        if (lobMsg.getData() != null) {
+            lobServer.append(lobMsg.getData());
+        }
+        NettyUtils.write(ctx.getChannel(), Packet.newBuilder(packet.getId())
+                        .setBody(LobMsg.newBuilder().setLocator(lobServer.locator()).build())
+                        .build(),
+                null);
+    }
+
+    /**
+     * 释放方法调用
+     *
+     * @param ctx
+     * @param packet
+     * @throws SQLException
+     */
+    static void free(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        freeLob(packet);
+        NettyUtils.ack(ctx.getChannel(), packet, null);
+    }
+
+    /**
+     * 释放大对象, 不存在时忽略
+     *
+     * @param packet
+     */
+    static void freeLob(Packet packet) {
+        LobMsg lobMsg = (LobMsg) packet.getMessage();
+        if (lobMsg != null && lobMsg.getId() != null) {
+            LobServer lobServer = LobServer.LOBS.getIfPresent(lobMsg.getId());
+            if (lobServer != null) {
+                lobServer.free();
+            }
+        }
+    }
+
+    private static LobServer getLobServer(Long id) throws SQLException {
+        LobServer lobServer = id == null ? null : LobServer.LOBS.getIfPresent(id);
+        if (lobServer == null) {
+            throw new SQLException("No LOB found");
+        }
+        return lobServer;
+    }
+}
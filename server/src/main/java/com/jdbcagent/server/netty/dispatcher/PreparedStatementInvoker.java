@@ -2,6 +2,8 @@ package com.jdbcagent.server.netty.dispatcher;
 
 import com.jdbcagent.core.protocol.Packet;
 import com.jdbcagent.core.protocol.PreparedStatementMsg;
+import com.jdbcagent.core.protocol.StatementMsg;
+import com.jdbcagent.server.jdbc.ConnectionServer;
 import com.jdbcagent.server.jdbc.PreparedStatementServer;
 import com.jdbcagent.server.jdbc.StatementServer;
 import com.jdbcagent.server.netty.NettyUtils;
@@ -25,6 +27,17 @@ public class PreparedStatementInvoker {
      * @throws SQLException
      */
     static void close(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        closePreparedStatement(packet);
+        NettyUtils.ack(ctx.getChannel(), packet, null);
+    }
+
+    /**
+     * 关闭preparedStatement, 不存在时忽略
+     *
+     * @param packet
+     * @throws SQLException
+     */
+    static void closePreparedStatement(Packet packet) throws SQLException {
         PreparedStatementMsg preparedStatementMsg = (PreparedStatementMsg) packet.getMessage();
         if (preparedStatementMsg != null && preparedStatementMsg.getId() != null) {
             PreparedStatementServer preparedStatementServer =
@@ -34,7 +47,6 @@ public class PreparedStatementInvoker {
                 preparedStatementServer.close();
             }
         }
-        NettyUtils.ack(ctx.getChannel(), packet, null);
     }
 
     /**
@@ -47,18 +59,73 @@ public class PreparedStatementInvoker {
     static void preparedStatementMethod(ChannelHandlerContext ctx, Packet packet)
             throws SQLException {
         PreparedStatementMsg preparedStatementMsg = (PreparedStatementMsg) packet.getMessage();
-        PreparedStatementServer preparedStatementServer =
-                (PreparedStatementServer) StatementServer.STATEMENTS
-                        .getIfPresent(preparedStatementMsg.getId());
+        PreparedStatementServer preparedStatementServer;
+        if (preparedStatementMsg.getId() == null && preparedStatementMsg.getPrepareParams() != null) {
+            // 客户端延迟的预编译与本次执行合并为一次请求
+            preparedStatementServer = prepare(preparedStatementMsg);
+        } else {
+            preparedStatementServer = (PreparedStatementServer) StatementServer.STATEMENTS
+                    .getIfPresent(preparedStatementMsg.getId());
+            if (preparedStatementMsg.getPrepareParams() != null) {
+                // 客户端复用缓存的句柄, 已失效时重新预编译
+                if (preparedStatementServer != null) {
+                    preparedStatementServer.reset();
+                } else {
+                    preparedStatementServer = prepare(preparedStatementMsg);
+                }
+            }
+        }
         if (preparedStatementServer != null) {
+            if (preparedStatementMsg.getPrepareParams() != null && preparedStatementMsg.getStatementMethods() != null) {
+                // 客户端在预编译前设置的statement属性, 预编译后按顺序执行
+                for (StatementMsg statementMsg : preparedStatementMsg.getStatementMethods()) {
+                    preparedStatementServer.statementMethod(statementMsg);
+                }
+            }
             Serializable response =
                     preparedStatementServer.preparedStatementMethod(preparedStatementMsg);
             NettyUtils.write(ctx.getChannel(),
                     Packet.newBuilder(packet.getId())
-                            .setBody(PreparedStatementMsg.newBuilder().setResponse(response).build())
+                            .setBody(PreparedStatementMsg.newBuilder()
+                                    .setId(preparedStatementServer.getCurrentId())
+                                    .setResponse(response).build())
                             .build(), null);
         } else {
             throw new SQLException("No preparedStatement found");
         }
     }
+
+    /**
+     * 调用无需应答的preparedStatement方法
+     *
+     * @param packet
+     * @throws SQLException
+     */
+    static void invokePreparedStatementMethod(Packet packet) throws SQLException {
+        PreparedStatementMsg preparedStatementMsg = (PreparedStatementMsg) packet.getMessage();
+        PreparedStatementServer preparedStatementServer = (PreparedStatementServer) StatementServer.STATEMENTS
+                .getIfPresent(preparedStatementMsg.getId());
+        if (preparedStatementServer == null) {
+            throw new SQLException("No preparedStatement found");
+        }
+        preparedStatementServer.preparedStatementMethod(preparedStatementMsg);
+    }
+
+    /**
+     * 在指定连接上预编译语句
+     *
+     * @param preparedStatementMsg 包含连接id和预编译参数
+     * @return preparedStatementServer
+     * @throws SQLException
+     */
+    private static PreparedStatementServer prepare(PreparedStatementMsg preparedStatementMsg)
+            throws SQLException {
+        Long connectionId = preparedStatementMsg.getConnectionId();
+        ConnectionServer connectionServer =
+                connectionId == null ? null : ConnectionServer.CONNECTIONS.get(connectionId);
+        if (connectionServer == null) {
+            throw new SQLException("No connection found");
+        }
+        return connectionServer.prepareStatement(preparedStatementMsg.getPrepareParams());
+    }
 }
@@ -1,12 +1,14 @@
 package com.jdbcagent.server.netty.dispatcher;
 
 import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.protocol.Packet.PacketType;
 import com.jdbcagent.core.protocol.ResultSetMsg;
+import com.jdbcagent.core.support.ColumnarPage;
 import com.jdbcagent.server.jdbc.ResultSetServer;
 import com.jdbcagent.server.netty.NettyUtils;
+import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 
-import javax.sql.RowSet;
 import java.sql.SQLException;
 
 /**
@@ -24,6 +26,17 @@ class ResultSetInvoker {
      * @throws SQLException
      */
     static void close(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        closeResultSet(packet);
+        NettyUtils.ack(ctx.getChannel(), packet, null);
+    }
+
+    /**
+     * 关闭结果集, 不存在时忽略
+     *
+     * @param packet
+     * @throws SQLException
+     */
+    static void closeResultSet(Packet packet) throws SQLException {
         ResultSetMsg resultSetMsg = (ResultSetMsg) packet.getMessage();
         if (resultSetMsg != null && resultSetMsg.getId() != null) {
             ResultSetServer resultSetServer = ResultSetServer.RESULTSETS.getIfPresent(resultSetMsg.getId());
@@ -31,7 +44,6 @@ class ResultSetInvoker {
                 resultSetServer.close();
             }
         }
-        NettyUtils.ack(ctx.getChannel(), packet, null);
     }
 
     /**
@@ -45,10 +57,8 @@ class ResultSetInvoker {
         ResultSetMsg resultSetMsg = (ResultSetMsg) packet.getMessage();
         ResultSetServer resultSetServer = ResultSetServer.RESULTSETS.getIfPresent(resultSetMsg.getId());
         if (resultSetServer != null) {
-            RowSet rowSet = resultSetServer.getMetaData();
-
             NettyUtils.write(ctx.getChannel(), Packet.newBuilder(packet.getId())
-                            .setBody(ResultSetMsg.newBuilder().setRowSet(rowSet).build()).build(),
+                            .setBody(resultSetServer.describe()).build(),
                     null);
         } else {
             throw new SQLException("No resultSet found");
@@ -67,13 +77,60 @@ class ResultSetInvoker {
         ResultSetServer resultSetServer = ResultSetServer.RESULTSETS.getIfPresent(resultSetMsg.getId());
         if (resultSetServer != null) {
             int batchSize = resultSetMsg.getBatchSize() == null ? 500 : resultSetMsg.getBatchSize();
-            RowSet rowSet = resultSetServer.fetchRows(batchSize);
+            ColumnarPage page = resultSetServer.fetchRows(batchSize);
 
             NettyUtils.write(ctx.getChannel(), Packet.newBuilder(packet.getId())
-                            .setBody(ResultSetMsg.newBuilder().setRowSet(rowSet).build()).build(),
+                            .setBody(ResultSetMsg.newBuilder().setPage(page).build()).build(),
                     null);
         } else {
             throw new SQLException("No resultSet found");
         }
     }
+
+    /**
+     * 推送数据, 收到客户端授予的额度后持续推送分页, 直到额度用完或最后一页
+     *
+     * @param ctx
+     * @param packet
+     * @throws SQLException
+     */
+    static void stream(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        ResultSetMsg resultSetMsg = (ResultSetMsg) packet.getMessage();
+        ResultSetServer resultSetServer = ResultSetServer.RESULTSETS.getIfPresent(resultSetMsg.getId());
+        if (resultSetServer == null) {
+            // 推送最后一页后结果集已自动关闭, 迟到的额度直接丢弃, 不回复
+            return;
+        }
+        int batchSize = resultSetMsg.getBatchSize() == null ? resultSetServer.getStreamBatchSize()
+                : resultSetMsg.getBatchSize();
+        int credits = resultSetMsg.getCredits() == null ? 1 : resultSetMsg.getCredits();
+        if (!resultSetServer.grantCredits(packet.getId(), batchSize, credits)) {
+            return;
+        }
+
+        Channel channel = ctx.getChannel();
+        Long streamId = resultSetServer.getStreamId();
+        while (resultSetServer.takeCredit()) {
+            ColumnarPage page;
+            try {
+                page = resultSetServer.fetchRows(resultSetServer.getStreamBatchSize());
+            } catch (Exception e) {
+                resultSetServer.endStream();
+                NettyUtils.error(Packet.newBuilder(streamId).build(),
+                        400, e.getMessage(), channel, null);
+                return;
+            }
+            if (page == null) {
+                // 推送过程中结果集已关闭
+                resultSetServer.endStream();
+                return;
+            }
+            if (page.isLast()) {
+                resultSetServer.endStream();
+            }
+            NettyUtils.write(channel, Packet.newBuilder(streamId).setType(PacketType.RS_STREAM)
+                            .setBody(ResultSetMsg.newBuilder().setPage(page).build()).build(),
+                    null);
+        }
+    }
 }
@@ -24,6 +24,17 @@ class StatementInvoker {
      * @throws SQLException
      */
     static void close(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        closeStatement(packet);
+        NettyUtils.ack(ctx.getChannel(), packet, null);
+    }
+
+    /**
+     * 关闭statement, 不存在时忽略
+     *
+     * @param packet
+     * @throws SQLException
+     */
+    static void closeStatement(Packet packet) throws SQLException {
         StatementMsg statementMsg = (StatementMsg) packet.getMessage();
         if (statementMsg != null && statementMsg.getId() != null) {
             StatementServer statementServer = StatementServer.STATEMENTS.getIfPresent(statementMsg.getId());
@@ -31,7 +42,6 @@ class StatementInvoker {
                 statementServer.close();
             }
         }
-        NettyUtils.ack(ctx.getChannel(), packet, null);
     }
 
     /**
@@ -42,17 +52,27 @@ class StatementInvoker {
      * @throws SQLException
      */
     static void statementMethod(ChannelHandlerContext ctx, Packet packet) throws SQLException {
+        Serializable response = invokeStatementMethod(packet);
+        NettyUtils.write(ctx.getChannel(),
+                Packet.newBuilder(packet.getId())
+                        .setBody(StatementMsg.newBuilder().setResponse(response).build())
+                        .build(),
+                null);
+    }
+
+    /**
+     * 调用statement方法
+     *
+     * @param packet
+     * @return 返回结果
+     * @throws SQLException
+     */
+    static Serializable invokeStatementMethod(Packet packet) throws SQLException {
         StatementMsg statementMsg = (StatementMsg) packet.getMessage();
         StatementServer statementServer = StatementServer.STATEMENTS.getIfPresent(statementMsg.getId());
-        if (statementServer != null) {
-            Serializable response = statementServer.statementMethod(statementMsg);
-            NettyUtils.write(ctx.getChannel(),
-                    Packet.newBuilder(packet.getId())
-                            .setBody(StatementMsg.newBuilder().setResponse(response).build())
-                            .build(),
-                    null);
-        } else {
+        if (statementServer == null) {
             throw new SQLException("No statement found");
         }
+        return statementServer.statementMethod(statementMsg);
     }
 }
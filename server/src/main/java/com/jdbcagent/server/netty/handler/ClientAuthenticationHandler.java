@@ -1,7 +1,10 @@
 package com.jdbcagent.server.netty.handler;
 
 import com.jdbcagent.core.protocol.ClientAuth;
+import com.jdbcagent.core.protocol.Frames;
 import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.support.compress.Compressor;
+import com.jdbcagent.core.support.compress.Compressors;
 import com.jdbcagent.server.netty.NettyUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.*;
@@ -21,61 +24,92 @@ import java.util.concurrent.TimeUnit;
  */
 public class ClientAuthenticationHandler extends SimpleChannelHandler {
     private static final Logger logger = LoggerFactory.getLogger(ClientAuthenticationHandler.class);
-    private final int SUPPORTED_VERSION = 1;
+    private final int SUPPORTED_VERSION = Packet.PROTOCOL_VERSION;
     private final int defaultSubscriptorDisconnectIdleTimeout = 60 * 60 * 1000;
 
+    private final String compression;           // 允许的压缩算法
+
+    private final int compressThreshold;        // 压缩阈值
+
+    private final int maxMessageLength;         // 请求包体的最大长度, 限制解压后的长度
+
+    public ClientAuthenticationHandler() {
+        this(null, Compressors.DEFAULT_THRESHOLD, Frames.DEFAULT_MAX_MESSAGE_LENGTH);
+    }
+
+    public ClientAuthenticationHandler(String compression, int compressThreshold, int maxMessageLength) {
+        this.compression = compression;
+        this.compressThreshold = compressThreshold;
+        this.maxMessageLength = maxMessageLength;
+    }
+
     public void messageReceived(final ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-        Packet packet = Packet.parse(buffer.readBytes(buffer.readableBytes()).array());
+        Packet packet = NettyUtils.read((ChannelBuffer) e.getMessage());
         switch (packet.getVersion()) {
             case SUPPORTED_VERSION:
-            default:
                 final ClientAuth clientAuth = (ClientAuth) packet.getMessage();
                 // 验证账号密码
                 if ("".equalsIgnoreCase(clientAuth.getUsername()) && "".equalsIgnoreCase(clientAuth.getPassword())) {
                 }
 
-                NettyUtils.ackAuth(ctx.getChannel(), packet, new ChannelFutureListener() {
-                    public void operationComplete(ChannelFuture future) throws Exception {
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("remove unused channel handlers after authentication is done successfully.");
-                        }
-                        ctx.getPipeline().remove(ClientAuthenticationHandler.class.getName());
-
-                        int readTimeout = defaultSubscriptorDisconnectIdleTimeout;
-                        int writeTimeout = defaultSubscriptorDisconnectIdleTimeout;
-                        if (clientAuth.getNetReadTimeout() > 0) {
-                            readTimeout = clientAuth.getNetReadTimeout();
-                        }
-                        if (clientAuth.getNetWriteTimeout() > 0) {
-                            writeTimeout = clientAuth.getNetWriteTimeout();
-                        }
-
-                        // millseconds.
-                        IdleStateHandler idleStateHandler = new IdleStateHandler(NettyUtils.hashedWheelTimer,
-                                readTimeout,
-                                writeTimeout,
-                                0,
-                                TimeUnit.MILLISECONDS);
-                        ctx.getPipeline().addBefore(SessionHandler.class.getName(),
-                                IdleStateHandler.class.getName(),
-                                idleStateHandler);
-
-                        IdleStateAwareChannelHandler idleStateAwareChannelHandler = new IdleStateAwareChannelHandler() {
-
-                            public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
-                                logger.warn("channel:{} idle timeout exceeds, close channel to save server resources...",
-                                        ctx.getChannel());
-                                ctx.getChannel().close();
-                            }
-
-                        };
-                        ctx.getPipeline().addBefore(SessionHandler.class.getName(),
-                                IdleStateAwareChannelHandler.class.getName(),
-                                idleStateAwareChannelHandler);
+                // 先切换处理器再应答, 客户端收到应答后发出的请求不会再进入认证处理器
+                if (logger.isDebugEnabled()) {
+                    logger.debug("remove unused channel handlers after authentication is done successfully.");
+                }
+                ctx.getPipeline().remove(ClientAuthenticationHandler.class.getName());
+
+                int readTimeout = defaultSubscriptorDisconnectIdleTimeout;
+                int writeTimeout = defaultSubscriptorDisconnectIdleTimeout;
+                if (clientAuth.getNetReadTimeout() > 0) {
+                    readTimeout = clientAuth.getNetReadTimeout();
+                }
+                if (clientAuth.getNetWriteTimeout() > 0) {
+                    writeTimeout = clientAuth.getNetWriteTimeout();
+                }
+
+                // millseconds.
+                IdleStateHandler idleStateHandler = new IdleStateHandler(NettyUtils.hashedWheelTimer,
+                        readTimeout,
+                        writeTimeout,
+                        0,
+                        TimeUnit.MILLISECONDS);
+                ctx.getPipeline().addBefore(SessionHandler.class.getName(),
+                        IdleStateHandler.class.getName(),
+                        idleStateHandler);
+
+                IdleStateAwareChannelHandler idleStateAwareChannelHandler = new IdleStateAwareChannelHandler() {
+
+                    public void channelIdle(ChannelHandlerContext ctx, IdleStateEvent e) throws Exception {
+                        logger.warn("channel:{} idle timeout exceeds, close channel to save server resources...",
+                                ctx.getChannel());
+                        ctx.getChannel().close();
                     }
 
-                });
+                };
+                ctx.getPipeline().addBefore(SessionHandler.class.getName(),
+                        IdleStateAwareChannelHandler.class.getName(),
+                        idleStateAwareChannelHandler);
+
+                Compressor compressor = Compressors.negotiate(clientAuth.getCompression(), compression);
+                if (compressor == null) {
+                    NettyUtils.ackAuth(ctx.getChannel(), packet, null);
+                } else {
+                    // 先处理压缩的请求, 应答本身不压缩, 应答之后的数据包才压缩
+                    ctx.getPipeline().addAfter(FixedHeaderFrameDecoder.class.getName(),
+                            CompressionHandler.class.getName(),
+                            new CompressionHandler(compressor, compressThreshold, maxMessageLength, false));
+                    NettyUtils.ackAuth(ctx.getChannel(), packet, ClientAuth.newBuilder()
+                            .setCompression(compressor.getName())
+                            .setCompressThreshold(compressThreshold).build(), null);
+                }
+                break;
+            default:
+                // 协议版本不一致时双方的类注册表可能不同, 拒绝连接
+                logger.warn("channel:{} unsupported protocol version {}", ctx.getChannel(), packet.getVersion());
+                NettyUtils.error(Packet.PacketType.CLIENT_AUTH, packet, 400,
+                        "unsupported protocol version " + packet.getVersion()
+                                + ", jdbc agent server version " + SUPPORTED_VERSION,
+                        ctx.getChannel(), ChannelFutureListener.CLOSE);
                 break;
         }
     }
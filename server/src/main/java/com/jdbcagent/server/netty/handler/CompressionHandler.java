@@ -0,0 +1,105 @@
+package com.jdbcagent.server.netty.handler;
+
+import com.jdbcagent.core.support.compress.Compressor;
+import com.jdbcagent.core.support.compress.Compressors;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 数据包压缩处理器, 位于解包处理器之后
+ * <p>
+ * 收到的包体按标志位解压; 发出的数据包达到阈值时压缩, 否则只加标志位
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class CompressionHandler extends SimpleChannelHandler {
+    private final static int HEADER_LENGTH = 4;     // 数据包头长度
+
+    private final Compressor compressor;            // 协商的压缩算法
+
+    private final int threshold;                    // 压缩阈值
+
+    private final int maxMessageLength;             // 解压后包体的最大长度
+
+    private volatile boolean outbound;              // 是否处理发出的数据包, 为false时第一个发出的数据包(认证应答)不处理
+
+    public CompressionHandler(Compressor compressor, int threshold, int maxMessageLength, boolean outbound) {
+        this.compressor = compressor;
+        this.threshold = threshold;
+        this.maxMessageLength = maxMessageLength;
+        this.outbound = outbound;
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        ChannelBuffer body = (ChannelBuffer) e.getMessage();
+        byte flag = body.readByte();
+        if (flag == Compressors.COMPRESSED) {
+            byte[] src;
+            int srcOff;
+            int length = body.readableBytes();
+            if (body.hasArray()) {
+                src = body.array();
+                srcOff = body.arrayOffset() + body.readerIndex();
+            } else {
+                src = new byte[length];
+                srcOff = 0;
+                body.getBytes(body.readerIndex(), src);
+            }
+            try {
+                body = ChannelBuffers.wrappedBuffer(Compressors.decompress(compressor, src, srcOff, length,
+                        maxMessageLength));
+            } catch (IOException ex) {
+                // 数据损坏或超长, 无法继续处理这个通道
+                ctx.getChannel().close();
+                throw ex;
+            }
+        }
+        Channels.fireMessageReceived(ctx, body, e.getRemoteAddress());
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        if (!outbound) {
+            // 在应答经过时而不是应答写出后才开启, 请求处理线程不保证同一通道的顺序,
+            // 客户端收到应答后的下一个请求可能在认证线程返回前就已应答
+            outbound = true;
+            super.writeRequested(ctx, e);
+            return;
+        }
+        ChannelBuffer frame = (ChannelBuffer) e.getMessage();
+        int length = frame.readableBytes() - HEADER_LENGTH;
+        ChannelBuffer encoded;
+        if (length < threshold) {
+            // 小数据包只在包头后加标志位, 不复制包体
+            ChannelBuffer header = ChannelBuffers.buffer(HEADER_LENGTH + 1);
+            header.writeInt(length + 1);
+            header.writeByte(Compressors.RAW);
+            encoded = ChannelBuffers.wrappedBuffer(header,
+                    frame.slice(frame.readerIndex() + HEADER_LENGTH, length));
+        } else {
+            byte[] src;
+            int srcOff;
+            if (frame.hasArray()) {
+                src = frame.array();
+                srcOff = frame.arrayOffset() + frame.readerIndex() + HEADER_LENGTH;
+            } else {
+                src = new byte[length];
+                srcOff = 0;
+                frame.getBytes(frame.readerIndex() + HEADER_LENGTH, src);
+            }
+            ByteBuffer buffer = Compressors.encode(compressor, threshold, src, srcOff, length, HEADER_LENGTH);
+            Compressors.writeInt(buffer.array(), 0, buffer.remaining() - HEADER_LENGTH);
+            encoded = ChannelBuffers.wrappedBuffer(buffer);
+        }
+        Channels.write(ctx, e.getFuture(), encoded, e.getRemoteAddress());
+    }
+}
@@ -1,20 +1,82 @@
 package com.jdbcagent.server.netty.handler;
 
+import com.jdbcagent.core.protocol.Frames;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
-import org.jboss.netty.handler.codec.replay.VoidEnum;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 解析对应的header信息
+ * <p>
+ * 包头可读后先校验帧长度, 整帧到达后才读取, 不重复解析; 分片的帧拼接后作为一个数据包体向后传递
  *
  * @version 1.0.0
  */
-public class FixedHeaderFrameDecoder extends ReplayingDecoder<VoidEnum> {
+public class FixedHeaderFrameDecoder extends FrameDecoder {
+    private final static Logger logger = LoggerFactory.getLogger(FixedHeaderFrameDecoder.class);
+
+    private final int maxMessageLength;                             // 拼接后包体的最大长度
+
+    private final List<ChannelBuffer> fragments = new ArrayList<>(); // 已收到的分片
+
+    private int fragmentsLength;                                    // 已收到分片的总长度
+
+    private boolean discarding;                                     // 超长后丢弃之后的数据, 等待通道关闭
+
+    public FixedHeaderFrameDecoder(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (discarding) {
+            buffer.skipBytes(buffer.readableBytes());
+            return null;
+        }
+        if (buffer.readableBytes() < Frames.HEADER_LENGTH) {
+            return null;
+        }
+        int header = buffer.getInt(buffer.readerIndex());
+        int length = Frames.length(header);
+        if (length > Frames.MAX_FRAME_LENGTH || (long) fragmentsLength + length > maxMessageLength) {
+            fail(channel, "frame length " + length + " (" + fragmentsLength + " buffered) exceeds limit");
+        }
+        if (buffer.readableBytes() < Frames.HEADER_LENGTH + length) {
+            return null;
+        }
+        buffer.skipBytes(Frames.HEADER_LENGTH);
+        ChannelBuffer frame = buffer.readBytes(length);
+        if (Frames.hasMore(header)) {
+            fragments.add(frame);
+            fragmentsLength += length;
+            return null;
+        }
+        if (fragments.isEmpty()) {
+            return frame;
+        }
+        fragments.add(frame);
+        ChannelBuffer message = ChannelBuffers.wrappedBuffer(fragments.toArray(new ChannelBuffer[fragments.size()]));
+        fragments.clear();
+        fragmentsLength = 0;
+        return message;
+    }
 
-    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer,
-            VoidEnum state) throws Exception {
-        return buffer.readBytes(buffer.readInt());
+    /**
+     * 长度超限, 无法再定位后续数据包, 关闭通道
+     */
+    private void fail(Channel channel, String message) throws TooLongFrameException {
+        discarding = true;
+        fragments.clear();
+        logger.warn("Client: " + channel.getRemoteAddress() + " " + message + ", closing channel");
+        channel.close();
+        throw new TooLongFrameException(message);
     }
 }
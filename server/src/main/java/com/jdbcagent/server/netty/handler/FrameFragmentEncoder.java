@@ -0,0 +1,43 @@
+package com.jdbcagent.server.netty.handler;
+
+import com.jdbcagent.core.protocol.Frames;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * 数据包分片处理器, 位于管道最前面
+ * <p>
+ * 包体超过单帧上限的数据包拆成多帧, 各帧引用原缓冲的片段, 不复制包体, 作为一次写出保证分片连续
+ *
+ * @author Machengyuan
+ * @version 1.0 2018-07-10
+ */
+public class FrameFragmentEncoder extends OneToOneEncoder {
+
+    @Override
+    protected Object encode(ChannelHandlerContext ctx, Channel channel, Object msg) throws Exception {
+        if (!(msg instanceof ChannelBuffer)) {
+            return msg;
+        }
+        ChannelBuffer frame = (ChannelBuffer) msg;
+        int length = frame.readableBytes() - Frames.HEADER_LENGTH;
+        if (length <= Frames.MAX_FRAME_LENGTH) {
+            return frame;
+        }
+        int count = Frames.frameCount(length);
+        ChannelBuffer[] parts = new ChannelBuffer[count * 2];
+        int offset = frame.readerIndex() + Frames.HEADER_LENGTH;
+        for (int i = 0; i < count; i++) {
+            int n = Math.min(Frames.MAX_FRAME_LENGTH, length - i * Frames.MAX_FRAME_LENGTH);
+            ChannelBuffer header = ChannelBuffers.buffer(Frames.HEADER_LENGTH);
+            header.writeInt(Frames.header(n, i < count - 1));
+            parts[i * 2] = header;
+            parts[i * 2 + 1] = frame.slice(offset, n);
+            offset += n;
+        }
+        return ChannelBuffers.wrappedBuffer(parts);
+    }
+}
@@ -22,8 +22,7 @@ public class SessionHandler extends SimpleChannelHandler {
 
     @Override
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
-        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-        Packet packet = Packet.parse(buffer.readBytes(buffer.readableBytes()).array());
+        Packet packet = NettyUtils.read((ChannelBuffer) e.getMessage());
         try {
             Dispatcher.dispatch(e.getChannel().getId(), ctx, packet);
         } catch (Throwable exception) {
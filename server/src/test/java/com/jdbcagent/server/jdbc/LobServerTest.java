@@ -0,0 +1,113 @@
+package com.jdbcagent.server.jdbc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.sql.Types;
+
+public class LobServerTest {
+    private final ConnectionServer owner = new ConnectionServer();
+
+    private LobServer lobServer;
+
+    @After
+    public void tearDown() {
+        if (lobServer != null) {
+            lobServer.free();
+        }
+    }
+
+    @Test
+    public void testBlobRoundTrip() throws Exception {
+        lobServer = LobServer.create(owner, Types.BLOB);
+        Assert.assertTrue(lobServer.isUploaded());
+        Assert.assertSame(lobServer, LobServer.LOBS.getIfPresent(lobServer.currentId));
+        lobServer.append(new byte[]{1, 2, 3});
+        lobServer.append(new byte[0]);
+        lobServer.append(new byte[]{4, 5});
+        Assert.assertEquals(5, lobServer.getLength());
+        Assert.assertEquals(Types.BLOB, lobServer.locator().getType());
+        Assert.assertEquals(5, lobServer.locator().getLength());
+
+        InputStream in = lobServer.openStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            out.write(b);
+        }
+        Assert.assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, out.toByteArray());
+
+        try {
+            lobServer.append(new byte[]{6});
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().endsWith("is not writable"));
+        }
+    }
+
+    @Test
+    public void testClobRoundTrip() throws Exception {
+        lobServer = LobServer.create(owner, Types.CLOB);
+        // 多字节字符及代理对按UTF-8写入临时文件, 长度按字符计
+        String first = "abc中文";
+        String second = "\uD83D\uDE00xyz";
+        lobServer.append(first);
+        lobServer.append(second);
+        Assert.assertEquals(first.length() + second.length(), lobServer.getLength());
+        Assert.assertEquals(lobServer.getLength(), lobServer.locator().getLength());
+
+        Reader reader = lobServer.openReader();
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4];
+        int n;
+        while ((n = reader.read(buffer)) >= 0) {
+            sb.append(buffer, 0, n);
+        }
+        Assert.assertEquals(first + second, sb.toString());
+
+        // 可以多次打开
+        Reader again = lobServer.openReader();
+        Assert.assertEquals('a', again.read());
+    }
+
+    @Test
+    public void testFree() throws Exception {
+        lobServer = LobServer.create(owner, Types.CLOB);
+        lobServer.append("abc");
+        Reader reader = lobServer.openReader();
+        long id = lobServer.currentId;
+        lobServer.free();
+        Assert.assertNull(LobServer.LOBS.getIfPresent(id));
+        try {
+            reader.read();
+            Assert.fail();
+        } catch (IOException e) {
+            // 释放时已关闭打开的流
+        }
+        try {
+            lobServer.openReader();
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().endsWith("was freed"));
+        }
+        // 重复释放不报错
+        lobServer.free();
+    }
+
+    @Test
+    public void testUploadedIsNotReadable() throws Exception {
+        lobServer = LobServer.create(owner, Types.BLOB);
+        try {
+            lobServer.read(1, 10);
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage().endsWith("is not readable"));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.jdbcagent.server.netty.dispatcher;
+
+import com.jdbcagent.core.protocol.ConnectionMsg;
+import com.jdbcagent.core.protocol.Packet;
+import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.protocol.PreparedStatementMsg;
+import com.jdbcagent.core.protocol.StatementMsg;
+import com.jdbcagent.server.config.ConfigParser;
+import com.jdbcagent.server.config.JdbcAgentConf;
+import com.jdbcagent.server.jdbc.ChannelSession;
+import com.jdbcagent.server.jdbc.ConnectionServer;
+import com.jdbcagent.server.jdbc.StatementServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+public class DispatcherTest {
+    private static final Integer CHANNEL_ID = -17;
+
+    private ChannelSession session;
+
+    private long connectionId;
+
+    private long otherConnectionId;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        String yml = "jdbcAgent:\n"
+                + "  catalog: dispatcher\n"
+                + "  dataSources:\n"
+                + "    - accessUsername: dispatcher\n"
+                + "      accessPassword: dispatcher\n"
+                + "      dsManager:\n"
+                + "        driverClass: org.h2.Driver\n"
+                + "        jdbcUrl: jdbc:h2:mem:dispatcher;DB_CLOSE_DELAY=-1\n"
+                + "        username: sa\n"
+                + "        password: \"\"\n";
+        JdbcAgentConf jdbcAgentConf = ConfigParser.parse(
+                new ByteArrayInputStream(yml.getBytes(StandardCharsets.UTF_8)));
+        jdbcAgentConf.init();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        session = ChannelSession.open(CHANNEL_ID);
+        connectionId = new ConnectionServer().connect(session, "dispatcher", "dispatcher", "dispatcher");
+        otherConnectionId = new ConnectionServer().connect(session, "dispatcher", "dispatcher", "dispatcher");
+    }
+
+    @After
+    public void tearDown() {
+        ChannelSession.close(CHANNEL_ID);
+    }
+
+    @Test
+    public void testDeferredInOrder() throws Exception {
+        Dispatcher.dispatchDeferred(Arrays.asList(
+                connMethod(connectionId, ConnectionMsg.Method.setAutoCommit, true),
+                connMethod(connectionId, ConnectionMsg.Method.setAutoCommit, false)),
+                connMethod(connectionId, ConnectionMsg.Method.commit));
+        Assert.assertEquals(false, invoke(connectionId, ConnectionMsg.Method.getAutoCommit));
+    }
+
+    @Test
+    public void testReleaseAfterFailure() throws Exception {
+        long statementId = (Long) invoke(otherConnectionId, ConnectionMsg.Method.createStatement);
+        try {
+            Dispatcher.dispatchDeferred(Arrays.asList(
+                    // 连接不存在, 调用失败
+                    connMethod(0L, ConnectionMsg.Method.setReadOnly, true),
+                    connMethod(otherConnectionId, ConnectionMsg.Method.setAutoCommit, false),
+                    Packet.newBuilder().setType(PacketType.STMT_CLOSE)
+                            .setBody(StatementMsg.newBuilder().setId(statementId).build()).build(),
+                    connMethod(connectionId, ConnectionMsg.Method.close)),
+                    connMethod(otherConnectionId, ConnectionMsg.Method.commit));
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Deferred CONN_METHOD failed"));
+        }
+        // 出错后的关闭仍然执行, 其它调用跳过
+        Assert.assertNull(ConnectionServer.CONNECTIONS.get(connectionId));
+        Assert.assertNull(StatementServer.STATEMENTS.getIfPresent(statementId));
+        Assert.assertEquals(true, invoke(otherConnectionId, ConnectionMsg.Method.getAutoCommit));
+    }
+
+    @Test
+    public void testReleaseRequestAfterFailure() throws Exception {
+        // 客户端关闭连接时, 关闭作为最后一个调用单独成为请求
+        Packet close = connMethod(connectionId, ConnectionMsg.Method.close);
+        close.setDeferred(Arrays.asList(connMethod(0L, ConnectionMsg.Method.setAutoCommit, false)));
+        try {
+            Dispatcher.dispatch(CHANNEL_ID, null, close);
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Deferred CONN_METHOD failed"));
+        }
+        Assert.assertNull(ConnectionServer.CONNECTIONS.get(connectionId));
+        Assert.assertNotNull(ConnectionServer.CONNECTIONS.get(otherConnectionId));
+    }
+
+    @Test
+    public void testReleaseFailureSuppressed() throws Exception {
+        try {
+            Dispatcher.dispatchDeferred(Arrays.asList(
+                    connMethod(0L, ConnectionMsg.Method.setAutoCommit, false),
+                    connMethod(0L, ConnectionMsg.Method.close)),
+                    connMethod(otherConnectionId, ConnectionMsg.Method.commit));
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Deferred CONN_METHOD failed"));
+            Assert.assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void testDeferredPreparedStatementMethod() throws Exception {
+        long statementId = (Long) invoke(connectionId, ConnectionMsg.Method.prepareStatement, "select ?");
+        Dispatcher.dispatchDeferred(Arrays.asList(Packet.newBuilder().setType(PacketType.PRE_STMT_METHOD)
+                        .setBody(PreparedStatementMsg.newBuilder().setId(statementId)
+                                .setMethod(PreparedStatementMsg.Method.clearParameters).build()).build()),
+                connMethod(connectionId, ConnectionMsg.Method.commit));
+        try {
+            Dispatcher.dispatchDeferred(Arrays.asList(Packet.newBuilder().setType(PacketType.PRE_STMT_METHOD)
+                            .setBody(PreparedStatementMsg.newBuilder().setId(-1L)
+                                    .setMethod(PreparedStatementMsg.Method.clearParameters).build()).build()),
+                    connMethod(connectionId, ConnectionMsg.Method.commit));
+            Assert.fail();
+        } catch (SQLException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Deferred PRE_STMT_METHOD failed"));
+        }
+    }
+
+    private static Packet connMethod(long connectionId, ConnectionMsg.Method method, Serializable... params) {
+        return Packet.newBuilder().setType(PacketType.CONN_METHOD)
+                .setBody(ConnectionMsg.newBuilder().setId(connectionId).setMethod(method).setParams(params).build())
+                .build();
+    }
+
+    private static Serializable invoke(long connectionId, ConnectionMsg.Method method, Serializable... params)
+            throws SQLException {
+        return ConnectionServer.CONNECTIONS.get(connectionId)
+                .connMethod((ConnectionMsg) connMethod(connectionId, method, params).getMessage());
+    }
+}
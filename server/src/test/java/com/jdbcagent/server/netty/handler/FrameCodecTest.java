@@ -0,0 +1,204 @@
+package com.jdbcagent.server.netty.handler;
+
+import com.jdbcagent.core.protocol.Frames;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelDownstreamHandler;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 客户端与服务端各有一份分帧处理器, 用同一组用例校验
+ */
+@RunWith(Parameterized.class)
+public class FrameCodecTest {
+    private final Codec codec;
+
+    public FrameCodecTest(String side, Codec codec) {
+        this.codec = codec;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> codecs() {
+        return Arrays.asList(new Object[]{"server", new Codec() {
+            ChannelUpstreamHandler decoder(int maxMessageLength) {
+                return new FixedHeaderFrameDecoder(maxMessageLength);
+            }
+
+            ChannelDownstreamHandler encoder() {
+                return new FrameFragmentEncoder();
+            }
+        }}, new Object[]{"client", new Codec() {
+            ChannelUpstreamHandler decoder(int maxMessageLength) {
+                return new com.jdbcagent.client.netty.handler.FixedHeaderFrameDecoder(maxMessageLength);
+            }
+
+            ChannelDownstreamHandler encoder() {
+                return new com.jdbcagent.client.netty.handler.FrameFragmentEncoder();
+            }
+        }});
+    }
+
+    @Test
+    public void testExactMaxFrameLength() {
+        ChannelBuffer encoded = encode(body(Frames.MAX_FRAME_LENGTH));
+        Assert.assertEquals(Frames.HEADER_LENGTH + Frames.MAX_FRAME_LENGTH, encoded.readableBytes());
+        int header = encoded.getInt(encoded.readerIndex());
+        Assert.assertFalse(Frames.hasMore(header));
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, Frames.length(header));
+
+        assertBody(body(Frames.MAX_FRAME_LENGTH), decode(encoded, Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void testSplitAboveMaxFrameLength() {
+        int length = Frames.MAX_FRAME_LENGTH + 1;
+        ChannelBuffer encoded = encode(body(length));
+        Assert.assertEquals(2 * Frames.HEADER_LENGTH + length, encoded.readableBytes());
+
+        int first = encoded.getInt(encoded.readerIndex());
+        Assert.assertTrue(Frames.hasMore(first));
+        Assert.assertEquals(Frames.MAX_FRAME_LENGTH, Frames.length(first));
+        int second = encoded.getInt(encoded.readerIndex() + Frames.HEADER_LENGTH + Frames.MAX_FRAME_LENGTH);
+        Assert.assertFalse(Frames.hasMore(second));
+        Assert.assertEquals(1, Frames.length(second));
+
+        assertBody(body(length), decode(encoded, Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+    }
+
+    @Test
+    public void testReassembleFragments() {
+        int length = Frames.MAX_FRAME_LENGTH * 3 + 17;
+        ChannelBuffer encoded = encode(body(length));
+        Assert.assertEquals(4 * Frames.HEADER_LENGTH + length, encoded.readableBytes());
+
+        // 分多次到达, 每次的边界与帧边界不对齐
+        DecoderEmbedder<ChannelBuffer> decoder =
+                new DecoderEmbedder<>(codec.decoder(Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+        int chunk = 300001;
+        while (encoded.readable()) {
+            decoder.offer(encoded.readBytes(Math.min(chunk, encoded.readableBytes())));
+        }
+        Assert.assertTrue(decoder.finish());
+        assertBody(body(length), decoder.poll());
+        Assert.assertNull(decoder.poll());
+    }
+
+    @Test
+    public void testConsecutiveMessages() {
+        DecoderEmbedder<ChannelBuffer> decoder =
+                new DecoderEmbedder<>(codec.decoder(Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+        decoder.offer(ChannelBuffers.wrappedBuffer(encode(body(Frames.MAX_FRAME_LENGTH + 5)), encode(body(3))));
+        Assert.assertTrue(decoder.finish());
+        assertBody(body(Frames.MAX_FRAME_LENGTH + 5), decoder.poll());
+        assertBody(body(3), decoder.poll());
+        Assert.assertNull(decoder.poll());
+    }
+
+    @Test
+    public void testRejectBeforeBodyBuffered() {
+        DecoderEmbedder<ChannelBuffer> decoder = new DecoderEmbedder<>(codec.decoder(1000));
+        ChannelBuffer header = ChannelBuffers.buffer(Frames.HEADER_LENGTH);
+        header.writeInt(Frames.header(1001, false));
+        try {
+            // 只有包头, 包体尚未到达
+            decoder.offer(header);
+            Assert.fail();
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+        // 之后的数据全部丢弃
+        decoder.offer(ChannelBuffers.wrappedBuffer(new byte[16]));
+        Assert.assertNull(decoder.poll());
+    }
+
+    @Test
+    public void testRejectFragmentsAboveMaxMessageLength() {
+        int maxMessageLength = Frames.MAX_FRAME_LENGTH + 100;
+        DecoderEmbedder<ChannelBuffer> decoder = new DecoderEmbedder<>(codec.decoder(maxMessageLength));
+        ChannelBuffer encoded = encode(body(Frames.MAX_FRAME_LENGTH + 101));
+        // 第一帧在上限内, 收下
+        decoder.offer(encoded.readBytes(Frames.HEADER_LENGTH + Frames.MAX_FRAME_LENGTH));
+        Assert.assertNull(decoder.poll());
+        try {
+            // 第二帧的包头使总长度超限
+            decoder.offer(encoded.readBytes(Frames.HEADER_LENGTH));
+            Assert.fail();
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+
+    @Test
+    public void testRejectFrameAboveMaxFrameLength() {
+        DecoderEmbedder<ChannelBuffer> decoder =
+                new DecoderEmbedder<>(codec.decoder(Frames.DEFAULT_MAX_MESSAGE_LENGTH));
+        ChannelBuffer header = ChannelBuffers.buffer(Frames.HEADER_LENGTH);
+        header.writeInt(Frames.header(Frames.MAX_FRAME_LENGTH + 1, true));
+        try {
+            decoder.offer(header);
+            Assert.fail();
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof TooLongFrameException);
+        }
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) (i % 251);
+        }
+        return body;
+    }
+
+    /**
+     * 模拟写出: 预留包头并写入包体长度, 再经过分片处理器
+     */
+    private ChannelBuffer encode(byte[] body) {
+        ChannelBuffer frame = ChannelBuffers.buffer(Frames.HEADER_LENGTH + body.length);
+        frame.writeInt(body.length);
+        frame.writeBytes(body);
+        EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<>(codec.encoder());
+        encoder.offer(frame);
+        Assert.assertTrue(encoder.finish());
+        ChannelBuffer encoded = encoder.poll();
+        Assert.assertNull(encoder.poll());
+        return encoded;
+    }
+
+    private ChannelBuffer decode(ChannelBuffer encoded, int maxMessageLength) {
+        DecoderEmbedder<ChannelBuffer> decoder = new DecoderEmbedder<>(codec.decoder(maxMessageLength));
+        decoder.offer(encoded);
+        Assert.assertTrue(decoder.finish());
+        ChannelBuffer message = decoder.poll();
+        Assert.assertNull(decoder.poll());
+        return message;
+    }
+
+    private static void assertBody(byte[] expected, ChannelBuffer actual) {
+        Assert.assertNotNull(actual);
+        byte[] bytes = new byte[actual.readableBytes()];
+        actual.getBytes(actual.readerIndex(), bytes);
+        Assert.assertArrayEquals(expected, bytes);
+    }
+
+    /**
+     * 创建一侧的分帧处理器
+     */
+    abstract static class Codec {
+        abstract ChannelUpstreamHandler decoder(int maxMessageLength);
+
+        abstract ChannelDownstreamHandler encoder();
+    }
+}
@@ -2,6 +2,8 @@ package com.jdbcagent.server.test;
 
 import com.jdbcagent.core.protocol.*;
 import com.jdbcagent.core.protocol.Packet.PacketType;
+import com.jdbcagent.core.support.ColumnarPage;
+import com.jdbcagent.core.support.ParamBlock;
 import com.jdbcagent.server.config.ConfigParser;
 import com.jdbcagent.server.config.JdbcAgentConf;
 import com.jdbcagent.server.netty.JdbcAgentNettyServer;
@@ -11,7 +13,6 @@ import org.junit.Before;
 import org.junit.Test;
 
 import javax.sql.DataSource;
-import javax.sql.RowSet;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -20,7 +21,6 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.sql.*;
 import java.util.Date;
-import java.util.LinkedList;
 
 
 public class JdbcAgentServerTest {
@@ -50,33 +50,17 @@ public class JdbcAgentServerTest {
         long connId = testConnection();
         long stmtId = testStatement(connId);
         testUpdate(stmtId);
-        long rsId = testResultSet(stmtId);
-        RowSet rs = testRowSet(rsId);
-        while (rs.next()) {
-            System.out.println(rs.getLong("id") + " "
-                    + rs.getString("name") + " "
-                    + rs.getInt("gender") + " "
-                    + rs.getString("email") + " "
-                    + rs.getTimestamp("sys_time")
-            );
-        }
-        rs.close();
+        ResultSetMsg resultSetMsg = testResultSet(stmtId);
+        ColumnarPage page = testPage(resultSetMsg);
+        printPage(page);
 
         System.out.println();
 
         long pstatId = testPreparedStatement(connId);
-        LinkedList<PreparedStatementMsg> paramsQueue = setPStmtParam(pstatId, 2L);
-        rsId = testExePrepariedStatement(pstatId, paramsQueue);
-        rs = testRowSet(rsId);
-        while (rs.next()) {
-            System.out.println(rs.getLong("id") + " "
-                    + rs.getString("name") + " "
-                    + rs.getInt("gender") + " "
-                    + rs.getString("email") + " "
-                    + rs.getTimestamp("sys_time")
-            );
-        }
-        rs.close();
+        ParamBlock paramBlock = setPStmtParam(pstatId, 2L);
+        resultSetMsg = testExePrepariedStatement(pstatId, paramBlock);
+        page = testPage(resultSetMsg);
+        printPage(page);
     }
 
     @After
@@ -161,7 +145,7 @@ public class JdbcAgentServerTest {
         return updateCount;
     }
 
-    private Long testResultSet(long stmtId) throws Exception {
+    private ResultSetMsg testResultSet(long stmtId) throws Exception {
         String sql = "SELECT * FROM  `t_user` WHERE `id`!=0";
         writeWithHeader(channel,
                 Packet.newBuilder()
@@ -170,15 +154,34 @@ public class JdbcAgentServerTest {
                         .setBody(StatementMsg.newBuilder().setId(stmtId)
                                 .setMethod(StatementMsg.Method.executeQuery)
                                 .setParams(new Serializable[]{sql})
+                                .setBatchSize(500)
                                 .build()).build().toByteArray());
         Packet p = Packet.parse(readNextPacket(channel));
         StatementMsg statementMsg = (StatementMsg) p.getBody();
-        Long rsId = (Long) statementMsg.getResponse();
-        Assert.assertNotNull(rsId);
-        return rsId;
+        ResultSetMsg resultSetMsg = (ResultSetMsg) statementMsg.getResponse();
+        Assert.assertNotNull(resultSetMsg.getMetaData());
+        Assert.assertNotNull(resultSetMsg.getPage());
+        return resultSetMsg;
+    }
+
+    private void printPage(ColumnarPage page) throws Exception {
+        for (int row = 0; row < page.getRowCount(); row++) {
+            System.out.println(page.getLong(row, 1) + " "
+                    + page.getString(row, 2) + " "
+                    + page.getLong(row, 3) + " "
+                    + page.getString(row, 4) + " "
+                    + page.getTimestamp(row, 5)
+            );
+        }
     }
 
-    private RowSet testRowSet(long rsId) throws Exception {
+    private ColumnarPage testPage(ResultSetMsg describeMsg) throws Exception {
+        // 第一页随结果集描述返回, 已是最后一页时服务端已关闭结果集
+        ColumnarPage firstPage = describeMsg.getPage();
+        if (firstPage.isLast()) {
+            return firstPage;
+        }
+        long rsId = describeMsg.getId();
         writeWithHeader(channel,
                 Packet.newBuilder()
                         .incrementAndGetId()
@@ -188,9 +191,9 @@ public class JdbcAgentServerTest {
                                 .build()).build().toByteArray());
         Packet p = Packet.parse(readNextPacket(channel));
         ResultSetMsg resultSetMsg = (ResultSetMsg) p.getBody();
-        RowSet rowSet = resultSetMsg.getRowSet();
-        Assert.assertNotNull(rowSet);
-        return rowSet;
+        ColumnarPage page = resultSetMsg.getPage();
+        Assert.assertNotNull(page);
+        return page;
     }
 
     private Long testPreparedStatement(long connId) throws Exception {
@@ -211,31 +214,28 @@ public class JdbcAgentServerTest {
         return pstmtId;
     }
 
-    private LinkedList<PreparedStatementMsg> setPStmtParam(long pstmtId, long testId) {
-        LinkedList<PreparedStatementMsg> paramsQueue = new LinkedList<>();
-        PreparedStatementMsg.Builder builder = PreparedStatementMsg.newBuilder().setId(pstmtId)
-                .setParamType(PreparedStatementMsg.ParamType.LONG).setParameterIndex(1);
-
-        PreparedStatementMsg preparedStatementMsg = builder.setParams(new Serializable[]{testId}).build();
-
-        paramsQueue.offer(preparedStatementMsg);
-        return paramsQueue;
+    private ParamBlock setPStmtParam(long pstmtId, long testId) {
+        ParamBlock paramBlock = new ParamBlock();
+        paramBlock.setLong(PreparedStatementMsg.ParamType.LONG, 1, testId);
+        return paramBlock;
     }
 
-    private Long testExePrepariedStatement(long pstmtId, LinkedList<PreparedStatementMsg> paramsQueue) throws Exception {
+    private ResultSetMsg testExePrepariedStatement(long pstmtId, ParamBlock paramBlock) throws Exception {
         writeWithHeader(channel,
                 Packet.newBuilder()
                         .incrementAndGetId()
                         .setType(PacketType.PRE_STMT_METHOD)
                         .setBody(PreparedStatementMsg.newBuilder().setId(pstmtId)
                                 .setMethod(PreparedStatementMsg.Method.executeQuery)
-                                .setParams(new Serializable[]{paramsQueue}).build())
+                                .setParams(new Serializable[]{paramBlock})
+                                .setBatchSize(500).build())
                         .build().toByteArray());
         Packet p = Packet.parse(readNextPacket(channel));
         PreparedStatementMsg preparedStatementMsg = (PreparedStatementMsg) p.getBody();
-        Long rsId = (Long) preparedStatementMsg.getResponse();
-        Assert.assertNotNull(rsId);
-        return rsId;
+        ResultSetMsg resultSetMsg = (ResultSetMsg) preparedStatementMsg.getResponse();
+        Assert.assertNotNull(resultSetMsg.getMetaData());
+        Assert.assertNotNull(resultSetMsg.getPage());
+        return resultSetMsg;
     }
 
     public static void ddl() throws SQLException {